@@ -0,0 +1,147 @@
+"""Decoder for the binary columnar format written by
+cl.niclabs.adkmobile.data.BinarySerializer.
+
+Usage: python adkb.py measurements.adkb.gz > measurements.json
+"""
+import gzip
+import json
+import struct
+import sys
+
+MAGIC = b'ADKB'
+VERSION = 1
+
+TAG_END = 0
+TAG_SCHEMA = 1
+TAG_BLOCK = 2
+
+TYPE_BOOLEAN = 0
+TYPE_INT = 1
+TYPE_LONG = 2
+TYPE_FLOAT = 3
+TYPE_DOUBLE = 4
+TYPE_STRING = 5
+TYPE_JSON = 6
+NULLABLE = 0x80
+
+
+class Reader(object):
+    def __init__(self, stream):
+        self.stream = stream
+
+    def read(self, size):
+        data = self.stream.read(size)
+        if len(data) != size:
+            raise ValueError('Unexpected end of stream')
+        return data
+
+    def byte(self):
+        return bytearray(self.read(1))[0]
+
+    def varint(self):
+        result = 0
+        shift = 0
+        while True:
+            b = self.byte()
+            result |= (b & 0x7f) << shift
+            if not b & 0x80:
+                return result
+            shift += 7
+
+    def zigzag(self):
+        value = self.varint()
+        return (value >> 1) ^ -(value & 1)
+
+    def string(self):
+        return self.read(self.varint()).decode('utf-8')
+
+
+class Schema(object):
+    def __init__(self, name, fields):
+        self.name = name
+        self.fields = fields
+        # Dictionaries are kept for the whole stream
+        self.dictionaries = [[] for _ in fields]
+
+
+def _read_column(reader, schema, column, rows):
+    _, type_ = schema.fields[column]
+    if type_ & NULLABLE:
+        bitmap = bytearray(reader.read((rows + 7) // 8))
+        present = [bool(bitmap[i // 8] & (1 << (i % 8))) for i in range(rows)]
+    else:
+        present = [True] * rows
+
+    base = type_ & ~NULLABLE
+    dictionary = schema.dictionaries[column]
+    previous = 0
+    values = []
+    for row in range(rows):
+        if not present[row]:
+            values.append(None)
+        elif base == TYPE_BOOLEAN:
+            values.append(reader.byte() != 0)
+        elif base == TYPE_INT:
+            values.append(reader.zigzag())
+        elif base == TYPE_LONG:
+            previous += reader.zigzag()
+            values.append(previous)
+        elif base == TYPE_FLOAT:
+            values.append(struct.unpack('>f', reader.read(4))[0])
+        elif base == TYPE_DOUBLE:
+            values.append(struct.unpack('>d', reader.read(8))[0])
+        elif base == TYPE_STRING:
+            index = reader.varint()
+            if index == len(dictionary):
+                dictionary.append(reader.string())
+            values.append(dictionary[index])
+        elif base == TYPE_JSON:
+            values.append(json.loads(reader.string()))
+        else:
+            raise ValueError('Unknown column type %d' % type_)
+    return values
+
+
+def decode(stream):
+    """Decode a binary stream into a list of dictionaries, using the same
+    layout as the JSON format (null values are omitted)"""
+    reader = Reader(stream)
+    if reader.read(4) != MAGIC:
+        raise ValueError('Not an ADKB stream')
+    version = reader.byte()
+    if version != VERSION:
+        raise ValueError('Unsupported version %d' % version)
+
+    schemas = {}
+    objects = []
+    while True:
+        tag = reader.byte()
+        if tag == TAG_END:
+            return objects
+        elif tag == TAG_SCHEMA:
+            schema_id = reader.varint()
+            name = reader.string()
+            fields = [(reader.string(), reader.byte()) for _ in range(reader.varint())]
+            schemas[schema_id] = Schema(name, fields)
+        elif tag == TAG_BLOCK:
+            schema = schemas[reader.varint()]
+            rows = reader.varint()
+            columns = [_read_column(reader, schema, c, rows) for c in range(len(schema.fields))]
+            for row in range(rows):
+                obj = {}
+                for c, (name, _) in enumerate(schema.fields):
+                    if columns[c][row] is not None:
+                        obj[name] = columns[c][row]
+                objects.append(obj)
+        else:
+            raise ValueError('Unknown tag %d' % tag)
+
+
+def decode_file(path):
+    """Decode a gzipped binary file"""
+    with gzip.open(path, 'rb') as f:
+        return decode(f)
+
+
+if __name__ == '__main__':
+    json.dump(decode_file(sys.argv[1]), sys.stdout)
@@ -1,10 +1,28 @@
 import bottle
+import gzip
+import hashlib
+import json
 import os
-from bottle import Bottle, static_file, request
+import random
+import re
+import shutil
+import time
+import adkb
+from bottle import Bottle, static_file, request, response
 from datetime import datetime
 
 app = Bottle()
 
+# Probability of failing a chunk upload, for testing client retries.
+# Half of the failures happen after the chunk is stored (lost acknowledgement)
+FAILURE_RATE = float(os.environ.get('FAILURE_RATE', 0))
+
+# Seconds after the last change before the chunks of an upload are removed,
+# complete or not
+CHUNK_EXPIRATION = int(os.environ.get('CHUNK_EXPIRATION', 7 * 24 * 3600))
+
+CHUNKS_PATH = './data/chunks'
+
 @app.route('')
 @app.route('/')
 def index():
@@ -16,6 +34,136 @@ def send_static(path):
     return static_file(path, root='web')
 
 
+def data_filename():
+    return '%s.%s.%s.%s.%s.gz' % (request.forms.get('data_type'), 
+        request.forms.get('transport'), 
+        request.forms.get('journey_id'), 
+        datetime.now().strftime('%Y-%m-%d.%H%M%S'), 
+        request.forms.get('device_id'))
+
+
+def decode_chunk(path):
+    """Read the objects in a stored chunk (JSON or binary)"""
+    with gzip.open(path, 'rb') as f:
+        if path.endswith('.adkb.gz'):
+            return adkb.decode(f)
+        return json.loads(f.read().decode('utf-8'))
+
+
+def chunk_dir(upload_id):
+    if not upload_id or not re.match(r'^[\w.-]+$', upload_id):
+        bottle.abort(400, 'Invalid upload id')
+    return os.path.join(CHUNKS_PATH, upload_id)
+
+
+def chunk_files(path):
+    return sorted(f for f in os.listdir(path) if f[0].isdigit())
+
+
+def chunk_status(path):
+    """Return the last acknowledged chunk, if the upload is complete and, for
+    complete uploads, the hash of the upload"""
+    marker = os.path.join(path, 'complete')
+    if os.path.exists(marker):
+        # The chunks are removed once joined, the marker keeps the last one
+        # and the hash of the upload
+        with open(marker) as f:
+            status = json.load(f)
+        if not isinstance(status, dict):
+            # Markers written before the hash was stored cannot be verified
+            return status, True, None
+        return status['last'], True, status['hash']
+
+    last = -1
+    if os.path.exists(path):
+        chunks = [int(f.split('.')[0]) for f in chunk_files(path)]
+        while last + 1 in chunks:
+            last += 1
+    return last, False, None
+
+
+def upload_hash(path, names):
+    """SHA-256 hash of the concatenated hashes of the chunks, so the client can
+    check that a complete upload holds its data"""
+    hashes = ''
+    for name in names:
+        with open(os.path.join(path, name), 'rb') as f:
+            hashes += hashlib.sha256(f.read()).hexdigest()
+    return hashlib.sha256(hashes.encode('ascii')).hexdigest()
+
+
+def remove_expired_chunks():
+    """Remove the uploads not changed in CHUNK_EXPIRATION seconds"""
+    if not os.path.exists(CHUNKS_PATH):
+        return
+
+    limit = time.time() - CHUNK_EXPIRATION
+    for name in os.listdir(CHUNKS_PATH):
+        path = os.path.join(CHUNKS_PATH, name)
+        if os.path.isdir(path) and os.path.getmtime(path) < limit:
+            shutil.rmtree(path, ignore_errors=True)
+
+
+@app.route('/upload/chunked', method='GET')
+def chunk_upload_status():
+    last, complete, digest = chunk_status(chunk_dir(request.query.get('upload_id')))
+    response.content_type = 'application/json'
+    return json.dumps({'last': last, 'complete': complete, 'hash': digest})
+
+
+@app.route('/upload/chunked', method='POST')
+def do_chunk_upload():
+    path = chunk_dir(request.forms.get('upload_id'))
+    chunk = int(request.forms.get('chunk'))
+    upload = request.files.get('measurements')
+    data = upload.file.read()
+
+    failure = random.random() < FAILURE_RATE
+    if failure and random.random() < 0.5:
+        bottle.abort(500, 'Injected failure')
+
+    if hashlib.sha256(data).hexdigest() != request.forms.get('hash'):
+        bottle.abort(400, 'Hash mismatch')
+
+    last, complete, _ = chunk_status(path)
+    if complete:
+        # Acknowledge chunks sent again after the upload was joined
+        return "Chunk %d already saved." % chunk
+    if chunk > last + 1:
+        bottle.abort(409, 'Expected chunk %d' % (last + 1))
+
+    if not os.path.exists(path):
+        remove_expired_chunks()
+        os.makedirs(path)
+
+    ext = '.adkb.gz' if upload.filename.endswith('.adkb.gz') else '.json.gz'
+    with open(os.path.join(path, '%06d%s' % (chunk, ext)), 'wb') as f:
+        f.write(data)
+    os.utime(path, None)
+
+    if request.forms.get('last') == '1':
+        # Join all chunks into a single JSON file
+        names = chunk_files(path)
+        objects = []
+        for name in names:
+            objects.extend(decode_chunk(os.path.join(path, name)))
+
+        file_path = os.path.join('./data', data_filename())
+        with gzip.open(file_path, 'wt') as f:
+            json.dump(objects, f)
+        with open(os.path.join(path, 'complete'), 'w') as f:
+            json.dump({'last': chunk, 'hash': upload_hash(path, names)}, f)
+
+        # Only the marker is kept, until the upload expires
+        for name in names:
+            os.remove(os.path.join(path, name))
+
+    if failure:
+        bottle.abort(500, 'Injected failure after storing chunk')
+
+    return "Chunk %d successfully saved." % chunk
+
+
 @app.route('/upload', method='POST')
 def do_upload():
     upload = request.files.get('measurements')
@@ -23,18 +171,20 @@ def do_upload():
     if ext not in ('.gz'):
         return "File extension not allowed."
 
-    filename = '%s.%s.%s.%s.%s.gz' % (request.forms.get('data_type'), 
-        request.forms.get('transport'), 
-        request.forms.get('journey_id'), 
-        datetime.now().strftime('%Y-%m-%d.%H%M%S'), 
-        request.forms.get('device_id'))
+    filename = data_filename()
 
     save_path = "./data/"
     if not os.path.exists(save_path):
         os.makedirs(save_path)
 
     file_path = "{path}/{file}".format(path=save_path, file=filename)
-    upload.save(file_path)
+    if name.endswith('.adkb'):
+        # Binary uploads are decoded and stored as JSON
+        objects = adkb.decode(gzip.GzipFile(fileobj=upload.file, mode='rb'))
+        with gzip.open(file_path, 'wt') as f:
+            json.dump(objects, f)
+    else:
+        upload.save(file_path)
     return "File successfully saved to '{0}'.".format(save_path)
 
 ###########################################
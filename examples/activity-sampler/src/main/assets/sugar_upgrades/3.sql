@@ -0,0 +1,2 @@
+ALTER TABLE SAMPLE ADD COLUMN MIN FLOAT;
+ALTER TABLE SAMPLE ADD COLUMN MAX FLOAT;
@@ -50,12 +50,14 @@ public class SamplerService extends PersistenceService implements AccelerometerL
 
 	@Override
 	public void onDestroy() {
-		super.onDestroy();
 		running = false;
 		
 		accelerometer.unbind();
 		location.unbind();
 		journey = null;
+		
+		/* Store pending observations */
+		super.onDestroy();
 	}
 
 	@Override
@@ -95,13 +97,13 @@ public class SamplerService extends PersistenceService implements AccelerometerL
 
 	@Override
 	public void onAccelerometerData(AccelerometerObservation data) {
-		save(data);
+		saveDeferred(data);
 	}
 
 
 	@Override
 	public void onLocationChanged(LocationObservation locationState) {
-		save(locationState);
+		saveDeferred(locationState);
 	}
 
 
@@ -17,15 +17,14 @@ import cl.niclabs.adkmobile.monitor.data.LocationObservation;
 import cl.niclabs.adkmobile.monitor.listeners.ConnectivityListener;
 import cl.niclabs.adkmobile.monitor.proxies.ConnectivityStatus;
 import cl.niclabs.adkmobile.monitor.proxies.ConnectivityStatusListener;
-import cl.niclabs.adkmobile.net.HttpResponse;
-import cl.niclabs.adkmobile.net.HttpUtils;
+import cl.niclabs.adkmobile.net.ChunkedUpload;
 import cl.niclabs.adkmobile.utils.Scheduler;
 
 public class SynchronizationService extends Service implements ConnectivityStatusListener {
 	private Controller<ConnectivityListener> connectivity;
 	private ConnectivityStatus connectivityProxy;
 	
-	protected final String URL = "http://dev.becity.cl:8080/upload";
+	protected final String URL = "http://dev.becity.cl:8080/upload/chunked";
 	
 	private static boolean running = false;
 	
@@ -116,11 +115,13 @@ public class SynchronizationService extends Service implements ConnectivityStatu
 					if (journey.isSyncedLocation())
 						return;
 					
+					/* A stable order, so a resumed upload skips the acknowledged rows */
 					Iterator locationEvents = LocationObservation.findAsIterator(
 							LocationObservation.class,
 							"timestamp >= ? and timestamp <= ?",
-							String.valueOf(journey.getStartTime()),
-							String.valueOf(journey.getEndTime()));
+							new String[] { String.valueOf(journey.getStartTime()),
+									String.valueOf(journey.getEndTime()) },
+							null, "timestamp, id", null);
 
 					HashMap<String, String> locationEventsMap = new HashMap<String, String>();
 					locationEventsMap.put("device_id", deviceId);
@@ -129,10 +130,9 @@ public class SynchronizationService extends Service implements ConnectivityStatu
 					locationEventsMap.put("transport", journey.getTransport()
 							.toString());
 
-					HttpResponse response = HttpUtils.sendList(locationEvents,
-							URL, locationEventsMap);
-
-					if (response.getCode() >= 200 && response.getCode() < 300) {
+					/* Journey ids restart after a data clear, the start time does not */
+					String uploadId = "loc-" + deviceId + "-" + journey.getStartTime();
+					if (new ChunkedUpload(URL, uploadId, locationEventsMap).send(locationEvents)) {
 						LocationObservation.deleteAll(
 								LocationObservation.class,
 								"timestamp >= ? AND timestamp <= ?",
@@ -151,11 +151,13 @@ public class SynchronizationService extends Service implements ConnectivityStatu
 					if (journey.isSyncedAcceleration()) 
 						return;
 					
+					/* A stable order, so a resumed upload skips the acknowledged rows */
 					Iterator accelerometerEvents = AccelerometerObservation
 							.findAsIterator(AccelerometerObservation.class,
 									"timestamp >= ? AND timestamp <= ?",
-									String.valueOf(journey.getStartTime()),
-									String.valueOf(journey.getEndTime()));
+									new String[] { String.valueOf(journey.getStartTime()),
+											String.valueOf(journey.getEndTime()) },
+									null, "timestamp, id", null);
 
 					HashMap<String, String> accelEventsMap = new HashMap<String, String>();
 					accelEventsMap.put("device_id", deviceId);
@@ -164,10 +166,9 @@ public class SynchronizationService extends Service implements ConnectivityStatu
 					accelEventsMap.put("transport", journey.getTransport()
 							.toString());
 
-					HttpResponse response = HttpUtils.sendList(accelerometerEvents, URL,
-							accelEventsMap);
-
-					if (response.getCode() >= 200 && response.getCode() < 300) {
+					/* Journey ids restart after a data clear, the start time does not */
+					String uploadId = "accel-" + deviceId + "-" + journey.getStartTime();
+					if (new ChunkedUpload(URL, uploadId, accelEventsMap).send(accelerometerEvents)) {
 
 						AccelerometerObservation.deleteAll(
 								AccelerometerObservation.class,
@@ -0,0 +1,672 @@
+package cl.niclabs.adkmobile.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import cl.niclabs.android.data.Serializable;
+import cl.niclabs.android.data.Serializer;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * Serializes lists of objects into a compact, schema-tagged, binary columnar format.
+ *
+ * The stream starts with the magic bytes "ADKB" followed by the format version,
+ * and is composed by a sequence of records, each starting with a tag byte
+ *
+ * <pre>
+ * SCHEMA (1): varint schema id, string class name (Class.getName()), varint field count,
+ *             and for each field: string name, byte type
+ * BLOCK  (2): varint schema id, varint row count, and one column per field
+ * END    (0)
+ * </pre>
+ *
+ * A schema is written the first time a class is found in the stream. Consecutive
+ * objects of the same class are grouped in blocks of up to BLOCK_SIZE rows, and
+ * the values of each block are written column by column
+ *
+ * <ul>
+ * <li>Nullable columns (boxed or object fields) start with a bitmap of ceil(rows/8)
+ * bytes, where bit i (LSB first) is set if row i has a value. Only non-null values
+ * are written</li>
+ * <li>BOOLEAN: one byte per value</li>
+ * <li>INT: zig-zag varint</li>
+ * <li>LONG: zig-zag varint of the difference with the previous value of the column
+ * in the block (the first value is relative to 0), so timestamps usually take 1-2 bytes</li>
+ * <li>FLOAT/DOUBLE: IEEE 754 big-endian, 4/8 bytes</li>
+ * <li>STRING: dictionary encoded (strings and enum names). Each value is a varint
+ * index in the column dictionary, if the index is equal to the size of the dictionary
+ * it is followed by the new string, which is added to the dictionary. Dictionaries
+ * are kept for the whole stream</li>
+ * <li>JSON: any other value (e.g. nested samples and lists) as a JSON string</li>
+ * </ul>
+ *
+ * Strings are written as varint length followed by the UTF-8 bytes. Types with the
+ * NULLABLE bit set have a null bitmap.
+ *
+ * The format is self-describing, readStream() decodes the objects of a class from
+ * a stream (see also examples/activity-sampler/server/adkb.py). Fields are matched
+ * by name, so fields missing in the stream keep their default values and columns
+ * without a matching field are ignored.
+ */
+public class BinarySerializer implements Serializer {
+	public static final byte[] MAGIC = new byte[] {'A', 'D', 'K', 'B'};
+	public static final int VERSION = 1;
+
+	public static final int TAG_END = 0;
+	public static final int TAG_SCHEMA = 1;
+	public static final int TAG_BLOCK = 2;
+
+	public static final int TYPE_BOOLEAN = 0;
+	public static final int TYPE_INT = 1;
+	public static final int TYPE_LONG = 2;
+	public static final int TYPE_FLOAT = 3;
+	public static final int TYPE_DOUBLE = 4;
+	public static final int TYPE_STRING = 5;
+	public static final int TYPE_JSON = 6;
+	public static final int NULLABLE = 0x80;
+
+	/**
+	 * Maximum number of rows in a block
+	 */
+	public static int BLOCK_SIZE = 1024;
+
+	/**
+	 * Maximum number of rows of a block accepted on reading
+	 */
+	private static final int BLOCK_SIZE_LIMIT = 1 << 20;
+
+	/**
+	 * Maximum number of columns of a schema accepted on reading
+	 */
+	private static final int COLUMN_LIMIT = 1 << 12;
+
+	/**
+	 * Maximum length in bytes of a string accepted on reading
+	 */
+	private static final int STRING_LENGTH_LIMIT = 1 << 24;
+
+	/**
+	 * Size of the stream buffers
+	 */
+	public static int BUFFER_SIZE = 8192;
+
+	/**
+	 * Used for JSON columns
+	 */
+	private static final Gson gson = new Gson();
+
+	/**
+	 * Read the first object of the class in the stream
+	 *
+	 * @return the object or null if the stream has no objects of the class
+	 */
+	@Override
+	public <E extends Serializable<?>> E deserialize(Class<E> cls,
+			InputStream in) throws IOException {
+		List<E> list = readStream(cls, in, 1);
+		return list.isEmpty() ? null : list.get(0);
+	}
+
+	/**
+	 * Read the first object of the class from a stream stored as a string, with
+	 * one character per byte (ISO-8859-1)
+	 *
+	 * @return the object or null if the stream has no objects of the class
+	 */
+	@Override
+	public <E extends Serializable<?>> E deserialize(Class<E> cls, String input)
+			throws IOException {
+		return deserialize(cls, new ByteArrayInputStream(input.getBytes("ISO-8859-1")));
+	}
+
+	@Override
+	public void serialize(OutputStream out, Serializable<?> object)
+			throws IOException {
+		List<Serializable<?>> list = new ArrayList<Serializable<?>>(1);
+		list.add(object);
+		serialize(out, list.iterator());
+	}
+
+	@Override
+	public void serialize(OutputStream out, List<Serializable<?>> list)
+			throws IOException {
+		serialize(out, list.iterator());
+	}
+
+	@Override
+	public void serialize(OutputStream out, Iterator<Serializable<?>> iterator)
+			throws IOException {
+		writeStream(out, iterator);
+	}
+
+	/**
+	 * Write the elements of the iterator to the output stream. At most BLOCK_SIZE
+	 * elements are kept in memory
+	 *
+	 * @param out
+	 * @param iterator
+	 * @throws IOException
+	 */
+	public void writeStream(OutputStream out, Iterator<? extends Serializable<?>> iterator)
+			throws IOException {
+		new StreamWriter(out).write(iterator);
+	}
+
+	/**
+	 * Read all the objects of the class in the stream. Objects of other classes are
+	 * skipped
+	 *
+	 * @param cls class of the objects, it must have a no-argument constructor
+	 * @param in
+	 * @return
+	 * @throws IOException if the stream is not valid
+	 */
+	public <E extends Serializable<?>> List<E> readStream(Class<E> cls, InputStream in)
+			throws IOException {
+		return readStream(cls, in, Integer.MAX_VALUE);
+	}
+
+	private <E extends Serializable<?>> List<E> readStream(Class<E> cls, InputStream in, int limit)
+			throws IOException {
+		List<E> result = new ArrayList<E>();
+		new StreamReader(in).read(cls, result, limit);
+		return result;
+	}
+
+	/**
+	 * Determine the column type of a field
+	 */
+	static int typeOf(Class<?> type) {
+		if (type == boolean.class) return TYPE_BOOLEAN;
+		if (type == byte.class || type == short.class || type == int.class) return TYPE_INT;
+		if (type == long.class) return TYPE_LONG;
+		if (type == float.class) return TYPE_FLOAT;
+		if (type == double.class) return TYPE_DOUBLE;
+
+		if (type == Boolean.class) return TYPE_BOOLEAN | NULLABLE;
+		if (type == Byte.class || type == Short.class || type == Integer.class) return TYPE_INT | NULLABLE;
+		if (type == Long.class) return TYPE_LONG | NULLABLE;
+		if (type == Float.class) return TYPE_FLOAT | NULLABLE;
+		if (type == Double.class) return TYPE_DOUBLE | NULLABLE;
+		if (type == String.class || type.isEnum()) return TYPE_STRING | NULLABLE;
+
+		return TYPE_JSON | NULLABLE;
+	}
+
+	/**
+	 * Columns of a class in the stream
+	 */
+	private static class Schema {
+		final int id;
+		final Field[] fields;
+		final int[] types;
+
+		/**
+		 * String dictionary per column (only for string columns)
+		 */
+		final List<Map<String, Integer>> dictionaries;
+
+		Schema(int id, List<Field> fields) {
+			this.id = id;
+			this.fields = fields.toArray(new Field[fields.size()]);
+			this.types = new int[this.fields.length];
+			this.dictionaries = new ArrayList<Map<String, Integer>>(this.fields.length);
+
+			for (int i = 0; i < this.fields.length; i++) {
+				if (!this.fields[i].isAccessible()) {
+					this.fields[i].setAccessible(true);
+				}
+				types[i] = typeOf(this.fields[i].getType());
+				dictionaries.add((types[i] & ~NULLABLE) == TYPE_STRING ? new HashMap<String, Integer>() : null);
+			}
+		}
+	}
+
+	/**
+	 * Writer state for a single stream
+	 */
+	private static class StreamWriter {
+		private final DataOutputStream out;
+		private final Map<Class<?>, Schema> schemas = new HashMap<Class<?>, Schema>();
+		private final List<Serializable<?>> block = new ArrayList<Serializable<?>>();
+		private final JsonStreamSerializer json = new JsonStreamSerializer();
+		private Schema schema;
+
+		StreamWriter(OutputStream out) {
+			this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+		}
+
+		void write(Iterator<? extends Serializable<?>> iterator) throws IOException {
+			out.write(MAGIC);
+			out.writeByte(VERSION);
+
+			while (iterator.hasNext()) {
+				Serializable<?> object = iterator.next();
+				if (object == null) {
+					continue;
+				}
+
+				/* Also required for objects that load their fields lazily */
+				List<Field> fields = object.getSerializableFields();
+
+				/* Start a new block on class change or when the block is full */
+				if (schema == null || schemas.get(object.getClass()) != schema || block.size() >= BLOCK_SIZE) {
+					writeBlock();
+					schema = getSchema(object.getClass(), fields);
+				}
+				block.add(object);
+			}
+			writeBlock();
+
+			out.writeByte(TAG_END);
+			out.flush();
+		}
+
+		private Schema getSchema(Class<?> cls, List<Field> fields) throws IOException {
+			Schema schema = schemas.get(cls);
+			if (schema == null) {
+				schema = new Schema(schemas.size(), fields);
+				schemas.put(cls, schema);
+
+				out.writeByte(TAG_SCHEMA);
+				writeVarint(schema.id);
+				writeString(cls.getName());
+				writeVarint(schema.fields.length);
+				for (int i = 0; i < schema.fields.length; i++) {
+					writeString(schema.fields[i].getName());
+					out.writeByte(schema.types[i]);
+				}
+			}
+			return schema;
+		}
+
+		private void writeBlock() throws IOException {
+			if (block.isEmpty()) {
+				return;
+			}
+
+			int rows = block.size();
+			out.writeByte(TAG_BLOCK);
+			writeVarint(schema.id);
+			writeVarint(rows);
+
+			Object[] values = new Object[rows];
+			for (int column = 0; column < schema.fields.length; column++) {
+				Field field = schema.fields[column];
+				int type = schema.types[column];
+
+				for (int row = 0; row < rows; row++) {
+					try {
+						values[row] = field.get(block.get(row));
+					} catch (IllegalAccessException e) {
+						throw new IOException("Cannot read field " + field.getName());
+					}
+				}
+
+				if ((type & NULLABLE) != 0) {
+					writeNullBitmap(values, rows);
+				}
+
+				long previous = 0;
+				for (int row = 0; row < rows; row++) {
+					Object value = values[row];
+					if (value == null) {
+						continue;
+					}
+
+					switch (type & ~NULLABLE) {
+					case TYPE_BOOLEAN:
+						out.writeByte(((Boolean) value) ? 1 : 0);
+						break;
+					case TYPE_INT:
+						writeVarint(zigzag(((Number) value).longValue()));
+						break;
+					case TYPE_LONG:
+						long current = ((Number) value).longValue();
+						writeVarint(zigzag(current - previous));
+						previous = current;
+						break;
+					case TYPE_FLOAT:
+						out.writeFloat(((Number) value).floatValue());
+						break;
+					case TYPE_DOUBLE:
+						out.writeDouble(((Number) value).doubleValue());
+						break;
+					case TYPE_STRING:
+						String string = value instanceof Enum ? ((Enum<?>) value).name() : value.toString();
+						writeDictionary(schema.dictionaries.get(column), string);
+						break;
+					default:
+						writeString(json.toJson(value));
+					}
+				}
+			}
+
+			block.clear();
+		}
+
+		private void writeNullBitmap(Object[] values, int rows) throws IOException {
+			for (int i = 0; i < rows; i += 8) {
+				int bits = 0;
+				for (int j = 0; j < 8 && i + j < rows; j++) {
+					if (values[i + j] != null) {
+						bits |= 1 << j;
+					}
+				}
+				out.writeByte(bits);
+			}
+		}
+
+		private void writeDictionary(Map<String, Integer> dictionary, String value) throws IOException {
+			Integer index = dictionary.get(value);
+			if (index != null) {
+				writeVarint(index);
+				return;
+			}
+
+			index = dictionary.size();
+			dictionary.put(value, index);
+			writeVarint(index);
+			writeString(value);
+		}
+
+		private void writeString(String value) throws IOException {
+			byte[] bytes = value.getBytes("UTF-8");
+			writeVarint(bytes.length);
+			out.write(bytes);
+		}
+
+		private void writeVarint(long value) throws IOException {
+			while ((value & ~0x7FL) != 0) {
+				out.writeByte((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			out.writeByte((int) value);
+		}
+
+		private static long zigzag(long value) {
+			return (value << 1) ^ (value >> 63);
+		}
+	}
+
+	/**
+	 * Columns of a class read from a stream
+	 */
+	private static class StreamSchema {
+		final String className;
+		final String[] names;
+		final int[] types;
+
+		/**
+		 * String dictionary per column (only for string columns)
+		 */
+		final List<List<String>> dictionaries;
+
+		/**
+		 * Field for each column in the class being read, null if the column
+		 * does not belong to that class or has no matching field
+		 */
+		Field[] targets;
+
+		StreamSchema(String className, int columns) {
+			this.className = className;
+			this.names = new String[columns];
+			this.types = new int[columns];
+			this.dictionaries = new ArrayList<List<String>>(columns);
+		}
+	}
+
+	/**
+	 * Reader state for a single stream
+	 */
+	private static class StreamReader {
+		private final DataInputStream in;
+		private final Map<Integer, StreamSchema> schemas = new HashMap<Integer, StreamSchema>();
+
+		StreamReader(InputStream in) {
+			this.in = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+		}
+
+		<E> void read(Class<E> cls, List<E> result, int limit) throws IOException {
+			byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new IOException("Not a binary stream");
+			}
+
+			int version = in.readUnsignedByte();
+			if (version != VERSION) {
+				throw new IOException("Unsupported version " + version);
+			}
+
+			while (result.size() < limit) {
+				int tag = in.readUnsignedByte();
+				switch (tag) {
+				case TAG_END:
+					return;
+				case TAG_SCHEMA:
+					readSchema(cls);
+					break;
+				case TAG_BLOCK:
+					readBlock(cls, result);
+					break;
+				default:
+					throw new IOException("Invalid tag " + tag);
+				}
+			}
+		}
+
+		private void readSchema(Class<?> cls) throws IOException {
+			int id = (int) readVarint();
+			String className = readString();
+			long columns = readVarint();
+			if (columns < 0 || columns > COLUMN_LIMIT) {
+				throw new IOException("Invalid column count " + columns + " of " + className);
+			}
+			StreamSchema schema = new StreamSchema(className, (int) columns);
+
+			Map<String, Field> fields = new HashMap<String, Field>();
+			if (schema.className.equals(cls.getName())) {
+				for (FieldDescriptor descriptor : FieldDescriptor.forClass(cls)) {
+					fields.put(descriptor.getName(), descriptor.getField());
+				}
+				schema.targets = new Field[schema.names.length];
+			}
+
+			for (int i = 0; i < schema.names.length; i++) {
+				schema.names[i] = readString();
+				schema.types[i] = in.readUnsignedByte();
+				schema.dictionaries.add((schema.types[i] & ~NULLABLE) == TYPE_STRING ? new ArrayList<String>() : null);
+				if (schema.targets != null) {
+					schema.targets[i] = fields.get(schema.names[i]);
+				}
+			}
+			schemas.put(id, schema);
+		}
+
+		private <E> void readBlock(Class<E> cls, List<E> result) throws IOException {
+			StreamSchema schema = schemas.get((int) readVarint());
+			if (schema == null) {
+				throw new IOException("Block without schema");
+			}
+
+			long size = readVarint();
+			if (size < 0 || size > BLOCK_SIZE_LIMIT) {
+				throw new IOException("Invalid block size " + size);
+			}
+			int rows = (int) size;
+
+			/* Create the objects if the block belongs to the class */
+			Object[] objects = null;
+			if (schema.targets != null) {
+				objects = new Object[rows];
+				for (int row = 0; row < rows; row++) {
+					objects[row] = newInstance(cls);
+				}
+			}
+
+			boolean[] present = new boolean[rows];
+			for (int column = 0; column < schema.names.length; column++) {
+				int type = schema.types[column];
+				readNullBitmap(present, rows, (type & NULLABLE) != 0);
+
+				Field field = objects != null ? schema.targets[column] : null;
+				long previous = 0;
+				for (int row = 0; row < rows; row++) {
+					if (!present[row]) {
+						continue;
+					}
+
+					Object value;
+					switch (type & ~NULLABLE) {
+					case TYPE_BOOLEAN:
+						value = in.readByte() != 0;
+						break;
+					case TYPE_INT:
+						value = unzigzag(readVarint());
+						break;
+					case TYPE_LONG:
+						previous += unzigzag(readVarint());
+						value = previous;
+						break;
+					case TYPE_FLOAT:
+						value = in.readFloat();
+						break;
+					case TYPE_DOUBLE:
+						value = in.readDouble();
+						break;
+					case TYPE_STRING:
+						value = readDictionary(schema.dictionaries.get(column));
+						break;
+					case TYPE_JSON:
+						value = readString();
+						break;
+					default:
+						throw new IOException("Invalid type " + type + " of column " + schema.names[column]);
+					}
+
+					if (field != null) {
+						set(field, objects[row], value, type & ~NULLABLE);
+					}
+				}
+			}
+
+			if (objects != null) {
+				for (Object object : objects) {
+					result.add(cls.cast(object));
+				}
+			}
+		}
+
+		private void readNullBitmap(boolean[] present, int rows, boolean nullable) throws IOException {
+			if (!nullable) {
+				Arrays.fill(present, true);
+				return;
+			}
+
+			for (int i = 0; i < rows; i += 8) {
+				int bits = in.readUnsignedByte();
+				for (int j = 0; j < 8 && i + j < rows; j++) {
+					present[i + j] = (bits & (1 << j)) != 0;
+				}
+			}
+		}
+
+		private String readDictionary(List<String> dictionary) throws IOException {
+			int index = (int) readVarint();
+			if (index < dictionary.size()) {
+				return dictionary.get(index);
+			}
+			if (index > dictionary.size()) {
+				throw new IOException("Invalid dictionary index " + index);
+			}
+
+			String value = readString();
+			dictionary.add(value);
+			return value;
+		}
+
+		private String readString() throws IOException {
+			long length = readVarint();
+			if (length < 0 || length > STRING_LENGTH_LIMIT) {
+				throw new IOException("Invalid string length " + length);
+			}
+
+			byte[] bytes = new byte[(int) length];
+			in.readFully(bytes);
+			return new String(bytes, "UTF-8");
+		}
+
+		private long readVarint() throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				int b = in.readUnsignedByte();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("Invalid varint");
+		}
+
+		private static long unzigzag(long value) {
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		private static Object newInstance(Class<?> cls) throws IOException {
+			try {
+				return cls.newInstance();
+			} catch (InstantiationException e) {
+				throw new IOException("Cannot create " + cls.getName());
+			} catch (IllegalAccessException e) {
+				throw new IOException("Cannot create " + cls.getName());
+			}
+		}
+
+		/**
+		 * Set the field with the value converted to its type. Values that cannot be
+		 * converted (e.g. if the field changed type) are ignored
+		 */
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private static void set(Field field, Object object, Object value, int type) throws IOException {
+			Class<?> fieldType = field.getType();
+			try {
+				if (type == TYPE_INT || type == TYPE_LONG) {
+					long number = (Long) value;
+					if (fieldType == byte.class || fieldType == Byte.class) value = (byte) number;
+					else if (fieldType == short.class || fieldType == Short.class) value = (short) number;
+					else if (fieldType == int.class || fieldType == Integer.class) value = (int) number;
+				}
+				else if (type == TYPE_STRING && fieldType.isEnum()) {
+					value = Enum.valueOf((Class<? extends Enum>) fieldType, (String) value);
+				}
+				else if (type == TYPE_JSON) {
+					value = gson.fromJson((String) value, field.getGenericType());
+				}
+
+				field.set(object, value);
+			} catch (IllegalArgumentException e) {
+				/* Incompatible value or unknown constant */
+			} catch (JsonParseException e) {
+				/* Incompatible value */
+			} catch (IllegalAccessException e) {
+				throw new IOException("Cannot set field " + field.getName());
+			}
+		}
+	}
+}
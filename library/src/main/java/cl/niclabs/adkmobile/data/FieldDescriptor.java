@@ -0,0 +1,140 @@
+package cl.niclabs.adkmobile.data;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import cl.niclabs.android.data.Ignore;
+import cl.niclabs.android.utils.ReflectionUtils;
+
+/**
+ * Describes a serializable field of a class.
+ *
+ * Descriptors are computed once per class and shared across all instances
+ * and threads, so the class hierarchy and the field annotations are only inspected
+ * the first time a class is serialized. The field is made accessible on creation of
+ * the descriptor, therefore get() can be used directly for reading values.
+ *
+ * A field is serializable if it is not static, transient or annotated with
+ * any of the Ignore or DoNotSerialize annotations.
+ */
+public final class FieldDescriptor {
+	/**
+	 * Descriptors by class
+	 */
+	private static final ConcurrentMap<Class<?>, List<FieldDescriptor>> descriptors = new ConcurrentHashMap<Class<?>, List<FieldDescriptor>>();
+
+	private final Field field;
+	private final String name;
+	private final Class<?> type;
+	private final boolean id;
+
+	private FieldDescriptor(Field field) {
+		field.setAccessible(true);
+
+		this.field = field;
+		this.name = field.getName();
+		this.type = field.getType();
+		this.id = name.equals("id");
+	}
+
+	/**
+	 * Read the value of the field in the given object
+	 *
+	 * @param object
+	 * @return
+	 */
+	public Object get(Object object) {
+		try {
+			return field.get(object);
+		} catch (IllegalAccessException e) {
+			/* Should not happen since the field is accessible */
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the described field
+	 */
+	public Field getField() {
+		return field;
+	}
+
+	/**
+	 * @return name of the field
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return declared type of the field
+	 */
+	public Class<?> getType() {
+		return type;
+	}
+
+	/**
+	 * @return true if this is the database identifier of the object
+	 */
+	public boolean isId() {
+		return id;
+	}
+
+	/**
+	 * Get the (cached) list of descriptors for the serializable fields of the class,
+	 * including the database identifier if present.
+	 *
+	 * @param cls
+	 * @return an unmodifiable list of descriptors
+	 */
+	public static List<FieldDescriptor> forClass(Class<?> cls) {
+		List<FieldDescriptor> list = descriptors.get(cls);
+		if (list == null) {
+			List<Field> typeFields = new ArrayList<Field>();
+			ReflectionUtils.getAllFields(typeFields, cls);
+
+			List<FieldDescriptor> fields = new ArrayList<FieldDescriptor>();
+			for (Field field : typeFields) {
+				if (!field.isAnnotationPresent(com.orm.dsl.Ignore.class)
+						&& !field.isAnnotationPresent(Ignore.class)
+						&& !field.isAnnotationPresent(cl.niclabs.android.data.DoNotSerialize.class)
+						&& !field.isAnnotationPresent(DoNotSerialize.class)
+						&& !Modifier.isStatic(field.getModifiers())
+						&& !Modifier.isTransient(field.getModifiers())) {
+					fields.add(new FieldDescriptor(field));
+				}
+			}
+
+			/* If another thread computed the list first, use that one */
+			List<FieldDescriptor> previous = descriptors.putIfAbsent(cls, Collections.unmodifiableList(fields));
+			list = previous != null ? previous : descriptors.get(cls);
+		}
+		return list;
+	}
+
+	/**
+	 * Get the list of serializable fields of the class using the cached descriptors.
+	 *
+	 * A new list is returned on each call, so callers are free to modify it.
+	 *
+	 * @param cls
+	 * @param includeId include the database identifier in the list
+	 * @return
+	 */
+	public static List<Field> getSerializableFields(Class<?> cls, boolean includeId) {
+		List<FieldDescriptor> list = forClass(cls);
+
+		List<Field> fields = new ArrayList<Field>(list.size());
+		for (FieldDescriptor descriptor : list) {
+			if (includeId || !descriptor.isId()) {
+				fields.add(descriptor.getField());
+			}
+		}
+		return fields;
+	}
+}
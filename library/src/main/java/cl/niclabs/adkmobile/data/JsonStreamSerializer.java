@@ -0,0 +1,192 @@
+package cl.niclabs.adkmobile.data;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import cl.niclabs.android.data.Serializable;
+import cl.niclabs.android.data.Serializer;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Streaming JSON serializer.
+ *
+ * Lists and iterators are written as a single JSON array through one buffered
+ * JsonWriter, reading one element at a time from the iterator. Memory usage
+ * is therefore bounded by the size of a single element regardless of the length
+ * of the list, which allows to serialize database cursors (e.g. those returned by
+ * findAsIterator()) without loading them into memory.
+ *
+ * Objects are written using the fields returned by getSerializableFields(), nested
+ * serializable objects and collections are written recursively. Deserialization is
+ * delegated to {@link cl.niclabs.android.data.JsonSerializer}.
+ *
+ * Each object is written as {@link cl.niclabs.android.data.JsonSerializer} does, i.e. as
+ * a default Gson with the serializable fields: fields in the order of getSerializableFields(),
+ * null fields omitted, null elements of collections written, HTML characters escaped and
+ * values other than serializables, collections, strings, booleans and numbers written by
+ * Gson. The only difference is that lists are written as one JSON array instead of
+ * consecutive objects.
+ *
+ * The output stream is flushed but not closed after serialization.
+ */
+public class JsonStreamSerializer implements Serializer {
+	/**
+	 * Size of the writer buffer
+	 */
+	public static int BUFFER_SIZE = 8192;
+
+	/**
+	 * Used for values that are not serializable, collections or primitives
+	 */
+	private static final Gson gson = new Gson();
+
+	@Override
+	public <E extends Serializable<?>> E deserialize(Class<E> cls,
+			InputStream in) throws IOException {
+		return new cl.niclabs.android.data.JsonSerializer().deserialize(cls, in);
+	}
+
+	@Override
+	public <E extends Serializable<?>> E deserialize(Class<E> cls, String input)
+			throws IOException {
+		return new cl.niclabs.android.data.JsonSerializer().deserialize(cls, input);
+	}
+
+	@Override
+	public void serialize(OutputStream out, Serializable<?> object)
+			throws IOException {
+		JsonWriter writer = createWriter(out);
+		writeObject(writer, object);
+		writer.flush();
+	}
+
+	@Override
+	public void serialize(OutputStream out, List<Serializable<?>> list)
+			throws IOException {
+		serialize(out, list.iterator());
+	}
+
+	@Override
+	public void serialize(OutputStream out, Iterator<Serializable<?>> iterator)
+			throws IOException {
+		writeArray(out, iterator);
+	}
+
+	/**
+	 * Write the elements of the iterator as a JSON array
+	 *
+	 * @param out
+	 * @param iterator
+	 * @throws IOException
+	 */
+	public void writeArray(OutputStream out, Iterator<? extends Serializable<?>> iterator)
+			throws IOException {
+		JsonWriter writer = createWriter(out);
+		writer.beginArray();
+		while (iterator.hasNext()) {
+			writeObject(writer, iterator.next());
+		}
+		writer.endArray();
+		writer.flush();
+	}
+
+	private JsonWriter createWriter(OutputStream out) throws IOException {
+		JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), BUFFER_SIZE));
+
+		/* Same escaping as Gson */
+		writer.setHtmlSafe(true);
+		return writer;
+	}
+
+	/**
+	 * Convert a single value (serializable, collection or other object) to JSON
+	 *
+	 * @param value
+	 * @return
+	 * @throws IOException
+	 */
+	String toJson(Object value) throws IOException {
+		StringWriter out = new StringWriter();
+		JsonWriter writer = new JsonWriter(out);
+		writer.setHtmlSafe(true);
+		if (value == null) {
+			writer.nullValue();
+		}
+		else {
+			writeValue(writer, value);
+		}
+		writer.flush();
+		return out.toString();
+	}
+
+	/**
+	 * Write a serializable object using its serializable fields
+	 */
+	private void writeObject(JsonWriter writer, Serializable<?> object) throws IOException {
+		if (object == null) {
+			writer.nullValue();
+			return;
+		}
+
+		writer.beginObject();
+		for (Field field : object.getSerializableFields()) {
+			if (!field.isAccessible()) {
+				field.setAccessible(true);
+			}
+
+			Object value;
+			try {
+				value = field.get(object);
+			} catch (IllegalAccessException e) {
+				throw new IOException("Cannot read field " + field.getName());
+			}
+
+			/* Null values are omitted */
+			if (value != null) {
+				writer.name(field.getName());
+				writeValue(writer, value);
+			}
+		}
+		writer.endObject();
+	}
+
+	private void writeValue(JsonWriter writer, Object value) throws IOException {
+		if (value instanceof Serializable) {
+			writeObject(writer, (Serializable<?>) value);
+		}
+		else if (value instanceof Collection) {
+			writer.beginArray();
+			for (Object element : (Collection<?>) value) {
+				if (element == null) {
+					writer.nullValue();
+				}
+				else {
+					writeValue(writer, element);
+				}
+			}
+			writer.endArray();
+		}
+		else if (value instanceof String) {
+			writer.value((String) value);
+		}
+		else if (value instanceof Boolean) {
+			writer.value(((Boolean) value).booleanValue());
+		}
+		else if (value instanceof Number) {
+			writer.value((Number) value);
+		}
+		else {
+			gson.toJson(value, value.getClass(), writer);
+		}
+	}
+}
@@ -1,13 +1,8 @@
 package cl.niclabs.adkmobile.data;
 
 import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-import java.util.ArrayList;
 import java.util.List;
 
-import cl.niclabs.android.data.Ignore;
-import cl.niclabs.android.utils.ReflectionUtils;
-
 
 /**
  * Abstraction for all persistent objects.
@@ -20,28 +15,13 @@ import cl.niclabs.android.utils.ReflectionUtils;
  */
 public class Persistent<E extends Persistent<E>> extends cl.niclabs.android.data.Persistent<E> implements Serializable<E> {
 	/**
-	 * Return the list of fields of the object for serialization
+	 * Return the list of fields of the object for serialization. Field metadata
+	 * is cached per class (see FieldDescriptor)
 	 * 
 	 * @return
 	 */
 	@Override
 	public List<Field> getSerializableFields() {
-		List<Field> typeFields = new ArrayList<Field>();
-
-		ReflectionUtils.getAllFields(typeFields, getClass());
-
-		List<Field> toStore = new ArrayList<Field>();
-		for (Field field : typeFields) {
-			if ((!field.getName().equals("id")
-					&& !field.isAnnotationPresent(com.orm.dsl.Ignore.class)
-					&& !field.isAnnotationPresent(Ignore.class)
-					&& !field.isAnnotationPresent(cl.niclabs.android.data.DoNotSerialize.class)
-					&& !field.isAnnotationPresent(DoNotSerialize.class)
-					&& !Modifier.isStatic(field.getModifiers()) 
-					&& !Modifier.isTransient(field.getModifiers()))) {
-				toStore.add(field);
-			}
-		}
-		return toStore;
+		return FieldDescriptor.getSerializableFields(getClass(), false);
 	}
 }
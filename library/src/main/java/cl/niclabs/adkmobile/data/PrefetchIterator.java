@@ -0,0 +1,87 @@
+package cl.niclabs.adkmobile.data;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import cl.niclabs.android.data.Serializable;
+
+/**
+ * Reads an iterator (e.g. from findAsIterator()) by pages of PAGE_SIZE objects
+ * and calls Prefetchable.prefetch() with the objects of each class of the page
+ * that implement Prefetchable, before returning them.
+ *
+ * Only one page of objects is held in memory.
+ */
+public class PrefetchIterator implements Iterator<Serializable<?>> {
+	/**
+	 * Number of objects read in advance
+	 */
+	public static int PAGE_SIZE = 200;
+
+	private final Iterator<? extends Serializable<?>> iterator;
+	private final List<Serializable<?>> page = new ArrayList<Serializable<?>>();
+	private int position = 0;
+
+	public PrefetchIterator(Iterator<? extends Serializable<?>> iterator) {
+		this.iterator = iterator;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (position < page.size()) {
+			return true;
+		}
+
+		page.clear();
+		position = 0;
+		while (page.size() < PAGE_SIZE && iterator.hasNext()) {
+			page.add(iterator.next());
+		}
+		prefetch(page);
+		return !page.isEmpty();
+	}
+
+	@Override
+	public Serializable<?> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return page.get(position++);
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Call prefetch() once per class of the Prefetchable objects of the page
+	 */
+	private static void prefetch(List<Serializable<?>> page) {
+		Map<Class<?>, List<Serializable<?>>> classes = null;
+		for (Serializable<?> object : page) {
+			if (object instanceof Prefetchable) {
+				if (classes == null) {
+					classes = new LinkedHashMap<Class<?>, List<Serializable<?>>>();
+				}
+
+				List<Serializable<?>> objects = classes.get(object.getClass());
+				if (objects == null) {
+					objects = new ArrayList<Serializable<?>>();
+					classes.put(object.getClass(), objects);
+				}
+				objects.add(object);
+			}
+		}
+
+		if (classes != null) {
+			for (List<Serializable<?>> objects : classes.values()) {
+				((Prefetchable) objects.get(0)).prefetch(objects);
+			}
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package cl.niclabs.adkmobile.data;
+
+import java.util.List;
+
+import cl.niclabs.android.data.Serializable;
+
+/**
+ * Serializable object with fields loaded from other tables on serialization
+ * (e.g. a one-to-many relation).
+ *
+ * Lists sent with HttpUtils.sendList() or ChunkedUpload are read by pages with
+ * PrefetchIterator, which calls prefetch() on the objects of each class of the page
+ * before they are serialized, so the fields can be loaded with one query per page
+ * instead of one query per object.
+ */
+public interface Prefetchable {
+	/**
+	 * Load the fields of a page of objects
+	 *
+	 * @param page objects of the same class as this object, including this object
+	 */
+	public void prefetch(List<? extends Serializable<?>> page);
+}
@@ -1,35 +1,116 @@
 package cl.niclabs.adkmobile.data;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
- * Construct elements of type Serializer, it is preferable to 
+ * Construct elements of type Serializer, it is preferable to
  * use this class instead of creating individual instances of Serializer
  * to encapsulate the implementation of the writer
- * 
+ *
+ * The factory also holds the serializers for the list formats used by
+ * HttpUtils.sendList() and ChunkedUpload. FORMAT_JSON and FORMAT_BINARY are
+ * registered by default, the list format is selected with setListFormat()
+ *
  * @author Felipe Lalanne <flalanne@niclabs.cl>
- * @deprecated moved to cl.niclabs.android.data
  */
 public final class SerializerFactory {
+	/**
+	 * JSON format for lists (see JsonStreamSerializer)
+	 */
+	public static final String FORMAT_JSON = "json";
+
+	/**
+	 * Binary columnar format for lists (see BinarySerializer)
+	 */
+	public static final String FORMAT_BINARY = "binary";
+
 	private static SerializerFactory self;
-	
+
+	private final Map<String, Class<? extends cl.niclabs.android.data.Serializer>> formats = new ConcurrentHashMap<String, Class<? extends cl.niclabs.android.data.Serializer>>();
+	private volatile String listFormat = FORMAT_JSON;
+
 	private SerializerFactory() {
+		formats.put(FORMAT_JSON, JsonStreamSerializer.class);
+		formats.put(FORMAT_BINARY, BinarySerializer.class);
 	}
-	
+
 	/**
 	 * Get an instance of this factory
 	 * @return
 	 */
-	public static SerializerFactory getInstance() {
+	public static synchronized SerializerFactory getInstance() {
 		if (self == null) {
 			self = new SerializerFactory();
 		}
 		return self;
 	}
-	
+
 	/**
 	 * Get an instance of a DataObjectWriter
 	 * @return
+	 * @deprecated use cl.niclabs.android.data.SerializerFactory
 	 */
 	public Serializer getSerializer() {
 		return new JsonSerializer();
 	}
+
+	/**
+	 * Register a serializer for a list format, replacing the previous one
+	 *
+	 * @param format name of the format
+	 * @param serializer serializer class, it must have a public no-argument constructor
+	 */
+	public void register(String format, Class<? extends cl.niclabs.android.data.Serializer> serializer) {
+		formats.put(format, serializer);
+	}
+
+	/**
+	 * Get a new serializer for the format
+	 *
+	 * @param format
+	 * @return
+	 * @throws IllegalArgumentException if no serializer is registered for the format
+	 */
+	public cl.niclabs.android.data.Serializer getSerializer(String format) {
+		Class<? extends cl.niclabs.android.data.Serializer> cls = formats.get(format);
+		if (cls == null) {
+			throw new IllegalArgumentException("Unknown format " + format);
+		}
+
+		try {
+			return cls.newInstance();
+		} catch (InstantiationException e) {
+			throw new IllegalStateException("Cannot create serializer for format " + format);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Cannot create serializer for format " + format);
+		}
+	}
+
+	/**
+	 * Select the format for lists (FORMAT_JSON by default)
+	 *
+	 * @param format
+	 * @throws IllegalArgumentException if no serializer is registered for the format
+	 */
+	public void setListFormat(String format) {
+		if (!formats.containsKey(format)) {
+			throw new IllegalArgumentException("Unknown format " + format);
+		}
+		listFormat = format;
+	}
+
+	/**
+	 * @return the format for lists
+	 */
+	public String getListFormat() {
+		return listFormat;
+	}
+
+	/**
+	 * @return a new serializer for the list format
+	 */
+	public cl.niclabs.android.data.Serializer getListSerializer() {
+		return getSerializer(listFormat);
+	}
 }
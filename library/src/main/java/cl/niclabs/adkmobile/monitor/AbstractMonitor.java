@@ -3,7 +3,11 @@ package cl.niclabs.adkmobile.monitor;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import android.app.Service;
 import android.content.ComponentName;
@@ -12,11 +16,21 @@ import android.content.Intent;
 import android.content.ServiceConnection;
 import android.os.Bundle;
 import android.os.IBinder;
+import android.os.SystemClock;
+import cl.niclabs.adkmobile.monitor.aggregation.AggregationStage;
+import cl.niclabs.adkmobile.monitor.data.AbstractObservation;
 import cl.niclabs.adkmobile.monitor.data.Observation;
+import cl.niclabs.adkmobile.monitor.data.ObservationPool;
+import cl.niclabs.adkmobile.monitor.data.TransientObservation;
+import cl.niclabs.adkmobile.monitor.events.AbstractMonitorEvent;
+import cl.niclabs.adkmobile.monitor.events.DispatchPolicy;
+import cl.niclabs.adkmobile.monitor.events.EventDispatcher;
+import cl.niclabs.adkmobile.monitor.events.EventId;
+import cl.niclabs.adkmobile.monitor.events.EventRegistry;
+import cl.niclabs.adkmobile.monitor.events.EventSet;
 import cl.niclabs.adkmobile.monitor.events.MonitorEvent;
 import cl.niclabs.adkmobile.monitor.listeners.MonitorListener;
-import cl.niclabs.android.utils.Dispatcher;
-import cl.niclabs.android.utils.Notifier;
+import cl.niclabs.android.utils.Scheduler;
 
 /**
  * Base class for all monitoring services. It allows implementing classes to
@@ -28,14 +42,191 @@ import cl.niclabs.android.utils.Notifier;
  */
 public abstract class AbstractMonitor<E extends MonitorListener> extends Service implements Monitor<E> {	
 	/**
-	 * Current state by eventType
+	 * Current state by eventType, only used for events that do not extend
+	 * AbstractMonitorEvent, the rest keep their own state
 	 */
 	private Map<MonitorEvent<E>, Observation> currentStates = new ConcurrentHashMap<MonitorEvent<E>,Observation>(4);
 	
 	/**
 	 * Dispatcher for monitor events
 	 */
-	private Dispatcher<E> dispatcher = new Dispatcher<E>();
+	private EventDispatcher<E> dispatcher = new EventDispatcher<E>();
+	
+	/**
+	 * Aggregation stages by eventType, only for events with aggregation enabled
+	 */
+	private Map<MonitorEvent<E>, AggregationStage> aggregations = new ConcurrentHashMap<MonitorEvent<E>, AggregationStage>(4);
+	
+	/**
+	 * Coalescing state by eventType, created on the first coalesced notification
+	 */
+	private ConcurrentMap<MonitorEvent<E>, Coalescer> coalescers = new ConcurrentHashMap<MonitorEvent<E>, Coalescer>(4);
+	
+	/**
+	 * Events of the monitor by index of their identifier (see registerEvent()). The
+	 * table is replaced when it grows, so lookups do not need locks
+	 */
+	@SuppressWarnings("unchecked")
+	private volatile MonitorEvent<E>[] eventTable = new MonitorEvent[EventRegistry.FLAG_EVENTS];
+	
+	/**
+	 * Delivery state of an event with coalescing enabled.
+	 * 
+	 * The state is updated holding the lock of the coalescer, but listeners are
+	 * notified outside of it (see drain()), so a slow listener does not block the
+	 * notifying thread nor the scheduler
+	 */
+	private class Coalescer implements Runnable {
+		final MonitorEvent<E> eventType;
+		
+		/**
+		 * Newest observation not yet delivered
+		 */
+		Observation pending;
+		
+		/**
+		 * Time of the last delivery (elapsed realtime)
+		 */
+		long lastDelivery = Long.MIN_VALUE / 2;
+		
+		/**
+		 * Delivery of the pending observation, null if not scheduled
+		 */
+		ScheduledFuture<?> future;
+		
+		/**
+		 * Deliveries in notification order, not yet performed, as a ring of
+		 * parallel arrays of observations to deliver (null to only recycle) and
+		 * states to recycle after the delivery. The ring only grows if the deliveries
+		 * are slower than the notifications, so queuing does not allocate
+		 */
+		Observation[] results = new Observation[4];
+		Observation[] previous = new Observation[4];
+		int head = 0;
+		int size = 0;
+		
+		/**
+		 * True while a thread performs the deliveries
+		 */
+		boolean draining = false;
+		
+		Coalescer(MonitorEvent<E> eventType) {
+			this.eventType = eventType;
+		}
+		
+		@Override
+		public void run() {
+			synchronized (this) {
+				future = null;
+				queuePending();
+			}
+			drain();
+		}
+		
+		/**
+		 * Deliver the pending observation, if any
+		 */
+		void flush() {
+			synchronized (this) {
+				queuePending();
+			}
+			drain();
+		}
+		
+		/**
+		 * Queue the pending observation for delivery. Must be called holding the lock
+		 */
+		void queuePending() {
+			if (future != null) {
+				future.cancel(false);
+				future = null;
+			}
+			
+			if (pending != null) {
+				Observation result = pending;
+				pending = null;
+				lastDelivery = SystemClock.elapsedRealtime();
+				queue(result, null);
+			}
+		}
+		
+		/**
+		 * Queue a delivery. Must be called holding the lock
+		 * 
+		 * @param result observation to deliver, or null to only recycle the previous state
+		 * @param previous state to recycle after the delivery, can be null
+		 */
+		void queue(Observation result, Observation previous) {
+			int capacity = results.length;
+			if (size == capacity) {
+				Observation[] grownResults = new Observation[capacity * 2];
+				Observation[] grownPrevious = new Observation[capacity * 2];
+				for (int i = 0; i < size; i++) {
+					grownResults[i] = results[(head + i) % capacity];
+					grownPrevious[i] = this.previous[(head + i) % capacity];
+				}
+				results = grownResults;
+				this.previous = grownPrevious;
+				head = 0;
+				capacity *= 2;
+			}
+			
+			int index = (head + size) % capacity;
+			results[index] = result;
+			this.previous[index] = previous;
+			size++;
+		}
+		
+		/**
+		 * Perform the queued deliveries without holding the lock. Only one thread
+		 * delivers at a time, the deliveries queued by other threads meanwhile are
+		 * performed by that thread, so listeners are notified in order
+		 */
+		void drain() {
+			synchronized (this) {
+				if (draining) {
+					return;
+				}
+				draining = true;
+			}
+			
+			boolean drained = false;
+			try {
+				while (true) {
+					Observation result;
+					Observation replaced;
+					synchronized (this) {
+						if (size == 0) {
+							draining = false;
+							drained = true;
+							return;
+						}
+						
+						result = results[head];
+						replaced = previous[head];
+						results[head] = null;
+						previous[head] = null;
+						head = (head + 1) % results.length;
+						size--;
+					}
+					
+					if (result != null) {
+						deliver(eventType, result);
+					}
+					
+					/* The previous result was delivered or replaced */
+					recycle(replaced, result);
+				}
+			}
+			finally {
+				if (!drained) {
+					synchronized (this) {
+						draining = false;
+					}
+				}
+			}
+		}
+	}
 	
 	protected String TAG = "AdkintunMobile";
 	
@@ -51,11 +242,194 @@ public abstract class AbstractMonitor<E extends MonitorListener> extends Service
 		activate(events, new Bundle());
 	}
 	
+	/**
+	 * Activate the events in the set. Events with a flag are activated through
+	 * activate(int, Bundle), so the monitor reads their configuration, the rest are
+	 * looked up in the event table (see registerEvent())
+	 * 
+	 * @param events
+	 * @param configuration
+	 */
+	public void activate(EventSet events, Bundle configuration) {
+		int flags = events.getFlags();
+		if (flags != 0) {
+			activate(flags, configuration);
+		}
+		
+		MonitorEvent<E>[] table = eventTable;
+		for (int i = events.nextIndex(EventRegistry.FLAG_EVENTS); i >= 0 && i < table.length; i = events.nextIndex(i + 1)) {
+			if (table[i] != null) {
+				activate(table[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Deactivate the events in the set
+	 * 
+	 * @param events
+	 */
+	public void deactivate(EventSet events) {
+		int flags = events.getFlags();
+		if (flags != 0) {
+			deactivate(flags);
+		}
+		
+		MonitorEvent<E>[] table = eventTable;
+		for (int i = events.nextIndex(EventRegistry.FLAG_EVENTS); i >= 0 && i < table.length; i = events.nextIndex(i + 1)) {
+			if (table[i] != null) {
+				deactivate(table[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Add an event of the monitor to the event table, so it can be looked up with
+	 * getEvent() and activated with activate(EventSet, Bundle). Sub-classes should
+	 * register their events on onCreate()
+	 * 
+	 * @param id identifier of the event, from EventRegistry
+	 * @param eventType
+	 */
+	protected synchronized void registerEvent(EventId id, MonitorEvent<E> eventType) {
+		MonitorEvent<E>[] table = eventTable;
+		int index = id.getIndex();
+		if (index >= table.length) {
+			@SuppressWarnings("unchecked")
+			MonitorEvent<E>[] grown = new MonitorEvent[Math.max(index + 1, table.length * 2)];
+			System.arraycopy(table, 0, grown, 0, table.length);
+			table = grown;
+		}
+		table[index] = eventType;
+		
+		/* Publish the table */
+		eventTable = table;
+	}
+	
+	/**
+	 * @param id
+	 * @return the event of the monitor with the identifier, or null if the monitor
+	 * does not register it
+	 */
+	public MonitorEvent<E> getEvent(EventId id) {
+		MonitorEvent<E>[] table = eventTable;
+		int index = id.getIndex();
+		return index < table.length ? table[index] : null;
+	}
+	
+	/**
+	 * @return the identifiers of the registered events that are active
+	 */
+	public EventSet getActiveEvents() {
+		EventSet events = new EventSet();
+		MonitorEvent<E>[] table = eventTable;
+		for (int i = 0; i < table.length; i++) {
+			if (table[i] != null && table[i].isActive()) {
+				events.add(EventRegistry.forIndex(i));
+			}
+		}
+		return events;
+	}
+	
 	@Override
 	public void deactivate(MonitorEvent<E> eventType) {
+		/* Notify the observations of the current window */
+		AggregationStage stage = aggregations.get(eventType);
+		if (stage != null && eventType.isActive()) {
+			stage.flush();
+		}
+		
+		/* Deliver the newest coalesced observation */
+		Coalescer coalescer = coalescers.get(eventType);
+		if (coalescer != null) {
+			coalescer.flush();
+		}
+		
 		eventType.deactivate();
 	}
 	
+	/**
+	 * Configure the aggregation of the observations of the event before they are notified
+	 * to listeners. Sub-classes should call this method for each event on activate(int, Bundle)
+	 * with the configuration stored under aggregationExtra(event) (see AggregationStage for 
+	 * the configuration keys). If the configuration does not define a window, aggregation is
+	 * disabled for the event.
+	 * 
+	 * The observations of the current window are notified before the configuration is replaced
+	 * 
+	 * @param eventType
+	 * @param configuration the activation configuration of the monitor
+	 * @param event flag of the event (e.g. ACCELEROMETER)
+	 */
+	protected void setAggregation(final MonitorEvent<E> eventType, Bundle configuration, int event) {
+		Bundle aggregation = configuration != null ? configuration.getBundle(aggregationExtra(event)) : null;
+		
+		/* Keep the current stage if the configuration did not change */
+		if (aggregation == null && aggregations.get(eventType) == null) {
+			return;
+		}
+		
+		AggregationStage stage = AggregationStage.create(aggregation, new AggregationStage.Output() {
+			@Override
+			public void onAggregate(Observation result) {
+				dispatch(eventType, result);
+			}
+		});
+		
+		AggregationStage previous = stage != null ? aggregations.put(eventType, stage) : aggregations.remove(eventType);
+		if (previous != null) {
+			previous.flush();
+		}
+	}
+	
+	/**
+	 * Configure the coalescing delivery of the event (see AbstractMonitorEvent.setCoalesceInterval())
+	 * from the interval (in milliseconds) stored under coalesceIntervalExtra(event). Sub-classes
+	 * should call this method for each event on activate(int, Bundle)
+	 * 
+	 * @param eventType
+	 * @param configuration the activation configuration of the monitor
+	 * @param event flag of the event (e.g. TELEPHONY)
+	 */
+	protected void setCoalescing(MonitorEvent<E> eventType, Bundle configuration, int event) {
+		if (!(eventType instanceof AbstractMonitorEvent)) {
+			return;
+		}
+		
+		AbstractMonitorEvent<E> monitorEvent = (AbstractMonitorEvent<E>) eventType;
+		long interval = configuration != null 
+				? configuration.getLong(coalesceIntervalExtra(event), monitorEvent.getCoalesceInterval()) 
+				: monitorEvent.getCoalesceInterval();
+		monitorEvent.setCoalesceInterval(interval);
+		
+		/* Deliver any observation pending from a previous configuration */
+		Coalescer coalescer = coalescers.get(eventType);
+		if (interval <= 0 && coalescer != null) {
+			coalescer.flush();
+		}
+	}
+	
+	/**
+	 * Get the key of the coalescing interval of an event in the activation Bundle
+	 * 
+	 * @param event flag of the event (e.g. TELEPHONY)
+	 * @return
+	 */
+	public static String coalesceIntervalExtra(int event) {
+		return "coalesce_interval_" + event;
+	}
+	
+	/**
+	 * Get the key of the aggregation configuration of an event in the activation
+	 * Bundle
+	 * 
+	 * @param event flag of the event (e.g. ACCELEROMETER)
+	 * @return
+	 */
+	public static String aggregationExtra(int event) {
+		return "aggregation_" + event;
+	}
+	
 	/**
 	 * Get the current state data for the specified event type. Returns null if there is no data 
 	 * @param eventType
@@ -63,6 +437,9 @@ public abstract class AbstractMonitor<E extends MonitorListener> extends Service
 	 */
 	@Override
 	public Observation getState(MonitorEvent<E> eventType) {
+		if (eventType instanceof AbstractMonitorEvent) {
+			return ((AbstractMonitorEvent<E>) eventType).getState();
+		}
 		return currentStates.get(eventType);
 	}
 	
@@ -80,26 +457,177 @@ public abstract class AbstractMonitor<E extends MonitorListener> extends Service
 		dispatcher.listen(listener, listen);
 	}
 	
+	/**
+	 * Add a listener that receives the observations according to the given policy,
+	 * instead of the default policy of the monitor
+	 * 
+	 * @param listener
+	 * @param policy
+	 */
+	public void listen(E listener, DispatchPolicy policy) {
+		dispatcher.listen(listener, policy);
+	}
+	
+	/**
+	 * Set the dispatch policy for the listeners of this monitor that do not define 
+	 * their own (see DispatchingListener). By default listeners are notified on the
+	 * thread that produces the observation (e.g. the sensor thread), so slow listeners
+	 * should be given a queue() or workerPool() policy
+	 * 
+	 * @param policy the policy or null to notify on the calling thread
+	 */
+	public void setDispatchPolicy(DispatchPolicy policy) {
+		dispatcher.setDefaultPolicy(policy);
+	}
+	
+	/**
+	 * @return the default dispatch policy of this monitor, or null if listeners are
+	 * notified on the calling thread
+	 */
+	public DispatchPolicy getDispatchPolicy() {
+		return dispatcher.getDefaultPolicy();
+	}
+	
 	/**
 	 * Notifies listeners of the monitor of new data received and updates 
 	 * the internal state of the monitor that can be obtained with getState()
 	 * 
-	 * Must be called by sub-classes to notify listeners of data received 
+	 * Must be called by sub-classes to notify listeners of data received. The
+	 * notification does not allocate objects, so it can be called at sensor rates 
+	 * 
+	 * If the result was obtained from a pool (see AbstractObservation.obtain()) and
+	 * all the listeners are NonRetainingListeners, it is recycled when the next result
+	 * for the event is notified. Therefore pooled observations returned by getState()
+	 * are only valid until the next notification
+	 * 
+	 * If aggregation is enabled for the event (see setAggregation()), the result is
+	 * added to the current window and listeners are notified of the aggregated result
+	 * at the end of the window
+	 * 
+	 * If coalescing is enabled for the event (see setCoalescing()), the state is updated
+	 * immediately, but listeners are only notified of the newest result once per interval
+	 * 
+	 * For a TransientObservation result, the state keeps a copy of the newest value
+	 * (see TransientObservation.copyLatest()) and the pending result of a coalesced
+	 * event is a full copy, listeners still receive the original
 	 * 
 	 * @param eventType the event to which the data is related
 	 * @param result the result from the event
 	 */
-	protected void notifyListeners(final MonitorEvent<E> eventType, final Observation result) {
-		/* Update the internal state */
-		setState(eventType, result);
+	protected void notifyListeners(MonitorEvent<E> eventType, Observation result) {
+		AggregationStage stage = aggregations.get(eventType);
+		if (stage != null && stage.add(result)) {
+			return;
+		}
 		
-		dispatcher.notifyListeners(new Notifier<E>() {
-			@Override
-			public void notify(E listener) {
-				eventType.onDataReceived(listener, result);
+		dispatch(eventType, result);
+	}
+	
+	/**
+	 * Update the state of the event and notify the listeners
+	 * 
+	 * @param eventType
+	 * @param result
+	 */
+	private void dispatch(MonitorEvent<E> eventType, Observation result) {
+		if (eventType instanceof AbstractMonitorEvent) {
+			AbstractMonitorEvent<E> monitorEvent = (AbstractMonitorEvent<E>) eventType;
+			long interval = monitorEvent.getCoalesceInterval();
+			if (interval > 0) {
+				/* The pending result outlives the notification */
+				coalesce(monitorEvent, result instanceof TransientObservation 
+						? ((TransientObservation) result).copy() : result, interval);
+				return;
 			}
+		}
+		
+		/* Update the internal state. Transient results (e.g. windows over a reusable 
+		 * buffer) are only valid during the notification, the state keeps a copy of
+		 * the newest value */
+		Observation previous = getState(eventType);
+		Observation state = result;
+		if (result instanceof TransientObservation) {
+			state = ((TransientObservation) result).copyLatest();
+			if (state == null) {
+				state = previous;
+			}
+		}
+		setState(eventType, state);
+		
+		deliver(eventType, result);
+		recycle(previous, state);
+	}
+	
+	/**
+	 * Update the state of the event and deliver the result if the last delivery was
+	 * at least interval milliseconds ago. Otherwise the result replaces the pending 
+	 * observation, which is delivered at the end of the interval
+	 */
+	private void coalesce(AbstractMonitorEvent<E> eventType, Observation result, long interval) {
+		Coalescer coalescer = coalescers.get(eventType);
+		if (coalescer == null) {
+			Coalescer created = new Coalescer(eventType);
+			coalescer = coalescers.putIfAbsent(eventType, created);
+			if (coalescer == null) {
+				coalescer = created;
+			}
+		}
+		
+		synchronized (coalescer) {
+			Observation previous = getState(eventType);
+			setState(eventType, result);
 			
-		});
+			if (!eventType.isCoalescable(result)) {
+				/* Keep the order of the notifications */
+				coalescer.queuePending();
+				coalescer.queue(result, previous);
+			}
+			else {
+				long elapsed = SystemClock.elapsedRealtime() - coalescer.lastDelivery;
+				if (coalescer.pending == null && elapsed >= interval) {
+					coalescer.lastDelivery += elapsed;
+					coalescer.queue(result, previous);
+				}
+				else {
+					coalescer.pending = result;
+					coalescer.queue(null, previous);
+					if (coalescer.future == null) {
+						coalescer.future = Scheduler.getInstance().schedule(coalescer, 
+								Math.max(interval - elapsed, 0), TimeUnit.MILLISECONDS);
+					}
+				}
+			}
+		}
+		
+		/* Notify the listeners outside of the lock */
+		coalescer.drain();
+	}
+	
+	/**
+	 * Notify the listeners
+	 * 
+	 * @param eventType
+	 * @param result
+	 */
+	private void deliver(MonitorEvent<E> eventType, Observation result) {
+		if (dispatcher.notifyListeners(eventType, result) && result instanceof AbstractObservation) {
+			/* A listener may keep the result, it cannot be recycled */
+			ObservationPool.release((AbstractObservation<?>) result);
+		}
+	}
+	
+	/**
+	 * Recycle the previous state of an event once replaced, if it was obtained 
+	 * from a pool
+	 * 
+	 * @param previous
+	 * @param result
+	 */
+	private static void recycle(Observation previous, Observation result) {
+		if (previous != result && previous instanceof AbstractObservation
+				&& ((AbstractObservation<?>) previous).isPooled()) {
+			((AbstractObservation<?>) previous).recycle();
+		}
 	}
 	
 	@Override
@@ -115,6 +643,13 @@ public abstract class AbstractMonitor<E extends MonitorListener> extends Service
 		 * Deactivate all the events for this monitor
 		 */
 		deactivate(ALL_EVENTS);
+		
+		MonitorEvent<E>[] table = eventTable;
+		for (int i = EventRegistry.FLAG_EVENTS; i < table.length; i++) {
+			if (table[i] != null) {
+				deactivate(table[i]);
+			}
+		}
 	}
 
 	@Override
@@ -138,6 +673,10 @@ public abstract class AbstractMonitor<E extends MonitorListener> extends Service
 	 * @param state
 	 */
 	private void setState(MonitorEvent<E> eventType, Observation state) {
+		if (eventType instanceof AbstractMonitorEvent) {
+			((AbstractMonitorEvent<E>) eventType).setState(state);
+			return;
+		}
 		currentStates.put(eventType, state);
 	}
 	
@@ -150,12 +689,21 @@ public abstract class AbstractMonitor<E extends MonitorListener> extends Service
 	 * @param <L> type of listener the monitor takes
 	 */
 	private static class BindableController<M extends Monitor<L>, L extends MonitorListener> implements Controller<L> {
-		Boolean connected = false;
+		/**
+		 * Connection status, the monitor field is set before the controller
+		 * is marked as connected and cleared after it is marked as disconnected 
+		 */
+		final AtomicBoolean connected = new AtomicBoolean(false);
 		Context context;
 		int events = 0;
+		
+		/**
+		 * Events without a flag to activate, only used with an AbstractMonitor
+		 */
+		EventSet eventSet = new EventSet();
 		Bundle extras = new Bundle();
 		List<L> listeners = new CopyOnWriteArrayList<L>(); //TODO: here it would probably suffice with an ArrayList
-		M monitor;
+		volatile M monitor;
 		Class<M> cls;
 		
 		/**
@@ -187,10 +735,9 @@ public abstract class AbstractMonitor<E extends MonitorListener> extends Service
 			if (extras != null)  
 				this.extras.putAll(extras);
 		
-			synchronized(connected) {
-				if (connected) {
-					monitor.activate(this.events, this.extras);
-				}
+			M monitor = getConnectedMonitor();
+			if (monitor != null) {
+				monitor.activate(this.events, this.extras);
 			}
 		}
 		
@@ -202,6 +749,37 @@ public abstract class AbstractMonitor<E extends MonitorListener> extends Service
 			activate(events, null);
 		}
 		
+		/**
+		 * Update the activation configuration for the monitor with the events
+		 * of the set
+		 * @param events
+		 * @param extras
+		 */
+		public void activate(EventSet events, Bundle extras) {
+			this.events |= events.getFlags();
+			this.eventSet.addAll(events);
+			this.eventSet.removeAll(EventSet.fromFlags(Monitor.ALL_EVENTS));
+			
+			if (extras != null)  
+				this.extras.putAll(extras);
+			
+			M monitor = getConnectedMonitor();
+			if (monitor != null) {
+				activate(monitor);
+			}
+		}
+		
+		/**
+		 * Activate the events of this controller on the monitor
+		 * @param monitor
+		 */
+		void activate(M monitor) {
+			monitor.activate(events, extras);
+			if (!eventSet.isEmpty() && monitor instanceof AbstractMonitor) {
+				((AbstractMonitor<?>) monitor).activate(eventSet, extras);
+			}
+		}
+		
 		/**
 		 * Bind the service to the provided context. If returns immediately if the
 		 * service is already connected
@@ -224,13 +802,40 @@ public abstract class AbstractMonitor<E extends MonitorListener> extends Service
 			if (this.events != 0) 
 				this.events ^= events;
 					
-			synchronized(connected) {
-				if (connected) {
-					monitor.deactivate(events);
-				}
+			M monitor = getConnectedMonitor();
+			if (monitor != null) {
+				monitor.deactivate(events);
 			}
 		}
 		
+		/**
+		 * Deactivate the events of the set for the monitor of this controller
+		 * @param events
+		 */
+		public void deactivate(EventSet events) {
+			this.events &= ~events.getFlags();
+			this.eventSet.removeAll(events);
+			
+			M monitor = getConnectedMonitor();
+			if (monitor instanceof AbstractMonitor) {
+				((AbstractMonitor<?>) monitor).deactivate(events);
+			}
+			else if (monitor != null && events.getFlags() != 0) {
+				monitor.deactivate(events.getFlags());
+			}
+		}
+		
+		/**
+		 * @return the bound monitor or null if the controller is not connected
+		 */
+		M getConnectedMonitor() {
+			M monitor = this.monitor;
+			if (connected.get()) {
+				return monitor;
+			}
+			return null;
+		}
+		
 		/**
 		 * Adds a listener to listen when the service is bound
 		 * @param listener
@@ -244,10 +849,9 @@ public abstract class AbstractMonitor<E extends MonitorListener> extends Service
 			}
 			
 			/* Add the listener directly to the monitor */
-			synchronized(connected) {
-				if (connected) {
-					monitor.listen(listener, listen);
-				}
+			M monitor = getConnectedMonitor();
+			if (monitor != null) {
+				monitor.listen(listener, listen);
 			}
 		}
 		
@@ -272,14 +876,10 @@ public abstract class AbstractMonitor<E extends MonitorListener> extends Service
 		 * @param monitor
 		 */
 		void onConnect(M monitor) {
-			synchronized (connected) {
-				if (!connected) {
-					listen(monitor, true);
-					monitor.activate(events, extras);
-
-					this.monitor = monitor;
-					this.connected = true;
-				}
+			this.monitor = monitor;
+			if (connected.compareAndSet(false, true)) {
+				listen(monitor, true);
+				activate(monitor);
 			}
 		}
 		
@@ -288,8 +888,9 @@ public abstract class AbstractMonitor<E extends MonitorListener> extends Service
 		 * @param monitor
 		 */
 		void onCrash(M monitor) {
-			listen(monitor, false);
-			this.connected = false;
+			if (connected.compareAndSet(true, false) && monitor != null) {
+				listen(monitor, false);
+			}
 			this.monitor = null;
 			
 			/* Re-bind and reactivate the service */
@@ -303,12 +904,9 @@ public abstract class AbstractMonitor<E extends MonitorListener> extends Service
 		 * @param monitor
 		 */
 		void onDisconnect(M monitor) {
-			synchronized (connected) {
-				if (!connected) {
-					listen(monitor, false);
-					this.connected = false;
-					this.monitor = null;
-				}
+			if (connected.compareAndSet(true, false)) {
+				listen(monitor, false);
+				this.monitor = null;
 			}
 		}
 		
@@ -316,7 +914,8 @@ public abstract class AbstractMonitor<E extends MonitorListener> extends Service
 		 * Unbind from the service
 		 */
 		public void unbind() {
-			if (connected) {
+			M monitor = getConnectedMonitor();
+			if (monitor != null) {
 				context.unbindService(serviceConnection);
 				onDisconnect(monitor);
 			}
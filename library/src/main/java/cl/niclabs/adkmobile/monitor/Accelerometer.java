@@ -9,11 +9,18 @@ import android.hardware.SensorManager;
 import android.os.Bundle;
 import android.os.IBinder;
 import android.util.Log;
+import cl.niclabs.adkmobile.monitor.accelerometer.SensorBatching;
+import cl.niclabs.adkmobile.monitor.accelerometer.SensorBurstAssembler;
+import cl.niclabs.adkmobile.monitor.data.AccelerometerBatch;
+import cl.niclabs.adkmobile.monitor.data.AccelerometerBuffer;
 import cl.niclabs.adkmobile.monitor.data.AccelerometerObservation;
 import cl.niclabs.adkmobile.monitor.data.Observation;
 import cl.niclabs.adkmobile.monitor.events.AbstractMonitorEvent;
+import cl.niclabs.adkmobile.monitor.events.EventRegistry;
 import cl.niclabs.adkmobile.monitor.events.MonitorEvent;
+import cl.niclabs.adkmobile.monitor.listeners.AccelerometerBatchListener;
 import cl.niclabs.adkmobile.monitor.listeners.AccelerometerListener;
+import cl.niclabs.adkmobile.monitor.listeners.NonRetainingListener;
 import cl.niclabs.android.utils.Time;
 
 /**
@@ -38,6 +45,39 @@ public class Accelerometer extends AbstractMonitor<AccelerometerListener> implem
 	 */
 	public static final String SENSOR_DELAY_EXTRA = "sensor_delay";
 	
+	/**
+	 * Number of samples to deliver on each call to 
+	 * {@link AccelerometerBatchListener#onAccelerometerBatch(AccelerometerBatch)}.
+	 * 
+	 * A value of 1 (default) disables batching and a new observation
+	 * is created for each sensor event
+	 */
+	public static int BATCH_SIZE = 1;
+	
+	/**
+	 * Batch size extra for configuring the monitor
+	 */
+	public static final String BATCH_SIZE_EXTRA = "sensor_batch_size";
+	
+	/**
+	 * Maximum time (in milliseconds) that samples can be kept in the hardware FIFO
+	 * of the sensor hub before they are reported. A value of 0 (default) disables
+	 * FIFO batching.
+	 * 
+	 * If greater than 0 and the device supports it (Android 4.4+), the CPU is only woken
+	 * up to receive samples in bursts, each burst is notified as one 
+	 * {@link AccelerometerBatch}
+	 * and sample timestamps are reconstructed from the sensor timestamps.
+	 * 
+	 * Values above SensorBatching.MAX_REPORT_LATENCY_LIMIT (about 35 minutes) are clamped
+	 */
+	public static int MAX_REPORT_LATENCY = 0;
+	
+	/**
+	 * Max report latency extra for configuring the monitor
+	 */
+	public static final String MAX_REPORT_LATENCY_EXTRA = SensorBatching.MAX_REPORT_LATENCY_EXTRA;
+	
 	private Sensor accelerometer;
 	
 	/**
@@ -45,9 +85,13 @@ public class Accelerometer extends AbstractMonitor<AccelerometerListener> implem
 	 */
 	private MonitorEvent<AccelerometerListener> accelerometerEvent = new AbstractMonitorEvent<AccelerometerListener>() {
 		@Override
-		public synchronized boolean activate() {
-			if (!isActive()) {
-				if (!sensorManager.registerListener(Accelerometer.this, accelerometer, SENSOR_DELAY)) {
+		public boolean activate() {
+			if (startActivation()) {
+				/* Create the sample buffer before receiving sensor events */
+				assembler = SensorBatching.newAssembler(SENSOR_DELAY, MAX_REPORT_LATENCY);
+				buffer = SensorBatching.newBuffer(accelerometer, SENSOR_DELAY, MAX_REPORT_LATENCY, BATCH_SIZE);
+				
+				if (!registerSensor(accelerometer)) {
 					Log.e(TAG, "Device does not support accelerometer tracking. Stopping service.");
 					stopSelf();
 				}
@@ -61,11 +105,26 @@ public class Accelerometer extends AbstractMonitor<AccelerometerListener> implem
 		}
 
 		@Override
-		public synchronized void deactivate() {
-			if (isActive()) {
+		public void deactivate() {
+			if (startDeactivation()) {
 				// Unregister the listener
 				sensorManager.unregisterListener(Accelerometer.this);
 				
+				// Deliver the remaining samples, a sensor event may still be in progress,
+				// so the window of the sensor thread is not reused
+				AccelerometerBuffer buffer = Accelerometer.this.buffer;
+				if (buffer != null) {
+					AccelerometerBatch remaining = null;
+					synchronized (buffer) {
+						if (buffer.available() > 0) {
+							remaining = buffer.drainCopy();
+						}
+					}
+					if (remaining != null) {
+						notifyListeners(accelerometerEvent, remaining);
+					}
+				}
+				
 				if(DEBUG) Log.d(TAG, "Global accelerometer service has been deactivated");
 				super.deactivate();
 			}
@@ -73,6 +132,29 @@ public class Accelerometer extends AbstractMonitor<AccelerometerListener> implem
 		
 		@Override
 		public void onDataReceived(AccelerometerListener listener, Observation result) {
+			if (result instanceof AccelerometerBatch) {
+				AccelerometerBatch batch = (AccelerometerBatch) result;
+				if (listener instanceof AccelerometerBatchListener) {
+					((AccelerometerBatchListener) listener).onAccelerometerBatch(batch);
+					return;
+				}
+				
+				/* Listeners without batch support receive one observation per sample */
+				if (listener instanceof NonRetainingListener) {
+					for (int i = 0; i < batch.size(); i++) {
+						AccelerometerObservation data = batch.obtainObservation(i);
+						listener.onAccelerometerData(data);
+						data.recycle();
+					}
+					return;
+				}
+				
+				for (int i = 0; i < batch.size(); i++) {
+					listener.onAccelerometerData(batch.getObservation(i));
+				}
+				return;
+			}
+			
 			/* Notify result */
 			listener.onAccelerometerData((AccelerometerObservation) result);
 		}
@@ -83,6 +165,17 @@ public class Accelerometer extends AbstractMonitor<AccelerometerListener> implem
 	 */
 	private SensorManager sensorManager;
 	
+	/**
+	 * Sample buffer for batch mode, null if batching is disabled
+	 */
+	private volatile AccelerometerBuffer buffer;
+	
+	/**
+	 * Sample time reconstruction for FIFO batching mode, null if disabled. It is
+	 * set before the buffer
+	 */
+	private SensorBurstAssembler assembler;
+	
 	/**
 	 * Activity-Service binder
 	 */
@@ -96,7 +189,16 @@ public class Accelerometer extends AbstractMonitor<AccelerometerListener> implem
 		SENSOR_DELAY = configuration.getInt(
 				SENSOR_DELAY_EXTRA, SENSOR_DELAY);
 		
+		/* Update the batch size */
+		BATCH_SIZE = configuration.getInt(
+				BATCH_SIZE_EXTRA, BATCH_SIZE);
+		
+		/* Update the max report latency */
+		MAX_REPORT_LATENCY = configuration.getInt(
+				MAX_REPORT_LATENCY_EXTRA, MAX_REPORT_LATENCY);
+		
 		if ((events & ACCELEROMETER) == ACCELEROMETER) {
+			setAggregation(accelerometerEvent, configuration, ACCELEROMETER);
 			activate(accelerometerEvent);
 		}
 	}
@@ -121,15 +223,54 @@ public class Accelerometer extends AbstractMonitor<AccelerometerListener> implem
 	@Override
 	public void onCreate() {
 		super.onCreate();
+		registerEvent(EventRegistry.ACCELEROMETER, accelerometerEvent);
 		
 		sensorManager = (SensorManager)getSystemService(Context.SENSOR_SERVICE);
 	    accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
 	}
 
+	/**
+	 * Register the listener for the sensor, with the max report latency if FIFO 
+	 * batching is enabled
+	 * 
+	 * @param sensor
+	 * @return true if the sensor is supported
+	 */
+	private boolean registerSensor(Sensor sensor) {
+		return SensorBatching.registerListener(sensorManager, this, sensor, SENSOR_DELAY, MAX_REPORT_LATENCY);
+	}
+
 	@Override
 	public void onSensorChanged(SensorEvent event) {
 		if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-			AccelerometerObservation data = new AccelerometerObservation(Time.currentTimeMillis());
+			AccelerometerBuffer buffer = this.buffer;
+			if (buffer != null) {
+				/* The buffer is also drained on deactivation, listeners are notified
+				 * outside of the lock */
+				AccelerometerBatch batch = null;
+				synchronized (buffer) {
+					SensorBurstAssembler assembler = this.assembler;
+					if (assembler != null) {
+						/* FIFO batching mode, notify once the burst is complete */
+						long delay = SensorBatching.getSampleDelay(assembler, event);
+						if (buffer.add(Time.currentTimeMillis() - delay / 1000000L, event.accuracy, event.values[0], 
+								event.values[1], event.values[2]) >= buffer.capacity() || assembler.isBurstEnd()) {
+							batch = buffer.drain();
+						}
+					}
+					/* Batch mode, notify once the batch is complete */
+					else if (buffer.add(Time.currentTimeMillis(), event.accuracy, event.values[0], 
+							event.values[1], event.values[2]) >= buffer.capacity()) {
+						batch = buffer.drain();
+					}
+				}
+				if (batch != null) {
+					notifyListeners(accelerometerEvent, batch);
+				}
+				return;
+			}
+			
+			AccelerometerObservation data = AccelerometerObservation.obtain(Time.currentTimeMillis());
 			data.setAccuracy(event.accuracy);
 			data.setX(event.values[0]);
 			data.setY(event.values[1]);
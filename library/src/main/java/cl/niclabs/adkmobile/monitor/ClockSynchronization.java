@@ -11,6 +11,7 @@ import cl.niclabs.adkmobile.monitor.data.ClockSynchronizationState;
 import cl.niclabs.adkmobile.monitor.data.Observation;
 import cl.niclabs.adkmobile.monitor.data.constants.ClockState;
 import cl.niclabs.adkmobile.monitor.events.AbstractMonitorEvent;
+import cl.niclabs.adkmobile.monitor.events.EventRegistry;
 import cl.niclabs.adkmobile.monitor.events.MonitorEvent;
 import cl.niclabs.adkmobile.monitor.listeners.ClockSynchronizationListener;
 import cl.niclabs.adkmobile.monitor.listeners.ConnectivityListener;
@@ -65,8 +66,8 @@ public class ClockSynchronization extends AbstractMonitor<ClockSynchronizationLi
 	 */
 	private MonitorEvent<ClockSynchronizationListener> clockEvent = new AbstractMonitorEvent<ClockSynchronizationListener>() {
 		@Override
-		public synchronized boolean activate() {
-			if (!isActive()) {		
+		public boolean activate() {
+			if (startActivation()) {		
 				// Bind to the clock
 				Intent intent = new Intent(context, Clock.class);
 				if (bindService(intent, clockServiceConnection, Context.BIND_AUTO_CREATE)) {
@@ -85,13 +86,16 @@ public class ClockSynchronization extends AbstractMonitor<ClockSynchronizationLi
 					// Activate the event
 					super.activate();
 				}
+				else {
+					abortActivation();
+				}
 			}
 			return true;
 		}
 
 		@Override
-		public synchronized void deactivate() {
-			if (isActive()) {
+		public void deactivate() {
+			if (startDeactivation()) {
 				// Unbind from the service
 				unbindService(clockServiceConnection);
 				
@@ -188,6 +192,12 @@ public class ClockSynchronization extends AbstractMonitor<ClockSynchronizationLi
 		}
 	}
 	
+	@Override
+	public void onCreate() {
+		super.onCreate();
+		registerEvent(EventRegistry.CLOCK, clockEvent);
+	}
+	
 	@Override
 	public IBinder onBind(Intent intent) {
 		return serviceBinder;
@@ -15,6 +15,7 @@ import cl.niclabs.adkmobile.monitor.data.Observation;
 import cl.niclabs.adkmobile.monitor.data.constants.ConnectionType;
 import cl.niclabs.adkmobile.monitor.data.constants.NetworkState;
 import cl.niclabs.adkmobile.monitor.events.AbstractMonitorEvent;
+import cl.niclabs.adkmobile.monitor.events.EventRegistry;
 import cl.niclabs.adkmobile.monitor.events.MonitorEvent;
 import cl.niclabs.adkmobile.monitor.listeners.ConnectivityListener;
 import cl.niclabs.android.utils.Time;
@@ -30,8 +31,8 @@ import cl.niclabs.android.utils.Time;
 public class Connectivity extends AbstractMonitor<ConnectivityListener> {	
 	private MonitorEvent<ConnectivityListener> connectivityEvent = new AbstractMonitorEvent<ConnectivityListener>() {
 		@Override
-		public synchronized boolean activate() {
-			if (!isActive()) {
+		public boolean activate() {
+			if (startActivation()) {
 				IntentFilter filter = new IntentFilter();
 				filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
 				registerReceiver(connectivityMonitor, filter);
@@ -45,8 +46,8 @@ public class Connectivity extends AbstractMonitor<ConnectivityListener> {
 		}
 
 		@Override
-		public synchronized void deactivate() {
-			if (isActive()) {
+		public void deactivate() {
+			if (startDeactivation()) {
 				unregisterReceiver(connectivityMonitor);
 				
 				if(DEBUG) Log.d(TAG, "Connectivity service has been deactivated");
@@ -153,6 +154,7 @@ public class Connectivity extends AbstractMonitor<ConnectivityListener> {
 	@Override
 	public void activate(int events, Bundle configuration) {
 		if ((events & CONNECTIVITY) == CONNECTIVITY) {
+			setCoalescing(connectivityEvent, configuration, CONNECTIVITY);
 			activate(connectivityEvent);
 		}
 	}
@@ -172,6 +174,7 @@ public class Connectivity extends AbstractMonitor<ConnectivityListener> {
 	@Override
 	public void onCreate() {
 		super.onCreate();
+		registerEvent(EventRegistry.CONNECTIVITY, connectivityEvent);
 		
 		connectivityManager = (ConnectivityManager) this.getSystemService(Context.CONNECTIVITY_SERVICE);
 	}
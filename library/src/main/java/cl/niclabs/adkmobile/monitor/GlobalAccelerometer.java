@@ -6,15 +6,22 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
-import android.opengl.Matrix;
 import android.os.Bundle;
 import android.os.IBinder;
 import android.util.Log;
+import cl.niclabs.adkmobile.monitor.accelerometer.RotationEngine;
+import cl.niclabs.adkmobile.monitor.accelerometer.SensorBatching;
+import cl.niclabs.adkmobile.monitor.accelerometer.SensorBurstAssembler;
+import cl.niclabs.adkmobile.monitor.data.AccelerometerBatch;
+import cl.niclabs.adkmobile.monitor.data.AccelerometerBuffer;
 import cl.niclabs.adkmobile.monitor.data.AccelerometerObservation;
 import cl.niclabs.adkmobile.monitor.data.Observation;
 import cl.niclabs.adkmobile.monitor.events.AbstractMonitorEvent;
+import cl.niclabs.adkmobile.monitor.events.EventRegistry;
 import cl.niclabs.adkmobile.monitor.events.MonitorEvent;
+import cl.niclabs.adkmobile.monitor.listeners.AccelerometerBatchListener;
 import cl.niclabs.adkmobile.monitor.listeners.AccelerometerListener;
+import cl.niclabs.adkmobile.monitor.listeners.NonRetainingListener;
 import cl.niclabs.android.utils.Time;
 
 /**
@@ -44,6 +51,39 @@ public class GlobalAccelerometer extends AbstractMonitor<AccelerometerListener>
 	 */
 	public static final String SENSOR_DELAY_EXTRA = "sensor_delay";
 	
+	/**
+	 * Number of samples to deliver on each call to 
+	 * {@link AccelerometerBatchListener#onAccelerometerBatch(AccelerometerBatch)}.
+	 * 
+	 * A value of 1 (default) disables batching and a new observation
+	 * is created for each sensor event
+	 */
+	public static int BATCH_SIZE = 1;
+	
+	/**
+	 * Batch size extra for configuring the monitor
+	 */
+	public static final String BATCH_SIZE_EXTRA = "sensor_batch_size";
+	
+	/**
+	 * Maximum time (in milliseconds) that samples can be kept in the hardware FIFO
+	 * of the sensor hub before they are reported. A value of 0 (default) disables
+	 * FIFO batching.
+	 * 
+	 * If greater than 0 and the device supports it (Android 4.4+), the CPU is only woken
+	 * up to receive samples in bursts, each burst is notified as one 
+	 * {@link AccelerometerBatch}
+	 * and sample timestamps are reconstructed from the sensor timestamps.
+	 * 
+	 * Values above SensorBatching.MAX_REPORT_LATENCY_LIMIT (about 35 minutes) are clamped
+	 */
+	public static int MAX_REPORT_LATENCY = 0;
+	
+	/**
+	 * Max report latency extra for configuring the monitor
+	 */
+	public static final String MAX_REPORT_LATENCY_EXTRA = SensorBatching.MAX_REPORT_LATENCY_EXTRA;
+	
 	/**
 	 * Extra for configuring LPF alpha
 	 */
@@ -71,14 +111,18 @@ public class GlobalAccelerometer extends AbstractMonitor<AccelerometerListener>
 	 */
 	private MonitorEvent<AccelerometerListener> accelerometerEvent = new AbstractMonitorEvent<AccelerometerListener>() {
 		@Override
-		public synchronized boolean activate() {
-			if (!isActive()) {
-				if (!sensorManager.registerListener(GlobalAccelerometer.this, accelerometer, SENSOR_DELAY)) {
+		public boolean activate() {
+			if (startActivation()) {
+				/* Create the sample buffer before receiving sensor events */
+				assembler = SensorBatching.newAssembler(SENSOR_DELAY, MAX_REPORT_LATENCY);
+				buffer = SensorBatching.newBuffer(accelerometer, SENSOR_DELAY, MAX_REPORT_LATENCY, BATCH_SIZE);
+				
+				if (!registerSensor(accelerometer)) {
 					Log.e(TAG, "Device does not support accelerometer tracking. Stopping service.");
 					stopSelf();
 				}
 				
-				if (!sensorManager.registerListener(GlobalAccelerometer.this, magnetometer, SENSOR_DELAY)) {
+				if (!registerSensor(magnetometer)) {
 					Log.e(TAG, "Device does not support magnetometer tracking. Stopping service.");
 					stopSelf();
 				}
@@ -92,11 +136,26 @@ public class GlobalAccelerometer extends AbstractMonitor<AccelerometerListener>
 		}
 
 		@Override
-		public synchronized void deactivate() {
-			if (isActive()) {
+		public void deactivate() {
+			if (startDeactivation()) {
 				// Unregister the listener
 				sensorManager.unregisterListener(GlobalAccelerometer.this);
 				
+				// Deliver the remaining samples, a sensor event may still be in progress,
+				// so the window of the sensor thread is not reused
+				AccelerometerBuffer buffer = GlobalAccelerometer.this.buffer;
+				if (buffer != null) {
+					AccelerometerBatch remaining = null;
+					synchronized (buffer) {
+						if (buffer.available() > 0) {
+							remaining = buffer.drainCopy();
+						}
+					}
+					if (remaining != null) {
+						notifyListeners(accelerometerEvent, remaining);
+					}
+				}
+				
 				if(DEBUG) Log.d(TAG, "Global accelerometer service has been deactivated");
 				super.deactivate();
 			}
@@ -104,6 +163,29 @@ public class GlobalAccelerometer extends AbstractMonitor<AccelerometerListener>
 		
 		@Override
 		public void onDataReceived(AccelerometerListener listener, Observation result) {
+			if (result instanceof AccelerometerBatch) {
+				AccelerometerBatch batch = (AccelerometerBatch) result;
+				if (listener instanceof AccelerometerBatchListener) {
+					((AccelerometerBatchListener) listener).onAccelerometerBatch(batch);
+					return;
+				}
+				
+				/* Listeners without batch support receive one observation per sample */
+				if (listener instanceof NonRetainingListener) {
+					for (int i = 0; i < batch.size(); i++) {
+						AccelerometerObservation data = batch.obtainObservation(i);
+						listener.onAccelerometerData(data);
+						data.recycle();
+					}
+					return;
+				}
+				
+				for (int i = 0; i < batch.size(); i++) {
+					listener.onAccelerometerData(batch.getObservation(i));
+				}
+				return;
+			}
+			
 			/* Notify result */
 			listener.onAccelerometerData((AccelerometerObservation) result);
 		}
@@ -128,14 +210,14 @@ public class GlobalAccelerometer extends AbstractMonitor<AccelerometerListener>
 	private float [] linearAcceleration = new float[] {0, 0, 0, 0};
 	
 	/**
-	 * Magnetic field measurements
+	 * Rotation to earth coordinates, keeps the last magnetic field measurement
 	 */
-	private float [] geomagnetic = new float[] {0, 0, 0, 0};
+	private final RotationEngine rotation = new RotationEngine();
 	
 	/**
-	 * Rotation matrix
+	 * Acceleration in earth coordinates
 	 */
-	private float [] R = new float[16];
+	private float [] earthAcceleration = new float[] {0, 0, 0, 0};
 
 	// Timestamps for the low-pass filters
 	private float timestamp = System.nanoTime();
@@ -154,6 +236,17 @@ public class GlobalAccelerometer extends AbstractMonitor<AccelerometerListener>
 	 */
 	private SensorManager sensorManager;
 	
+	/**
+	 * Sample buffer for batch mode, null if batching is disabled
+	 */
+	private volatile AccelerometerBuffer buffer;
+	
+	/**
+	 * Sample time reconstruction for FIFO batching mode, null if disabled. It is
+	 * set before the buffer
+	 */
+	private SensorBurstAssembler assembler;
+	
 	/**
 	 * Activity-Service binder
 	 */
@@ -167,6 +260,14 @@ public class GlobalAccelerometer extends AbstractMonitor<AccelerometerListener>
 		SENSOR_DELAY = configuration.getInt(
 				SENSOR_DELAY_EXTRA, SENSOR_DELAY);
 		
+		/* Update the batch size */
+		BATCH_SIZE = configuration.getInt(
+				BATCH_SIZE_EXTRA, BATCH_SIZE);
+		
+		/* Update the max report latency */
+		MAX_REPORT_LATENCY = configuration.getInt(
+				MAX_REPORT_LATENCY_EXTRA, MAX_REPORT_LATENCY);
+		
 		/* Update the LPF alpha */
 		LPF_ALPHA = configuration.getFloat(
 				LPF_ALPHA_EXTRA, LPF_ALPHA);
@@ -176,6 +277,7 @@ public class GlobalAccelerometer extends AbstractMonitor<AccelerometerListener>
 				LPF_ALPHA_STATIC_EXTRA, LPF_ALPHA_STATIC);
 		
 		if ((events & ACCELEROMETER) == ACCELEROMETER) {
+			setAggregation(accelerometerEvent, configuration, ACCELEROMETER);
 			activate(accelerometerEvent);
 		}
 	}
@@ -200,38 +302,75 @@ public class GlobalAccelerometer extends AbstractMonitor<AccelerometerListener>
 	@Override
 	public void onCreate() {
 		super.onCreate();
+		registerEvent(EventRegistry.ACCELEROMETER, accelerometerEvent);
 		
 		sensorManager = (SensorManager)getSystemService(Context.SENSOR_SERVICE);
 	    accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
 	    magnetometer = sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
 	}
 
+	/**
+	 * Register the listener for the sensor, with the max report latency if FIFO 
+	 * batching is enabled
+	 * 
+	 * @param sensor
+	 * @return true if the sensor is supported
+	 */
+	private boolean registerSensor(Sensor sensor) {
+		return SensorBatching.registerListener(sensorManager, this, sensor, SENSOR_DELAY, MAX_REPORT_LATENCY);
+	}
+
 	@Override
 	public void onSensorChanged(SensorEvent event) {
+		AccelerometerBuffer buffer = this.buffer;
+		SensorBurstAssembler assembler = buffer != null ? this.assembler : null;
+		
+		/* Delay of the sample, only known for accelerometer samples in FIFO batching mode */
+		long delay = 0;
+		boolean burstEnd = false;
+		
 		switch (event.sensor.getType()) {
 			case Sensor.TYPE_MAGNETIC_FIELD:
-				System.arraycopy(event.values, 0, geomagnetic, 0, event.values.length);
+				rotation.setGeomagnetic(event.values);
+				
+				/* Bursts do not interleave the samples of both sensors by time, only
+				 * accelerometer samples are reported */
+				if (assembler != null) {
+					return;
+				}
 				break;
 			case Sensor.TYPE_ACCELEROMETER:
-				updateAcceleration(event.values);
+				if (assembler != null) {
+					delay = SensorBatching.getSampleDelay(assembler, event);
+					burstEnd = assembler.isBurstEnd();
+				}
+				updateAcceleration(event.values, System.nanoTime() - delay);
 				break;
 		}
 		
 		// When acceleration has been calibrated
-		if (count > 5 && SensorManager.getRotationMatrix(R, null, gravity, geomagnetic)) {
-			float [] earthAcceleration = new float[] {0, 0, 0, 0};
-			
-			// Transposed matrix
-			float[] Rt = new float[16];
-			
-			// TODO: http://developer.android.com/reference/android/hardware/SensorManager.html#getRotationMatrix(float[], float[], float[], float[])
-    		// says that R*gravity = [0 0 g] but the calculation only seems to work when we invert the Rotation matrix
-    		Matrix.transposeM(Rt, 0, R, 0);
-			
+		if (count > 5 && rotation.update()) {
     		// Apply rotation to the linear acceleration
-			Matrix.multiplyMV(earthAcceleration, 0, Rt, 0, linearAcceleration, 0);
+			rotation.rotate(linearAcceleration, earthAcceleration);
+			
+			if (buffer != null) {
+				/* Batch mode, notify once the batch (or the FIFO burst) is complete. The 
+				 * buffer is also drained on deactivation, listeners are notified outside
+				 * of the lock */
+				AccelerometerBatch batch = null;
+				synchronized (buffer) {
+					if (buffer.add(Time.currentTimeMillis() - delay / 1000000L, event.accuracy, earthAcceleration[0], 
+							earthAcceleration[1], earthAcceleration[2]) >= buffer.capacity() || burstEnd) {
+						batch = buffer.drain();
+					}
+				}
+				if (batch != null) {
+					notifyListeners(accelerometerEvent, batch);
+				}
+				return;
+			}
 						
-			AccelerometerObservation data = new AccelerometerObservation(Time.currentTimeMillis());
+			AccelerometerObservation data = AccelerometerObservation.obtain(Time.currentTimeMillis());
 			data.setAccuracy(event.accuracy);
 			data.setX(earthAcceleration[0]);
 			data.setY(earthAcceleration[1]);
@@ -246,14 +385,15 @@ public class GlobalAccelerometer extends AbstractMonitor<AccelerometerListener>
 	/**
 	 * Add a sample.
 	 * @param acceleration The acceleration data.
+	 * @param time Time of the sample (System.nanoTime() base).
 	 * @return Returns the output of the filter.
 	 */
-	private void updateAcceleration(float [] acceleration) {
+	private void updateAcceleration(float [] acceleration, long time) {
 		// Get a local copy of the sensor values
 		System.arraycopy(acceleration, 0, this.input, 0, acceleration.length);
 	
 		if (!LPF_ALPHA_STATIC) {
-			timestamp = System.nanoTime();
+			timestamp = time;
 		
 			// Find the sample period (between updates).
 			// Convert from nanoseconds to seconds
@@ -273,6 +413,8 @@ public class GlobalAccelerometer extends AbstractMonitor<AccelerometerListener>
 			linearAcceleration[0] = input[0] - gravity[0];
 			linearAcceleration[1] = input[1] - gravity[1];
 			linearAcceleration[2] = input[2] - gravity[2];
+			
+			rotation.setGravity(gravity);
 		}
 	}
 }
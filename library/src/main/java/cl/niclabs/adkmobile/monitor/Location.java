@@ -15,6 +15,7 @@ import cl.niclabs.adkmobile.monitor.data.StateChange;
 import cl.niclabs.adkmobile.monitor.data.constants.LocationState;
 import cl.niclabs.adkmobile.monitor.data.constants.StateType;
 import cl.niclabs.adkmobile.monitor.events.AbstractMonitorEvent;
+import cl.niclabs.adkmobile.monitor.events.EventRegistry;
 import cl.niclabs.adkmobile.monitor.events.MonitorEvent;
 import cl.niclabs.adkmobile.monitor.listeners.LocationListener;
 import cl.niclabs.android.utils.Time;
@@ -361,8 +362,8 @@ public class Location extends AbstractMonitor<LocationListener> {
 	private MonitorEvent<LocationListener> gpsLocationEvent = new AbstractMonitorEvent<LocationListener>() {
 
 		@Override
-		public synchronized boolean activate() {
-			if (!isActive()) {
+		public boolean activate() {
+			if (startActivation()) {
 				locationManager.addGpsStatusListener(gpsStatusListener);
 				locationManager.requestLocationUpdates(
 						LocationManager.GPS_PROVIDER, UPDATE_TIME_GPS * 1000,
@@ -376,15 +377,15 @@ public class Location extends AbstractMonitor<LocationListener> {
 		}
 
 		@Override
-		public synchronized void deactivate() {
-			if (isActive()) {
-				super.deactivate();
-
+		public void deactivate() {
+			if (startDeactivation()) {
 				locationManager.removeUpdates(locationListener);
 				locationManager.removeGpsStatusListener(gpsStatusListener);
 
 				if (DEBUG)
 					Log.d(TAG, "Location GPS service terminated...");
+
+				super.deactivate();
 			}
 		}
 
@@ -405,29 +406,29 @@ public class Location extends AbstractMonitor<LocationListener> {
 	private MonitorEvent<LocationListener> networkLocationEvent = new AbstractMonitorEvent<LocationListener>() {
 
 		@Override
-		public synchronized boolean activate() {
-			if (!isActive()) {
-				super.activate();
-
+		public boolean activate() {
+			if (startActivation()) {
 				locationManager.requestLocationUpdates(
 						LocationManager.NETWORK_PROVIDER,
 						UPDATE_TIME_NETWORK * 1000, UPDATE_DISTANCE_NETWORK,
 						locationListener);
 				if (DEBUG)
 					Log.d(TAG, "Location tracking with Network is active");
+
+				super.activate();
 			}
 			return true;
 		}
 
 		@Override
-		public synchronized void deactivate() {
-			if (isActive()) {
-				super.deactivate();
-
+		public void deactivate() {
+			if (startDeactivation()) {
 				locationManager.removeUpdates(locationListener);
 
 				if (DEBUG)
 					Log.d(TAG, "Locations network service terminated...");
+
+				super.deactivate();
 			}
 		}
 
@@ -453,6 +454,8 @@ public class Location extends AbstractMonitor<LocationListener> {
 			UPDATE_DISTANCE_GPS = configuration.getInt(
 					UPDATE_DISTANCE_GPS_EXTRA, UPDATE_DISTANCE_GPS);
 
+			setAggregation(gpsLocationEvent, configuration, LOCATION_GPS);
+			setCoalescing(gpsLocationEvent, configuration, LOCATION_GPS);
 			activate(gpsLocationEvent);
 		}
 		if ((events & LOCATION_NETWORK) == LOCATION_NETWORK) {
@@ -461,6 +464,8 @@ public class Location extends AbstractMonitor<LocationListener> {
 			UPDATE_DISTANCE_NETWORK = configuration.getInt(
 					UPDATE_DISTANCE_NETWORK_EXTRA, UPDATE_DISTANCE_NETWORK);
 
+			setAggregation(networkLocationEvent, configuration, LOCATION_NETWORK);
+			setCoalescing(networkLocationEvent, configuration, LOCATION_NETWORK);
 			activate(networkLocationEvent);
 		}
 	}
@@ -537,6 +542,8 @@ public class Location extends AbstractMonitor<LocationListener> {
 	@Override
 	public void onCreate() {
 		super.onCreate();
+		registerEvent(EventRegistry.LOCATION_GPS, gpsLocationEvent);
+		registerEvent(EventRegistry.LOCATION_NETWORK, networkLocationEvent);
 		locationManager = (LocationManager) getSystemService(LOCATION_SERVICE);
 	}
 
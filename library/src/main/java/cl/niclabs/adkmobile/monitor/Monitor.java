@@ -4,6 +4,7 @@ import android.os.Binder;
 import android.os.Bundle;
 import cl.niclabs.adkmobile.AdkintunMobileApp;
 import cl.niclabs.adkmobile.monitor.data.Observation;
+import cl.niclabs.adkmobile.monitor.events.EventSet;
 import cl.niclabs.adkmobile.monitor.events.MonitorEvent;
 import cl.niclabs.adkmobile.monitor.listeners.MonitorListener;
 
@@ -108,7 +109,9 @@ public interface Monitor<E extends MonitorListener> {
 	public static final int ACCELEROMETER = 1024;
 
 	/**
-	 * Reserved ids for custom events in the application using this library
+	 * Reserved ids for custom events in the application using this library. 
+	 * Monitors that need more events, or may be used along other custom monitors,
+	 * should register named events with EventRegistry.register() instead
 	 */
 	public static final int CUSTOM_1 = 8192;
 	public static final int CUSTOM_2 = 16384;
@@ -244,6 +247,25 @@ public interface Monitor<E extends MonitorListener> {
 		 */
 		public void deactivate(int events);
 
+		/**
+		 * Activate the events in the set upon binding. Events without a flag
+		 * are only activated if the monitor extends AbstractMonitor (see
+		 * AbstractMonitor.activate(EventSet, Bundle))
+		 * 
+		 * @param events
+		 * @param configuration
+		 *            configuration for the events, can be null in which case is
+		 *            ignored
+		 */
+		public void activate(EventSet events, Bundle configuration);
+
+		/**
+		 * Deactivate the events in the set if the monitor is bound.
+		 * 
+		 * @param events
+		 */
+		public void deactivate(EventSet events);
+
 		/**
 		 * Remove listeners and unbind the service if bound. It does not
 		 * deactivate the service to avoid disrupting other binding services
@@ -13,6 +13,7 @@ import cl.niclabs.adkmobile.monitor.data.StateChange;
 import cl.niclabs.adkmobile.monitor.data.constants.ScreenState;
 import cl.niclabs.adkmobile.monitor.data.constants.StateType;
 import cl.niclabs.adkmobile.monitor.events.AbstractMonitorEvent;
+import cl.niclabs.adkmobile.monitor.events.EventRegistry;
 import cl.niclabs.adkmobile.monitor.events.MonitorEvent;
 import cl.niclabs.adkmobile.monitor.listeners.ScreenListener;
 import cl.niclabs.android.utils.Time;
@@ -78,9 +79,8 @@ public class Screen extends AbstractMonitor<ScreenListener> {
 	private MonitorEvent<ScreenListener> screenEvent = new AbstractMonitorEvent<ScreenListener>() {
 		
 		@Override
-		public synchronized boolean activate() {
-			if (!isActive()) {
-				super.activate();
+		public boolean activate() {
+			if (startActivation()) {
 				IntentFilter filter = new IntentFilter();
 				filter.addAction(Intent.ACTION_SCREEN_ON);
 		        filter.addAction(Intent.ACTION_SCREEN_OFF);
@@ -89,16 +89,17 @@ public class Screen extends AbstractMonitor<ScreenListener> {
 				
 				
 				Log.d(TAG, "Screen service has been activated");
+				super.activate();
 			}
 			return true;
 		}
 		
 		@Override
-		public synchronized void deactivate() {
-			if (isActive()) {
-				super.deactivate();
+		public void deactivate() {
+			if (startDeactivation()) {
 				unregisterReceiver(screenMonitor);
 				Log.d(TAG, "Screen service has been deactivated");
+				super.deactivate();
 			}
 		}
 		
@@ -123,6 +124,12 @@ public class Screen extends AbstractMonitor<ScreenListener> {
 		}
 	}
 	
+	@Override
+	public void onCreate() {
+		super.onCreate();
+		registerEvent(EventRegistry.SCREEN, screenEvent);
+	}
+	
 	@Override
 	public IBinder onBind(Intent intent) {
 		return serviceBinder;
@@ -1,6 +1,5 @@
 package cl.niclabs.adkmobile.monitor;
 
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -15,11 +14,21 @@ import android.net.NetworkInfo;
 import android.os.Build;
 import android.os.Build.VERSION;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
 import android.provider.Settings;
+import android.telephony.CellIdentityCdma;
+import android.telephony.CellIdentityGsm;
+import android.telephony.CellIdentityLte;
+import android.telephony.CellIdentityWcdma;
 import android.telephony.CellInfo;
+import android.telephony.CellInfoCdma;
+import android.telephony.CellInfoGsm;
+import android.telephony.CellInfoLte;
+import android.telephony.CellInfoWcdma;
 import android.telephony.CellLocation;
 import android.telephony.NeighboringCellInfo;
+import android.telephony.CellSignalStrengthCdma;
 import android.telephony.PhoneStateListener;
 import android.telephony.TelephonyManager;
 import android.telephony.cdma.CdmaCellLocation;
@@ -38,8 +47,11 @@ import cl.niclabs.adkmobile.monitor.data.constants.SimState;
 import cl.niclabs.adkmobile.monitor.data.constants.StateType;
 import cl.niclabs.adkmobile.monitor.data.constants.TelephonyStandard;
 import cl.niclabs.adkmobile.monitor.events.AbstractMonitorEvent;
+import cl.niclabs.adkmobile.monitor.events.EventRegistry;
 import cl.niclabs.adkmobile.monitor.events.MonitorEvent;
 import cl.niclabs.adkmobile.monitor.listeners.TelephonyListener;
+import cl.niclabs.adkmobile.monitor.telephony.DbmMethod;
+import cl.niclabs.adkmobile.monitor.telephony.NeighborTracker;
 import cl.niclabs.android.utils.Time;
 
 /**
@@ -52,6 +64,34 @@ import cl.niclabs.android.utils.Time;
  * @author Mauricio Castro. Created 04-10-2013.
  */
 public class Telephony extends AbstractMonitor<TelephonyListener> {
+	/**
+	 * Time window (in seconds) to aggregate signal strength readings. Readings
+	 * are accumulated in the samples of the current observation and listeners
+	 * are notified once per window. The samples are reset on the first reading of
+	 * each window, so they only summarize the readings of the window. If 0, listeners
+	 * are notified on every reading
+	 * 
+	 * If greater than 0, telephony observations are not coalesced (see 
+	 * setCoalescing()), since the window already limits the notification rate and
+	 * the samples of a window replaced before its delivery would be reset
+	 */
+	public static int SIGNAL_AGGREGATION_WINDOW = 0;
+
+	/**
+	 * Extra key for the signal aggregation window
+	 */
+	public static final String SIGNAL_AGGREGATION_WINDOW_EXTRA = "telephony_signal_aggregation_window";
+
+	/**
+	 * Value of unknown CellInfo fields
+	 */
+	private static final int CELL_UNKNOWN = Integer.MAX_VALUE;
+
+	/**
+	 * Reads the signal strength with the hidden SignalStrength.getDbm() method
+	 */
+	private static final DbmMethod dbmMethod = new DbmMethod();
+
 	/**
 	 * Listens to telephony events and notifies the listeners
 	 *
@@ -68,6 +108,13 @@ public class Telephony extends AbstractMonitor<TelephonyListener> {
 		@Override
 		public void onCellLocationChanged(CellLocation location) {
 			super.onCellLocationChanged(location);
+
+			/* Use the cell info if available, the neighboring cell info is deprecated */
+			if (VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+					&& updateCellInfo(telephonyManager.getAllCellInfo())) {
+				return;
+			}
+
 			// TODO: What if the telephony service is disabled
 			if (location instanceof GsmCellLocation) {
 				GsmCellLocation loc = (GsmCellLocation) location;
@@ -129,6 +176,7 @@ public class Telephony extends AbstractMonitor<TelephonyListener> {
 				}
 
 				/* Notify listeners and update internal state */
+				flushSignalWindow();
 				notifyListeners(telephonyEvent, data);
 
 				/* Log the results */
@@ -167,6 +215,7 @@ public class Telephony extends AbstractMonitor<TelephonyListener> {
 				}
 
 				/* Notify listeners and update internal state */
+				flushSignalWindow();
 				notifyListeners(telephonyEvent, data);
 
 				/* Log the results */
@@ -182,7 +231,12 @@ public class Telephony extends AbstractMonitor<TelephonyListener> {
 		@Override
 		public void onCellInfoChanged(List<CellInfo> cellInfo) {
 			super.onCellInfoChanged(cellInfo);
-			// TODO Add cell info detection
+
+			/* Some devices notify the change without the list */
+			if (cellInfo == null) {
+				cellInfo = telephonyManager.getAllCellInfo();
+			}
+			updateCellInfo(cellInfo);
 		}
 
 		@Override
@@ -203,9 +257,14 @@ public class Telephony extends AbstractMonitor<TelephonyListener> {
 					data.setGsmPsc(old.getGsmPsc());
 					data.setMcc(old.getMcc());
 					data.setMnc(old.getMnc());
-					data.setNeighborList(old.getNeighborList());
+
+					/* With cell info, neighbors are only reported when they change */
+					if (!cellInfoSupported) {
+						data.setNeighborList(old.getNeighborList());
+					}
 
 					/* Notify listeners and update internal state */
+					flushSignalWindow();
 					notifyListeners(telephonyEvent, data);
 
 					/* Log the results */
@@ -229,6 +288,7 @@ public class Telephony extends AbstractMonitor<TelephonyListener> {
 					data.setSystemId(old.getSystemId());
 
 					/* Notify listeners and update internal state */
+					flushSignalWindow();
 					notifyListeners(telephonyEvent, data);
 
 					/* Log the results */
@@ -266,67 +326,58 @@ public class Telephony extends AbstractMonitor<TelephonyListener> {
 			if (lastObservation != null) {
 				boolean changed = false;
 
-                /* Try reflection to use the 'getDbm' method, else use the classic method */
-                try {
-                    Method currentSignalStrengthMethod = signalStrength.getClass().getDeclaredMethod("getDbm");
-                    int currentSignalStrength = (int)currentSignalStrengthMethod.invoke(signalStrength);
+				/* Use the 'getDbm' method if available, else use the classic method */
+				int currentSignalStrength = lastObservation instanceof GsmObservation
+						? dbmMethod.getDbm(signalStrength) : DbmMethod.UNAVAILABLE;
+				if (currentSignalStrength != DbmMethod.UNAVAILABLE) {
+					GsmObservation updatedObservation = (GsmObservation) startSignalUpdate();
+					updatedObservation
+							.updateSignalStrength(currentSignalStrength);
 
-                    GsmObservation updatedObservation = (GsmObservation) lastObservation;
-                    updatedObservation
-                            .updateSignalStrength(currentSignalStrength);
-
-                    changed = true;
+					changed = true;
+				} else if (signalStrength.isGsm()) {
+					/* convert the Signal Strength from GSM to Dbm */
+					if (signalStrength.getGsmSignalStrength() >= 0
+							&& signalStrength.getGsmSignalStrength() <= 31) {
+						int signalStrengthDbm = (signalStrength
+								.getGsmSignalStrength() * 2) - 113;
+						GsmObservation updatedObservation = (GsmObservation) startSignalUpdate();
+						updatedObservation
+								.updateSignalStrength(signalStrengthDbm);
+
+						changed = true;
+					}
 
-                } catch (Exception e) {
-                    if (signalStrength.isGsm()) {
-                        GsmObservation updatedObservation = (GsmObservation) lastObservation;
+					// Check that bit error rate is in correct range, since not
+					// all devices return the correct value
+					if (signalStrength.getGsmBitErrorRate() >= 0
+							&& signalStrength.getGsmBitErrorRate() <= 7) {
+						double gsmBerPercent = gsmBerTable[signalStrength
+								.getGsmBitErrorRate()] / 100;
+						GsmObservation updatedObservation = (GsmObservation) startSignalUpdate();
+						updatedObservation.updateSignalBer(gsmBerPercent);
 
-					/* convert the Signal Strength from GSM to Dbm */
-                        if (signalStrength.getGsmSignalStrength() >= 0
-								&& signalStrength.getGsmSignalStrength() <= 31) {
-                            int signalStrengthDbm = (signalStrength
-                                    .getGsmSignalStrength() * 2) - 113;
-                            updatedObservation
-                                    .updateSignalStrength(signalStrengthDbm);
-
-                            changed = true;
-                        }
-
-                        // Check that bit error rate is in correct range, since not
-                        // all devices return the correct value
-                        if (signalStrength.getGsmBitErrorRate() >= 0
-                                && signalStrength.getGsmBitErrorRate() <= 7) {
-                            double gsmBerPercent = gsmBerTable[signalStrength
-                                    .getGsmBitErrorRate()] / 100;
-                            updatedObservation.updateSignalBer(gsmBerPercent);
-
-                            changed = true;
-                        }
-                    } else {
-                        CdmaObservation updatedObservation = (CdmaObservation) lastObservation;
-
-                        updatedObservation.updateSignalStrength(signalStrength
-                                .getCdmaDbm());
-                        updatedObservation.updateCdmaEcio(signalStrength
-                                .getCdmaEcio());
-                        updatedObservation.updateEvdoDbm(signalStrength
-                                .getEvdoDbm());
-                        updatedObservation.updateEvdoEcio(signalStrength
-                                .getEvdoEcio());
-                        updatedObservation.updateEvdoSnr(signalStrength
-                                .getEvdoSnr());
-
-                        changed = true;
-                    }
-                }
+						changed = true;
+					}
+				} else {
+					CdmaObservation updatedObservation = (CdmaObservation) startSignalUpdate();
+
+					updatedObservation.updateSignalStrength(signalStrength
+							.getCdmaDbm());
+					updatedObservation.updateCdmaEcio(signalStrength
+							.getCdmaEcio());
+					updatedObservation.updateEvdoDbm(signalStrength
+							.getEvdoDbm());
+					updatedObservation.updateEvdoEcio(signalStrength
+							.getEvdoEcio());
+					updatedObservation.updateEvdoSnr(signalStrength
+							.getEvdoSnr());
+
+					changed = true;
+				}
 
 				if (changed) {
-					/* Notify listeners and update internal state */
-					notifyListeners(telephonyEvent, lastObservation);
-
-					/* Log the results */
-					if (DEBUG)
-						Log.v(TAG, lastObservation.toString());
+					notifySignalUpdate();
 				}
 			}
 		}
@@ -411,6 +462,380 @@ public class Telephony extends AbstractMonitor<TelephonyListener> {
 	private NetworkType lastNetworkType = null;
 	private TelephonyObservation<?> lastObservation = null;
 
+	/**
+	 * Used to end signal aggregation windows. Phone state callbacks are
+	 * received on the main thread
+	 */
+	private final Handler handler = new Handler();
+
+	/**
+	 * True if the last observation has signal readings not yet notified
+	 */
+	private boolean signalPending = false;
+
+	private final Runnable signalWindowTask = new Runnable() {
+		@Override
+		public void run() {
+			flushSignalWindow();
+		}
+	};
+
+	/**
+	 * Get the last observation to update its signal readings. On the first reading
+	 * of a window the signal samples are reset and the end of the window is scheduled
+	 * 
+	 * @return the last observation
+	 */
+	private TelephonyObservation<?> startSignalUpdate() {
+		if (!signalPending) {
+			signalPending = true;
+			lastObservation.resetSignal();
+			
+			if (SIGNAL_AGGREGATION_WINDOW > 0) {
+				handler.postDelayed(signalWindowTask, SIGNAL_AGGREGATION_WINDOW * 1000L);
+			}
+		}
+		return lastObservation;
+	}
+
+	/**
+	 * Notify the signal strength update of the last observation, or wait for
+	 * the end of the aggregation window
+	 */
+	private void notifySignalUpdate() {
+		if (SIGNAL_AGGREGATION_WINDOW <= 0) {
+			flushSignalWindow();
+		}
+	}
+
+	/**
+	 * Notify the last observation if it has pending signal readings
+	 */
+	private void flushSignalWindow() {
+		if (!signalPending) {
+			return;
+		}
+		signalPending = false;
+		handler.removeCallbacks(signalWindowTask);
+
+		/* Notify listeners and update internal state */
+		notifyListeners(telephonyEvent, lastObservation);
+
+		/* Log the results */
+		if (DEBUG)
+			Log.v(TAG, lastObservation.toString());
+	}
+
+	/**
+	 * True if the device reports the serving cell through CellInfo
+	 */
+	private boolean cellInfoSupported = false;
+
+	/**
+	 * Neighbors reported by the last cell info update
+	 */
+	private final NeighborTracker neighborTracker = new NeighborTracker();
+
+	/**
+	 * Process a list of cells. A new observation for the registered (serving)
+	 * cell is notified if the serving cell changed or if any of the neighbors is new
+	 * or changed its signal strength. Only the changed neighbors are added to the
+	 * observation.
+	 *
+	 * @param cells
+	 * @return true if the list contained the serving cell
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+	private boolean updateCellInfo(List<CellInfo> cells) {
+		if (cells == null || cells.isEmpty()) {
+			return false;
+		}
+
+		TelephonyObservation<?> data = null;
+		List<NeighborAntenna> changedNeighbors = null;
+
+		neighborTracker.begin();
+		for (CellInfo cell : cells) {
+			if (cell.isRegistered()) {
+				if (data == null) {
+					data = getCellObservation(cell);
+				}
+				continue;
+			}
+
+			NeighborAntenna neighbor = getChangedNeighbor(cell);
+			if (neighbor != null) {
+				if (changedNeighbors == null) {
+					changedNeighbors = new ArrayList<NeighborAntenna>();
+				}
+				changedNeighbors.add(neighbor);
+			}
+		}
+		neighborTracker.end();
+
+		if (data == null) {
+			return false;
+		}
+		cellInfoSupported = true;
+
+		if (changedNeighbors == null && isSameCell(data, lastObservation)) {
+			return true;
+		}
+
+		if (changedNeighbors != null && data instanceof GsmObservation) {
+			((GsmObservation) data).setNeighborList(changedNeighbors);
+		}
+
+		/* Notify listeners and update internal state */
+		flushSignalWindow();
+		notifyListeners(telephonyEvent, data);
+
+		/* Log the results */
+		if (DEBUG)
+			Log.v(TAG, data.toString());
+
+		/* Update last observation */
+		lastObservation = data;
+		return true;
+	}
+
+	/**
+	 * Create the observation for a serving cell. GSM, WCDMA and LTE cells are
+	 * reported as GsmObservation (telephony standard GSM, as for the 3GPP family),
+	 * where the LTE cell identity, tracking area code and physical cell id are
+	 * stored as cell id, location area code and primary scrambling code respectively.
+	 * The network type is the one of the cell technology (see getCellNetworkType())
+	 *
+	 * @param cell
+	 * @return the observation or null if the cell type is not supported
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+	private TelephonyObservation<?> getCellObservation(CellInfo cell) {
+		if (cell instanceof CellInfoCdma) {
+			CellIdentityCdma identity = ((CellInfoCdma) cell).getCellIdentity();
+			CellSignalStrengthCdma signal = ((CellInfoCdma) cell).getCellSignalStrength();
+
+			CdmaObservation data = new CdmaObservation(Time.currentTimeMillis());
+			data.setTelephonyStandard(TelephonyStandard.CDMA);
+			data.setCdmaBaseStationId(identity.getBasestationId());
+			data.setCdmaBaseLongitude(identity.getLongitude());
+			data.setCdmaBaseLatitude(identity.getLatitude());
+			data.setNetworkId(identity.getNetworkId());
+			data.setSystemId(identity.getSystemId());
+			setOperator(data, telephonyManager.getSimOperator());
+
+			data.updateSignalStrength(signal.getCdmaDbm());
+			data.updateCdmaEcio(signal.getCdmaEcio());
+			data.updateEvdoDbm(signal.getEvdoDbm());
+			data.updateEvdoEcio(signal.getEvdoEcio());
+			data.updateEvdoSnr(signal.getEvdoSnr());
+			setCellNetworkType(data, cell);
+			return data;
+		}
+
+		int cid, lac, psc, mcc, mnc, dbm;
+		if (cell instanceof CellInfoGsm) {
+			CellIdentityGsm identity = ((CellInfoGsm) cell).getCellIdentity();
+			cid = identity.getCid();
+			lac = identity.getLac();
+			psc = CELL_UNKNOWN;
+			mcc = identity.getMcc();
+			mnc = identity.getMnc();
+			dbm = ((CellInfoGsm) cell).getCellSignalStrength().getDbm();
+		}
+		else if (cell instanceof CellInfoLte) {
+			CellIdentityLte identity = ((CellInfoLte) cell).getCellIdentity();
+			cid = identity.getCi();
+			lac = identity.getTac();
+			psc = identity.getPci();
+			mcc = identity.getMcc();
+			mnc = identity.getMnc();
+			dbm = ((CellInfoLte) cell).getCellSignalStrength().getDbm();
+		}
+		else if (VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+				&& cell instanceof CellInfoWcdma) {
+			CellIdentityWcdma identity = ((CellInfoWcdma) cell).getCellIdentity();
+			cid = identity.getCid();
+			lac = identity.getLac();
+			psc = identity.getPsc();
+			mcc = identity.getMcc();
+			mnc = identity.getMnc();
+			dbm = ((CellInfoWcdma) cell).getCellSignalStrength().getDbm();
+		}
+		else {
+			return null;
+		}
+
+		GsmObservation data = new GsmObservation(Time.currentTimeMillis());
+		data.setTelephonyStandard(TelephonyStandard.GSM);
+		data.setGsmCid(cid);
+		data.setGsmLac(lac);
+		if (psc != CELL_UNKNOWN) {
+			data.setGsmPsc(psc);
+		}
+
+		if (mcc != CELL_UNKNOWN && mnc != CELL_UNKNOWN) {
+			data.setMcc(mcc);
+			data.setMnc(mnc);
+		}
+		else {
+			setOperator(data, telephonyManager.getNetworkOperator());
+		}
+
+		if (dbm != CELL_UNKNOWN) {
+			data.updateSignalStrength(dbm);
+		}
+		setCellNetworkType(data, cell);
+		return data;
+	}
+
+	/**
+	 * Set the network type of the observation from the technology of the serving
+	 * cell. The last network type reported by the data connection is used only if it
+	 * belongs to the cell technology (e.g. HSPA for a WCDMA cell), since it may be
+	 * outdated or refer to a different cell. Otherwise LTE cells are reported as LTE, 
+	 * WCDMA cells as UMTS and the network type of GSM and CDMA cells is not set
+	 *
+	 * @param data
+	 * @param cell
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+	private void setCellNetworkType(TelephonyObservation<?> data, CellInfo cell) {
+		NetworkType networkType = lastNetworkType;
+		if (cell instanceof CellInfoLte) {
+			networkType = NetworkType.LTE;
+		}
+		else if (VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+				&& cell instanceof CellInfoWcdma) {
+			if (!isWcdmaNetworkType(networkType)) {
+				networkType = NetworkType.UMTS;
+			}
+		}
+		else if (cell instanceof CellInfoGsm) {
+			if (networkType != NetworkType.GPRS && networkType != NetworkType.EDGE) {
+				networkType = null;
+			}
+		}
+		else if (cell instanceof CellInfoCdma) {
+			if (!isCdmaNetworkType(networkType)) {
+				networkType = null;
+			}
+		}
+
+		if (networkType != null) {
+			data.setNetworkType(networkType);
+		}
+	}
+
+	private static boolean isWcdmaNetworkType(NetworkType networkType) {
+		return networkType == NetworkType.UMTS || networkType == NetworkType.HSDPA
+				|| networkType == NetworkType.HSUPA || networkType == NetworkType.HSPA
+				|| networkType == NetworkType.HSPAP;
+	}
+
+	private static boolean isCdmaNetworkType(NetworkType networkType) {
+		return networkType == NetworkType.CDMA || networkType == NetworkType.RTT
+				|| networkType == NetworkType.EVDO_0 || networkType == NetworkType.EVDO_A
+				|| networkType == NetworkType.EVDO_B || networkType == NetworkType.EHRPD;
+	}
+
+	/**
+	 * Create the neighbor antenna for a neighboring cell if the cell is new or its
+	 * signal strength changed since the last update. Only GSM, WCDMA and LTE cells are
+	 * reported as neighbors
+	 *
+	 * @param cell
+	 * @return the neighbor or null if the neighbor did not change or is unknown
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+	private NeighborAntenna getChangedNeighbor(CellInfo cell) {
+		int cid, lac, psc, dbm;
+		if (cell instanceof CellInfoGsm) {
+			CellIdentityGsm identity = ((CellInfoGsm) cell).getCellIdentity();
+			cid = identity.getCid();
+			lac = identity.getLac();
+			psc = identity.getPsc();
+			dbm = ((CellInfoGsm) cell).getCellSignalStrength().getDbm();
+		}
+		else if (cell instanceof CellInfoLte) {
+			CellIdentityLte identity = ((CellInfoLte) cell).getCellIdentity();
+			cid = identity.getCi();
+			lac = identity.getTac();
+			psc = identity.getPci();
+			dbm = ((CellInfoLte) cell).getCellSignalStrength().getDbm();
+		}
+		else if (VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+				&& cell instanceof CellInfoWcdma) {
+			CellIdentityWcdma identity = ((CellInfoWcdma) cell).getCellIdentity();
+			cid = identity.getCid();
+			lac = identity.getLac();
+			psc = identity.getPsc();
+			dbm = ((CellInfoWcdma) cell).getCellSignalStrength().getDbm();
+		}
+		else {
+			return null;
+		}
+
+		// Only report neighbors with a known identity
+		if (cid == CELL_UNKNOWN || lac == CELL_UNKNOWN) {
+			return null;
+		}
+
+		if (!neighborTracker.add(cid, lac, psc, dbm)) {
+			return null;
+		}
+
+		NeighborAntenna neighbor = new NeighborAntenna();
+		neighbor.setGsmCid(cid);
+		neighbor.setGsmLac(lac);
+		neighbor.setGsmPsc(psc == CELL_UNKNOWN ? -1 : psc);
+		if (dbm != CELL_UNKNOWN) {
+			neighbor.setSignalStrength(dbm);
+		}
+		return neighbor;
+	}
+
+	/**
+	 * Set the mcc and mnc of the observation from the operator code
+	 *
+	 * @param data
+	 * @param operator
+	 */
+	private static void setOperator(TelephonyObservation<?> data, String operator) {
+		if (operator == null) {
+			return;
+		}
+
+		try {
+			data.setMcc(Integer.valueOf(operator.substring(0, 3)));
+			data.setMnc(Integer.valueOf(operator.substring(3)));
+		} catch (IndexOutOfBoundsException e) {
+		} catch (NumberFormatException e) {
+		}
+	}
+
+	/**
+	 * @param data
+	 * @param last
+	 * @return true if both observations refer to the same serving cell
+	 */
+	private static boolean isSameCell(TelephonyObservation<?> data, TelephonyObservation<?> last) {
+		if (data instanceof GsmObservation && last instanceof GsmObservation) {
+			GsmObservation a = (GsmObservation) data;
+			GsmObservation b = (GsmObservation) last;
+			return a.getGsmCid() == b.getGsmCid() && a.getGsmLac() == b.getGsmLac()
+					&& (a.getGsmPsc() == null ? b.getGsmPsc() == null : a.getGsmPsc().equals(b.getGsmPsc()));
+		}
+
+		if (data instanceof CdmaObservation && last instanceof CdmaObservation) {
+			CdmaObservation a = (CdmaObservation) data;
+			CdmaObservation b = (CdmaObservation) last;
+			return a.getCdmaBaseStationId() == b.getCdmaBaseStationId()
+					&& a.getNetworkId() == b.getNetworkId() && a.getSystemId() == b.getSystemId();
+		}
+		return false;
+	}
+
 	/**
 	 * Activity-Service binder
 	 */
@@ -425,8 +850,8 @@ public class Telephony extends AbstractMonitor<TelephonyListener> {
 	private MonitorEvent<TelephonyListener> telephonyEvent = new AbstractMonitorEvent<TelephonyListener>() {
 		@SuppressLint("InlinedApi")
 		@Override
-		public synchronized boolean activate() {
-			if (!isActive()) {
+		public boolean activate() {
+			if (startActivation()) {
 				telephonyManager = (TelephonyManager) getSystemService(TELEPHONY_SERVICE);
 
 				int events = PhoneStateListener.LISTEN_CELL_LOCATION
@@ -479,13 +904,26 @@ public class Telephony extends AbstractMonitor<TelephonyListener> {
 		}
 
 		@Override
-		public synchronized void deactivate() {
-			if (isActive()) {
+		public boolean isCoalescable(Observation result) {
+			/* State changes are always delivered, as well as signal windows (see 
+			 * SIGNAL_AGGREGATION_WINDOW) */
+			return result instanceof TelephonyObservation && SIGNAL_AGGREGATION_WINDOW <= 0;
+		}
+
+		@Override
+		public void deactivate() {
+			if (startDeactivation()) {
 				telephonyManager.listen(telephonyStateListener,
 						PhoneStateListener.LISTEN_NONE);
 
 				unregisterReceiver(airplaneModeMonitor);
 
+				/* Notify the readings of the current window */
+				flushSignalWindow();
+
+				/* Report all neighbors on the next activation */
+				neighborTracker.clear();
+
 				if (DEBUG)
 					Log.d(TAG, "Telephony service has been deactivated");
 				super.deactivate();
@@ -523,7 +961,12 @@ public class Telephony extends AbstractMonitor<TelephonyListener> {
 
 	@Override
 	public void activate(int events, Bundle configuration) {
+		/* Update the signal aggregation window */
+		SIGNAL_AGGREGATION_WINDOW = configuration.getInt(
+				SIGNAL_AGGREGATION_WINDOW_EXTRA, SIGNAL_AGGREGATION_WINDOW);
+
 		if ((events & TELEPHONY) == TELEPHONY) {
+			setCoalescing(telephonyEvent, configuration, TELEPHONY);
 			activate(telephonyEvent);
 		}
 	}
@@ -535,6 +978,12 @@ public class Telephony extends AbstractMonitor<TelephonyListener> {
 		}
 	}
 
+	@Override
+	public void onCreate() {
+		super.onCreate();
+		registerEvent(EventRegistry.TELEPHONY, telephonyEvent);
+	}
+
 	@Override
 	public IBinder onBind(Intent intent) {
 		return serviceBinder;
@@ -5,36 +5,38 @@ import android.app.ActivityManager;
 import android.app.ActivityManager.RunningAppProcessInfo;
 import android.app.usage.NetworkStats;
 import android.app.usage.NetworkStatsManager;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
+import android.content.IntentFilter;
 import android.net.ConnectivityManager;
-import android.net.TrafficStats;
 import android.os.Build;
 import android.os.Build.VERSION;
 import android.os.Bundle;
 import android.os.IBinder;
+import android.os.PowerManager;
 import android.os.RemoteException;
 import android.telephony.TelephonyManager;
 import android.util.Log;
-import android.util.SparseArray;
 
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 
 import cl.niclabs.adkmobile.monitor.data.Observation;
 import cl.niclabs.adkmobile.monitor.data.TrafficObservation;
 import cl.niclabs.adkmobile.monitor.data.constants.ConnectionType;
 import cl.niclabs.adkmobile.monitor.events.AbstractMonitorEvent;
+import cl.niclabs.adkmobile.monitor.events.EventRegistry;
 import cl.niclabs.adkmobile.monitor.events.MonitorEvent;
 import cl.niclabs.adkmobile.monitor.listeners.TrafficListener;
-import cl.niclabs.android.utils.Scheduler;
+import cl.niclabs.adkmobile.monitor.traffic.AdaptiveTask;
+import cl.niclabs.adkmobile.monitor.traffic.AndroidTrafficSource;
+import cl.niclabs.adkmobile.monitor.traffic.TrafficCheckpoints;
+import cl.niclabs.adkmobile.monitor.traffic.TrafficSnapshot;
+import cl.niclabs.adkmobile.monitor.traffic.TrafficSource;
+import cl.niclabs.adkmobile.monitor.traffic.UidCounterTable;
+import cl.niclabs.adkmobile.monitor.traffic.UidRegistry;
 import cl.niclabs.android.utils.Time;
 
 /**
@@ -59,6 +61,29 @@ public class Traffic extends AbstractMonitor<TrafficListener> {
 	 */
 	public static final String TRAFFIC_UPDATE_INTERVAL_EXTRA = "traffic_update_interval";
 
+	/**
+	 * @var Adapt the sampling intervals to the activity. While there is no traffic
+	 * or the screen is off, the interval is doubled after each sample up to
+	 * MAX_TRAFFIC_UPDATE_FACTOR times the base interval. The base interval is restored
+	 * when traffic is detected or the screen is turned on
+	 */
+	public static boolean ADAPTIVE_TRAFFIC_UPDATE = false;
+
+	/**
+	 * Extra key for enabling adaptive traffic update intervals
+	 */
+	public static final String ADAPTIVE_TRAFFIC_UPDATE_EXTRA = "traffic_adaptive_update";
+
+	/**
+	 * @var Maximum interval for adaptive updates, as a multiple of the base interval
+	 */
+	public static int MAX_TRAFFIC_UPDATE_FACTOR = 32;
+
+	/**
+	 * Extra key for configuring the maximum interval factor
+	 */
+	public static final String MAX_TRAFFIC_UPDATE_FACTOR_EXTRA = "traffic_max_update_factor";
+
 	/**
 	 * Represents a mobile network for storage
 	 */
@@ -74,7 +99,17 @@ public class Traffic extends AbstractMonitor<TrafficListener> {
      */
     public static final String PREFERENCE_FILE = "cl.niclabs.adkintunmobile.PREFERENCE_FILE";
 
-	private Context mContext = this;
+	/**
+	 * @var Read application traffic for Android 6+ with a single summary query per
+	 * network type instead of one query per UID. Summaries are read since the last
+	 * sweep, so the per-UID buckets (and their timestamps) are not reported
+	 */
+	public static boolean APPLICATION_SUMMARY_QUERY = false;
+
+	/**
+	 * Extra key for enabling the application traffic summary query
+	 */
+	public static final String APPLICATION_SUMMARY_QUERY_EXTRA = "traffic_application_summary_query";
 
 	private long mobileRxBytes;
 	private long mobileTxBytes;
@@ -98,268 +133,366 @@ public class Traffic extends AbstractMonitor<TrafficListener> {
 
 	private long appWifiRxBytes;
 
-	private Runnable mobileTask = new Runnable() {
+	private volatile boolean screenOn = true;
+
+	/**
+	 * The screen receiver is only registered with adaptive updates
+	 */
+	private boolean screenReceiverRegistered = false;
+
+	private BroadcastReceiver screenReceiver = new BroadcastReceiver() {
 		@Override
-		public void run() {
-			long newMobileRxBytes = TrafficStats.getMobileRxBytes();
-			long newMobileTxBytes = TrafficStats.getMobileTxBytes();
-			long newMobileRxPackets = TrafficStats.getMobileRxPackets();
-			long newMobileTxPackets = TrafficStats.getMobileTxPackets();
-
-			long[] tcpData = getTcpData(mContext);
-
-			long dMobileRxBytes = newMobileRxBytes - mobileRxBytes;
-			long dMobileTxBytes = newMobileTxBytes - mobileTxBytes;
-			long dMobileTxPackets = newMobileTxPackets - mobileTxPackets;
-			long dMobileRxPackets = newMobileRxPackets - mobileRxPackets;
-
-			TrafficObservation mobileData = new TrafficObservation(
-					TRAFFIC_MOBILE, Time.currentTimeMillis());
-			mobileData.setNetworkType(NETWORK_TYPE_MOBILE);
-			mobileData.setRxBytes(dMobileRxBytes);
-			mobileData.setTxBytes(dMobileTxBytes);
-			mobileData.setRxPackets(dMobileRxPackets);
-			mobileData.setTxPackets(dMobileTxPackets);
-
-			// Only add protocol bytes if they are supported by the device
-			if (tcpData[0] >= 0) {
-				long dTcpRxBytes = 0;
-				long dTcpTxBytes = 0;
-				if (dMobileRxBytes > 0) {
-					/*
-					 * This calculation relies on the fact that wifi and mobile
-					 * traffic are exclusive
-					 */
-					dTcpRxBytes = tcpData[0] - mobileTcpRxBytes;
-					dTcpTxBytes = tcpData[1] - mobileTcpTxBytes;
-
-					/* Update state vars */
-					mobileTcpRxBytes = tcpData[0];
-					mobileTcpTxBytes = tcpData[1];
-				}
+		public void onReceive(Context context, Intent intent) {
+			if (Intent.ACTION_SCREEN_ON.equals(intent.getAction())) {
+				screenOn = true;
+
+				/* Go back to the base interval */
+				counterTask.wakeUp();
+				appTask.wakeUp();
+			}
+			else if (Intent.ACTION_SCREEN_OFF.equals(intent.getAction())) {
+				screenOn = false;
+			}
+		}
+	};
+
+	/**
+	 * Sampling task that backs off while the screen is off
+	 */
+	private abstract class TrafficTask extends AdaptiveTask {
+		@Override
+		protected boolean isIdle() {
+			return !screenOn;
+		}
+	}
+
+	/**
+	 * Start the counter task if any event requires it, stop it otherwise
+	 */
+	private synchronized void updateCounterTask() {
+		if (mobileTrafficEvent.isActive() || wifiTrafficEvent.isActive()
+				|| (VERSION.SDK_INT < Build.VERSION_CODES.M && appTrafficEvent.isActive())) {
+			counterTask.start(TRAFFIC_UPDATE_INTERVAL, getMaxInterval(TRAFFIC_UPDATE_INTERVAL));
+		}
+		else {
+			counterTask.stop();
+		}
+	}
+
+	/**
+	 * @param interval base interval
+	 * @return the maximum interval for the tasks
+	 */
+	private static int getMaxInterval(int interval) {
+		if (ADAPTIVE_TRAFFIC_UPDATE) {
+			return interval * MAX_TRAFFIC_UPDATE_FACTOR;
+		}
+		return interval;
+	}
+
+	/**
+	 * Reads all the traffic counters once per sampling interval and updates
+	 * the active events from the same snapshot
+	 */
+	private TrafficTask counterTask = new TrafficTask() {
+		@Override
+		protected boolean sample() {
+			if (VERSION.SDK_INT <= Build.VERSION_CODES.KITKAT_WATCH
+					&& appTrafficEvent.isActive()) {
+				addRunningProcessesUids();
+			}
+			snapshot.read(trafficSource, uidRegistry.getUids());
 
-				mobileData.setTcpRxBytes(dTcpRxBytes);
-				mobileData.setTcpTxBytes(dTcpTxBytes);
+			boolean active = false;
+			if (mobileTrafficEvent.isActive()) {
+				active |= updateMobileTraffic(snapshot);
 			}
 
-			if (tcpData[2] >= 0) {
+			if (wifiTrafficEvent.isActive()) {
+				active |= updateWifiTraffic(snapshot);
+			}
+
+			if (VERSION.SDK_INT < Build.VERSION_CODES.M && appTrafficEvent.isActive()) {
+				active |= updateApplicationTraffic(snapshot);
+			}
+			return active;
+		}
+	};
+
+	/**
+	 * Notify the mobile traffic since the last snapshot
+	 *
+	 * @param snapshot
+	 * @return true if there was mobile traffic
+	 */
+	private boolean updateMobileTraffic(TrafficSnapshot snapshot) {
+		long newMobileRxBytes = snapshot.getMobileRxBytes();
+		long newMobileTxBytes = snapshot.getMobileTxBytes();
+		long newMobileRxPackets = snapshot.getMobileRxPackets();
+		long newMobileTxPackets = snapshot.getMobileTxPackets();
+
+		long dMobileRxBytes = newMobileRxBytes - mobileRxBytes;
+		long dMobileTxBytes = newMobileTxBytes - mobileTxBytes;
+		long dMobileTxPackets = newMobileTxPackets - mobileTxPackets;
+		long dMobileRxPackets = newMobileRxPackets - mobileRxPackets;
+
+		TrafficObservation mobileData = TrafficObservation.obtain(
+				TRAFFIC_MOBILE, Time.currentTimeMillis());
+		mobileData.setNetworkType(NETWORK_TYPE_MOBILE);
+		mobileData.setRxBytes(dMobileRxBytes);
+		mobileData.setTxBytes(dMobileTxBytes);
+		mobileData.setRxPackets(dMobileRxPackets);
+		mobileData.setTxPackets(dMobileTxPackets);
+
+		// Only add protocol bytes if they are supported by the device
+		if (snapshot.getTcpRxBytes() != TrafficSnapshot.UNSUPPORTED) {
+			long dTcpRxBytes = 0;
+			long dTcpTxBytes = 0;
+			if (dMobileRxBytes > 0) {
 				/*
 				 * This calculation relies on the fact that wifi and mobile
 				 * traffic are exclusive
 				 */
-				long dTcpRxSegments = tcpData[2] - mobileTcpRxSegments;
-				long dTcpTxSegments = tcpData[3] - mobileTcpTxSegments;
+				dTcpRxBytes = snapshot.getTcpRxBytes() - mobileTcpRxBytes;
+				dTcpTxBytes = snapshot.getTcpTxBytes() - mobileTcpTxBytes;
 
-				if (dMobileRxBytes > 0) {
-					dTcpRxSegments = tcpData[2] - mobileTcpRxSegments;
-					dTcpTxSegments = tcpData[3] - mobileTcpTxSegments;
+				/* Update state vars */
+				mobileTcpRxBytes = snapshot.getTcpRxBytes();
+				mobileTcpTxBytes = snapshot.getTcpTxBytes();
+			}
 
-					/* Update state vars */
-					mobileTcpRxSegments = tcpData[2];
-					mobileTcpTxSegments = tcpData[3];
-				}
+			mobileData.setTcpRxBytes(dTcpRxBytes);
+			mobileData.setTcpTxBytes(dTcpTxBytes);
+		}
 
-				mobileData.setTcpRxSegments(dTcpRxSegments);
-				mobileData.setTcpRxSegments(dTcpTxSegments);
-			}
+		if (snapshot.getTcpRxSegments() != TrafficSnapshot.UNSUPPORTED) {
+			/*
+			 * This calculation relies on the fact that wifi and mobile
+			 * traffic are exclusive
+			 */
+			long dTcpRxSegments = snapshot.getTcpRxSegments() - mobileTcpRxSegments;
+			long dTcpTxSegments = snapshot.getTcpTxSegments() - mobileTcpTxSegments;
 
-			/* Notify listeners and update state */
-			notifyListeners(mobileTrafficEvent, mobileData);
+			if (dMobileRxBytes > 0) {
+				dTcpRxSegments = snapshot.getTcpRxSegments() - mobileTcpRxSegments;
+				dTcpTxSegments = snapshot.getTcpTxSegments() - mobileTcpTxSegments;
 
-			/* Update state vars */
-			mobileRxBytes = newMobileRxBytes;
-			mobileTxBytes = newMobileTxBytes;
-			mobileRxPackets = newMobileRxPackets;
-			mobileTxPackets = newMobileTxPackets;
+				/* Update state vars */
+				mobileTcpRxSegments = snapshot.getTcpRxSegments();
+				mobileTcpTxSegments = snapshot.getTcpTxSegments();
+			}
 
-			/* Log the results */
-			if (DEBUG)
-				Log.v(TAG, mobileData.toString());
+			mobileData.setTcpRxSegments(dTcpRxSegments);
+			mobileData.setTcpRxSegments(dTcpTxSegments);
 		}
-	};
 
-	private Runnable wifiTask = new Runnable() {
-		@Override
-		public void run() {
-			long[] tcpData = getTcpData(mContext);
-
-			long newWifiRxBytes = TrafficStats.getTotalRxBytes()
-					- TrafficStats.getMobileRxBytes();
-			long newWifiTxBytes = TrafficStats.getTotalTxBytes()
-					- TrafficStats.getMobileTxBytes();
-			long newWifiRxPackets = TrafficStats.getTotalRxPackets()
-					- TrafficStats.getMobileRxPackets();
-			long newWifiTxPackets = TrafficStats.getTotalTxPackets()
-					- TrafficStats.getMobileTxPackets();
-
-			long dWifiRxBytes = newWifiRxBytes - wifiRxBytes;
-			long dWifiTxBytes = newWifiTxBytes - wifiTxBytes;
-
-			long dWifiRxPackets = newWifiRxPackets - wifiRxPackets;
-			long dWifiTxPackets = newWifiTxPackets - wifiTxPackets;
-
-			TrafficObservation wifiData = new TrafficObservation(TRAFFIC_WIFI,
-					Time.currentTimeMillis());
-			wifiData.setNetworkType(NETWORK_TYPE_WIFI);
-			wifiData.setRxBytes(dWifiRxBytes);
-			wifiData.setTxBytes(dWifiTxBytes);
-			wifiData.setRxPackets(dWifiRxPackets);
-			wifiData.setTxPackets(dWifiTxPackets);
-
-			// Only add protocol bytes if they are supported by the device
-			if (tcpData[0] >= 0) {
-				long dTcpRxBytes = 0;
-				long dTcpTxBytes = 0;
-				if (dWifiRxBytes > 0) {
-					/*
-					 * This calculation relies on the fact that wifi and mobile
-					 * traffic are exclusive
-					 */
-					dTcpRxBytes = tcpData[0] - wifiTcpRxBytes;
-					dTcpTxBytes = tcpData[1] - wifiTcpTxBytes;
-
-					/* Update state vars */
-					wifiTcpRxBytes = tcpData[0];
-					wifiTcpTxBytes = tcpData[1];
-				}
+		/* Notify listeners and update state */
+		notifyListeners(mobileTrafficEvent, mobileData);
 
-				wifiData.setTcpRxBytes(dTcpRxBytes);
-				wifiData.setTcpTxBytes(dTcpTxBytes);
-			}
+		/* Update state vars */
+		mobileRxBytes = newMobileRxBytes;
+		mobileTxBytes = newMobileTxBytes;
+		mobileRxPackets = newMobileRxPackets;
+		mobileTxPackets = newMobileTxPackets;
+
+		/* Log the results */
+		if (DEBUG)
+			Log.v(TAG, mobileData.toString());
 
-			if (tcpData[2] >= 0) {
+		return dMobileRxBytes > 0 || dMobileTxBytes > 0;
+	}
+
+	/**
+	 * Notify the wifi traffic since the last snapshot
+	 *
+	 * @param snapshot
+	 * @return true if there was wifi traffic
+	 */
+	private boolean updateWifiTraffic(TrafficSnapshot snapshot) {
+		long newWifiRxBytes = snapshot.getWifiRxBytes();
+		long newWifiTxBytes = snapshot.getWifiTxBytes();
+		long newWifiRxPackets = snapshot.getWifiRxPackets();
+		long newWifiTxPackets = snapshot.getWifiTxPackets();
+
+		long dWifiRxBytes = newWifiRxBytes - wifiRxBytes;
+		long dWifiTxBytes = newWifiTxBytes - wifiTxBytes;
+
+		long dWifiRxPackets = newWifiRxPackets - wifiRxPackets;
+		long dWifiTxPackets = newWifiTxPackets - wifiTxPackets;
+
+		TrafficObservation wifiData = TrafficObservation.obtain(TRAFFIC_WIFI,
+				Time.currentTimeMillis());
+		wifiData.setNetworkType(NETWORK_TYPE_WIFI);
+		wifiData.setRxBytes(dWifiRxBytes);
+		wifiData.setTxBytes(dWifiTxBytes);
+		wifiData.setRxPackets(dWifiRxPackets);
+		wifiData.setTxPackets(dWifiTxPackets);
+
+		// Only add protocol bytes if they are supported by the device
+		if (snapshot.getTcpRxBytes() != TrafficSnapshot.UNSUPPORTED) {
+			long dTcpRxBytes = 0;
+			long dTcpTxBytes = 0;
+			if (dWifiRxBytes > 0) {
 				/*
 				 * This calculation relies on the fact that wifi and mobile
 				 * traffic are exclusive
 				 */
-				long dTcpRxSegments = 0;
-				long dTcpTxSegments = 0;
+				dTcpRxBytes = snapshot.getTcpRxBytes() - wifiTcpRxBytes;
+				dTcpTxBytes = snapshot.getTcpTxBytes() - wifiTcpTxBytes;
 
-				if (dWifiRxBytes > 0) {
-					dTcpRxSegments = tcpData[2] - wifiTcpRxSegments;
-					dTcpTxSegments = tcpData[3] - wifiTcpTxSegments;
+				/* Update state vars */
+				wifiTcpRxBytes = snapshot.getTcpRxBytes();
+				wifiTcpTxBytes = snapshot.getTcpTxBytes();
+			}
 
-					/* Update state vars */
-					wifiTcpRxSegments = tcpData[2];
-					wifiTcpTxSegments = tcpData[3];
-				}
+			wifiData.setTcpRxBytes(dTcpRxBytes);
+			wifiData.setTcpTxBytes(dTcpTxBytes);
+		}
 
-				wifiData.setTcpRxSegments(dTcpRxSegments);
-				wifiData.setTcpRxSegments(dTcpTxSegments);
-			}
+		if (snapshot.getTcpRxSegments() != TrafficSnapshot.UNSUPPORTED) {
+			/*
+			 * This calculation relies on the fact that wifi and mobile
+			 * traffic are exclusive
+			 */
+			long dTcpRxSegments = 0;
+			long dTcpTxSegments = 0;
 
-			/* Notify listeners and update state */
-			notifyListeners(wifiTrafficEvent, wifiData);
+			if (dWifiRxBytes > 0) {
+				dTcpRxSegments = snapshot.getTcpRxSegments() - wifiTcpRxSegments;
+				dTcpTxSegments = snapshot.getTcpTxSegments() - wifiTcpTxSegments;
 
-			/* Update state vars */
-			wifiRxBytes = newWifiRxBytes;
-			wifiTxBytes = newWifiTxBytes;
-			wifiRxPackets = newWifiRxPackets;
-			wifiTxPackets = newWifiTxPackets;
+				/* Update state vars */
+				wifiTcpRxSegments = snapshot.getTcpRxSegments();
+				wifiTcpTxSegments = snapshot.getTcpTxSegments();
+			}
 
-			/* Log the results */
-			if (DEBUG)
-				Log.v(TAG, wifiData.toString());
+			wifiData.setTcpRxSegments(dTcpRxSegments);
+			wifiData.setTcpRxSegments(dTcpTxSegments);
 		}
-	};
 
-    private Runnable appTask = new Runnable() {
-        @Override
-        public void run() {
-            if (VERSION.SDK_INT <= Build.VERSION_CODES.KITKAT_WATCH) {
-                uids = geRunningProcessesUids(mContext);
-            } else {
-                uids = getUids(mContext);
-            }
-
-            if (VERSION.SDK_INT >= Build.VERSION_CODES.M){
-                calculateApplicationTrafficForAllUids(uids);
-            }
-            else {
-                long newWifiRxBytes = TrafficStats.getTotalRxBytes()
-                        - TrafficStats.getMobileRxBytes();
-                long dWifiRxBytes = newWifiRxBytes - appWifiRxBytes;
-
-                int networkType = NETWORK_TYPE_MOBILE;
-                if (dWifiRxBytes > 0) {
-                    networkType = NETWORK_TYPE_WIFI;
-                }
-                for (int uid : uids) {
-                    calculateApplicationTrafficForUid(networkType, uid);
-                }
-
-                appWifiRxBytes = newWifiRxBytes;
-            }
-        }
-    };
+		/* Notify listeners and update state */
+		notifyListeners(wifiTrafficEvent, wifiData);
 
-    private SparseArray<Long> appRxBytes;
-    private SparseArray<Long> appTxBytes;
-    private SparseArray<Long> appRxPackets;
-    private SparseArray<Long> appTxPackets;
+		/* Update state vars */
+		wifiRxBytes = newWifiRxBytes;
+		wifiTxBytes = newWifiTxBytes;
+		wifiRxPackets = newWifiRxPackets;
+		wifiTxPackets = newWifiTxPackets;
 
-	private ArrayList<Integer> uids;
+		/* Log the results */
+		if (DEBUG)
+			Log.v(TAG, wifiData.toString());
 
-	@TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
-	private void calculateApplicationTrafficForUid(int networkType, int uid) {
+		return dWifiRxBytes > 0 || dWifiTxBytes > 0;
+	}
 
-		TrafficObservation appData = new TrafficObservation(
-				TRAFFIC_APPLICATION, Time.currentTimeMillis());
-		appData.setUid(uid);
+	/**
+	 * Notify the traffic of each application since the last snapshot
+	 *
+	 * @param snapshot
+	 * @return true if any application had new traffic
+	 */
+	private boolean updateApplicationTraffic(TrafficSnapshot snapshot) {
+		long newWifiRxBytes = snapshot.getWifiRxBytes();
+		long dWifiRxBytes = newWifiRxBytes - appWifiRxBytes;
 
-        long newAppRxBytes = TrafficStats.getUidRxBytes(uid);
-        long newAppTxBytes = TrafficStats.getUidTxBytes(uid);
+		int networkType = NETWORK_TYPE_MOBILE;
+		if (dWifiRxBytes > 0) {
+			networkType = NETWORK_TYPE_WIFI;
+		}
+		for (int i = 0; i < snapshot.getUidCount(); i++) {
+			updateApplicationCounters(snapshot.getUid(i), snapshot.getUidRxBytes(i),
+					snapshot.getUidTxBytes(i));
+		}
+		appWifiRxBytes = newWifiRxBytes;
 
-		// IF the entry does not exist, the delta is 0
-		long dAppRxBytes = newAppRxBytes
-				- (appRxBytes.indexOfKey(uid) < 0 ? newAppRxBytes : appRxBytes
-				.get(uid));
-		long dAppTxBytes = newAppTxBytes
-				- (appTxBytes.indexOfKey(uid) < 0 ? newAppTxBytes : appTxBytes
-				.get(uid));
+		return notifyApplicationTraffic(networkType);
+	}
 
-		/* Update state vars */
-		appRxBytes.put(uid, newAppRxBytes);
-		appTxBytes.put(uid, newAppTxBytes);
+	/**
+	 * Reads application traffic from NetworkStatsManager (Android 6+)
+	 */
+    private TrafficTask appTask = new TrafficTask() {
+        @Override
+        protected boolean sample() {
+            return calculateApplicationTrafficForAllUids(uidRegistry.getUids());
+        }
+    };
 
-		if (dAppRxBytes <= 0 && dAppTxBytes <= 0)
-			return;
+	private final TrafficSource trafficSource = new AndroidTrafficSource();
 
-		appData.setNetworkType(networkType);
-		appData.setRxBytes(dAppRxBytes);
-		appData.setTxBytes(dAppTxBytes);
+	/**
+	 * Counters read by the counter task
+	 */
+	private final TrafficSnapshot snapshot = new TrafficSnapshot();
 
-		if (VERSION.SDK_INT >= 12) {
-			long newAppRxPackets = TrafficStats.getUidRxPackets(uid);
-			long newAppTxPackets = TrafficStats.getUidTxPackets(uid);
+	/**
+	 * Last traffic counters for each UID
+	 */
+	private UidCounterTable appCounters;
 
-			// If the entry does not exist, the delta is 0
-			long dAppRxPackets = newAppRxPackets
-					- (appRxPackets.indexOfKey(uid) < 0 ? newAppRxPackets
-					: appRxPackets.get(uid));
-			long dAppTxPackets = newAppTxPackets
-					- (appTxPackets.indexOfKey(uid) < 0 ? newAppRxPackets
-					: appTxPackets.get(uid));
+	/**
+	 * UIDs of the installed applications
+	 */
+	private UidRegistry uidRegistry;
 
-			if (dAppRxPackets >= 0) {
-				appData.setRxPackets(dAppRxPackets);
+	/**
+	 * End timestamps of the last statistics read with NetworkStatsManager
+	 */
+	private TrafficCheckpoints checkpoints;
 
-				/* Update state vars */
-				appRxPackets.put(uid, newAppRxPackets);
+	/**
+	 * Update the counters for the UID. If the UID has new traffic, the
+	 * difference is added to the changes of the counter table
+	 *
+	 * @param uid
+	 * @param rxBytes total bytes received by the UID
+	 * @param txBytes total bytes transmitted by the UID
+	 */
+	private void updateApplicationCounters(int uid, long rxBytes, long txBytes) {
+		int change = appCounters.updateBytes(uid, rxBytes, txBytes);
+
+		/* Packets are only read for UIDs with new traffic */
+		if (change >= 0 && VERSION.SDK_INT >= 12) {
+			appCounters.updatePackets(change, trafficSource.getUidRxPackets(uid),
+					trafficSource.getUidTxPackets(uid));
+		}
+	}
+
+	/**
+	 * Notify the traffic of the UIDs that changed since the last call
+	 *
+	 * @param networkType
+	 * @return true if any UID had new traffic
+	 */
+	private boolean notifyApplicationTraffic(int networkType) {
+		UidCounterTable.Changes changes = appCounters.getChanges();
+		boolean active = changes.size() > 0;
+		for (int i = 0; i < changes.size(); i++) {
+			TrafficObservation appData = TrafficObservation.obtain(
+					TRAFFIC_APPLICATION, Time.currentTimeMillis());
+			appData.setUid(changes.getUid(i));
+			appData.setNetworkType(networkType);
+			appData.setRxBytes(changes.getRxBytes(i));
+			appData.setTxBytes(changes.getTxBytes(i));
+
+			if (changes.getRxPackets(i) != UidCounterTable.UNAVAILABLE) {
+				appData.setRxPackets(changes.getRxPackets(i));
 			}
 
-			if (dAppTxPackets >= 0) {
-				appData.setTxPackets(dAppTxPackets);
-				appTxPackets.put(uid, newAppTxPackets);
+			if (changes.getTxPackets(i) != UidCounterTable.UNAVAILABLE) {
+				appData.setTxPackets(changes.getTxPackets(i));
 			}
-		}
 
-		/* Notify listeners and update state */
-		notifyListeners(appTrafficEvent, appData);
+			/* Notify listeners and update state */
+			notifyListeners(appTrafficEvent, appData);
 
-		/* Log the results */
-		if (DEBUG)
-			Log.v(TAG, appData.toString());
+			/* Log the results */
+			if (DEBUG)
+				Log.v(TAG, appData.toString());
+		}
+		changes.clear();
+		return active;
 	}
 
     /**
@@ -369,15 +502,22 @@ public class Traffic extends AbstractMonitor<TrafficListener> {
      * to other UIDs, getting how many bytes have been received and transmitted over WiFi or
      * Mobile Network.
      *
+     * The end timestamp of the last bucket read for each UID is kept in memory and
+     * written to the preference file once per sweep. If APPLICATION_SUMMARY_QUERY is set,
+     * the traffic of all UIDs is read with a single summary query per network type.
+     *
      * @param uids  Current installed applications UIDs
+     * @return true if any traffic was notified
      */
 	@TargetApi(Build.VERSION_CODES.M)
-	private void calculateApplicationTrafficForAllUids(ArrayList<Integer> uids){
+	private boolean calculateApplicationTrafficForAllUids(int[] uids){
 		TelephonyManager tm = (TelephonyManager) getSystemService(TELEPHONY_SERVICE);
 		String subscriberID = tm.getSubscriberId();
-		SharedPreferences sharedPreferences = getSharedPreferences(
-				PREFERENCE_FILE, Context.MODE_PRIVATE);
-		SharedPreferences.Editor editor = sharedPreferences.edit();
+
+		if (checkpoints == null) {
+			checkpoints = new TrafficCheckpoints(getSharedPreferences(
+					PREFERENCE_FILE, Context.MODE_PRIVATE));
+		}
 
 		NetworkStats.Bucket bucketOut = new NetworkStats.Bucket();
 		NetworkStatsManager networkStatsManager =
@@ -393,23 +533,30 @@ public class Traffic extends AbstractMonitor<TrafficListener> {
 		calendar.set(Calendar.MILLISECOND, 0);
 		long startOfActualDay = calendar.getTimeInMillis();
 
+		if (APPLICATION_SUMMARY_QUERY) {
+			boolean active = calculateApplicationTrafficSummary(networkStatsManager,
+					ConnectivityManager.TYPE_WIFI, "", NETWORK_TYPE_WIFI, "all_wifi",
+					startOfActualDay, currentTimeMillis, bucketOut);
+			active |= calculateApplicationTrafficSummary(networkStatsManager,
+					ConnectivityManager.TYPE_MOBILE, subscriberID, NETWORK_TYPE_MOBILE, "all_mobile",
+					startOfActualDay, currentTimeMillis, bucketOut);
+			checkpoints.save();
+			return active;
+		}
+
+		boolean active = false;
+
 		for (int uid : uids){
 			//Get wifi traffic
-			String uidWifiKey = Integer.toString(uid) + "_wifi";
-			long lastEndTimestamp;
-			if (sharedPreferences.contains(uidWifiKey))
-				lastEndTimestamp = sharedPreferences.getLong(uidWifiKey, 0);
-			else {
-				editor.putLong(uidWifiKey, startOfActualDay);
-				lastEndTimestamp = startOfActualDay;
-				editor.commit();
-			}
+			String uidWifiKey = TrafficCheckpoints.key(uid, "wifi");
+			long lastEndTimestamp = checkpoints.get(uidWifiKey, startOfActualDay);
+			stats = null;
 			try {
 				stats = networkStatsManager.queryDetailsForUid(ConnectivityManager.TYPE_WIFI, "",
 						lastEndTimestamp, currentTimeMillis, uid);
 				while (stats.hasNextBucket()){
 					stats.getNextBucket(bucketOut);
-					TrafficObservation appData = new TrafficObservation(
+					TrafficObservation appData = TrafficObservation.obtain(
 							TRAFFIC_APPLICATION, bucketOut.getStartTimeStamp());
 					appData.setUid(bucketOut.getUid());
 					appData.setNetworkType(NETWORK_TYPE_WIFI);
@@ -417,30 +564,27 @@ public class Traffic extends AbstractMonitor<TrafficListener> {
 					appData.setTxBytes(bucketOut.getTxBytes());
 					appData.setRxPackets(bucketOut.getRxPackets());
 					appData.setTxPackets(bucketOut.getTxPackets());
-					editor.putLong(uidWifiKey, bucketOut.getEndTimeStamp());
+					checkpoints.put(uidWifiKey, bucketOut.getEndTimeStamp());
 					notifyListeners(appTrafficEvent, appData);
+					active = true;
 				}
 			} catch (RemoteException e) {
 				e.printStackTrace();
 			} finally {
-				editor.commit();
+				if (stats != null)
+					stats.close();
 			}
 
 			//Get mobile traffic
-			String uidMobileKey = Integer.toString(uid) + "_mobile";
-			if (sharedPreferences.contains(uidMobileKey))
-				lastEndTimestamp = sharedPreferences.getLong(uidMobileKey, 0);
-			else {
-				editor.putLong(uidMobileKey, startOfActualDay);
-				lastEndTimestamp = startOfActualDay;
-				editor.commit();
-			}
+			String uidMobileKey = TrafficCheckpoints.key(uid, "mobile");
+			lastEndTimestamp = checkpoints.get(uidMobileKey, startOfActualDay);
+			stats = null;
 			try {
 				stats = networkStatsManager.queryDetailsForUid(ConnectivityManager.TYPE_MOBILE,
 						subscriberID, lastEndTimestamp, currentTimeMillis, uid);
 				while (stats.hasNextBucket()){
 					stats.getNextBucket(bucketOut);
-					TrafficObservation appData = new TrafficObservation(
+					TrafficObservation appData = TrafficObservation.obtain(
 							TRAFFIC_APPLICATION, bucketOut.getEndTimeStamp());
 					appData.setUid(bucketOut.getUid());
 					appData.setNetworkType(NETWORK_TYPE_MOBILE);
@@ -448,58 +592,113 @@ public class Traffic extends AbstractMonitor<TrafficListener> {
 					appData.setTxBytes(bucketOut.getTxBytes());
 					appData.setRxPackets(bucketOut.getRxPackets());
 					appData.setTxPackets(bucketOut.getTxPackets());
-					editor.putLong(uidMobileKey, bucketOut.getEndTimeStamp());
+					checkpoints.put(uidMobileKey, bucketOut.getEndTimeStamp());
 					notifyListeners(appTrafficEvent, appData);
+					active = true;
 				}
 			} catch (RemoteException e) {
 				e.printStackTrace();
 			} finally {
-				editor.commit();
+				if (stats != null)
+					stats.close();
 			}
 		}
-	}
 
-	private MonitorEvent<TrafficListener> mobileTrafficEvent = new AbstractMonitorEvent<TrafficListener>() {
-		ScheduledFuture<?> future = null;
-
-		@Override
-		public synchronized boolean activate() {
-			if (!isActive()) {
+		/* Write all the checkpoints of the sweep at once */
+		checkpoints.save();
+		return active;
+	}
 
-				if (uids == null) {
-					uids = new ArrayList<Integer>();
+	/**
+	 * Read the traffic of all the UIDs for a network type since the last summary
+	 * with a single query, notifying only the buckets of registered UIDs
+	 *
+	 * @param networkStatsManager
+	 * @param connectivityType ConnectivityManager network type
+	 * @param subscriberID
+	 * @param networkType network type for the observations
+	 * @param key checkpoint key for the network type
+	 * @param startOfActualDay timestamp to use if there is no previous checkpoint
+	 * @param currentTimeMillis
+	 * @param bucketOut reused bucket
+	 * @return true if any traffic was notified
+	 */
+	@TargetApi(Build.VERSION_CODES.M)
+	private boolean calculateApplicationTrafficSummary(NetworkStatsManager networkStatsManager,
+			int connectivityType, String subscriberID, int networkType, String key,
+			long startOfActualDay, long currentTimeMillis, NetworkStats.Bucket bucketOut) {
+		long lastEndTimestamp = checkpoints.get(key, startOfActualDay);
+		boolean active = false;
+		NetworkStats stats = null;
+		try {
+			stats = networkStatsManager.querySummary(connectivityType, subscriberID,
+					lastEndTimestamp, currentTimeMillis);
+			while (stats.hasNextBucket()) {
+				stats.getNextBucket(bucketOut);
+				if (!uidRegistry.contains(bucketOut.getUid())) {
+					continue;
 				}
 
-				mobileRxBytes = TrafficStats.getMobileRxBytes();
+				TrafficObservation appData = TrafficObservation.obtain(
+						TRAFFIC_APPLICATION, bucketOut.getEndTimeStamp());
+				appData.setUid(bucketOut.getUid());
+				appData.setNetworkType(networkType);
+				appData.setRxBytes(bucketOut.getRxBytes());
+				appData.setTxBytes(bucketOut.getTxBytes());
+				appData.setRxPackets(bucketOut.getRxPackets());
+				appData.setTxPackets(bucketOut.getTxPackets());
+				notifyListeners(appTrafficEvent, appData);
+				active = true;
+			}
+			checkpoints.put(key, currentTimeMillis);
+		} catch (RemoteException e) {
+			e.printStackTrace();
+		} catch (SecurityException e) {
+			if (DEBUG)
+				Log.d(TAG, "No permission to read the network usage summary");
+		} finally {
+			if (stats != null)
+				stats.close();
+		}
+		return active;
+	}
+
+	private MonitorEvent<TrafficListener> mobileTrafficEvent = new AbstractMonitorEvent<TrafficListener>() {
+		@Override
+		public boolean activate() {
+			if (startActivation()) {
+				uidRegistry.start();
 
-				if (mobileRxBytes == TrafficStats.UNSUPPORTED) {
+				if (trafficSource.getMobileRxBytes() == TrafficSource.UNSUPPORTED) {
 					if (DEBUG)
 						Log.d(TAG,
 								"Device doesn't support traffic statistics! Disabling sensor...");
+					abortActivation();
 					stopSelf();
 
 					return false;
 				}
 
-				mobileTxBytes = TrafficStats.getMobileTxBytes();
-				mobileRxPackets = TrafficStats.getMobileRxPackets();
-				mobileTxPackets = TrafficStats.getMobileTxPackets();
+				TrafficSnapshot start = new TrafficSnapshot();
+				start.read(trafficSource, uidRegistry.getUids());
+
+				mobileRxBytes = start.getMobileRxBytes();
+				mobileTxBytes = start.getMobileTxBytes();
+				mobileRxPackets = start.getMobileRxPackets();
+				mobileTxPackets = start.getMobileTxPackets();
 
-				long[] tcpData = getTcpData(mContext);
-				if (tcpData[0] > 0) {
-					mobileTcpRxBytes = tcpData[0];
-					mobileTcpTxBytes = tcpData[1];
+				if (start.getTcpRxBytes() > 0) {
+					mobileTcpRxBytes = start.getTcpRxBytes();
+					mobileTcpTxBytes = start.getTcpTxBytes();
 				}
 
-				if (tcpData[2] > 0) {
-					mobileTcpRxSegments = tcpData[2];
-					mobileTcpTxSegments = tcpData[3];
+				if (start.getTcpRxSegments() > 0) {
+					mobileTcpRxSegments = start.getTcpRxSegments();
+					mobileTcpTxSegments = start.getTcpTxSegments();
 				}
 
-				future = Scheduler.getInstance().scheduleAtFixedRate(
-						mobileTask, 0, TRAFFIC_UPDATE_INTERVAL,
-						TimeUnit.SECONDS);
 				super.activate();
+				updateCounterTask();
 
 				if (DEBUG)
 					Log.d(TAG, "Mobile traffic service has been activated");
@@ -508,12 +707,13 @@ public class Traffic extends AbstractMonitor<TrafficListener> {
 		}
 
 		@Override
-		public synchronized void deactivate() {
-			if (isActive()) {
-				// Stop the task
-				future.cancel(false);
+		public void deactivate() {
+			if (startDeactivation()) {
 				super.deactivate();
 
+				// Stop the task if no other event requires it
+				updateCounterTask();
+
 				if (DEBUG)
 					Log.d(TAG, "Mobile traffic service has been deactivated");
 			}
@@ -526,52 +726,41 @@ public class Traffic extends AbstractMonitor<TrafficListener> {
 	};
 
 	private MonitorEvent<TrafficListener> wifiTrafficEvent = new AbstractMonitorEvent<TrafficListener>() {
-		ScheduledFuture<?> future = null;
-
 		@Override
-		public synchronized boolean activate() {
-			if (!isActive()) {
-				long startTotalRxBytes = TrafficStats.getTotalRxBytes();
-				long startTotalTxBytes = TrafficStats.getTotalTxBytes();
-				long startTotalRxPackets = TrafficStats.getTotalRxPackets();
-				long startTotalTxPackets = TrafficStats.getTotalTxPackets();
-
-				if (startTotalRxBytes == TrafficStats.UNSUPPORTED) {
+		public boolean activate() {
+			if (startActivation()) {
+				if (trafficSource.getTotalRxBytes() == TrafficSource.UNSUPPORTED) {
 					if (DEBUG)
 						Log.d(TAG,
 								"Device doesn't support traffic statistics! Disabling sensor...");
+					abortActivation();
 					stopSelf();
 
 					return false;
 				}
 
-				wifiRxBytes = startTotalRxBytes
-						- TrafficStats.getMobileRxBytes();
-				wifiTxBytes = startTotalTxBytes
-						- TrafficStats.getMobileTxBytes();
-				wifiRxPackets = startTotalRxPackets
-						- TrafficStats.getMobileRxPackets();
-				wifiTxPackets = startTotalTxPackets
-						- TrafficStats.getMobileTxPackets();
-
-				if (uids == null) {
-					uids = new ArrayList<Integer>();
-				}
+				uidRegistry.start();
 
-				long[] tcpData = getTcpData(mContext);
-				if (tcpData[0] > 0) {
-					wifiTcpRxBytes = tcpData[0];
-					wifiTcpTxBytes = tcpData[1];
+				TrafficSnapshot start = new TrafficSnapshot();
+				start.read(trafficSource, uidRegistry.getUids());
+
+				wifiRxBytes = start.getWifiRxBytes();
+				wifiTxBytes = start.getWifiTxBytes();
+				wifiRxPackets = start.getWifiRxPackets();
+				wifiTxPackets = start.getWifiTxPackets();
+
+				if (start.getTcpRxBytes() > 0) {
+					wifiTcpRxBytes = start.getTcpRxBytes();
+					wifiTcpTxBytes = start.getTcpTxBytes();
 				}
 
-				if (tcpData[2] > 0) {
-					wifiTcpRxSegments = tcpData[2];
-					wifiTcpTxSegments = tcpData[3];
+				if (start.getTcpRxSegments() > 0) {
+					wifiTcpRxSegments = start.getTcpRxSegments();
+					wifiTcpTxSegments = start.getTcpTxSegments();
 				}
 
-				future = Scheduler.getInstance().scheduleAtFixedRate(wifiTask,
-						0, TRAFFIC_UPDATE_INTERVAL, TimeUnit.SECONDS);
 				super.activate();
+				updateCounterTask();
 
 				if (DEBUG)
 					Log.d(TAG, "WiFi traffic service has been activated");
@@ -580,12 +769,13 @@ public class Traffic extends AbstractMonitor<TrafficListener> {
 		}
 
 		@Override
-		public synchronized void deactivate() {
-			if (isActive()) {
-				// Stop the task
-				future.cancel(false);
+		public void deactivate() {
+			if (startDeactivation()) {
 				super.deactivate();
 
+				// Stop the task if no other event requires it
+				updateCounterTask();
+
 				if (DEBUG)
 					Log.d(TAG, "WiFi traffic service has been deactivated");
 			}
@@ -598,15 +788,14 @@ public class Traffic extends AbstractMonitor<TrafficListener> {
 	};
 
 	private MonitorEvent<TrafficListener> appTrafficEvent = new AbstractMonitorEvent<TrafficListener>() {
-		ScheduledFuture<?> future = null;
-
 		@Override
-		public synchronized boolean activate() {
-			if (!isActive()) {
-				if (TrafficStats.getTotalRxBytes() == TrafficStats.UNSUPPORTED) {
+		public boolean activate() {
+			if (startActivation()) {
+				if (trafficSource.getTotalRxBytes() == TrafficSource.UNSUPPORTED) {
 					if (DEBUG)
 						Log.d(TAG,
 								"Device doesn't support traffic statistics! Disabling sensor...");
+					abortActivation();
 					stopSelf();
 					return false;
 				}
@@ -614,25 +803,23 @@ public class Traffic extends AbstractMonitor<TrafficListener> {
 				/**
 				 * Save the total WiFi bytes to detect the connection type
 				 */
-				appWifiRxBytes = TrafficStats.getTotalRxBytes()
-						- TrafficStats.getMobileRxBytes();
-				if (appRxBytes == null) {
-					appRxBytes = new SparseArray<Long>();
-					appTxBytes = new SparseArray<Long>();
-					appRxPackets = new SparseArray<Long>();
-					appTxPackets = new SparseArray<Long>();
+				appWifiRxBytes = trafficSource.getTotalRxBytes()
+						- trafficSource.getMobileRxBytes();
+				if (appCounters == null) {
+					appCounters = new UidCounterTable();
 				}
 
-				if (uids == null) {
-					uids = new ArrayList<Integer>();
-				}
+				uidRegistry.start();
 
-				int interval = (VERSION.SDK_INT >= Build.VERSION_CODES.M) ?
-						NEW_TRAFFIC_UPDATE_INTERVAL : TRAFFIC_UPDATE_INTERVAL;
-				future = Scheduler.getInstance().scheduleAtFixedRate(appTask,
-						0, interval, TimeUnit.SECONDS);
+				if (VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+					appTask.start(NEW_TRAFFIC_UPDATE_INTERVAL,
+							getMaxInterval(NEW_TRAFFIC_UPDATE_INTERVAL));
+				}
 				super.activate();
 
+				/* Before Android 6, application traffic is read by the counter task */
+				updateCounterTask();
+
 				if (DEBUG)
 					Log.d(TAG, "Application traffic service has been activated");
 			}
@@ -640,11 +827,12 @@ public class Traffic extends AbstractMonitor<TrafficListener> {
 		}
 
 		@Override
-		public synchronized void deactivate() {
-			if (isActive()) {
+		public void deactivate() {
+			if (startDeactivation()) {
 				// Stop the task
-				future.cancel(false);
+				appTask.stop();
 				super.deactivate();
+				updateCounterTask();
 
 				if (DEBUG)
 					Log.d(TAG,
@@ -670,6 +858,13 @@ public class Traffic extends AbstractMonitor<TrafficListener> {
 		/* Update the traffic update interval */
 		TRAFFIC_UPDATE_INTERVAL = configuration.getInt(
 				TRAFFIC_UPDATE_INTERVAL_EXTRA, TRAFFIC_UPDATE_INTERVAL);
+		ADAPTIVE_TRAFFIC_UPDATE = configuration.getBoolean(
+				ADAPTIVE_TRAFFIC_UPDATE_EXTRA, ADAPTIVE_TRAFFIC_UPDATE);
+		MAX_TRAFFIC_UPDATE_FACTOR = configuration.getInt(
+				MAX_TRAFFIC_UPDATE_FACTOR_EXTRA, MAX_TRAFFIC_UPDATE_FACTOR);
+		APPLICATION_SUMMARY_QUERY = configuration.getBoolean(
+				APPLICATION_SUMMARY_QUERY_EXTRA, APPLICATION_SUMMARY_QUERY);
+		updateScreenReceiver();
 
 		if ((events & TRAFFIC_MOBILE) == TRAFFIC_MOBILE) {
 			activate(mobileTrafficEvent);
@@ -698,111 +893,18 @@ public class Traffic extends AbstractMonitor<TrafficListener> {
 	}
 
 	/**
-	 * Method that return an array with the total tcp bytes/segments
-	 * transmitted/received by all applications of the device
-	 *
-	 * The mobile API must be 12 or superior, otherwise the method will return
-	 * {-1,-1,-1,-1}.
-	 *
-	 * @param context
-	 * @return {TCP bytes received, TCP bytes transmitted, TCP segments
-	 *         transmitted, TCP segments received}
+	 * Method that adds the UIDs of the applications running on the mobile
+	 * to the UID registry.
 	 */
-
 	@SuppressWarnings("deprecation")
 	@TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
-	private long[] getTcpData(Context context) {
-		if (VERSION.SDK_INT >= 12) {
-			ArrayList<Integer> uids = getUids(context);
-
-			long totalTcpRxBytes = 0;
-			long totalTcpTxBytes = 0;
-			long totalTcpRxSegments = 0;
-			long totalTcpTxSegments = 0;
-
-			boolean isTcpBytesSupported = false;
-			boolean isTcpSegmentsSupported = false;
-
-			long rxBytes, txBytes, rxSegments, txSegments;
-			for (int uid : uids) {
-				rxBytes = TrafficStats.getUidRxBytes(uid);
-				if (rxBytes >= 0) {
-					isTcpBytesSupported = true;
-					totalTcpRxBytes += rxBytes;
-				}
-
-				txBytes = TrafficStats.getUidTxBytes(uid);
-				if (txBytes >= 0) {
-					isTcpBytesSupported = true;
-					totalTcpTxBytes += txBytes;
-				}
-
-				rxSegments = TrafficStats.getUidTcpRxSegments(uid);
-				if (rxSegments >= 0) {
-					isTcpSegmentsSupported = true;
-					totalTcpRxSegments += rxSegments;
-				}
-
-				txSegments = TrafficStats.getUidTcpTxSegments(uid);
-				if (txSegments >= 0) {
-					isTcpSegmentsSupported = true;
-					totalTcpTxSegments += txSegments;
-				}
-			}
-
-			if (!isTcpBytesSupported) {
-				totalTcpRxBytes = -1;
-				totalTcpTxBytes = -1;
-			}
-
-			if (!isTcpSegmentsSupported) {
-				totalTcpRxSegments = -1;
-				totalTcpTxSegments = -1;
-			}
-
-			return new long[] { totalTcpRxBytes, totalTcpTxBytes,
-					totalTcpRxSegments, totalTcpTxSegments };
-		}
-		return new long[] { -1, -1, -1, -1 };
-	}
-
-	/**
-	 * Method that returns an arrayList with the UIDs of all the applications on
-	 * the mobile.
-	 *
-	 * @param context
-	 * @return An ArrayList with the UIDs
-	 */
-	private ArrayList<Integer> getUids(Context context) {
-		List<ApplicationInfo> appsInfo = context.getPackageManager()
-				.getInstalledApplications(
-						PackageManager.GET_UNINSTALLED_PACKAGES);
-
-		for (ApplicationInfo info : appsInfo) {
-			if (!uids.contains(info.uid)) {
-				uids.add(info.uid);
-			}
-		}
-		return uids;
-	}
-
-	/**
-	 * Method that returns an arrayList with the UIDs of the applications
-	 * running on the mobile.
-	 *
-	 * @param context
-	 * @return An ArrayList with the UIDs
-	 */
-	private ArrayList<Integer> geRunningProcessesUids(Context context) {
+	private void addRunningProcessesUids() {
 		ActivityManager manager = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
 		List<RunningAppProcessInfo> runningProcesses = manager
 				.getRunningAppProcesses();
 		for (RunningAppProcessInfo ra : runningProcesses) {
-			if (!uids.contains(ra.uid)) {
-				uids.add(ra.uid);
-			}
+			uidRegistry.add(ra.uid);
 		}
-		return uids;
 	}
 
 	@Override
@@ -810,8 +912,48 @@ public class Traffic extends AbstractMonitor<TrafficListener> {
 		return serviceBinder;
 	}
 
+	@Override
+	public void onCreate() {
+		super.onCreate();
+		registerEvent(EventRegistry.TRAFFIC_MOBILE, mobileTrafficEvent);
+		registerEvent(EventRegistry.TRAFFIC_WIFI, wifiTrafficEvent);
+		registerEvent(EventRegistry.TRAFFIC_APPLICATION, appTrafficEvent);
+
+		uidRegistry = new UidRegistry(this);
+	}
+
+	/**
+	 * Register the screen receiver if adaptive updates are enabled, unregister it
+	 * otherwise. Without the receiver the screen is considered on
+	 */
+	private synchronized void updateScreenReceiver() {
+		if (ADAPTIVE_TRAFFIC_UPDATE && !screenReceiverRegistered) {
+			PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
+			screenOn = powerManager.isScreenOn();
+
+			IntentFilter filter = new IntentFilter();
+			filter.addAction(Intent.ACTION_SCREEN_ON);
+			filter.addAction(Intent.ACTION_SCREEN_OFF);
+			registerReceiver(screenReceiver, filter);
+			screenReceiverRegistered = true;
+		}
+		else if (!ADAPTIVE_TRAFFIC_UPDATE && screenReceiverRegistered) {
+			unregisterReceiver(screenReceiver);
+			screenReceiverRegistered = false;
+			screenOn = true;
+		}
+	}
+
 	@Override
 	public void onDestroy() {
 		super.onDestroy();
+
+		uidRegistry.stop();
+		synchronized (this) {
+			if (screenReceiverRegistered) {
+				unregisterReceiver(screenReceiver);
+				screenReceiverRegistered = false;
+			}
+		}
 	}
 }
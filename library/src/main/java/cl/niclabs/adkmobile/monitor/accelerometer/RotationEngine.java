@@ -0,0 +1,152 @@
+package cl.niclabs.adkmobile.monitor.accelerometer;
+
+/**
+ * Rotates vectors from the device coordinate system to the earth coordinate
+ * system, from the gravity and geomagnetic field measurements.
+ *
+ * The rotation matrix is computed as in SensorManager.getRotationMatrix(), with rows
+ * H (east), M (north) and A (up), and cached until the gravity or the geomagnetic field
+ * change. Vectors are multiplied by the rows of the matrix directly, which is the same
+ * as multiplying the transposed column-major matrix with android.opengl.Matrix.
+ *
+ * Inputs are copied to internal buffers, so no objects are allocated after construction.
+ * This class does not depend on the Android API and is not thread-safe.
+ */
+public class RotationEngine {
+	/**
+	 * Minimum squared norm of the gravity (10% of the standard gravity), below it
+	 * the device is in free fall and the rotation is not valid
+	 */
+	private static final float MIN_GRAVITY_SQUARED = 0.01f * 9.81f * 9.81f;
+
+	/**
+	 * Minimum norm of the east vector, below it the device is close to free fall
+	 * or to the magnetic pole and the rotation is not valid
+	 */
+	private static final float MIN_EAST_NORM = 0.1f;
+
+	private final float[] gravity = new float[3];
+	private final float[] geomagnetic = new float[3];
+
+	/**
+	 * Rotation matrix (3x3, row-major)
+	 */
+	private final float[] rotation = new float[9];
+
+	private boolean changed = true;
+	private boolean valid = false;
+
+	/**
+	 * Set the gravity vector (only the first 3 components are used)
+	 *
+	 * @param gravity
+	 */
+	public void setGravity(float[] gravity) {
+		changed |= copy(gravity, this.gravity);
+	}
+
+	/**
+	 * Set the geomagnetic field vector (only the first 3 components are used)
+	 *
+	 * @param geomagnetic
+	 */
+	public void setGeomagnetic(float[] geomagnetic) {
+		changed |= copy(geomagnetic, this.geomagnetic);
+	}
+
+	/**
+	 * Compute the rotation matrix if the inputs changed since the last call
+	 *
+	 * @return true if the rotation is valid
+	 */
+	public boolean update() {
+		if (changed) {
+			valid = computeRotation(rotation, gravity, geomagnetic);
+			changed = false;
+		}
+		return valid;
+	}
+
+	/**
+	 * Rotate a vector to the earth coordinate system with the last rotation
+	 * computed by update(). The input and output may be the same array
+	 *
+	 * @param vector vector in device coordinates (first 3 components)
+	 * @param result vector in earth coordinates, if it has a fourth component it
+	 * is set to 0
+	 */
+	public void rotate(float[] vector, float[] result) {
+		float x = vector[0], y = vector[1], z = vector[2];
+		float[] r = rotation;
+
+		result[0] = r[0] * x + r[1] * y + r[2] * z;
+		result[1] = r[3] * x + r[4] * y + r[5] * z;
+		result[2] = r[6] * x + r[7] * y + r[8] * z;
+		if (result.length > 3) {
+			result[3] = 0;
+		}
+	}
+
+	/**
+	 * Compute the rotation matrix as SensorManager.getRotationMatrix()
+	 *
+	 * @param rotation 3x3 row-major matrix for the result
+	 * @param gravity
+	 * @param geomagnetic
+	 * @return false if the rotation cannot be computed (e.g. free fall)
+	 */
+	public static boolean computeRotation(float[] rotation, float[] gravity, float[] geomagnetic) {
+		float ax = gravity[0], ay = gravity[1], az = gravity[2];
+		if (ax * ax + ay * ay + az * az < MIN_GRAVITY_SQUARED) {
+			return false;
+		}
+
+		final float ex = geomagnetic[0], ey = geomagnetic[1], ez = geomagnetic[2];
+
+		/* East: H = E x A */
+		float hx = ey * az - ez * ay;
+		float hy = ez * ax - ex * az;
+		float hz = ex * ay - ey * ax;
+
+		final float normH = (float) Math.sqrt(hx * hx + hy * hy + hz * hz);
+		if (normH < MIN_EAST_NORM) {
+			return false;
+		}
+
+		final float invH = 1.0f / normH;
+		hx *= invH;
+		hy *= invH;
+		hz *= invH;
+
+		final float invA = 1.0f / (float) Math.sqrt(ax * ax + ay * ay + az * az);
+		ax *= invA;
+		ay *= invA;
+		az *= invA;
+
+		/* North: M = A x H */
+		final float mx = ay * hz - az * hy;
+		final float my = az * hx - ax * hz;
+		final float mz = ax * hy - ay * hx;
+
+		rotation[0] = hx; rotation[1] = hy; rotation[2] = hz;
+		rotation[3] = mx; rotation[4] = my; rotation[5] = mz;
+		rotation[6] = ax; rotation[7] = ay; rotation[8] = az;
+		return true;
+	}
+
+	/**
+	 * Copy the first 3 components
+	 *
+	 * @return true if the destination changed
+	 */
+	private static boolean copy(float[] source, float[] destination) {
+		boolean changed = false;
+		for (int i = 0; i < 3; i++) {
+			if (destination[i] != source[i]) {
+				destination[i] = source[i];
+				changed = true;
+			}
+		}
+		return changed;
+	}
+}
@@ -0,0 +1,148 @@
+package cl.niclabs.adkmobile.monitor.accelerometer;
+
+import android.annotation.TargetApi;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Build;
+import android.os.SystemClock;
+import cl.niclabs.adkmobile.monitor.data.AccelerometerBuffer;
+
+/**
+ * Sensor registration and sample buffering shared by the accelerometer monitors,
+ * for batches of a fixed number of samples or for the bursts of the hardware FIFO
+ * of the sensor hub (max report latency, Android 4.4+).
+ *
+ * Report latencies are given in milliseconds, as configured in the monitors, and
+ * clamped to MAX_REPORT_LATENCY_LIMIT, since the sensor API takes them in microseconds
+ * as an int.
+ */
+public class SensorBatching {
+	/**
+	 * Max report latency extra for configuring the monitors
+	 */
+	public static final String MAX_REPORT_LATENCY_EXTRA = "sensor_max_report_latency";
+
+	/**
+	 * Maximum report latency in milliseconds (about 35 minutes)
+	 */
+	public static final int MAX_REPORT_LATENCY_LIMIT = Integer.MAX_VALUE / 1000;
+
+	/**
+	 * Maximum number of samples in a burst
+	 */
+	private static final int MAX_BURST_SIZE = 4096;
+
+	/**
+	 * Maximum delay (in nanoseconds) of the last sample of a burst
+	 */
+	private static final long FRESH_THRESHOLD = 10000000L;
+
+	private SensorBatching() {
+	}
+
+	/**
+	 * @param maxReportLatency in milliseconds
+	 * @return the latency in microseconds, as accepted by SensorManager.registerListener(),
+	 * or 0 if FIFO batching is disabled
+	 */
+	public static int getMaxReportLatencyUs(int maxReportLatency) {
+		return maxReportLatency > 0 ? Math.min(maxReportLatency, MAX_REPORT_LATENCY_LIMIT) * 1000 : 0;
+	}
+
+	/**
+	 * @param maxReportLatency in milliseconds
+	 * @return true if FIFO batching is enabled and supported by the device
+	 */
+	public static boolean isFifoBatching(int maxReportLatency) {
+		return maxReportLatency > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+	}
+
+	/**
+	 * @param sensorDelay
+	 * @param maxReportLatency in milliseconds
+	 * @return the assembler for the samples of a sensor, or null if FIFO batching is
+	 * disabled or not supported
+	 */
+	public static SensorBurstAssembler newAssembler(int sensorDelay, int maxReportLatency) {
+		if (!isFifoBatching(maxReportLatency)) {
+			return null;
+		}
+
+		long period = SensorBurstAssembler.getSamplingPeriodUs(sensorDelay) * 1000L;
+		return new SensorBurstAssembler(period, Math.max(period / 2, FRESH_THRESHOLD));
+	}
+
+	/**
+	 * @param sensor
+	 * @param sensorDelay
+	 * @param maxReportLatency in milliseconds
+	 * @param batchSize
+	 * @return the sample buffer for the bursts of the sensor (if FIFO batching is enabled
+	 * and supported) or for batches of batchSize samples, null if batching is disabled
+	 */
+	public static AccelerometerBuffer newBuffer(Sensor sensor, int sensorDelay, int maxReportLatency, int batchSize) {
+		if (isFifoBatching(maxReportLatency)) {
+			return new AccelerometerBuffer(getBurstSize(sensor, sensorDelay, maxReportLatency, batchSize));
+		}
+		return batchSize > 1 ? new AccelerometerBuffer(batchSize) : null;
+	}
+
+	/**
+	 * @param sensor
+	 * @param sensorDelay
+	 * @param maxReportLatency in milliseconds
+	 * @param batchSize
+	 * @return the expected maximum number of samples in a burst
+	 */
+	@TargetApi(Build.VERSION_CODES.KITKAT)
+	public static int getBurstSize(Sensor sensor, int sensorDelay, int maxReportLatency, int batchSize) {
+		long size = (long) getMaxReportLatencyUs(maxReportLatency) / SensorBurstAssembler.getSamplingPeriodUs(sensorDelay) + 1;
+
+		/* The FIFO may not hold all the samples for the latency */
+		int fifoSize = sensor != null ? sensor.getFifoMaxEventCount() : 0;
+		if (fifoSize > 0) {
+			size = Math.min(size, fifoSize);
+		}
+		return (int) Math.max(batchSize, Math.min(size, MAX_BURST_SIZE));
+	}
+
+	/**
+	 * Register the listener for the sensor, with the max report latency if FIFO
+	 * batching is enabled and supported
+	 *
+	 * @param sensorManager
+	 * @param listener
+	 * @param sensor
+	 * @param sensorDelay
+	 * @param maxReportLatency in milliseconds
+	 * @return true if the sensor is supported
+	 */
+	public static boolean registerListener(SensorManager sensorManager, SensorEventListener listener,
+			Sensor sensor, int sensorDelay, int maxReportLatency) {
+		if (isFifoBatching(maxReportLatency)) {
+			return registerBatchedListener(sensorManager, listener, sensor, sensorDelay, maxReportLatency);
+		}
+		return sensorManager.registerListener(listener, sensor, sensorDelay);
+	}
+
+	@TargetApi(Build.VERSION_CODES.KITKAT)
+	private static boolean registerBatchedListener(SensorManager sensorManager, SensorEventListener listener,
+			Sensor sensor, int sensorDelay, int maxReportLatency) {
+		return sensorManager.registerListener(listener, sensor, sensorDelay, getMaxReportLatencyUs(maxReportLatency));
+	}
+
+	/**
+	 * Add the sample to the assembler
+	 *
+	 * @param assembler
+	 * @param event
+	 * @return nanoseconds elapsed since the sample was measured
+	 */
+	@TargetApi(Build.VERSION_CODES.KITKAT)
+	public static long getSampleDelay(SensorBurstAssembler assembler, SensorEvent event) {
+		long arrival = SystemClock.elapsedRealtimeNanos();
+		return arrival - assembler.add(event.timestamp, arrival);
+	}
+}
@@ -0,0 +1,154 @@
+package cl.niclabs.adkmobile.monitor.accelerometer;
+
+/**
+ * Reconstructs sample times and detects the end of bursts for sensors registered
+ * with a max report latency (hardware FIFO batching).
+ *
+ * In batching mode the sensor hub stores samples and delivers them in bursts, so
+ * the time at which a sample arrives says little about when it was measured. Sample
+ * times are instead derived from the sensor timestamps, translated to the clock of
+ * the arrival times (e.g. SystemClock.elapsedRealtimeNanos()) with an offset
+ * estimated as the minimum observed difference between arrival and sensor timestamp
+ * (the delivery delay of the freshest samples). The estimate may grow by at most
+ * MAX_DRIFT per unit of time, so it follows the drift between both clocks.
+ *
+ * Sensor timestamps that do not increase (seen on some HALs) are replaced by the
+ * previous sample time plus the estimated sampling period, and sample times are never
+ * after the arrival time.
+ *
+ * A burst ends with a sample that arrives within the fresh threshold of its
+ * reconstructed time, i.e. when the FIFO has been emptied.
+ *
+ * All times are in nanoseconds. This class does not depend on the Android API and is not
+ * thread-safe.
+ */
+public class SensorBurstAssembler {
+	/**
+	 * Maximum growth rate of the clock offset estimate (1 ms per second)
+	 */
+	public static final double MAX_DRIFT = 1e-3;
+
+	/**
+	 * Weight of new intervals on the sampling period estimate
+	 */
+	private static final double PERIOD_WEIGHT = 0.1;
+
+	private final long freshThreshold;
+
+	private boolean started = false;
+	private long offset;
+	private long lastArrival;
+	private long lastTimestamp;
+	private long lastTime;
+	private double period;
+
+	/**
+	 * True if the last sample corrected the offset estimate by more than the
+	 * fresh threshold, so its delay is not reliable
+	 */
+	private boolean corrected;
+
+	/**
+	 * @param samplingPeriod nominal sampling period, used until it is estimated
+	 * from the timestamps
+	 * @param freshThreshold maximum delay of the last sample of a burst
+	 */
+	public SensorBurstAssembler(long samplingPeriod, long freshThreshold) {
+		if (samplingPeriod <= 0 || freshThreshold < 0) {
+			throw new IllegalArgumentException("Invalid sampling period " + samplingPeriod
+					+ " or threshold " + freshThreshold);
+		}
+
+		this.period = samplingPeriod;
+		this.freshThreshold = freshThreshold;
+	}
+
+	/**
+	 * Add a sample
+	 *
+	 * @param timestamp sensor timestamp of the sample (e.g. SensorEvent.timestamp)
+	 * @param arrival time the sample was received
+	 * @return the reconstructed time of the sample, in the clock of the arrival time
+	 */
+	public long add(long timestamp, long arrival) {
+		if (!started) {
+			started = true;
+			offset = arrival - timestamp;
+			lastArrival = arrival;
+			lastTimestamp = timestamp;
+			lastTime = arrival;
+			corrected = true;
+			return lastTime;
+		}
+
+		/* Allow the offset to drift forward, then take the smallest delay */
+		long elapsed = Math.max(arrival - lastArrival, 0);
+		long drifted = offset + (long) (elapsed * MAX_DRIFT);
+		offset = Math.min(drifted, arrival - timestamp);
+		corrected = drifted - offset > freshThreshold;
+		lastArrival = arrival;
+
+		long time;
+		long delta = timestamp - lastTimestamp;
+		if (delta > 0) {
+			period += PERIOD_WEIGHT * (Math.min(delta, 4 * (long) period) - period);
+			time = timestamp + offset;
+			lastTimestamp = timestamp;
+		}
+		else {
+			/* Invalid timestamp, assume a regular sampling */
+			time = lastTime + (long) period;
+		}
+
+		/* Keep the times ordered and not after the arrival */
+		time = Math.min(Math.max(time, lastTime + 1), arrival);
+		lastTime = time;
+		return time;
+	}
+
+	/**
+	 * @return true if the last sample added is the last of a burst. Until the offset
+	 * estimate settles (e.g. if the first samples come from a burst), samples are not
+	 * considered the end of a burst
+	 */
+	public boolean isBurstEnd() {
+		return started && !corrected && lastArrival - lastTime <= freshThreshold;
+	}
+
+	/**
+	 * @return the estimated sampling period
+	 */
+	public long getSamplingPeriod() {
+		return (long) period;
+	}
+
+	/**
+	 * Forget the clock offset and the last sample (e.g. when the sensor is
+	 * registered again)
+	 */
+	public void reset() {
+		started = false;
+	}
+
+	/**
+	 * Get the sampling period for a sensor delay
+	 *
+	 * @param sensorDelay one of the SensorManager.SENSOR_DELAY_* constants, or a period in
+	 * microseconds
+	 * @return the sampling period in microseconds
+	 */
+	public static int getSamplingPeriodUs(int sensorDelay) {
+		switch (sensorDelay) {
+		case 0: /* SENSOR_DELAY_FASTEST, use a typical maximum rate */
+			return 5000;
+		case 1: /* SENSOR_DELAY_GAME */
+			return 20000;
+		case 2: /* SENSOR_DELAY_UI */
+			return 66667;
+		case 3: /* SENSOR_DELAY_NORMAL */
+			return 200000;
+		default:
+			return sensorDelay;
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package cl.niclabs.adkmobile.monitor.aggregation;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import android.os.Bundle;
+import android.util.Log;
+import cl.niclabs.adkmobile.data.FieldDescriptor;
+import cl.niclabs.adkmobile.monitor.Monitor;
+import cl.niclabs.adkmobile.monitor.data.AbstractObservation;
+import cl.niclabs.adkmobile.monitor.data.Observation;
+
+/**
+ * Aggregates the observations of a monitor event before they are notified to
+ * listeners (see AbstractMonitor.setAggregation()).
+ *
+ * The stage reads the configured numeric fields of each observation into a
+ * WindowAggregator. At the end of each window, a new observation of the same class
+ * is created as a copy of the last observation of the window, with the aggregated
+ * fields replaced by the reduced values, and passed to the Output. Observations that
+ * do not have the configured fields (e.g. accelerometer batches) are not aggregated.
+ *
+ * The stage is configured with a Bundle with the following keys
+ * - WINDOW_EXTRA (long): window length in milliseconds, the stage is disabled if not set
+ * - SLIDE_EXTRA (long): time between windows in milliseconds, defaults to the window
+ * length (tumbling windows)
+ * - FIELDS_EXTRA (String[]): names of the fields to aggregate
+ * - REDUCERS_EXTRA (String[]): reducer for each field (see Reducer.valueOf()), or a
+ * single reducer for all fields. Defaults to mean
+ */
+public class AggregationStage implements WindowAggregator.Callback {
+	/**
+	 * Extra key for the window length (in milliseconds)
+	 */
+	public static final String WINDOW_EXTRA = "aggregation_window";
+
+	/**
+	 * Extra key for the window slide (in milliseconds)
+	 */
+	public static final String SLIDE_EXTRA = "aggregation_slide";
+
+	/**
+	 * Extra key for the aggregated fields
+	 */
+	public static final String FIELDS_EXTRA = "aggregation_fields";
+
+	/**
+	 * Extra key for the reducers
+	 */
+	public static final String REDUCERS_EXTRA = "aggregation_reducers";
+
+	private static final String TAG = "AdkintunMobile::AggregationStage";
+
+	/**
+	 * Receives the aggregated observations
+	 */
+	public interface Output {
+		public void onAggregate(Observation result);
+	}
+
+	private final String[] fieldNames;
+	private final WindowAggregator aggregator;
+	private final Output output;
+
+	/**
+	 * Class of the aggregated observations and its fields, resolved with the first
+	 * observation
+	 */
+	private Class<?> type;
+	private Field[] fields;
+	private FieldDescriptor timestampField;
+
+	/**
+	 * Last observation added, used as template for the aggregated observation
+	 */
+	private Observation last;
+
+	private final double[] values;
+
+	private AggregationStage(String[] fieldNames, long window, long slide, Reducer[] reducers, Output output) {
+		this.fieldNames = fieldNames;
+		this.output = output;
+		this.aggregator = new WindowAggregator(window, slide, reducers, this);
+		this.values = new double[fieldNames.length];
+	}
+
+	/**
+	 * Create a stage from the configuration
+	 *
+	 * @param configuration
+	 * @param output
+	 * @return the stage or null if the configuration does not define a window
+	 * @throws IllegalArgumentException if the configuration is not valid
+	 */
+	public static AggregationStage create(Bundle configuration, Output output) {
+		if (configuration == null) {
+			return null;
+		}
+
+		long window = configuration.getLong(WINDOW_EXTRA, 0);
+		if (window <= 0) {
+			return null;
+		}
+		long slide = configuration.getLong(SLIDE_EXTRA, window);
+
+		String[] fieldNames = configuration.getStringArray(FIELDS_EXTRA);
+		if (fieldNames == null || fieldNames.length == 0) {
+			throw new IllegalArgumentException("No fields to aggregate");
+		}
+
+		String[] reducerNames = configuration.getStringArray(REDUCERS_EXTRA);
+		Reducer[] reducers = new Reducer[fieldNames.length];
+		for (int i = 0; i < reducers.length; i++) {
+			if (reducerNames == null || reducerNames.length == 0) {
+				reducers[i] = Reducer.MEAN;
+			}
+			else {
+				reducers[i] = Reducer.valueOf(reducerNames[reducerNames.length == 1 ? 0 : i]);
+			}
+		}
+
+		return new AggregationStage(fieldNames, window, slide, reducers, output);
+	}
+
+	/**
+	 * Add an observation to the current window. Aggregated observations for
+	 * the windows closed by the observation are passed to the output before returning
+	 *
+	 * @param observation
+	 * @return false if the observation cannot be aggregated and must be notified
+	 * as is
+	 */
+	public synchronized boolean add(Observation observation) {
+		if (!resolve(observation.getClass())) {
+			return false;
+		}
+
+		try {
+			for (int i = 0; i < fields.length; i++) {
+				values[i] = read(fields[i], observation);
+			}
+		} catch (IllegalAccessException e) {
+			/* Should not happen since fields are accessible */
+			throw new IllegalStateException(e);
+		}
+
+		aggregator.add(observation.getTimestamp(), values);
+
+		/* The previous template is no longer needed */
+		if (last instanceof AbstractObservation && ((AbstractObservation<?>) last).isPooled()) {
+			((AbstractObservation<?>) last).recycle();
+		}
+		last = observation;
+		return true;
+	}
+
+	/**
+	 * Notify the current window with the observations received so far
+	 */
+	public synchronized void flush() {
+		aggregator.flush();
+	}
+
+	@Override
+	public void onWindow(long start, long end, int count, double[] results) {
+		Observation result;
+		try {
+			result = (Observation) type.newInstance();
+
+			/* Copy the last observation and replace the aggregated fields */
+			for (FieldDescriptor descriptor : FieldDescriptor.forClass(type)) {
+				if (!descriptor.isId()) {
+					descriptor.getField().set(result, descriptor.get(last));
+				}
+			}
+
+			for (int i = 0; i < fields.length; i++) {
+				write(fields[i], result, results[i]);
+			}
+
+			/* Report the aggregation at the end of the window */
+			if (timestampField != null) {
+				timestampField.getField().setLong(result, Math.min(end - 1, last.getTimestamp()));
+			}
+		} catch (InstantiationException e) {
+			Log.e(TAG, "Cannot create aggregated observation of type " + type.getName());
+			return;
+		} catch (IllegalAccessException e) {
+			Log.e(TAG, "Cannot create aggregated observation of type " + type.getName());
+			return;
+		}
+
+		if (Monitor.DEBUG)
+			Log.v(TAG, "Aggregated " + count + " observations in [" + start + ", " + end + ")");
+
+		output.onAggregate(result);
+	}
+
+	/**
+	 * Resolve the aggregated fields for the class of the observation
+	 *
+	 * @param cls
+	 * @return true if the class has all the fields
+	 */
+	private boolean resolve(Class<?> cls) {
+		if (cls == type) {
+			return true;
+		}
+
+		/* Only one class of observations is aggregated by a stage */
+		if (type != null) {
+			return false;
+		}
+
+		List<FieldDescriptor> descriptors = FieldDescriptor.forClass(cls);
+		Field[] resolved = new Field[fieldNames.length];
+		FieldDescriptor timestamp = null;
+		for (FieldDescriptor descriptor : descriptors) {
+			for (int i = 0; i < fieldNames.length; i++) {
+				if (descriptor.getName().equals(fieldNames[i]) && isNumeric(descriptor.getType())) {
+					resolved[i] = descriptor.getField();
+				}
+			}
+
+			if (descriptor.getName().equals("timestamp") && descriptor.getType() == long.class) {
+				timestamp = descriptor;
+			}
+		}
+
+		for (Field field : resolved) {
+			if (field == null) {
+				return false;
+			}
+		}
+
+		type = cls;
+		fields = resolved;
+		timestampField = timestamp;
+		return true;
+	}
+
+	private static boolean isNumeric(Class<?> type) {
+		return type == double.class || type == float.class || type == long.class || type == int.class
+				|| type == short.class || type == byte.class || type == Double.class
+				|| type == Float.class || type == Long.class || type == Integer.class;
+	}
+
+	/**
+	 * Read a numeric field, null values are read as NaN
+	 */
+	private static double read(Field field, Object object) throws IllegalAccessException {
+		if (field.getType().isPrimitive()) {
+			return field.getDouble(object);
+		}
+
+		Number value = (Number) field.get(object);
+		return value != null ? value.doubleValue() : Double.NaN;
+	}
+
+	/**
+	 * Write a numeric field, rounding for integer types
+	 */
+	private static void write(Field field, Object object, double value) throws IllegalAccessException {
+		Class<?> type = field.getType();
+		if (type == double.class) field.setDouble(object, value);
+		else if (type == float.class) field.setFloat(object, (float) value);
+		else if (type == long.class) field.setLong(object, Math.round(value));
+		else if (type == int.class) field.setInt(object, (int) Math.round(value));
+		else if (type == short.class) field.setShort(object, (short) Math.round(value));
+		else if (type == byte.class) field.setByte(object, (byte) Math.round(value));
+		else if (type == Double.class) field.set(object, Double.valueOf(value));
+		else if (type == Float.class) field.set(object, Float.valueOf((float) value));
+		else if (type == Long.class) field.set(object, Long.valueOf(Math.round(value)));
+		else if (type == Integer.class) field.set(object, Integer.valueOf((int) Math.round(value)));
+	}
+}
@@ -0,0 +1,153 @@
+package cl.niclabs.adkmobile.monitor.aggregation;
+
+import java.util.Arrays;
+
+/**
+ * Reduces the values of a window to a single value.
+ *
+ * Reducers receive a scratch copy of the values of the window, so they
+ * are free to reorder it (e.g. to compute percentiles).
+ *
+ * This class does not depend on the Android API.
+ */
+public abstract class Reducer {
+	/**
+	 * Sum of the values
+	 */
+	public static final Reducer SUM = new Reducer("sum") {
+		@Override
+		public double reduce(double[] values, int length) {
+			double sum = 0.0;
+			for (int i = 0; i < length; i++) {
+				sum += values[i];
+			}
+			return sum;
+		}
+	};
+
+	/**
+	 * Mean of the values
+	 */
+	public static final Reducer MEAN = new Reducer("mean") {
+		@Override
+		public double reduce(double[] values, int length) {
+			return SUM.reduce(values, length) / length;
+		}
+	};
+
+	/**
+	 * Unbiased variance of the values, computed in one pass with Welford's
+	 * algorithm. The variance of a single value is 0
+	 */
+	public static final Reducer VARIANCE = new Reducer("variance") {
+		@Override
+		public double reduce(double[] values, int length) {
+			double mean = 0.0;
+			double m2 = 0.0;
+			for (int i = 0; i < length; i++) {
+				double delta = values[i] - mean;
+				mean += delta / (i + 1);
+				m2 += delta * (values[i] - mean);
+			}
+			return length > 1 ? m2 / (length - 1) : 0.0;
+		}
+	};
+
+	/**
+	 * Minimum value
+	 */
+	public static final Reducer MIN = new Reducer("min") {
+		@Override
+		public double reduce(double[] values, int length) {
+			double min = values[0];
+			for (int i = 1; i < length; i++) {
+				if (values[i] < min) min = values[i];
+			}
+			return min;
+		}
+	};
+
+	/**
+	 * Maximum value
+	 */
+	public static final Reducer MAX = new Reducer("max") {
+		@Override
+		public double reduce(double[] values, int length) {
+			double max = values[0];
+			for (int i = 1; i < length; i++) {
+				if (values[i] > max) max = values[i];
+			}
+			return max;
+		}
+	};
+
+	private final String name;
+
+	protected Reducer(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Reduce the first length values of the array
+	 *
+	 * @param values scratch copy of the values, it may be modified
+	 * @param length number of values, at least 1
+	 * @return
+	 */
+	public abstract double reduce(double[] values, int length);
+
+	/**
+	 * Get a reducer for the p-th percentile of the values, interpolating linearly
+	 * between the closest ranks
+	 *
+	 * @param p percentile between 0 and 100
+	 * @return
+	 */
+	public static Reducer percentile(final double p) {
+		if (p < 0 || p > 100) {
+			throw new IllegalArgumentException("Percentile must be between 0 and 100");
+		}
+
+		return new Reducer("p" + p) {
+			@Override
+			public double reduce(double[] values, int length) {
+				Arrays.sort(values, 0, length);
+
+				double rank = p / 100 * (length - 1);
+				int lower = (int) Math.floor(rank);
+				int upper = (int) Math.ceil(rank);
+				return values[lower] + (rank - lower) * (values[upper] - values[lower]);
+			}
+		};
+	}
+
+	/**
+	 * Get a reducer by name, one of sum, mean, variance, min, max, or pN for
+	 * the N-th percentile (e.g. p50, p95)
+	 *
+	 * @param name
+	 * @return
+	 * @throws IllegalArgumentException if the name is not valid
+	 */
+	public static Reducer valueOf(String name) {
+		if (name.equals(SUM.name)) return SUM;
+		if (name.equals(MEAN.name)) return MEAN;
+		if (name.equals(VARIANCE.name)) return VARIANCE;
+		if (name.equals(MIN.name)) return MIN;
+		if (name.equals(MAX.name)) return MAX;
+
+		if (name.startsWith("p")) {
+			try {
+				return percentile(Double.parseDouble(name.substring(1)));
+			} catch (NumberFormatException e) {
+				// Not a percentile
+			}
+		}
+		throw new IllegalArgumentException("Unknown reducer " + name);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,196 @@
+package cl.niclabs.adkmobile.monitor.aggregation;
+
+/**
+ * Aggregates a stream of timestamped samples over time windows.
+ *
+ * Each sample has one value per channel. Windows have a fixed length and start
+ * every slide milliseconds: if the slide is equal to the length, windows are
+ * tumbling (consecutive and disjoint), if it is smaller they are sliding (overlapping).
+ * The first window starts with the first sample. When a sample arrives after the
+ * end of a window, the window is closed and each channel is reduced with its
+ * Reducer. Windows without samples are not reported, and if there is a gap longer
+ * than the window, windows are realigned to the next sample.
+ *
+ * Samples are kept in a ring buffer of parallel arrays (timestamps and one column
+ * per channel) that grows to the number of samples in a window and is then reused,
+ * so adding samples does not allocate. Timestamps are expected in non-decreasing order.
+ *
+ * This class does not depend on the Android API and is not thread-safe.
+ */
+public class WindowAggregator {
+	/**
+	 * Receives the result of each window
+	 */
+	public interface Callback {
+		/**
+		 * Called when a window is closed
+		 *
+		 * @param start start of the window (inclusive)
+		 * @param end end of the window (exclusive)
+		 * @param count number of samples in the window
+		 * @param results reduced value for each channel. The array is reused
+		 * for the next window, so it must not be kept
+		 */
+		public void onWindow(long start, long end, int count, double[] results);
+	}
+
+	private static final int DEFAULT_CAPACITY = 64;
+
+	private final long length;
+	private final long slide;
+	private final Reducer[] reducers;
+	private final Callback callback;
+
+	private long[] timestamps;
+	private double[][] columns;
+	private int head = 0;
+	private int size = 0;
+
+	/**
+	 * End of the current window, only valid if the buffer is not empty
+	 */
+	private long end;
+
+	private double[] scratch;
+	private final double[] results;
+
+	/**
+	 * @param length length of the windows (in milliseconds)
+	 * @param slide time between the start of consecutive windows (in milliseconds),
+	 * between 1 and length
+	 * @param reducers reducer for each channel
+	 * @param callback
+	 */
+	public WindowAggregator(long length, long slide, Reducer[] reducers, Callback callback) {
+		if (length <= 0 || slide <= 0 || slide > length) {
+			throw new IllegalArgumentException("Invalid window length " + length + " or slide " + slide);
+		}
+
+		this.length = length;
+		this.slide = slide;
+		this.reducers = reducers.clone();
+		this.callback = callback;
+
+		timestamps = new long[DEFAULT_CAPACITY];
+		columns = new double[reducers.length][DEFAULT_CAPACITY];
+		scratch = new double[DEFAULT_CAPACITY];
+		results = new double[reducers.length];
+	}
+
+	/**
+	 * @return number of channels
+	 */
+	public int getChannels() {
+		return reducers.length;
+	}
+
+	/**
+	 * @return number of samples waiting in the buffer
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Add a sample. Windows ending at or before the timestamp are closed first
+	 *
+	 * @param timestamp (in milliseconds)
+	 * @param values one value per channel
+	 */
+	public void add(long timestamp, double[] values) {
+		if (size > 0) {
+			advance(timestamp);
+		}
+
+		if (size == 0) {
+			end = timestamp + length;
+		}
+
+		if (size == timestamps.length) {
+			grow();
+		}
+
+		int index = (head + size) % timestamps.length;
+		timestamps[index] = timestamp;
+		for (int c = 0; c < columns.length; c++) {
+			columns[c][index] = values[c];
+		}
+		size++;
+	}
+
+	/**
+	 * Close the current window with the samples received so far and remove
+	 * all samples
+	 */
+	public void flush() {
+		if (size > 0) {
+			emit(size);
+		}
+		clear();
+	}
+
+	/**
+	 * Remove all samples without reporting them
+	 */
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+
+	/**
+	 * Close all the windows ending at or before the timestamp
+	 */
+	private void advance(long timestamp) {
+		while (size > 0 && timestamp >= end) {
+			/* Samples are ordered, count those inside the window */
+			int count = 0;
+			while (count < size && timestamps[(head + count) % timestamps.length] < end) {
+				count++;
+			}
+
+			if (count > 0) {
+				emit(count);
+			}
+
+			/* Move to the next window and drop the samples before its start */
+			end += slide;
+			long start = end - length;
+			while (size > 0 && timestamps[head] < start) {
+				head = (head + 1) % timestamps.length;
+				size--;
+			}
+		}
+	}
+
+	private void emit(int count) {
+		for (int c = 0; c < columns.length; c++) {
+			double[] column = columns[c];
+			for (int i = 0; i < count; i++) {
+				scratch[i] = column[(head + i) % column.length];
+			}
+			results[c] = reducers[c].reduce(scratch, count);
+		}
+		callback.onWindow(end - length, end, count, results);
+	}
+
+	private void grow() {
+		int capacity = timestamps.length * 2;
+
+		long[] newTimestamps = new long[capacity];
+		for (int i = 0; i < size; i++) {
+			newTimestamps[i] = timestamps[(head + i) % timestamps.length];
+		}
+
+		for (int c = 0; c < columns.length; c++) {
+			double[] column = new double[capacity];
+			for (int i = 0; i < size; i++) {
+				column[i] = columns[c][(head + i) % timestamps.length];
+			}
+			columns[c] = column;
+		}
+
+		timestamps = newTimestamps;
+		scratch = new double[capacity];
+		head = 0;
+	}
+}
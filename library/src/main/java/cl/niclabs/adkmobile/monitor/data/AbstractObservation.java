@@ -1,21 +1,47 @@
 package cl.niclabs.adkmobile.monitor.data;
 
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.util.List;
+
+import cl.niclabs.adkmobile.data.FieldDescriptor;
 import cl.niclabs.android.data.Persistent;
 
+import com.orm.dsl.Ignore;
+
 /**
  * Base class for all observations by monitors
  * 
  * Implements cl.niclabs.adkmobile.data.Serializable for backwards compatibility
  * 
+ * Observations can be obtained from a per-type pool with obtain() and returned
+ * with recycle() once no longer used (see ObservationPool)
+ * 
  * @author Felipe Lalanne <flalanne@niclabs.cl>
  * 
  * @param <E>
  */
 public abstract class AbstractObservation<E extends AbstractObservation<E>>
 		extends Persistent<E> implements Observation {
+	static final int POOL_NONE = 0;
+	static final int POOL_IN_USE = 1;
+	static final int POOL_RECYCLED = 2;
+
 	protected int eventType;
 	protected long timestamp;
 
+	/**
+	 * Pool status of the observation
+	 */
+	@Ignore
+	transient int poolState = POOL_NONE;
+
+	/**
+	 * Reference used by the pool leak detector
+	 */
+	@Ignore
+	transient Reference<?> leakReference;
+
 	/**
 	 * Required by Sugar ORM.
 	 */
@@ -27,6 +53,41 @@ public abstract class AbstractObservation<E extends AbstractObservation<E>>
 		this.timestamp = timestamp;
 	}
 
+	/**
+	 * Get an observation of the given type from the pool, or create a new one if
+	 * the pool is empty. All other fields of the observation have their default values
+	 * 
+	 * @param type class of the observation, it must have a public no-argument constructor
+	 * @param eventType
+	 * @param timestamp
+	 * @return
+	 */
+	public static <E extends AbstractObservation<E>> E obtain(Class<E> type, int eventType, long timestamp) {
+		E observation = ObservationPool.forClass(type).obtain();
+		observation.eventType = eventType;
+		observation.timestamp = timestamp;
+		return observation;
+	}
+
+	/**
+	 * @return true if the observation was obtained from a pool and has not been
+	 * recycled or released
+	 */
+	public boolean isPooled() {
+		return poolState == POOL_IN_USE;
+	}
+
+	/**
+	 * Return the observation to the pool of its class. The observation must not
+	 * be used after this call
+	 * 
+	 * @throws IllegalStateException if the observation was already recycled
+	 */
+	@SuppressWarnings("unchecked")
+	public void recycle() {
+		ObservationPool.forClass((Class<E>) getClass()).recycle((E) this);
+	}
+
 	@Override
 	public Integer getEventType() {
 		return eventType;
@@ -36,4 +97,14 @@ public abstract class AbstractObservation<E extends AbstractObservation<E>>
 	public Long getTimestamp() {
 		return timestamp;
 	}
+	
+	/**
+	 * Return the list of fields of the observation for serialization, including
+	 * the id as cl.niclabs.android.data.Persistent does. Field metadata is cached per 
+	 * class (see FieldDescriptor)
+	 */
+	@Override
+	public List<Field> getSerializableFields() {
+		return FieldDescriptor.getSerializableFields(getClass(), true);
+	}
 }
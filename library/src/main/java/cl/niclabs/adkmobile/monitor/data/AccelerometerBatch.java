@@ -0,0 +1,167 @@
+package cl.niclabs.adkmobile.monitor.data;
+
+import cl.niclabs.adkmobile.monitor.Monitor;
+
+/**
+ * Read-only window of consecutive accelerometer samples, as delivered
+ * to {@link cl.niclabs.adkmobile.monitor.listeners.AccelerometerBatchListener}.
+ *
+ * The window reads directly from the monitor's {@link AccelerometerBuffer},
+ * therefore it is only valid during the listener callback. Listeners that need
+ * to keep the data must copy it or convert the samples with getObservation().
+ *
+ * Sample 0 is the oldest sample of the window.
+ */
+public class AccelerometerBatch implements TransientObservation {
+	private final AccelerometerBuffer buffer;
+	private int start;
+	private int size;
+
+	AccelerometerBatch(AccelerometerBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	void set(int start, int size) {
+		this.start = start;
+		this.size = size;
+	}
+
+	private int index(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Invalid index " + i + ", size is " + size);
+		}
+		return (start + i) % buffer.capacity();
+	}
+
+	/**
+	 * Get sensor accuracy for the i-th sample
+	 * @param i
+	 * @return
+	 */
+	public int getAccuracy(int i) {
+		return buffer.accuracy[index(i)];
+	}
+
+	@Override
+	public Integer getEventType() {
+		return Monitor.ACCELEROMETER;
+	}
+
+	/**
+	 * Create an observation from the i-th sample of the window
+	 *
+	 * @param i
+	 * @return a new accelerometer observation
+	 */
+	public AccelerometerObservation getObservation(int i) {
+		int index = index(i);
+
+		AccelerometerObservation data = new AccelerometerObservation(buffer.timestamp[index]);
+		data.setAccuracy(buffer.accuracy[index]);
+		data.setX(buffer.x[index]);
+		data.setY(buffer.y[index]);
+		data.setZ(buffer.z[index]);
+
+		return data;
+	}
+
+	/**
+	 * Same as getObservation() but the observation is obtained from the pool and
+	 * must be recycled by the caller
+	 *
+	 * @param i
+	 * @return
+	 */
+	public AccelerometerObservation obtainObservation(int i) {
+		int index = index(i);
+
+		AccelerometerObservation data = AccelerometerObservation.obtain(buffer.timestamp[index]);
+		data.setAccuracy(buffer.accuracy[index]);
+		data.setX(buffer.x[index]);
+		data.setY(buffer.y[index]);
+		data.setZ(buffer.z[index]);
+
+		return data;
+	}
+
+	/**
+	 * @return the timestamp of the first sample of the window
+	 */
+	@Override
+	public Long getTimestamp() {
+		return size > 0 ? getTimestamp(0) : null;
+	}
+
+	/**
+	 * Get the timestamp of the i-th sample (in milliseconds)
+	 * @param i
+	 * @return
+	 */
+	public long getTimestamp(int i) {
+		return buffer.timestamp[index(i)];
+	}
+
+	/**
+	 * Get acceleration in the x-axis for the i-th sample
+	 * @param i
+	 * @return
+	 */
+	public float getX(int i) {
+		return buffer.x[index(i)];
+	}
+
+	/**
+	 * Get acceleration in the y-axis for the i-th sample
+	 * @param i
+	 * @return
+	 */
+	public float getY(int i) {
+		return buffer.y[index(i)];
+	}
+
+	/**
+	 * Get acceleration in the z-axis for the i-th sample
+	 * @param i
+	 * @return
+	 */
+	public float getZ(int i) {
+		return buffer.z[index(i)];
+	}
+
+	/**
+	 * Copy the samples of the window to a new buffer
+	 *
+	 * @return a batch that remains valid after the listener callback
+	 */
+	@Override
+	public AccelerometerBatch copy() {
+		AccelerometerBuffer copy = new AccelerometerBuffer(Math.max(size, 1));
+		for (int i = 0; i < size; i++) {
+			int index = index(i);
+			copy.add(buffer.timestamp[index], buffer.accuracy[index],
+					buffer.x[index], buffer.y[index], buffer.z[index]);
+		}
+		return copy.drain();
+	}
+
+	/**
+	 * @return the last sample of the window, obtained from the pool, or null if
+	 * the window is empty
+	 */
+	@Override
+	public AccelerometerObservation copyLatest() {
+		return size > 0 ? obtainObservation(size - 1) : null;
+	}
+
+	/**
+	 * @return number of samples in the window
+	 */
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "AccelerometerBatch [size=" + size + ", timestamp=" + getTimestamp() + "]";
+	}
+}
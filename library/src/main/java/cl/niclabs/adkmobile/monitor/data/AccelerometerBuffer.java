@@ -0,0 +1,134 @@
+package cl.niclabs.adkmobile.monitor.data;
+
+/**
+ * Fixed capacity ring buffer of accelerometer samples.
+ *
+ * Samples are stored in preallocated primitive arrays (one per component) so
+ * adding a sample does not create any objects. Once the buffer is full, new
+ * samples overwrite the oldest ones.
+ *
+ * Samples that have not yet been delivered can be obtained with drain(), which
+ * returns a read-only window over the buffer. The buffer is not thread-safe,
+ * it must be written and drained from the same thread (e.g. the sensor thread)
+ * or under a lock (e.g. synchronized on the buffer). The window can be read
+ * outside of the lock by the writer thread, as long as other threads only
+ * drain the buffer with drainCopy()
+ */
+public class AccelerometerBuffer {
+	final long[] timestamp;
+	final int[] accuracy;
+	final float[] x;
+	final float[] y;
+	final float[] z;
+
+	/**
+	 * Position for the next sample
+	 */
+	private int head = 0;
+
+	/**
+	 * Number of samples not yet drained
+	 */
+	private int available = 0;
+
+	/**
+	 * Reusable window over the buffer
+	 */
+	private final AccelerometerBatch window;
+
+	public AccelerometerBuffer(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Buffer capacity must be greater than 0");
+		}
+
+		timestamp = new long[capacity];
+		accuracy = new int[capacity];
+		x = new float[capacity];
+		y = new float[capacity];
+		z = new float[capacity];
+
+		window = new AccelerometerBatch(this);
+	}
+
+	/**
+	 * Add a sample to the buffer, overwriting the oldest sample if the
+	 * buffer is full
+	 *
+	 * @param timestamp
+	 * @param accuracy
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return number of samples available after the operation
+	 */
+	public int add(long timestamp, int accuracy, float x, float y, float z) {
+		this.timestamp[head] = timestamp;
+		this.accuracy[head] = accuracy;
+		this.x[head] = x;
+		this.y[head] = y;
+		this.z[head] = z;
+
+		head = (head + 1) % capacity();
+		if (available < capacity()) {
+			available++;
+		}
+		return available;
+	}
+
+	/**
+	 * @return number of samples that have been added since the last call to drain()
+	 */
+	public int available() {
+		return available;
+	}
+
+	/**
+	 * @return maximum number of samples in the buffer
+	 */
+	public int capacity() {
+		return timestamp.length;
+	}
+
+	/**
+	 * Discard all samples in the buffer
+	 */
+	public void clear() {
+		head = 0;
+		available = 0;
+	}
+
+	/**
+	 * Returns a window with the samples added since the last call to drain().
+	 *
+	 * The same window object is returned on each call and its contents are
+	 * only valid until the next sample is added to the buffer.
+	 *
+	 * @return the window of available samples (possibly empty)
+	 */
+	public AccelerometerBatch drain() {
+		int start = (head - available + capacity()) % capacity();
+		window.set(start, available);
+
+		available = 0;
+		return window;
+	}
+
+	/**
+	 * Same as drain() but the samples are copied to a new buffer, so the window
+	 * returned by drain() is not modified. Used to drain the buffer from a thread
+	 * other than the one that notifies the windows (e.g. on deactivation)
+	 *
+	 * @return a new window with the samples added since the last call to drain()
+	 */
+	public AccelerometerBatch drainCopy() {
+		AccelerometerBuffer copy = new AccelerometerBuffer(Math.max(available, 1));
+		int start = (head - available + capacity()) % capacity();
+		for (int i = 0; i < available; i++) {
+			int index = (start + i) % capacity();
+			copy.add(timestamp[index], accuracy[index], x[index], y[index], z[index]);
+		}
+
+		available = 0;
+		return copy.drain();
+	}
+}
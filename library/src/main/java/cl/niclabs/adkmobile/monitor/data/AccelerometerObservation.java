@@ -34,6 +34,16 @@ public class AccelerometerObservation extends AbstractObservation<AccelerometerO
 	public AccelerometerObservation(long timestamp) {
 		super(Monitor.ACCELEROMETER, timestamp);
 	}
+	
+	/**
+	 * Get an accelerometer observation from the pool (see AbstractObservation.obtain())
+	 * 
+	 * @param timestamp
+	 * @return
+	 */
+	public static AccelerometerObservation obtain(long timestamp) {
+		return obtain(AccelerometerObservation.class, Monitor.ACCELEROMETER, timestamp);
+	}
 
 	/**
 	 * Return sensor accuracy
@@ -139,6 +139,23 @@ public class CdmaObservation extends TelephonyObservation<CdmaObservation> {
 		return evdoSnr;
 	}
 	
+	@Override
+	public void resetSignal() {
+		super.resetSignal();
+		
+		if (cdmaEcio != null)
+			cdmaEcio.reset();
+		
+		if (evdoDbm != null)
+			evdoDbm.reset();
+		
+		if (evdoEcio != null)
+			evdoEcio.reset();
+		
+		if (evdoSnr != null)
+			evdoSnr.reset();
+	}
+	
 	/**
 	 * Update cdmaEcio with new value. 
 	 * 
@@ -2,12 +2,22 @@ package cl.niclabs.adkmobile.monitor.data;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import cl.niclabs.adkmobile.data.Prefetchable;
 import cl.niclabs.adkmobile.monitor.data.constants.TelephonyStandard;
+import cl.niclabs.android.data.Serializable;
+
+public class GsmObservation extends TelephonyObservation<GsmObservation> implements Prefetchable {
+	/**
+	 * Maximum number of observations per query in loadNeighborLists(). SQLite limits
+	 * the number of parameters of a query to 999
+	 */
+	private static final int MAX_QUERY_IDS = 500;
 
-public class GsmObservation extends TelephonyObservation<GsmObservation> {
 	private int gsmCid;
 	private int gsmLac;
 	private Integer gsmPsc;
@@ -49,6 +59,57 @@ public class GsmObservation extends TelephonyObservation<GsmObservation> {
 		return gsmPsc;
 	}
 
+	/**
+	 * Load the neighbor lists of a page of observations with one query (per
+	 * MAX_QUERY_IDS observations). Observations already having a neighbor list
+	 * or not stored are not modified.
+	 *
+	 * Calling this method before serializing a page of observations avoids one
+	 * query per observation in getNeighborList(). To serialize the observations
+	 * of an iterator (e.g. from findAsIterator()), wrap it with
+	 * new cl.niclabs.adkmobile.data.PrefetchIterator(iterator), which calls this
+	 * method for each page
+	 *
+	 * @param observations
+	 */
+	public static void loadNeighborLists(List<? extends GsmObservation> observations) {
+		Map<Long, GsmObservation> pending = new HashMap<Long, GsmObservation>();
+		for (GsmObservation observation : observations) {
+			if (observation.neighborList == null && observation.getId() != null) {
+				observation.neighborList = new ArrayList<NeighborAntenna>();
+				pending.put(observation.getId(), observation);
+
+				if (pending.size() == MAX_QUERY_IDS) {
+					loadNeighbors(pending);
+					pending.clear();
+				}
+			}
+		}
+
+		if (!pending.isEmpty()) {
+			loadNeighbors(pending);
+		}
+	}
+
+	private static void loadNeighbors(Map<Long, GsmObservation> observations) {
+		StringBuilder where = new StringBuilder("gsm_observation IN (");
+		String[] args = new String[observations.size()];
+		int i = 0;
+		for (Long id : observations.keySet()) {
+			where.append(i == 0 ? "?" : ",?");
+			args[i++] = id.toString();
+		}
+		where.append(")");
+
+		for (NeighborAntenna neighbor : NeighborAntenna.find(NeighborAntenna.class, where.toString(), args)) {
+			GsmObservation observation = observations.get(neighbor.getGsmObservationId());
+			if (observation != null) {
+				neighbor.setGsmObservation(observation);
+				observation.neighborList.add(neighbor);
+			}
+		}
+	}
+
 	/**
 	 * @return list of neighbors
 	 */
@@ -72,15 +133,26 @@ public class GsmObservation extends TelephonyObservation<GsmObservation> {
 		super.save();
 		
 		if (this.getId() != null) {
-			if (neighborList != null) {
+			if (neighborList != null && !neighborList.isEmpty()) {
 				for (NeighborAntenna neighbor: neighborList) {
 					neighbor.setGsmObservation(this);
-					neighbor.save();
 				}
+
+				/* Store all neighbors in a single transaction */
+				NeighborAntenna.saveInTx(neighborList);
 			}
 		}
 	}
  
+	/**
+	 * Load the neighbor lists of the page with loadNeighborLists()
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void prefetch(List<? extends Serializable<?>> page) {
+		loadNeighborLists((List<? extends GsmObservation>) page);
+	}
+ 
 	@Override
 	public List<Field> getSerializableFields() {
 		if (neighborList == null || neighborList.size() == 0)
@@ -113,6 +185,14 @@ public class GsmObservation extends TelephonyObservation<GsmObservation> {
 		this.neighborList = neighborList;
 	}
 	
+	@Override
+	public void resetSignal() {
+		super.resetSignal();
+		
+		if (signalBer != null)
+			signalBer.reset();
+	}
+	
 	/**
 	 * Update the signalBer with a new sample value
 	 * @param signalBer
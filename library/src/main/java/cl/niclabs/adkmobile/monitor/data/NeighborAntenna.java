@@ -3,12 +3,21 @@ package cl.niclabs.adkmobile.monitor.data;
 import cl.niclabs.android.data.DoNotSerialize;
 import cl.niclabs.android.data.Persistent;
 
+import com.orm.dsl.Ignore;
+
 public class NeighborAntenna extends Persistent<NeighborAntenna> {
 	private int gsmCid;
 	private int gsmLac;
 	
+	/**
+	 * Id of the observation. Stored as a plain id (in the same column as a
+	 * relation) so loading neighbors does not query the observation of each row
+	 */
 	@DoNotSerialize
-	private GsmObservation gsmObservation;
+	private Long gsmObservation;
+
+	@Ignore
+	private transient GsmObservation observation;
 	
 	private int gsmPsc;
 	
@@ -33,6 +42,16 @@ public class NeighborAntenna extends Persistent<NeighborAntenna> {
 	 * @return the observation to which this neighbor antenna is associated
 	 */
 	public GsmObservation getGsmObservation() {
+		if (observation == null && gsmObservation != null) {
+			observation = findById(GsmObservation.class, gsmObservation);
+		}
+		return observation;
+	}
+
+	/**
+	 * @return id of the observation to which this neighbor antenna is associated
+	 */
+	public Long getGsmObservationId() {
 		return gsmObservation;
 	}
 	
@@ -61,7 +80,8 @@ public class NeighborAntenna extends Persistent<NeighborAntenna> {
 	}
 	
 	public void setGsmObservation(GsmObservation gsmObservation) {
-		this.gsmObservation = gsmObservation;
+		this.observation = gsmObservation;
+		this.gsmObservation = gsmObservation != null ? gsmObservation.getId() : null;
 	}
 	
 	public void setGsmPsc(int gsmPsc) {
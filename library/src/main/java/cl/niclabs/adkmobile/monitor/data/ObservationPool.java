@@ -0,0 +1,230 @@
+package cl.niclabs.adkmobile.monitor.data;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import android.util.Log;
+import cl.niclabs.android.utils.ReflectionUtils;
+
+/**
+ * Bounded pool of observations of a given type.
+ *
+ * There is one pool per observation class, obtained with forClass(). Recycled
+ * observations are reset (all non-transient fields are set to their default values)
+ * and kept until the pool reaches MAX_SIZE, after that they are left to the garbage
+ * collector. Pools are normally used through AbstractObservation.obtain() and
+ * AbstractObservation.recycle().
+ *
+ * If LEAK_DETECTION is enabled (meant for debug builds), the pool keeps track of the
+ * obtained observations and logs a warning, with the stack trace of the call to obtain(),
+ * for each observation that is garbage collected without being recycled or released.
+ *
+ * This class is thread-safe.
+ *
+ * @param <E> type of the observations
+ */
+public class ObservationPool<E extends AbstractObservation<E>> {
+	protected static final String TAG = "AdkintunMobile::ObservationPool";
+
+	/**
+	 * Maximum number of recycled observations kept by each pool. Changes only
+	 * affect pools created afterwards
+	 */
+	public static int MAX_SIZE = 16;
+
+	/**
+	 * Report observations that are not returned to the pool. Enabling leak
+	 * detection records a stack trace on each obtain(), so it should only be used for debugging
+	 */
+	public static volatile boolean LEAK_DETECTION = false;
+
+	private static final ConcurrentMap<Class<?>, ObservationPool<?>> pools = new ConcurrentHashMap<Class<?>, ObservationPool<?>>();
+
+	/**
+	 * Observations tracked by the leak detector and the place where they were obtained
+	 */
+	private static final Map<Reference<?>, Throwable> tracked = new HashMap<Reference<?>, Throwable>();
+	private static final ReferenceQueue<Object> leaked = new ReferenceQueue<Object>();
+
+	private final Class<E> type;
+	private final Field[] fields;
+	private final Object[] items;
+	private int size = 0;
+
+	private ObservationPool(Class<E> type, int capacity) {
+		this.type = type;
+
+		List<Field> typeFields = new ArrayList<Field>();
+		ReflectionUtils.getAllFields(typeFields, type);
+
+		List<Field> resetFields = new ArrayList<Field>();
+		for (Field field : typeFields) {
+			int modifiers = field.getModifiers();
+			if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)
+					&& !Modifier.isFinal(modifiers)) {
+				field.setAccessible(true);
+				resetFields.add(field);
+			}
+		}
+
+		this.fields = resetFields.toArray(new Field[resetFields.size()]);
+		this.items = new Object[capacity];
+	}
+
+	/**
+	 * Get the pool for the observation class
+	 *
+	 * @param type
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public static <E extends AbstractObservation<E>> ObservationPool<E> forClass(Class<E> type) {
+		ObservationPool<?> pool = pools.get(type);
+		if (pool == null) {
+			/* If another thread created the pool first, use that one */
+			ObservationPool<?> previous = pools.putIfAbsent(type, new ObservationPool<E>(type, MAX_SIZE));
+			pool = previous != null ? previous : pools.get(type);
+		}
+		return (ObservationPool<E>) pool;
+	}
+
+	/**
+	 * Get an observation from the pool, or a new one if the pool is empty.
+	 * The observation must be returned with recycle() (or release()) once it is no
+	 * longer used
+	 *
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public E obtain() {
+		E observation = null;
+		synchronized (this) {
+			if (size > 0) {
+				observation = (E) items[--size];
+				items[size] = null;
+			}
+		}
+
+		if (observation == null) {
+			try {
+				observation = type.newInstance();
+			} catch (InstantiationException e) {
+				throw new IllegalArgumentException(type.getName() + " requires a public no-argument constructor");
+			} catch (IllegalAccessException e) {
+				throw new IllegalArgumentException(type.getName() + " requires a public no-argument constructor");
+			}
+		}
+
+		observation.poolState = AbstractObservation.POOL_IN_USE;
+		if (LEAK_DETECTION) {
+			track(observation);
+		}
+		return observation;
+	}
+
+	/**
+	 * Return an observation to the pool. The observation must not be used after
+	 * this call
+	 *
+	 * @param observation
+	 * @throws IllegalStateException if the observation is already in the pool
+	 */
+	public void recycle(E observation) {
+		if (observation.poolState == AbstractObservation.POOL_RECYCLED) {
+			throw new IllegalStateException("Observation already recycled");
+		}
+		untrack(observation);
+		reset(observation);
+
+		synchronized (this) {
+			observation.poolState = AbstractObservation.POOL_RECYCLED;
+			if (size < items.length) {
+				items[size++] = observation;
+			}
+		}
+	}
+
+	/**
+	 * Stop tracking an obtained observation that will not be recycled (e.g.
+	 * because it was kept by a listener)
+	 *
+	 * @param observation
+	 */
+	public static void release(AbstractObservation<?> observation) {
+		if (observation.poolState == AbstractObservation.POOL_IN_USE) {
+			untrack(observation);
+			observation.poolState = AbstractObservation.POOL_NONE;
+		}
+	}
+
+	/**
+	 * @return number of observations available in the pool
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	private void reset(E observation) {
+		try {
+			for (Field field : fields) {
+				Class<?> fieldType = field.getType();
+				if (!fieldType.isPrimitive()) {
+					field.set(observation, null);
+				}
+				else if (fieldType == boolean.class) {
+					field.setBoolean(observation, false);
+				}
+				else if (fieldType == char.class) {
+					field.setChar(observation, (char) 0);
+				}
+				else {
+					/* Widening conversion to the other primitive types */
+					field.setByte(observation, (byte) 0);
+				}
+			}
+		} catch (IllegalAccessException e) {
+			/* Should not happen since the fields are accessible */
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void track(AbstractObservation<?> observation) {
+		Reference<Object> reference = new WeakReference<Object>(observation, leaked);
+		synchronized (tracked) {
+			tracked.put(reference, new Throwable("Observation obtained here"));
+		}
+		observation.leakReference = reference;
+
+		/* Report the observations collected since the last call */
+		Reference<?> collected;
+		while ((collected = leaked.poll()) != null) {
+			Throwable origin;
+			synchronized (tracked) {
+				origin = tracked.remove(collected);
+			}
+			if (origin != null) {
+				Log.w(TAG, "A pooled observation was garbage collected without being recycled", origin);
+			}
+		}
+	}
+
+	private static void untrack(AbstractObservation<?> observation) {
+		Reference<?> reference = observation.leakReference;
+		if (reference != null) {
+			synchronized (tracked) {
+				tracked.remove(reference);
+			}
+			reference.clear();
+			observation.leakReference = null;
+		}
+	}
+}
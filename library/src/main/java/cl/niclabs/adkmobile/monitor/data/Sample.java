@@ -3,44 +3,72 @@ package cl.niclabs.adkmobile.monitor.data;
 import java.lang.reflect.Field;
 import java.util.List;
 
+import cl.niclabs.adkmobile.data.FieldDescriptor;
 import cl.niclabs.android.data.DoNotSerialize;
 import cl.niclabs.android.data.Persistent;
 
 /**
  * Mantain statistics on a sample  
  * 
+ * Statistics are updated in place with each new value, using Welford's
+ * algorithm for the mean and (unbiased) variance, so no values are stored.
+ * 
+ * The minimum and maximum are stored in the MIN and MAX columns, databases created
+ * before they were added need a Sugar upgrade script (see README.md).
+ * 
  * @author Felipe Lalanne <flalanne@niclabs.cl>
  */
 public class Sample extends Persistent<Sample> {
 	private int size;
 	private double mean;
 	private double variance;
+	private double min;
+	private double max;
 	
 	public Sample() {
-		size = 0;
-		mean = 0.0;
-		variance = 0.0;
+		reset();
 	}
 	
+	/**
+	 * Add a new value to the sample
+	 * @param x
+	 */
 	public void update(double x) {
-		size = 1;
-		mean = x;
+		if (size == 0) {
+			min = x;
+			max = x;
+		}
+		else {
+			if (x < min) min = x;
+			if (x > max) max = x;
+		}
+
+		/* The sum of squared differences is recovered from the variance, so it
+		 * does not need to be stored */
+		double m2 = size > 1 ? variance * (size - 1) : 0.0;
+		double delta = x - mean;
+
+		size++;
+		mean += delta / size;
+		m2 += delta * (x - mean);
+		variance = size > 1 ? m2 / (size - 1) : 0.0;
+	}
+	
+	/**
+	 * Remove all values from the sample
+	 */
+	public void reset() {
+		size = 0;
+		mean = 0.0;
+		variance = 0.0;
+		min = 0.0;
+		max = 0.0;
 	}
 	
 	@Override
 	public List<Field> getSerializableFields() {
-		List<Field> fields = super.getSerializableFields();
-		
-		int index = 0;
-		for (Field field: fields) {
-			if (field.getName().equalsIgnoreCase("id")) {
-				fields.remove(index);
-				break;
-			}
-			index++;
-		}
-		
-		return fields;
+		/* The id is not serialized */
+		return FieldDescriptor.getSerializableFields(getClass(), false);
 	}
 
 	/**
@@ -59,6 +87,22 @@ public class Sample extends Persistent<Sample> {
 		return variance;
 	}
 	
+	/**
+	 * Get the minimum value of the sample, or 0 if the sample is empty
+	 * @return
+	 */
+	public double min() {
+		return min;
+	}
+	
+	/**
+	 * Get the maximum value of the sample, or 0 if the sample is empty
+	 * @return
+	 */
+	public double max() {
+		return max;
+	}
+	
 	/**
 	 * Return sample size
 	 * @return
@@ -84,6 +84,15 @@ public abstract class TelephonyObservation<E extends TelephonyObservation<E>> ex
 		this.telephonyStandard = telephonyStandard.value();
 	}
 	
+	/**
+	 * Remove the values of the signal samples, e.g. to summarize only the
+	 * readings of a new aggregation window
+	 */
+	public void resetSignal() {
+		if (signalStrength != null)
+			signalStrength.reset();
+	}
+	
 	/**
 	 * Update signal strength with a new value
 	 * @param signalStrength
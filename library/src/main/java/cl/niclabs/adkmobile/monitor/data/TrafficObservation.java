@@ -30,6 +30,17 @@ public class TrafficObservation extends AbstractObservation<TrafficObservation>
 	public TrafficObservation(int eventType, long timestamp) {
 		super(eventType, timestamp);
 	}
+	
+	/**
+	 * Get a traffic observation from the pool (see AbstractObservation.obtain())
+	 * 
+	 * @param eventType
+	 * @param timestamp
+	 * @return
+	 */
+	public static TrafficObservation obtain(int eventType, long timestamp) {
+		return obtain(TrafficObservation.class, eventType, timestamp);
+	}
 
 	/**
 	 * 
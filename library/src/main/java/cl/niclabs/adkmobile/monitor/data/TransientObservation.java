@@ -0,0 +1,20 @@
+package cl.niclabs.adkmobile.monitor.data;
+
+/**
+ * Observation that is only valid during the notification (e.g. a window over
+ * a reusable buffer). It is copied before being delivered on a different thread
+ * (see cl.niclabs.adkmobile.monitor.events.DispatchPolicy).
+ */
+public interface TransientObservation extends Observation {
+	/**
+	 * @return an independent copy of the observation
+	 */
+	public Observation copy();
+
+	/**
+	 * @return an independent copy of the newest value of the observation (e.g. the
+	 * last sample of a window), kept as the state of the monitor, or null if the
+	 * observation is empty. It may be obtained from a pool
+	 */
+	public Observation copyLatest();
+}
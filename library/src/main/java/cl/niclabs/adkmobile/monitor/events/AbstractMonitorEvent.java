@@ -1,57 +1,274 @@
 package cl.niclabs.adkmobile.monitor.events;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cl.niclabs.adkmobile.monitor.data.Observation;
 import cl.niclabs.adkmobile.monitor.listeners.MonitorListener;
 
 
 /**
  * Base implementation of the activation methods of monitor event.
- * 
+ *
  * The methods activate() and deactivate() must be overriden by sub-classes
  * in order to perform the necessary activation and deactivation tasks.
- * 
+ *
+ * The activation status follows the state machine INACTIVE -> ACTIVATING ->
+ * ACTIVE -> DEACTIVATING -> INACTIVE, where transitions are performed with
+ * compare-and-set operations so no locks are required. Sub-classes must use
+ * the following pattern
+ *
+ * <code>
+ * public boolean activate() {
+ * 	if (startActivation()) {
+ * 		// perform activation tasks (or call abortActivation() on failure)
+ * 		super.activate();
+ * 	}
+ * 	return true;
+ * }
+ *
+ * public void deactivate() {
+ * 	if (startDeactivation()) {
+ * 		// perform deactivation tasks
+ * 		super.deactivate();
+ * 	}
+ * }
+ * </code>
+ *
+ * Only one thread will perform the activation (deactivation) tasks. A
+ * deactivation requested while the event is activating (or an activation
+ * requested while deactivating) is performed by the thread that completes
+ * the transition, so the last request always wins.
+ *
  * @author Felipe Lalanne <flalanne@niclabs.cl>
  *
  */
 public abstract class AbstractMonitorEvent<E extends MonitorListener> implements MonitorEvent<E> {
-	protected Boolean active = false;
-	
 	/**
-	 * Activates the MonitorEvent. 
-	 * 
-	 * It must be called by overriding methods in order to keep track of the activation
-	 * status. 
-	 * 
-	 * This method is thread-safe 
-	 * 
+	 * The event is not active
+	 */
+	public static final int INACTIVE = 0;
+
+	/**
+	 * The activation tasks for the event are being performed
+	 */
+	public static final int ACTIVATING = 1;
+
+	/**
+	 * The event is active
+	 */
+	public static final int ACTIVE = 2;
+
+	/**
+	 * The deactivation tasks for the event are being performed
+	 */
+	public static final int DEACTIVATING = 3;
+
+	private static final int NONE = -1;
+
+	/**
+	 * Activation status of the event
+	 */
+	private final AtomicInteger status = new AtomicInteger(INACTIVE);
+
+	/**
+	 * Transition requested while another transition was in progress
+	 */
+	private final AtomicInteger pending = new AtomicInteger(NONE);
+
+	/**
+	 * Last observation notified for this event
+	 */
+	private volatile Observation state = null;
+
+	/**
+	 * Minimum time between deliveries of coalescable observations (in milliseconds)
+	 */
+	private volatile long coalesceInterval = 0;
+
+	/**
+	 * Marks the MonitorEvent as active.
+	 *
+	 * It must be called by overriding methods once the activation tasks have
+	 * finished in order to keep track of the activation status.
+	 *
+	 * This method is thread-safe
+	 *
 	 */
 	@Override
 	public boolean activate() {
-		synchronized(active) {
-			active = true;
+		if (status.compareAndSet(ACTIVATING, ACTIVE) || status.compareAndSet(INACTIVE, ACTIVE)) {
+			/* A deactivation was requested during activation */
+			if (pending.compareAndSet(DEACTIVATING, NONE)) {
+				deactivate();
+			}
 		}
 		return true;
 	}
 
 	/**
-	 * Deactivates the MonitorEvent. 
-	 * 
-	 * It must be called by overriding methods in order to keep track of the activation
-	 * status. 
-	 * 
-	 * This method is thread-safe 
-	 * 
+	 * Reverts an activation started with startActivation(). It must be called
+	 * by overriding methods if the activation tasks cannot be completed.
+	 */
+	protected void abortActivation() {
+		if (status.compareAndSet(ACTIVATING, INACTIVE)) {
+			pending.set(NONE);
+		}
+	}
+
+	/**
+	 * Marks the MonitorEvent as inactive.
+	 *
+	 * It must be called by overriding methods once the deactivation tasks have
+	 * finished in order to keep track of the activation status.
+	 *
+	 * This method is thread-safe
+	 *
 	 */
 	@Override
 	public void deactivate() {
-		synchronized(active) {
-			active = false;
+		if (status.compareAndSet(DEACTIVATING, INACTIVE) || status.compareAndSet(ACTIVE, INACTIVE)) {
+			/* An activation was requested during deactivation */
+			if (pending.compareAndSet(ACTIVATING, NONE)) {
+				activate();
+			}
 		}
 	}
 
+	/**
+	 * Replaces the former protected field active, which sub-classes used to read
+	 * the activation status
+	 *
+	 * @return true if the event is active
+	 * @deprecated use isActive() or getActivationStatus()
+	 */
+	@Deprecated
+	protected Boolean getActive() {
+		return isActive();
+	}
+
+	/**
+	 * @return the activation status of the event, one of INACTIVE, ACTIVATING, ACTIVE or DEACTIVATING
+	 */
+	public int getActivationStatus() {
+		return status.get();
+	}
+
+	/**
+	 * Get the last observation notified for this event.
+	 *
+	 * @return the last observation or null if no data has been received
+	 */
+	public Observation getState() {
+		return state;
+	}
+
 	@Override
 	public boolean isActive() {
-		synchronized(active) {
-			return active;
+		return status.get() == ACTIVE;
+	}
+
+	/**
+	 * @return minimum time between deliveries of coalescable observations (in
+	 * milliseconds), or 0 if every observation is delivered
+	 */
+	public long getCoalesceInterval() {
+		return coalesceInterval;
+	}
+
+	/**
+	 * Enable coalescing delivery for the event. Coalescable observations are
+	 * delivered to listeners at most once per interval, observations received in
+	 * between replace each other and only the newest one is delivered at the end of the
+	 * interval. getState() always returns the newest observation
+	 *
+	 * @param interval minimum time between deliveries (in milliseconds), 0 to deliver
+	 * every observation
+	 */
+	public void setCoalesceInterval(long interval) {
+		this.coalesceInterval = interval;
+	}
+
+	/**
+	 * Check if an observation can be replaced by a newer one when coalescing is
+	 * enabled. Sub-classes should override this method for events that notify
+	 * observations that must always be delivered (e.g. state changes)
+	 *
+	 * @param result
+	 * @return true by default
+	 */
+	public boolean isCoalescable(Observation result) {
+		return true;
+	}
+
+	/**
+	 * Update the last observation for this event. It is called by the monitor
+	 * on each notification
+	 *
+	 * @param state
+	 */
+	public void setState(Observation state) {
+		this.state = state;
+	}
+
+	/**
+	 * Start the activation of the event.
+	 *
+	 * @return true if the caller must perform the activation tasks, false if
+	 * the event is already active or another thread is performing the transition
+	 */
+	protected boolean startActivation() {
+		for (;;) {
+			switch (status.get()) {
+			case INACTIVE:
+				if (status.compareAndSet(INACTIVE, ACTIVATING)) {
+					pending.compareAndSet(ACTIVATING, NONE);
+					return true;
+				}
+				break;
+			case DEACTIVATING:
+				pending.set(ACTIVATING);
+
+				/* Check that the deactivation did not finish in the meantime */
+				if (status.get() == DEACTIVATING) {
+					return false;
+				}
+				break;
+			default:
+				/* Cancel any deactivation requested while activating */
+				pending.compareAndSet(DEACTIVATING, NONE);
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Start the deactivation of the event.
+	 *
+	 * @return true if the caller must perform the deactivation tasks, false if
+	 * the event is already inactive or another thread is performing the transition
+	 */
+	protected boolean startDeactivation() {
+		for (;;) {
+			switch (status.get()) {
+			case ACTIVE:
+				if (status.compareAndSet(ACTIVE, DEACTIVATING)) {
+					pending.compareAndSet(DEACTIVATING, NONE);
+					return true;
+				}
+				break;
+			case ACTIVATING:
+				pending.set(DEACTIVATING);
+
+				/* Check that the activation did not finish in the meantime */
+				if (status.get() == ACTIVATING) {
+					return false;
+				}
+				break;
+			default:
+				/* Cancel any activation requested while deactivating */
+				pending.compareAndSet(ACTIVATING, NONE);
+				return false;
+			}
 		}
 	}
 }
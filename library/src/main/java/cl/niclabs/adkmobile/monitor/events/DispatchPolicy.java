@@ -0,0 +1,287 @@
+package cl.niclabs.adkmobile.monitor.events;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.util.Log;
+import cl.niclabs.adkmobile.monitor.data.Observation;
+import cl.niclabs.adkmobile.monitor.listeners.MonitorListener;
+import cl.niclabs.android.utils.Scheduler;
+
+/**
+ * Defines the thread on which the observations of a monitor are delivered to
+ * a listener (see EventDispatcher).
+ *
+ * - sameThread(): the listener is called on the thread that notifies the observation
+ * (e.g. the sensor or broadcast thread). This is the default
+ * - queue(): observations are put in a bounded queue, consumed in order by a
+ * single task on the Scheduler pool. If the queue is full, the oldest observation is
+ * dropped (DROP_OLDEST) or the last queued observation for the same event and listener
+ * is replaced by the new one (COALESCE_LATEST)
+ * - workerPool(): each observation is delivered by a separate task on the shared
+ * Scheduler pool, without ordering guarantees
+ *
+ * Policies keep their own counters (delivered and dropped observations, and queue
+ * depth), so a policy instance can be shared by several listeners or monitors to
+ * obtain aggregated statistics.
+ *
+ * Since observations delivered on a different thread may be used after the monitor
+ * notifies the next one, pooled observations are never recycled after an asynchronous
+ * delivery (see AbstractMonitor.notifyListeners()), and transient observations
+ * (e.g. accelerometer batches) are copied before an asynchronous delivery.
+ */
+public abstract class DispatchPolicy {
+	private static final String TAG = "AdkintunMobile::DispatchPolicy";
+
+	/**
+	 * Behavior of queue() policies when the queue is full
+	 */
+	public static enum Overflow {
+		/**
+		 * Remove the oldest observation in the queue
+		 */
+		DROP_OLDEST,
+
+		/**
+		 * Replace the last queued observation for the same event and listener, if
+		 * there is none, remove the oldest observation
+		 */
+		COALESCE_LATEST;
+	}
+
+	protected final AtomicLong delivered = new AtomicLong();
+	protected final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Deliver the observation to the listener
+	 *
+	 * @param eventType
+	 * @param listener
+	 * @param result
+	 */
+	protected abstract void dispatch(MonitorEvent<?> eventType, MonitorListener listener, Observation result);
+
+	/**
+	 * @return true if the listener is called before dispatch() returns
+	 */
+	protected boolean isSynchronous() {
+		return false;
+	}
+
+	/**
+	 * @return number of observations waiting to be delivered
+	 */
+	public abstract int getQueueDepth();
+
+	/**
+	 * @return number of observations delivered
+	 */
+	public long getDeliveredCount() {
+		return delivered.get();
+	}
+
+	/**
+	 * @return number of observations dropped (or replaced) before delivery
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * Call the listener and update the counters
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected final void deliver(MonitorEvent<?> eventType, MonitorListener listener, Observation result) {
+		((MonitorEvent) eventType).onDataReceived(listener, result);
+		delivered.incrementAndGet();
+	}
+
+	/**
+	 * @return a policy that delivers observations on the notifying thread
+	 */
+	public static DispatchPolicy sameThread() {
+		return new SameThreadPolicy();
+	}
+
+	/**
+	 * @param capacity maximum number of observations in the queue
+	 * @param overflow behavior when the queue is full
+	 * @return a policy that delivers observations in order from a bounded queue
+	 */
+	public static DispatchPolicy queue(int capacity, Overflow overflow) {
+		return new QueuePolicy(capacity, overflow);
+	}
+
+	/**
+	 * @return a policy that delivers each observation on the shared Scheduler pool
+	 */
+	public static DispatchPolicy workerPool() {
+		return new WorkerPoolPolicy();
+	}
+
+	private static class SameThreadPolicy extends DispatchPolicy {
+		@Override
+		protected void dispatch(MonitorEvent<?> eventType, MonitorListener listener, Observation result) {
+			deliver(eventType, listener, result);
+		}
+
+		@Override
+		protected boolean isSynchronous() {
+			return true;
+		}
+
+		@Override
+		public int getQueueDepth() {
+			return 0;
+		}
+	}
+
+	/**
+	 * Bounded queue stored as a ring buffer of parallel arrays, so enqueuing
+	 * does not allocate
+	 */
+	private static class QueuePolicy extends DispatchPolicy implements Runnable {
+		private final Overflow overflow;
+
+		private final MonitorEvent<?>[] events;
+		private final MonitorListener[] listeners;
+		private final Observation[] results;
+		private int head = 0;
+		private int size = 0;
+
+		/**
+		 * True while the consumer task is scheduled or running
+		 */
+		private boolean scheduled = false;
+
+		QueuePolicy(int capacity, Overflow overflow) {
+			if (capacity <= 0) {
+				throw new IllegalArgumentException("Queue capacity must be positive");
+			}
+
+			this.overflow = overflow;
+			events = new MonitorEvent<?>[capacity];
+			listeners = new MonitorListener[capacity];
+			results = new Observation[capacity];
+		}
+
+		@Override
+		protected void dispatch(MonitorEvent<?> eventType, MonitorListener listener, Observation result) {
+			synchronized (this) {
+				int capacity = results.length;
+				if (size == capacity) {
+					dropped.incrementAndGet();
+
+					if (overflow == Overflow.COALESCE_LATEST) {
+						for (int i = size - 1; i >= 0; i--) {
+							int index = (head + i) % capacity;
+							if (events[index] == eventType && listeners[index] == listener) {
+								results[index] = result;
+								return;
+							}
+						}
+					}
+
+					/* Remove the oldest observation */
+					remove();
+				}
+
+				int index = (head + size) % capacity;
+				events[index] = eventType;
+				listeners[index] = listener;
+				results[index] = result;
+				size++;
+
+				if (scheduled) {
+					return;
+				}
+				scheduled = true;
+			}
+
+			try {
+				Scheduler.getInstance().execute(this);
+			} catch (RejectedExecutionException e) {
+				/* No task will consume the queue, the observations are dropped */
+				synchronized (this) {
+					scheduled = false;
+					dropped.addAndGet(size);
+					while (size > 0) {
+						remove();
+					}
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				MonitorEvent<?> eventType;
+				MonitorListener listener;
+				Observation result;
+
+				synchronized (this) {
+					if (size == 0) {
+						scheduled = false;
+						return;
+					}
+
+					eventType = events[head];
+					listener = listeners[head];
+					result = results[head];
+					remove();
+				}
+
+				/* A failing listener must not stop the consumer, since no other task
+				 * is scheduled while it is running */
+				try {
+					deliver(eventType, listener, result);
+				} catch (RuntimeException e) {
+					Log.e(TAG, "Listener " + listener.getClass().getName() + " failed: " + e.getMessage(), e);
+				}
+			}
+		}
+
+		@Override
+		public synchronized int getQueueDepth() {
+			return size;
+		}
+
+		private void remove() {
+			events[head] = null;
+			listeners[head] = null;
+			results[head] = null;
+			head = (head + 1) % results.length;
+			size--;
+		}
+	}
+
+	private static class WorkerPoolPolicy extends DispatchPolicy {
+		private final AtomicInteger pending = new AtomicInteger();
+
+		@Override
+		protected void dispatch(final MonitorEvent<?> eventType, final MonitorListener listener, final Observation result) {
+			pending.incrementAndGet();
+			try {
+				Scheduler.getInstance().execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							deliver(eventType, listener, result);
+						} finally {
+							pending.decrementAndGet();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				pending.decrementAndGet();
+				dropped.incrementAndGet();
+			}
+		}
+
+		@Override
+		public int getQueueDepth() {
+			return pending.get();
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package cl.niclabs.adkmobile.monitor.events;
+
+import cl.niclabs.adkmobile.monitor.data.Observation;
+import cl.niclabs.adkmobile.monitor.data.TransientObservation;
+import cl.niclabs.adkmobile.monitor.listeners.DispatchingListener;
+import cl.niclabs.adkmobile.monitor.listeners.MonitorListener;
+import cl.niclabs.adkmobile.monitor.listeners.NonRetainingListener;
+
+/**
+ * Delivers the observations of a monitor to its listeners.
+ *
+ * Listeners are kept in an array snapshot that is only re-created when a
+ * listener is added or removed. Delivering an observation iterates over the
+ * current snapshot and calls {@link MonitorEvent#onDataReceived} directly, so
+ * unlike {@link cl.niclabs.android.utils.Dispatcher} no Notifier needs to be
+ * created per notification and the steady-state path does not allocate.
+ *
+ * Listeners are notified according to their DispatchPolicy, given on listen(),
+ * by the listener itself (see DispatchingListener) or, if none of them is set, by the
+ * default policy of the dispatcher. If no policy is set, listeners are notified on the
+ * thread that calls notifyListeners()
+ *
+ * @param <E> listeners handled by the dispatcher
+ */
+public class EventDispatcher<E extends MonitorListener> {
+	/**
+	 * Listeners and their policies (null for the default policy) as parallel
+	 * arrays. Snapshots are never modified, only replaced
+	 */
+	private static final class Snapshot {
+		final MonitorListener[] listeners;
+		final DispatchPolicy[] policies;
+
+		Snapshot(int size) {
+			listeners = new MonitorListener[size];
+			policies = new DispatchPolicy[size];
+		}
+	}
+
+	private static final Snapshot EMPTY = new Snapshot(0);
+
+	/**
+	 * Current listener snapshot
+	 */
+	private volatile Snapshot snapshot = EMPTY;
+
+	/**
+	 * Policy for listeners without a policy, null to notify on the calling thread
+	 */
+	private volatile DispatchPolicy defaultPolicy = null;
+
+	/**
+	 * Adds/removes a listener. A listener is only added once. If the listener is a
+	 * DispatchingListener, its policy is used
+	 *
+	 * @param listener
+	 * @param listen true to add the listener, false to remove it
+	 */
+	public void listen(E listener, boolean listen) {
+		if (listen) {
+			listen(listener, listener instanceof DispatchingListener
+					? ((DispatchingListener) listener).getDispatchPolicy() : null);
+		}
+		else {
+			remove(listener);
+		}
+	}
+
+	/**
+	 * Adds a listener with the given dispatch policy, replacing the policy if the
+	 * listener was already added
+	 *
+	 * @param listener
+	 * @param policy the policy or null to use the default policy
+	 */
+	public synchronized void listen(E listener, DispatchPolicy policy) {
+		Snapshot current = snapshot;
+		int index = indexOf(current.listeners, listener);
+
+		if (index >= 0) {
+			Snapshot next = copy(current, current.listeners.length);
+			next.policies[index] = policy;
+			snapshot = next;
+			return;
+		}
+
+		Snapshot next = copy(current, current.listeners.length + 1);
+		next.listeners[current.listeners.length] = listener;
+		next.policies[current.listeners.length] = policy;
+		snapshot = next;
+	}
+
+	private synchronized void remove(E listener) {
+		Snapshot current = snapshot;
+		int index = indexOf(current.listeners, listener);
+		if (index < 0) {
+			return;
+		}
+
+		if (current.listeners.length == 1) {
+			snapshot = EMPTY;
+			return;
+		}
+
+		int length = current.listeners.length;
+		Snapshot next = new Snapshot(length - 1);
+		System.arraycopy(current.listeners, 0, next.listeners, 0, index);
+		System.arraycopy(current.listeners, index + 1, next.listeners, index, length - index - 1);
+		System.arraycopy(current.policies, 0, next.policies, 0, index);
+		System.arraycopy(current.policies, index + 1, next.policies, index, length - index - 1);
+
+		snapshot = next;
+	}
+
+	/**
+	 * Set the policy for listeners added without a policy
+	 *
+	 * @param policy the policy or null to notify on the calling thread
+	 */
+	public void setDefaultPolicy(DispatchPolicy policy) {
+		this.defaultPolicy = policy;
+	}
+
+	/**
+	 * @return the policy for listeners added without a policy, or null
+	 */
+	public DispatchPolicy getDefaultPolicy() {
+		return defaultPolicy;
+	}
+
+	/**
+	 * Notify all the listeners of the dispatcher that new data is available
+	 * for the given event
+	 *
+	 * @param eventType event to which the data is related
+	 * @param result the observation to deliver
+	 * @return true if the observation was delivered to any listener that may keep
+	 * a reference to it (i.e. not a NonRetainingListener) or may be delivered
+	 * after this method returns
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean notifyListeners(MonitorEvent<E> eventType, Observation result) {
+		boolean retained = false;
+		Observation detached = null;
+		Snapshot current = snapshot;
+		DispatchPolicy defaultPolicy = this.defaultPolicy;
+		for (int i = 0; i < current.listeners.length; i++) {
+			MonitorListener listener = current.listeners[i];
+			DispatchPolicy policy = current.policies[i] != null ? current.policies[i] : defaultPolicy;
+
+			if (policy == null) {
+				retained |= !(listener instanceof NonRetainingListener);
+				eventType.onDataReceived((E) listener, result);
+				continue;
+			}
+
+			if (policy.isSynchronous()) {
+				retained |= !(listener instanceof NonRetainingListener);
+				policy.dispatch(eventType, listener, result);
+				continue;
+			}
+
+			/* Asynchronous listeners receive a copy of transient observations */
+			if (detached == null) {
+				detached = result instanceof TransientObservation
+						? ((TransientObservation) result).copy() : result;
+			}
+			retained |= detached == result;
+			policy.dispatch(eventType, listener, detached);
+		}
+		return retained;
+	}
+
+	/**
+	 * @return number of listeners of the dispatcher
+	 */
+	public int size() {
+		return snapshot.listeners.length;
+	}
+
+	private static Snapshot copy(Snapshot current, int size) {
+		Snapshot next = new Snapshot(size);
+		System.arraycopy(current.listeners, 0, next.listeners, 0, current.listeners.length);
+		System.arraycopy(current.policies, 0, next.policies, 0, current.policies.length);
+		return next;
+	}
+
+	private static int indexOf(MonitorListener[] listeners, MonitorListener listener) {
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i] == listener) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,51 @@
+package cl.niclabs.adkmobile.monitor.events;
+
+/**
+ * Identifier of a kind of monitor event, obtained from the EventRegistry.
+ *
+ * Each identifier has a dense index, used to look up events in tables and as
+ * position in an EventSet. Identifiers of the events defined by the Monitor flags
+ * (e.g. Monitor.CONNECTIVITY) have the index of the bit of their flag, identifiers
+ * registered by name have indices after those, so there is no limit on the number
+ * of events.
+ *
+ * There is a single instance per identifier, so they can be compared by reference.
+ */
+public final class EventId {
+	private final int index;
+	private final String name;
+	private final int flag;
+
+	EventId(int index, String name, int flag) {
+		this.index = index;
+		this.name = name;
+		this.flag = flag;
+	}
+
+	/**
+	 * @return the index of the identifier in the registry
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the name the identifier was registered with
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the Monitor flag for the event (e.g. Monitor.TELEPHONY), or 0 if the
+	 * event does not have a flag
+	 */
+	public int getFlag() {
+		return flag;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
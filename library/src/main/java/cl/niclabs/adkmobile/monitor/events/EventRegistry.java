@@ -0,0 +1,133 @@
+package cl.niclabs.adkmobile.monitor.events;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import cl.niclabs.adkmobile.monitor.Monitor;
+
+/**
+ * Registry of the event identifiers of the application.
+ *
+ * The first FLAG_EVENTS identifiers correspond to the bits of the Monitor event
+ * flags, so an events mask can be converted to an EventSet and back in constant
+ * time (see EventSet.fromFlags()). Monitors defining other kinds of events register
+ * them by name with register(), which assigns the next free index. Registering the
+ * same name twice returns the same identifier, so independent modules do not collide
+ * as with the CUSTOM_* flags.
+ *
+ * Lookups by index are constant time and lock-free.
+ */
+public final class EventRegistry {
+	/**
+	 * Number of identifiers reserved for the Monitor flags (one per bit of
+	 * Monitor.ALL_EVENTS)
+	 */
+	public static final int FLAG_EVENTS = 31;
+
+	private static final Map<String, EventId> byName = new HashMap<String, EventId>();
+
+	/**
+	 * Identifiers by index, replaced on growth so readers do not need locks
+	 */
+	private static volatile EventId[] byIndex = new EventId[2 * FLAG_EVENTS];
+	private static int size = 0;
+
+	static {
+		for (int i = 0; i < FLAG_EVENTS; i++) {
+			byIndex[i] = new EventId(i, "event_" + (1 << i), 1 << i);
+		}
+		size = FLAG_EVENTS;
+	}
+
+	public static final EventId CONNECTIVITY = named(Monitor.CONNECTIVITY, "connectivity");
+	public static final EventId TRAFFIC_MOBILE = named(Monitor.TRAFFIC_MOBILE, "traffic_mobile");
+	public static final EventId TRAFFIC_WIFI = named(Monitor.TRAFFIC_WIFI, "traffic_wifi");
+	public static final EventId TRAFFIC_APPLICATION = named(Monitor.TRAFFIC_APPLICATION, "traffic_application");
+	public static final EventId TELEPHONY = named(Monitor.TELEPHONY, "telephony");
+	public static final EventId SCREEN = named(Monitor.SCREEN, "screen");
+	public static final EventId LOCATION_GPS = named(Monitor.LOCATION_GPS, "location_gps");
+	public static final EventId LOCATION_NETWORK = named(Monitor.LOCATION_NETWORK, "location_network");
+	public static final EventId DEVICE = named(Monitor.DEVICE, "device");
+	public static final EventId CLOCK = named(Monitor.CLOCK, "clock");
+	public static final EventId ACCELEROMETER = named(Monitor.ACCELEROMETER, "accelerometer");
+
+	private EventRegistry() {
+	}
+
+	/**
+	 * Replace the identifier for a flag with a named one
+	 */
+	private static EventId named(int flag, String name) {
+		int index = Integer.numberOfTrailingZeros(flag);
+		EventId id = new EventId(index, name, flag);
+		byIndex[index] = id;
+		byName.put(name, id);
+		return id;
+	}
+
+	/**
+	 * Register a kind of event. If an event with the same name was already
+	 * registered, its identifier is returned
+	 *
+	 * @param name unique name of the event, prefixing it with the package of the
+	 * monitor is recommended
+	 * @return
+	 */
+	public static synchronized EventId register(String name) {
+		EventId id = byName.get(name);
+		if (id != null) {
+			return id;
+		}
+
+		EventId[] table = byIndex;
+		if (size == table.length) {
+			EventId[] grown = new EventId[table.length * 2];
+			System.arraycopy(table, 0, grown, 0, size);
+			table = grown;
+		}
+
+		id = new EventId(size, name, 0);
+		table[size++] = id;
+		byName.put(name, id);
+
+		/* Publish the new table */
+		byIndex = table;
+		return id;
+	}
+
+	/**
+	 * @param index
+	 * @return the identifier with the index, or null if there is none
+	 */
+	public static EventId forIndex(int index) {
+		EventId[] table = byIndex;
+		return index >= 0 && index < table.length ? table[index] : null;
+	}
+
+	/**
+	 * @param name
+	 * @return the identifier registered with the name, or null if there is none
+	 */
+	public static synchronized EventId forName(String name) {
+		return byName.get(name);
+	}
+
+	/**
+	 * @param flag a single event flag (e.g. Monitor.SCREEN)
+	 * @return the identifier for the flag
+	 * @throws IllegalArgumentException if the flag does not have exactly one bit set
+	 */
+	public static EventId forFlag(int flag) {
+		if (flag <= 0 || Integer.bitCount(flag) != 1) {
+			throw new IllegalArgumentException("Not a single event flag " + flag);
+		}
+		return byIndex[Integer.numberOfTrailingZeros(flag)];
+	}
+
+	/**
+	 * @return the number of identifiers, including those reserved for flags
+	 */
+	public static synchronized int size() {
+		return size;
+	}
+}
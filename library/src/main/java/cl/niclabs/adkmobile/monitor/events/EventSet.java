@@ -0,0 +1,252 @@
+package cl.niclabs.adkmobile.monitor.events;
+
+import java.util.Arrays;
+
+import cl.niclabs.adkmobile.monitor.Monitor;
+
+/**
+ * Set of event identifiers, stored as a bitset indexed by EventId.getIndex().
+ *
+ * The first word of the set holds the events with Monitor flags in the same bit
+ * positions as the flags, so conversions from and to an events mask (fromFlags()
+ * and getFlags()) take constant time.
+ *
+ * Sets can be iterated without allocation with nextIndex(), e.g.
+ *
+ * <pre>
+ * for (int i = set.nextIndex(0); i >= 0; i = set.nextIndex(i + 1)) {
+ *     EventId id = EventRegistry.forIndex(i);
+ * }
+ * </pre>
+ *
+ * This class is not thread-safe.
+ */
+public class EventSet {
+	private long[] words;
+
+	public EventSet() {
+		words = new long[1];
+	}
+
+	/**
+	 * Create a copy of the set
+	 *
+	 * @param other
+	 */
+	public EventSet(EventSet other) {
+		words = other.words.clone();
+	}
+
+	/**
+	 * @param ids
+	 * @return a set with the identifiers
+	 */
+	public static EventSet of(EventId... ids) {
+		EventSet set = new EventSet();
+		for (EventId id : ids) {
+			set.add(id);
+		}
+		return set;
+	}
+
+	/**
+	 * @param events mask of event flags (e.g. Monitor.TRAFFIC | Monitor.SCREEN)
+	 * @return a set with the identifiers of the flags
+	 */
+	public static EventSet fromFlags(int events) {
+		EventSet set = new EventSet();
+		set.words[0] = events & Monitor.ALL_EVENTS;
+		return set;
+	}
+
+	/**
+	 * @return the mask of flags of the events in the set that have one
+	 */
+	public int getFlags() {
+		return (int) (words[0] & Monitor.ALL_EVENTS);
+	}
+
+	/**
+	 * Add the identifier to the set
+	 *
+	 * @param id
+	 * @return true if the set did not contain the identifier
+	 */
+	public boolean add(EventId id) {
+		int index = id.getIndex();
+		ensureCapacity(index / 64 + 1);
+
+		long mask = 1L << index;
+		boolean added = (words[index / 64] & mask) == 0;
+		words[index / 64] |= mask;
+		return added;
+	}
+
+	/**
+	 * Remove the identifier from the set
+	 *
+	 * @param id
+	 * @return true if the set contained the identifier
+	 */
+	public boolean remove(EventId id) {
+		int index = id.getIndex();
+		if (index / 64 >= words.length) {
+			return false;
+		}
+
+		long mask = 1L << index;
+		boolean removed = (words[index / 64] & mask) != 0;
+		words[index / 64] &= ~mask;
+		return removed;
+	}
+
+	/**
+	 * @param id
+	 * @return true if the set contains the identifier
+	 */
+	public boolean contains(EventId id) {
+		int index = id.getIndex();
+		return index / 64 < words.length && (words[index / 64] & (1L << index)) != 0;
+	}
+
+	/**
+	 * Add all the identifiers of the other set
+	 *
+	 * @param other
+	 */
+	public void addAll(EventSet other) {
+		ensureCapacity(other.words.length);
+		for (int i = 0; i < other.words.length; i++) {
+			words[i] |= other.words[i];
+		}
+	}
+
+	/**
+	 * Remove all the identifiers of the other set
+	 *
+	 * @param other
+	 */
+	public void removeAll(EventSet other) {
+		int length = Math.min(words.length, other.words.length);
+		for (int i = 0; i < length; i++) {
+			words[i] &= ~other.words[i];
+		}
+	}
+
+	/**
+	 * Keep only the identifiers that are also in the other set
+	 *
+	 * @param other
+	 */
+	public void retainAll(EventSet other) {
+		for (int i = 0; i < words.length; i++) {
+			words[i] &= i < other.words.length ? other.words[i] : 0;
+		}
+	}
+
+	/**
+	 * Remove all the identifiers
+	 */
+	public void clear() {
+		Arrays.fill(words, 0);
+	}
+
+	/**
+	 * @return true if the set has no identifiers
+	 */
+	public boolean isEmpty() {
+		for (long word : words) {
+			if (word != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of identifiers in the set
+	 */
+	public int size() {
+		int size = 0;
+		for (long word : words) {
+			size += Long.bitCount(word);
+		}
+		return size;
+	}
+
+	/**
+	 * @param from
+	 * @return the first index in the set greater or equal than from, or -1 if
+	 * there is none
+	 */
+	public int nextIndex(int from) {
+		if (from < 0) {
+			from = 0;
+		}
+
+		int i = from / 64;
+		if (i >= words.length) {
+			return -1;
+		}
+
+		long word = words[i] & (-1L << from);
+		while (true) {
+			if (word != 0) {
+				return i * 64 + Long.numberOfTrailingZeros(word);
+			}
+			if (++i == words.length) {
+				return -1;
+			}
+			word = words[i];
+		}
+	}
+
+	private void ensureCapacity(int length) {
+		if (words.length < length) {
+			long[] grown = new long[Math.max(length, words.length * 2)];
+			System.arraycopy(words, 0, grown, 0, words.length);
+			words = grown;
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof EventSet)) {
+			return false;
+		}
+
+		long[] other = ((EventSet) o).words;
+		int length = Math.max(words.length, other.length);
+		for (int i = 0; i < length; i++) {
+			long a = i < words.length ? words[i] : 0;
+			long b = i < other.length ? other[i] : 0;
+			if (a != b) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		/* Ignore trailing empty words so equal sets have the same hash */
+		long hash = 1234;
+		for (int i = words.length; --i >= 0;) {
+			hash ^= words[i] * (i + 1);
+		}
+		return (int) ((hash >> 32) ^ hash);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		for (int i = nextIndex(0); i >= 0; i = nextIndex(i + 1)) {
+			if (builder.length() > 1) {
+				builder.append(", ");
+			}
+			EventId id = EventRegistry.forIndex(i);
+			builder.append(id != null ? id.getName() : String.valueOf(i));
+		}
+		return builder.append("]").toString();
+	}
+}
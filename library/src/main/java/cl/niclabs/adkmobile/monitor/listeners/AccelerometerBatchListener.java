@@ -0,0 +1,21 @@
+package cl.niclabs.adkmobile.monitor.listeners;
+
+import cl.niclabs.adkmobile.monitor.data.AccelerometerBatch;
+
+/**
+ * Listener for accelerometer data in batch mode (i.e. when the monitor is
+ * activated with a BATCH_SIZE_EXTRA greater than 1).
+ *
+ * In batch mode, onAccelerometerBatch() is called instead of onAccelerometerData().
+ * If the monitor is not in batch mode, onAccelerometerData() will be called for
+ * each sample as usual.
+ */
+public interface AccelerometerBatchListener extends AccelerometerListener {
+	/**
+	 * Called when a new batch of accelerometer data is available. The batch
+	 * is only valid during the call
+	 *
+	 * @param batch
+	 */
+	public void onAccelerometerBatch(AccelerometerBatch batch);
+}
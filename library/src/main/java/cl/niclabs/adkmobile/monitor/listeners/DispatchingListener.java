@@ -0,0 +1,17 @@
+package cl.niclabs.adkmobile.monitor.listeners;
+
+import cl.niclabs.adkmobile.monitor.events.DispatchPolicy;
+
+/**
+ * Listeners implementing this interface select the thread on which they receive
+ * observations (see DispatchPolicy). The policy is read once, when the listener
+ * is added to the monitor, so it also applies to listeners added through a
+ * Monitor.Controller.
+ */
+public interface DispatchingListener {
+	/**
+	 * @return the dispatch policy for this listener, or null to use the
+	 * default policy of the monitor
+	 */
+	public DispatchPolicy getDispatchPolicy();
+}
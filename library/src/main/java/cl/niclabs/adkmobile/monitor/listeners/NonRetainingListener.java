@@ -0,0 +1,14 @@
+package cl.niclabs.adkmobile.monitor.listeners;
+
+/**
+ * Marker for listeners that do not keep references to the observations they
+ * receive after the notification method returns (e.g. listeners that only update
+ * counters or copy the values they need).
+ *
+ * Observations delivered only to non retaining listeners can be recycled by the
+ * monitor (see AbstractObservation.obtain()), so monitors can run without allocating
+ * new observations. Listeners that store, persist or pass the observations to other
+ * threads must not implement this interface.
+ */
+public interface NonRetainingListener {
+}
@@ -21,6 +21,10 @@ public interface TelephonyListener extends MonitorListener{
 	 * This allows storage services to avoid saving different entries for the same observation when
 	 * all that changes is a Sample variable 
 	 * 
+	 * The Sample variables summarize the readings since the previous notification. If 
+	 * Telephony.SIGNAL_AGGREGATION_WINDOW is set, signal strength changes are notified at most
+	 * once per window, with the Sample variables summarizing all the readings of the window
+	 * 
 	 * @param trafficState the new telephony data
 	 */
 	public void onMobileTelephonyChange(TelephonyObservation<?> telephonyState);
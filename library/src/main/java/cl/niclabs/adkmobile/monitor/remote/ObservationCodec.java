@@ -0,0 +1,327 @@
+package cl.niclabs.adkmobile.monitor.remote;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encodes observations as self-describing binary records for the observation
+ * ring.
+ *
+ * An object is written as its class name followed by the number of fields and,
+ * for each field, its name and a tagged value. All non-static, non-transient
+ * fields of the class and its superclasses are written, values of unsupported types
+ * (arrays and other java.* classes) are skipped. Supported values are primitives and their boxed types, strings, enums,
+ * lists and nested objects (e.g. samples and neighbor antennas).
+ *
+ * Since records are read from memory shared with another process, only classes in
+ * the packages given to the constructor are instantiated on decoding, and unknown
+ * fields are ignored, so both processes may run different versions of a class.
+ *
+ * This class does not depend on the Android API and is not thread-safe.
+ */
+public class ObservationCodec {
+	private static final int NULL = 0;
+	private static final int BOOLEAN = 1;
+	private static final int BYTE = 2;
+	private static final int SHORT = 3;
+	private static final int INT = 4;
+	private static final int LONG = 5;
+	private static final int FLOAT = 6;
+	private static final int DOUBLE = 7;
+	private static final int STRING = 8;
+	private static final int ENUM = 9;
+	private static final int LIST = 10;
+	private static final int OBJECT = 11;
+
+	/**
+	 * Fields by class, shared by all codecs
+	 */
+	private static final Map<Class<?>, List<Field>> fieldCache = new ConcurrentHashMap<Class<?>, List<Field>>();
+
+	private final String[] packages;
+
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+	private final DataOutputStream out = new DataOutputStream(bytes);
+
+	/**
+	 * @param packages prefixes of the packages of the classes that can be decoded
+	 */
+	public ObservationCodec(String... packages) {
+		this.packages = packages.clone();
+	}
+
+	/**
+	 * Encode the object. The returned array is owned by the caller
+	 *
+	 * @param object
+	 * @return
+	 * @throws IOException
+	 */
+	public byte[] encode(Object object) throws IOException {
+		bytes.reset();
+		writeValue(object);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decode an object encoded with encode()
+	 *
+	 * @param data
+	 * @param length
+	 * @return
+	 * @throws IOException if the record is not valid or its class is not allowed
+	 */
+	public Object decode(byte[] data, int length) throws IOException {
+		return readValue(new DataInputStream(new ByteArrayInputStream(data, 0, length)));
+	}
+
+	private void writeValue(Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		}
+		else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		}
+		else if (value instanceof Byte) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte) value);
+		}
+		else if (value instanceof Short) {
+			out.writeByte(SHORT);
+			out.writeShort((Short) value);
+		}
+		else if (value instanceof Integer) {
+			out.writeByte(INT);
+			out.writeInt((Integer) value);
+		}
+		else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		}
+		else if (value instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		}
+		else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		}
+		else if (value instanceof String) {
+			out.writeByte(STRING);
+			out.writeUTF((String) value);
+		}
+		else if (value instanceof Enum) {
+			out.writeByte(ENUM);
+			out.writeUTF(((Enum<?>) value).getDeclaringClass().getName());
+			out.writeUTF(((Enum<?>) value).name());
+		}
+		else if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			out.writeByte(LIST);
+			out.writeInt(list.size());
+			for (Object element : list) {
+				writeValue(element);
+			}
+		}
+		else {
+			writeObject(value);
+		}
+	}
+
+	private void writeObject(Object object) throws IOException {
+		List<Field> fields = getFields(object.getClass());
+
+		out.writeByte(OBJECT);
+		out.writeUTF(object.getClass().getName());
+
+		/* Count the supported fields first */
+		int count = 0;
+		for (Field field : fields) {
+			if (isSupported(read(field, object))) {
+				count++;
+			}
+		}
+
+		out.writeShort(count);
+		for (Field field : fields) {
+			Object value = read(field, object);
+			if (isSupported(value)) {
+				out.writeUTF(field.getName());
+				writeValue(value);
+			}
+		}
+	}
+
+	private Object readValue(DataInputStream in) throws IOException {
+		int tag = in.readByte();
+		switch (tag) {
+		case NULL:
+			return null;
+		case BOOLEAN:
+			return in.readBoolean();
+		case BYTE:
+			return in.readByte();
+		case SHORT:
+			return in.readShort();
+		case INT:
+			return in.readInt();
+		case LONG:
+			return in.readLong();
+		case FLOAT:
+			return in.readFloat();
+		case DOUBLE:
+			return in.readDouble();
+		case STRING:
+			return in.readUTF();
+		case ENUM:
+			return readEnum(in.readUTF(), in.readUTF());
+		case LIST:
+			int size = in.readInt();
+			if (size < 0) {
+				throw new IOException("Invalid list size " + size);
+			}
+
+			List<Object> list = new ArrayList<Object>(Math.min(size, 64));
+			for (int i = 0; i < size; i++) {
+				list.add(readValue(in));
+			}
+			return list;
+		case OBJECT:
+			return readObject(in);
+		default:
+			throw new IOException("Invalid tag " + tag);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Object readEnum(String className, String name) throws IOException {
+		Class<?> cls = loadClass(className);
+		if (!cls.isEnum()) {
+			throw new IOException(className + " is not an enum");
+		}
+
+		try {
+			return Enum.valueOf((Class<? extends Enum>) cls, name);
+		} catch (IllegalArgumentException e) {
+			/* Unknown constant (e.g. different versions) */
+			return null;
+		}
+	}
+
+	private Object readObject(DataInputStream in) throws IOException {
+		Class<?> cls = loadClass(in.readUTF());
+
+		Object object;
+		try {
+			object = cls.newInstance();
+		} catch (InstantiationException e) {
+			throw new IOException("Cannot create " + cls.getName());
+		} catch (IllegalAccessException e) {
+			throw new IOException("Cannot create " + cls.getName());
+		}
+
+		Map<String, Field> fields = new HashMap<String, Field>();
+		for (Field field : getFields(cls)) {
+			fields.put(field.getName(), field);
+		}
+
+		int count = in.readShort();
+		for (int i = 0; i < count; i++) {
+			Field field = fields.get(in.readUTF());
+			Object value = readValue(in);
+
+			/* Ignore unknown fields and incompatible values */
+			if (field != null && isAssignable(field.getType(), value)) {
+				try {
+					field.set(object, value);
+				} catch (IllegalAccessException e) {
+					throw new IOException("Cannot set field " + field.getName());
+				}
+			}
+		}
+		return object;
+	}
+
+	private Class<?> loadClass(String className) throws IOException {
+		boolean allowed = false;
+		for (String prefix : packages) {
+			allowed |= className.startsWith(prefix);
+		}
+
+		if (!allowed) {
+			throw new IOException("Class not allowed " + className);
+		}
+
+		try {
+			return Class.forName(className);
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Unknown class " + className);
+		}
+	}
+
+	private static boolean isSupported(Object value) {
+		return value == null || value instanceof Number || value instanceof Boolean
+				|| value instanceof String || value instanceof Enum || value instanceof List
+				|| !(value.getClass().isArray() || value.getClass().getName().startsWith("java."));
+	}
+
+	private static boolean isAssignable(Class<?> type, Object value) {
+		if (value == null) {
+			return !type.isPrimitive();
+		}
+
+		if (type == boolean.class) return value instanceof Boolean;
+		if (type == byte.class) return value instanceof Byte;
+		if (type == short.class) return value instanceof Short;
+		if (type == int.class) return value instanceof Integer;
+		if (type == long.class) return value instanceof Long;
+		if (type == float.class) return value instanceof Float;
+		if (type == double.class) return value instanceof Double;
+		return type.isInstance(value);
+	}
+
+	private static Object read(Field field, Object object) {
+		try {
+			return field.get(object);
+		} catch (IllegalAccessException e) {
+			/* Should not happen since fields are accessible */
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Get the non-static, non-transient fields of the class and its superclasses
+	 */
+	private static List<Field> getFields(Class<?> cls) {
+		List<Field> fields = fieldCache.get(cls);
+		if (fields == null) {
+			fields = new ArrayList<Field>();
+			for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+				for (Field field : c.getDeclaredFields()) {
+					int modifiers = field.getModifiers();
+					if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+						field.setAccessible(true);
+						fields.add(field);
+					}
+				}
+			}
+
+			fields = Collections.unmodifiableList(fields);
+			fieldCache.put(cls, fields);
+		}
+		return fields;
+	}
+}
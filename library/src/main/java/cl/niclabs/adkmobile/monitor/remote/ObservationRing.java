@@ -0,0 +1,312 @@
+package cl.niclabs.adkmobile.monitor.remote;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Single-writer, multiple-reader ring buffer of variable length records over a
+ * ByteBuffer, meant to be backed by memory shared between processes (e.g. a
+ * MappedByteBuffer).
+ *
+ * The buffer starts with a header (magic, data capacity, write position and
+ * reserved position) followed by the data region. Positions are monotonically increasing byte offsets,
+ * the offset in the data region is the position modulo the capacity. Each record
+ * is a 4-byte length followed by the payload, padded to a multiple of 4 bytes. A
+ * record never wraps: if it does not fit before the end of the data region, a WRAP
+ * marker is written and the record starts at the beginning of the region.
+ *
+ * The writer never blocks. Before writing a record it publishes the reserved
+ * position (the end of the bytes it is about to modify), and after writing it
+ * publishes the write position. Readers keep their own position and read up to a
+ * limit position obtained from the writer (e.g. sent with the wakeup signal, so all
+ * the records before the limit are visible to the reader). A record at position p
+ * is intact as long as the reserved position is not past p + capacity, readers check
+ * it after copying each record, so a record being overwritten is never returned. If
+ * the writer laps a reader, the reader skips ahead and counts the records as lost.
+ *
+ * Java 6 has no explicit memory fences, the header updates are ordered with
+ * accesses to a volatile field, for which the runtime emits full barriers on
+ * multi-processors. Those barriers also order the accesses to the shared memory.
+ *
+ * This class does not depend on the Android API.
+ */
+public class ObservationRing {
+	/**
+	 * Magic number of the header ("ADKR")
+	 */
+	public static final int MAGIC = 0x41444b52;
+
+	/**
+	 * Size of the header (in bytes)
+	 */
+	public static final int HEADER_SIZE = 24;
+
+	private static final int CAPACITY_OFFSET = 4;
+	private static final int POSITION_OFFSET = 8;
+	private static final int RESERVED_OFFSET = 16;
+
+	private static final int WRAP = -1;
+
+	/**
+	 * Accessed to order the header updates with the data
+	 */
+	private static volatile int fence;
+
+	private final ByteBuffer buffer;
+	private final int capacity;
+
+	private ObservationRing(ByteBuffer buffer, int capacity) {
+		this.buffer = buffer;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @param capacity size of the data region
+	 * @return total size of the buffer (header and data) for the capacity
+	 */
+	public static int size(int capacity) {
+		return HEADER_SIZE + capacity;
+	}
+
+	/**
+	 * Initialize a new ring on the buffer, using all the space after the header
+	 * as data region (rounded down to a multiple of 4)
+	 *
+	 * @param buffer
+	 * @return
+	 */
+	public static ObservationRing create(ByteBuffer buffer) {
+		int capacity = (buffer.capacity() - HEADER_SIZE) & ~3;
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Buffer too small");
+		}
+
+		buffer.putLong(POSITION_OFFSET, 0);
+		buffer.putLong(RESERVED_OFFSET, 0);
+		buffer.putInt(CAPACITY_OFFSET, capacity);
+		buffer.putInt(0, MAGIC);
+		return new ObservationRing(buffer, capacity);
+	}
+
+	/**
+	 * Attach to a ring initialized with create() (e.g. by another process)
+	 *
+	 * @param buffer
+	 * @return
+	 * @throws IllegalArgumentException if the buffer does not contain a ring
+	 */
+	public static ObservationRing attach(ByteBuffer buffer) {
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IllegalArgumentException("Buffer does not contain a ring");
+		}
+
+		int capacity = buffer.getInt(CAPACITY_OFFSET);
+		if (capacity <= 0 || HEADER_SIZE + capacity > buffer.capacity()) {
+			throw new IllegalArgumentException("Invalid ring capacity " + capacity);
+		}
+		return new ObservationRing(buffer, capacity);
+	}
+
+	/**
+	 * @return size of the data region
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return maximum length of a record payload
+	 */
+	public int getMaxRecordLength() {
+		return capacity / 2 - 4;
+	}
+
+	/**
+	 * @return position after the last record written
+	 */
+	public long getWritePosition() {
+		long position = buffer.getLong(POSITION_OFFSET);
+		loadFence();
+		return position;
+	}
+
+	/**
+	 * @return position after the record being written, or the write position if
+	 * no record is being written
+	 */
+	public long getReservedPosition() {
+		loadFence();
+		return buffer.getLong(RESERVED_OFFSET);
+	}
+
+	/**
+	 * Append a record. Must only be called by the writer process
+	 *
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @return the write position after the record
+	 * @throws IllegalArgumentException if the record is longer than getMaxRecordLength()
+	 */
+	public synchronized long write(byte[] data, int offset, int length) {
+		if (length > getMaxRecordLength()) {
+			throw new IllegalArgumentException("Record too long " + length);
+		}
+
+		long position = buffer.getLong(POSITION_OFFSET);
+		int recordSize = 4 + align(length);
+
+		int start = (int) (position % capacity);
+		int skip = start + recordSize > capacity ? capacity - start : 0;
+
+		/* Reserve the space before modifying it, so readers detect overwrites */
+		buffer.putLong(RESERVED_OFFSET, position + skip + recordSize);
+		storeFence();
+
+		if (skip > 0) {
+			/* Skip to the beginning of the data region */
+			buffer.putInt(HEADER_SIZE + start, WRAP);
+			position += skip;
+			start = 0;
+		}
+
+		buffer.putInt(HEADER_SIZE + start, length);
+		for (int i = 0; i < length; i++) {
+			buffer.put(HEADER_SIZE + start + 4 + i, data[offset + i]);
+		}
+
+		/* Publish the record */
+		position += recordSize;
+		storeFence();
+		buffer.putLong(POSITION_OFFSET, position);
+		return position;
+	}
+
+	/**
+	 * Create a reader starting at the current write position
+	 *
+	 * @return
+	 */
+	public Reader newReader() {
+		return new Reader(getWritePosition());
+	}
+
+	private static int align(int length) {
+		return (length + 3) & ~3;
+	}
+
+	/**
+	 * Order the previous stores before the following ones
+	 */
+	private static void storeFence() {
+		fence = 0;
+	}
+
+	/**
+	 * Order the previous loads before the following ones
+	 */
+	private static void loadFence() {
+		int ignored = fence;
+	}
+
+	/**
+	 * Reads the records of the ring. Each reader has its own position, readers
+	 * are not thread-safe
+	 */
+	public class Reader {
+		private long position;
+		private long lost = 0;
+		private byte[] record = new byte[256];
+
+		private Reader(long position) {
+			this.position = position;
+		}
+
+		/**
+		 * @return current read position
+		 */
+		public long getPosition() {
+			return position;
+		}
+
+		/**
+		 * @return number of times the reader was lapped by the writer and skipped records
+		 */
+		public long getLostCount() {
+			return lost;
+		}
+
+		/**
+		 * Read the next record before the limit. The payload is copied to an
+		 * internal buffer that is reused on each call (see getRecord())
+		 *
+		 * @param limit write position known to be visible to the reader
+		 * @return the length of the record, or -1 if there are no more records
+		 * before the limit
+		 */
+		public int next(long limit) {
+			while (position < limit) {
+				if (limit - position > capacity) {
+					/* The records were overwritten */
+					skip(limit);
+					return -1;
+				}
+
+				int start = (int) (position % capacity);
+				int length = capacity - start >= 4 ? buffer.getInt(HEADER_SIZE + start) : WRAP;
+				if (isOverwritten()) {
+					return -1;
+				}
+
+				if (length == WRAP) {
+					position += capacity - start;
+					continue;
+				}
+
+				if (length < 0 || length > getMaxRecordLength()) {
+					skip(limit);
+					return -1;
+				}
+
+				if (record.length < length) {
+					record = new byte[Math.max(length, record.length * 2)];
+				}
+				for (int i = 0; i < length; i++) {
+					record[i] = buffer.get(HEADER_SIZE + start + 4 + i);
+				}
+
+				/* Check that the writer did not overwrite the record while copying */
+				if (isOverwritten()) {
+					return -1;
+				}
+
+				position += 4 + align(length);
+				return length;
+			}
+			return -1;
+		}
+
+		/**
+		 * @return the buffer with the payload of the last record returned by next()
+		 */
+		public byte[] getRecord() {
+			return record;
+		}
+
+		/**
+		 * Check if the writer reserved the space of the current position, in that
+		 * case skip to the write position
+		 */
+		private boolean isOverwritten() {
+			if (getReservedPosition() - position > capacity) {
+				skip(Math.max(getWritePosition(), position));
+				return true;
+			}
+			return false;
+		}
+
+		private void skip(long limit) {
+			position = limit;
+			lost++;
+		}
+	}
+}
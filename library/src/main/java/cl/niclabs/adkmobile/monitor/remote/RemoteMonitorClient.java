@@ -0,0 +1,287 @@
+package cl.niclabs.adkmobile.monitor.remote;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.ParcelFileDescriptor;
+import android.os.RemoteException;
+import android.util.Log;
+import cl.niclabs.adkmobile.monitor.Monitor;
+import cl.niclabs.adkmobile.monitor.data.Observation;
+
+/**
+ * Receives the observations of the monitors running on a RemoteMonitorHost
+ * process.
+ *
+ * On connection the client registers its events and configuration with the host
+ * and maps the observation ring received in the reply. On each wakeup, the records
+ * up to the position sent by the host are decoded and the observations for the
+ * requested events are notified to the listeners on the main thread. If the client
+ * is too slow and the host overwrites records before they are read, they are lost
+ * (see getLostCount()).
+ *
+ * Like AbstractMonitor.bind(), the client re-binds and registers again if the
+ * host process crashes.
+ */
+public class RemoteMonitorClient {
+	/**
+	 * Receives the observations from the host
+	 */
+	public interface Listener {
+		public void onObservation(Observation observation);
+	}
+
+	protected String TAG = "AdkintunMobile::RemoteMonitorClient";
+
+	private final Context context;
+	private final Intent intent;
+
+	private int events = 0;
+	private final Bundle configuration = new Bundle();
+	private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+	private final ObservationCodec codec = new ObservationCodec(Observation.class.getPackage().getName());
+
+	private Messenger host;
+	private ObservationRing.Reader reader;
+	private boolean bound = false;
+
+	private final Handler handler = new Handler() {
+		@Override
+		public void handleMessage(Message msg) {
+			switch (msg.what) {
+			case RemoteMonitorHost.MSG_REGISTERED:
+				attach(msg.arg1, msg.getData());
+				break;
+			case RemoteMonitorHost.MSG_WAKEUP:
+				read(((long) msg.arg1 << 32) | (msg.arg2 & 0xffffffffL));
+				break;
+			default:
+				super.handleMessage(msg);
+			}
+		}
+	};
+
+	private final Messenger messenger = new Messenger(handler);
+
+	private final ServiceConnection serviceConnection = new ServiceConnection() {
+		@Override
+		public void onServiceConnected(ComponentName name, IBinder service) {
+			host = new Messenger(service);
+			register();
+		}
+
+		/* Is only called on host crash */
+		@Override
+		public void onServiceDisconnected(ComponentName name) {
+			host = null;
+			detach();
+
+			/* Re-bind and register again */
+			context.bindService(intent, serviceConnection, Context.BIND_AUTO_CREATE);
+		}
+	};
+
+	private RemoteMonitorClient(Context context, Intent intent) {
+		this.context = context;
+		this.intent = intent;
+	}
+
+	/**
+	 * Bind to the host running on this application
+	 *
+	 * @param context
+	 * @return
+	 */
+	public static RemoteMonitorClient bind(Context context) {
+		return bind(context, new Intent(context, RemoteMonitorHost.class));
+	}
+
+	/**
+	 * Bind to the host identified by the intent (e.g. with the component of
+	 * a host exported by another application)
+	 *
+	 * @param context
+	 * @param intent
+	 * @return
+	 */
+	public static RemoteMonitorClient bind(Context context, Intent intent) {
+		RemoteMonitorClient client = new RemoteMonitorClient(context, intent);
+		client.bound = context.bindService(intent, client.serviceConnection, Context.BIND_AUTO_CREATE);
+		return client;
+	}
+
+	/**
+	 * Request the events from the host
+	 *
+	 * @param events
+	 * @param configuration configuration for the monitors (see Monitor.activate())
+	 */
+	public void activate(int events, Bundle configuration) {
+		this.events |= events;
+		if (configuration != null) {
+			this.configuration.putAll(configuration);
+		}
+		register();
+	}
+
+	public void activate(int events) {
+		activate(events, null);
+	}
+
+	/**
+	 * Stop requesting the events from the host
+	 *
+	 * @param events
+	 */
+	public void deactivate(int events) {
+		this.events &= ~events;
+		register();
+	}
+
+	/**
+	 * Add or remove a listener
+	 *
+	 * @param listener
+	 * @param listen
+	 */
+	public void listen(Listener listener, boolean listen) {
+		if (listen) {
+			listeners.add(listener);
+		}
+		else {
+			listeners.remove(listener);
+		}
+	}
+
+	/**
+	 * @return number of times observations were lost because the client was
+	 * lapped by the host
+	 */
+	public long getLostCount() {
+		return reader != null ? reader.getLostCount() : 0;
+	}
+
+	/**
+	 * Unregister from the host and unbind
+	 */
+	public void unbind() {
+		if (host != null) {
+			Message msg = Message.obtain(null, RemoteMonitorHost.MSG_UNREGISTER);
+			msg.replyTo = messenger;
+			try {
+				host.send(msg);
+			} catch (RemoteException e) {
+				/* The host is gone */
+			}
+			host = null;
+		}
+
+		if (bound) {
+			context.unbindService(serviceConnection);
+			bound = false;
+		}
+		detach();
+	}
+
+	/**
+	 * Send the events and configuration to the host
+	 */
+	private void register() {
+		if (host == null) {
+			return;
+		}
+
+		Message msg = Message.obtain(null, RemoteMonitorHost.MSG_REGISTER);
+		msg.replyTo = messenger;
+		msg.arg1 = events;
+		msg.setData(configuration);
+		try {
+			host.send(msg);
+		} catch (RemoteException e) {
+			/* onServiceDisconnected() will be called */
+		}
+	}
+
+	/**
+	 * Map the ring received from the host
+	 */
+	private void attach(int size, Bundle data) {
+		detach();
+
+		ParcelFileDescriptor fd = data != null ? data.<ParcelFileDescriptor>getParcelable(RemoteMonitorHost.RING_EXTRA) : null;
+		if (fd == null) {
+			Log.e(TAG, "No observation ring received from host");
+			return;
+		}
+
+		FileInputStream stream = new ParcelFileDescriptor.AutoCloseInputStream(fd);
+		try {
+			MappedByteBuffer buffer = stream.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+			reader = ObservationRing.attach(buffer).newReader();
+		} catch (IOException e) {
+			Log.e(TAG, "Cannot map observation ring " + e.getMessage());
+		} catch (IllegalArgumentException e) {
+			Log.e(TAG, "Invalid observation ring " + e.getMessage());
+		} finally {
+			/* The mapping remains valid after closing the descriptor */
+			try {
+				stream.close();
+			} catch (IOException e) {
+				/* Nothing to do */
+			}
+		}
+	}
+
+	private void detach() {
+		reader = null;
+	}
+
+	/**
+	 * Read and notify the observations up to the limit
+	 */
+	private void read(long limit) {
+		if (reader == null) {
+			return;
+		}
+
+		int length;
+		while ((length = reader.next(limit)) >= 0) {
+			Object value;
+			try {
+				value = codec.decode(reader.getRecord(), length);
+			} catch (IOException e) {
+				if (Monitor.DEBUG)
+					Log.w(TAG, "Cannot decode observation " + e.getMessage());
+				continue;
+			}
+
+			if (!(value instanceof Observation)) {
+				continue;
+			}
+
+			Observation observation = (Observation) value;
+			Integer eventType = observation.getEventType();
+			if (eventType != null && (eventType & events) == 0) {
+				continue;
+			}
+
+			for (Listener listener : listeners) {
+				listener.onObservation(observation);
+			}
+		}
+	}
+}
@@ -0,0 +1,443 @@
+package cl.niclabs.adkmobile.monitor.remote;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.ParcelFileDescriptor;
+import android.os.RemoteException;
+import android.util.Log;
+import cl.niclabs.adkmobile.monitor.AbstractMonitor;
+import cl.niclabs.adkmobile.monitor.Accelerometer;
+import cl.niclabs.adkmobile.monitor.ClockSynchronization;
+import cl.niclabs.adkmobile.monitor.Connectivity;
+import cl.niclabs.adkmobile.monitor.Location;
+import cl.niclabs.adkmobile.monitor.Monitor;
+import cl.niclabs.adkmobile.monitor.Monitor.Controller;
+import cl.niclabs.adkmobile.monitor.Screen;
+import cl.niclabs.adkmobile.monitor.Telephony;
+import cl.niclabs.adkmobile.monitor.Traffic;
+import cl.niclabs.adkmobile.monitor.data.Observation;
+import cl.niclabs.adkmobile.monitor.listeners.AccelerometerListener;
+import cl.niclabs.adkmobile.monitor.listeners.ClockSynchronizationListener;
+import cl.niclabs.adkmobile.monitor.listeners.ConnectivityListener;
+import cl.niclabs.adkmobile.monitor.listeners.LocationListener;
+import cl.niclabs.adkmobile.monitor.listeners.MonitorListener;
+import cl.niclabs.adkmobile.monitor.listeners.ScreenListener;
+import cl.niclabs.adkmobile.monitor.listeners.TelephonyListener;
+import cl.niclabs.adkmobile.monitor.listeners.TrafficListener;
+
+/**
+ * Hosts the monitors in a single process and shares their observations with
+ * client processes (see RemoteMonitorClient), so several applications do not
+ * each run their own copy of the monitors.
+ *
+ * Observations are encoded with ObservationCodec and written to an ObservationRing
+ * in a memory mapped file. The file descriptor is sent read-only to each client on
+ * registration, after that, only a wakeup message with the ring write position
+ * crosses Binder. Wakeups are coalesced every WAKEUP_INTERVAL milliseconds, and
+ * each client only wakes up for the events it registered.
+ *
+ * The monitors are activated with the union of the events requested by the registered
+ * clients, and deactivated when no client requests them. The service must run
+ * in its own process and be exported to the client applications, e.g.
+ *
+ * <pre>
+ * &lt;service android:name="cl.niclabs.adkmobile.monitor.remote.RemoteMonitorHost"
+ *     android:process=":monitors"
+ *     android:exported="true"
+ *     android:permission="..." /&gt;
+ * </pre>
+ *
+ * The monitors themselves must be declared in the manifest as usual, on the same
+ * process as the host.
+ */
+public class RemoteMonitorHost extends Service {
+	/**
+	 * Register a client. The replyTo messenger identifies the client, arg1 has the
+	 * events and the data the configuration for the monitors
+	 */
+	public static final int MSG_REGISTER = 1;
+
+	/**
+	 * Unregister a client (identified by replyTo)
+	 */
+	public static final int MSG_UNREGISTER = 2;
+
+	/**
+	 * Reply to a registration, arg1 has the size of the ring and the data the
+	 * file descriptor (RING_EXTRA)
+	 */
+	public static final int MSG_REGISTERED = 3;
+
+	/**
+	 * Observations are available, arg1 and arg2 have the high and low 32 bits
+	 * of the ring write position
+	 */
+	public static final int MSG_WAKEUP = 4;
+
+	/**
+	 * Key for the ring file descriptor on MSG_REGISTERED
+	 */
+	public static final String RING_EXTRA = "remote_ring";
+
+	/**
+	 * Size of the data region of the ring (in bytes)
+	 */
+	public static int RING_CAPACITY = 256 * 1024;
+
+	/**
+	 * Minimum time between wakeups of a client (in milliseconds)
+	 */
+	public static long WAKEUP_INTERVAL = 50;
+
+	private static final String RING_FILE = "remote_monitor.ring";
+
+	protected String TAG = "AdkintunMobile::RemoteMonitorHost";
+
+	/**
+	 * Monitor, listener type and events of each hosted monitor
+	 */
+	private static final Class<?>[][] MONITORS = {
+		{ Connectivity.class, ConnectivityListener.class },
+		{ Traffic.class, TrafficListener.class },
+		{ Telephony.class, TelephonyListener.class },
+		{ Screen.class, ScreenListener.class },
+		{ Location.class, LocationListener.class },
+		{ ClockSynchronization.class, ClockSynchronizationListener.class },
+		{ Accelerometer.class, AccelerometerListener.class }
+	};
+
+	private static final int[] MONITOR_EVENTS = {
+		Monitor.CONNECTIVITY,
+		Monitor.TRAFFIC,
+		Monitor.TELEPHONY,
+		Monitor.SCREEN,
+		Monitor.LOCATION,
+		Monitor.CLOCK,
+		Monitor.ACCELEROMETER
+	};
+
+	/**
+	 * A registered client
+	 */
+	private static class Client {
+		final Messenger messenger;
+		int events;
+		Bundle configuration;
+
+		Client(Messenger messenger) {
+			this.messenger = messenger;
+		}
+	}
+
+	/**
+	 * Clients by binder of their messenger, only accessed on the main thread
+	 */
+	private final Map<IBinder, Client> clients = new HashMap<IBinder, Client>();
+
+	/**
+	 * Controller and active events for each monitor in MONITORS
+	 */
+	@SuppressWarnings("rawtypes")
+	private final Controller[] controllers = new Controller[MONITORS.length];
+	private final int[] activeEvents = new int[MONITORS.length];
+
+	private final Handler handler = new Handler() {
+		@Override
+		public void handleMessage(Message msg) {
+			switch (msg.what) {
+			case MSG_REGISTER:
+				register(msg.replyTo, msg.arg1, msg.getData());
+				break;
+			case MSG_UNREGISTER:
+				if (msg.replyTo != null) {
+					unregister(msg.replyTo.getBinder());
+				}
+				break;
+			default:
+				super.handleMessage(msg);
+			}
+		}
+	};
+
+	private final Messenger messenger = new Messenger(handler);
+
+	private File ringFile;
+	private RandomAccessFile ringStore;
+	private ObservationRing ring;
+	private final ObservationCodec codec = new ObservationCodec();
+
+	/**
+	 * Events with observations written since the last wakeup
+	 */
+	private int pendingEvents = 0;
+	private boolean wakeupScheduled = false;
+
+	private final Runnable wakeupTask = new Runnable() {
+		@Override
+		public void run() {
+			wakeup();
+		}
+	};
+
+	/**
+	 * Publishes the observations received by the monitor listeners
+	 */
+	private final InvocationHandler publisher = new InvocationHandler() {
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getDeclaringClass() == Object.class) {
+				/* Listeners are compared by identity */
+				if (method.getName().equals("equals")) {
+					return proxy == args[0];
+				}
+				if (method.getName().equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				}
+				return "RemoteMonitorHost$Publisher";
+			}
+
+			if (args != null) {
+				for (Object arg : args) {
+					if (arg instanceof Observation) {
+						publish((Observation) arg);
+					}
+				}
+			}
+			return null;
+		}
+	};
+
+	@Override
+	public void onCreate() {
+		super.onCreate();
+
+		int size = ObservationRing.size(RING_CAPACITY);
+		try {
+			ringFile = new File(getFilesDir(), RING_FILE);
+			ringStore = new RandomAccessFile(ringFile, "rw");
+			ringStore.setLength(size);
+
+			MappedByteBuffer buffer = ringStore.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			ring = ObservationRing.create(buffer);
+		} catch (IOException e) {
+			Log.e(TAG, "Cannot create observation ring " + e.getMessage());
+		}
+	}
+
+	@Override
+	public IBinder onBind(Intent intent) {
+		return messenger.getBinder();
+	}
+
+	@Override
+	public void onDestroy() {
+		handler.removeCallbacks(wakeupTask);
+		clients.clear();
+
+		for (int i = 0; i < controllers.length; i++) {
+			if (controllers[i] != null) {
+				controllers[i].unbind();
+				controllers[i] = null;
+			}
+			activeEvents[i] = 0;
+		}
+
+		if (ringStore != null) {
+			try {
+				ringStore.close();
+			} catch (IOException e) {
+				/* Nothing to do */
+			}
+			ringFile.delete();
+		}
+
+		super.onDestroy();
+	}
+
+	/**
+	 * Register or update a client and send it the ring
+	 */
+	private void register(Messenger replyTo, int events, Bundle configuration) {
+		if (replyTo == null || ring == null) {
+			return;
+		}
+
+		IBinder key = replyTo.getBinder();
+		Client client = clients.get(key);
+		boolean created = client == null;
+		if (created) {
+			client = new Client(replyTo);
+			clients.put(key, client);
+		}
+		client.events = events;
+		client.configuration = configuration;
+
+		if (created) {
+			try {
+				Message reply = Message.obtain(null, MSG_REGISTERED);
+				reply.arg1 = ObservationRing.size(ring.getCapacity());
+
+				ParcelFileDescriptor fd = ParcelFileDescriptor.open(ringFile, ParcelFileDescriptor.MODE_READ_ONLY);
+				Bundle data = new Bundle();
+				data.putParcelable(RING_EXTRA, fd);
+				reply.setData(data);
+
+				replyTo.send(reply);
+				fd.close();
+			} catch (IOException e) {
+				Log.e(TAG, "Cannot share observation ring " + e.getMessage());
+				clients.remove(key);
+			} catch (RemoteException e) {
+				clients.remove(key);
+			}
+		}
+
+		update();
+	}
+
+	private void unregister(IBinder key) {
+		if (clients.remove(key) != null) {
+			update();
+		}
+	}
+
+	/**
+	 * Activate the events requested by the clients and deactivate the rest
+	 */
+	@SuppressWarnings("unchecked")
+	private void update() {
+		int events = 0;
+		Bundle configuration = new Bundle();
+		for (Client client : clients.values()) {
+			events |= client.events;
+			if (client.configuration != null) {
+				configuration.putAll(client.configuration);
+			}
+		}
+
+		for (int i = 0; i < MONITORS.length; i++) {
+			int requested = events & MONITOR_EVENTS[i];
+			int removed = activeEvents[i] & ~requested;
+
+			if (requested != 0 && controllers[i] == null) {
+				controllers[i] = bind(i);
+			}
+
+			if (controllers[i] == null) {
+				continue;
+			}
+
+			if (removed != 0) {
+				controllers[i].deactivate(removed);
+			}
+
+			if (requested != 0) {
+				controllers[i].activate(requested, configuration);
+			}
+			activeEvents[i] = requested;
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Controller bind(int index) {
+		Class<? extends MonitorListener> listenerType = (Class<? extends MonitorListener>) MONITORS[index][1];
+		Object listener = Proxy.newProxyInstance(listenerType.getClassLoader(),
+				new Class<?>[] { listenerType }, publisher);
+
+		Controller controller = AbstractMonitor.bind((Class) MONITORS[index][0], this);
+		controller.listen((MonitorListener) listener, true);
+		return controller;
+	}
+
+	/**
+	 * Write the observation to the ring and schedule a wakeup. Called
+	 * from the monitor threads
+	 */
+	private void publish(Observation observation) {
+		synchronized (codec) {
+			if (ring == null) {
+				return;
+			}
+
+			try {
+				byte[] record = codec.encode(observation);
+				if (record.length > ring.getMaxRecordLength()) {
+					Log.w(TAG, "Observation too large for the ring " + observation.getClass().getSimpleName());
+					return;
+				}
+				ring.write(record, 0, record.length);
+			} catch (IOException e) {
+				Log.e(TAG, "Cannot encode observation " + e.getMessage());
+				return;
+			}
+
+			Integer eventType = observation.getEventType();
+			pendingEvents |= eventType != null ? eventType : Monitor.ALL_EVENTS;
+
+			if (wakeupScheduled) {
+				return;
+			}
+			wakeupScheduled = true;
+		}
+
+		handler.postDelayed(wakeupTask, WAKEUP_INTERVAL);
+	}
+
+	/**
+	 * Send the write position to the clients listening for the pending events
+	 */
+	private void wakeup() {
+		int events;
+		long position;
+		synchronized (codec) {
+			events = pendingEvents;
+			pendingEvents = 0;
+			wakeupScheduled = false;
+			position = ring.getWritePosition();
+		}
+
+		List<IBinder> dead = new ArrayList<IBinder>();
+		for (Map.Entry<IBinder, Client> entry : clients.entrySet()) {
+			Client client = entry.getValue();
+			if ((client.events & events) == 0) {
+				continue;
+			}
+
+			Message msg = Message.obtain(null, MSG_WAKEUP);
+			msg.arg1 = (int) (position >>> 32);
+			msg.arg2 = (int) position;
+			try {
+				client.messenger.send(msg);
+			} catch (RemoteException e) {
+				/* The client process died */
+				dead.add(entry.getKey());
+			}
+		}
+
+		for (IBinder key : dead) {
+			clients.remove(key);
+		}
+
+		if (!dead.isEmpty()) {
+			update();
+		}
+	}
+}
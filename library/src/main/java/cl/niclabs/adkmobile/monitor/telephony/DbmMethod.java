@@ -0,0 +1,74 @@
+package cl.niclabs.adkmobile.monitor.telephony;
+
+import java.lang.reflect.Method;
+
+/**
+ * Reads the signal strength with the hidden SignalStrength.getDbm() method.
+ *
+ * The method is only looked up the first time a SignalStrength class is seen,
+ * if the method does not exist or fails, the class is marked as not supporting
+ * it and the following updates do not use reflection. Only the last class is
+ * remembered, since a device reports a single SignalStrength class.
+ *
+ * This class is thread-safe.
+ */
+public class DbmMethod {
+	/**
+	 * Returned by getDbm() if the method is not available
+	 */
+	public static final int UNAVAILABLE = Integer.MIN_VALUE;
+
+	/**
+	 * Result of the lookup of the method for a class
+	 */
+	private static final class Lookup {
+		final Class<?> type;
+
+		/**
+		 * The method or null if not available
+		 */
+		final Method method;
+
+		Lookup(Class<?> type, Method method) {
+			this.type = type;
+			this.method = method;
+		}
+	}
+
+	/**
+	 * Last lookup of the method, null before the first call
+	 */
+	private volatile Lookup lookup = null;
+
+	/**
+	 * @param signalStrength a SignalStrength instance
+	 * @return the signal strength in dBm or UNAVAILABLE
+	 */
+	public int getDbm(Object signalStrength) {
+		Class<?> type = signalStrength.getClass();
+
+		Lookup current = lookup;
+		if (current == null || current.type != type) {
+			Method method = null;
+			try {
+				method = type.getDeclaredMethod("getDbm");
+			} catch (NoSuchMethodException e) {
+				/* Use the classic method */
+			} catch (SecurityException e) {
+				/* Use the classic method */
+			}
+			current = new Lookup(type, method);
+			lookup = current;
+		}
+
+		if (current.method != null) {
+			try {
+				return (Integer) current.method.invoke(signalStrength);
+			} catch (Exception e) {
+				/* Do not try again for this class */
+				lookup = new Lookup(type, null);
+			}
+		}
+		return UNAVAILABLE;
+	}
+}
@@ -0,0 +1,128 @@
+package cl.niclabs.adkmobile.monitor.telephony;
+
+/**
+ * Keeps the set of neighbor cells from the last cell info update to detect
+ * which neighbors changed.
+ *
+ * Each update is reported between begin() and end(). add() returns true if the
+ * neighbor was not in the previous set or its signal strength changed. Neighbors
+ * are identified by cell id, area code and scrambling/physical cell id, and stored
+ * in parallel int arrays that are swapped on end() and reused between updates,
+ * so tracking does not allocate once the arrays reach the number of visible cells.
+ * Since that number is small, lookups are a linear scan.
+ *
+ * This class is not thread-safe.
+ */
+public class NeighborTracker {
+	/**
+	 * Value for unknown signal strength
+	 */
+	public static final int UNKNOWN = Integer.MAX_VALUE;
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private Cells previous = new Cells(DEFAULT_CAPACITY);
+	private Cells current = new Cells(DEFAULT_CAPACITY);
+
+	/**
+	 * Set of cells stored as parallel arrays
+	 */
+	private static class Cells {
+		int[] cids;
+		int[] lacs;
+		int[] pscs;
+		int[] signals;
+		int size = 0;
+
+		Cells(int capacity) {
+			cids = new int[capacity];
+			lacs = new int[capacity];
+			pscs = new int[capacity];
+			signals = new int[capacity];
+		}
+
+		int indexOf(int cid, int lac, int psc) {
+			for (int i = 0; i < size; i++) {
+				if (cids[i] == cid && lacs[i] == lac && pscs[i] == psc) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		void add(int cid, int lac, int psc, int signal) {
+			if (size == cids.length) {
+				int capacity = size * 2;
+				cids = copyOf(cids, capacity);
+				lacs = copyOf(lacs, capacity);
+				pscs = copyOf(pscs, capacity);
+				signals = copyOf(signals, capacity);
+			}
+
+			cids[size] = cid;
+			lacs[size] = lac;
+			pscs[size] = psc;
+			signals[size] = signal;
+			size++;
+		}
+
+		private static int[] copyOf(int[] array, int length) {
+			int[] copy = new int[length];
+			System.arraycopy(array, 0, copy, 0, array.length);
+			return copy;
+		}
+	}
+
+	/**
+	 * Start a new update
+	 */
+	public void begin() {
+		current.size = 0;
+	}
+
+	/**
+	 * Add a neighbor to the current update
+	 *
+	 * @param cid cell id
+	 * @param lac location/tracking area code
+	 * @param psc primary scrambling code or physical cell id
+	 * @param signal signal strength in dBm or UNKNOWN
+	 * @return true if the neighbor is new or its signal strength changed
+	 */
+	public boolean add(int cid, int lac, int psc, int signal) {
+		if (current.indexOf(cid, lac, psc) >= 0) {
+			/* Duplicate report in the same update */
+			return false;
+		}
+		current.add(cid, lac, psc, signal);
+
+		int index = previous.indexOf(cid, lac, psc);
+		return index < 0 || previous.signals[index] != signal;
+	}
+
+	/**
+	 * Finish the update, the neighbors added since begin() become the
+	 * previous set
+	 */
+	public void end() {
+		Cells cells = previous;
+		previous = current;
+		current = cells;
+	}
+
+	/**
+	 * Forget the previous set, all neighbors of the next update are reported
+	 * as changed
+	 */
+	public void clear() {
+		previous.size = 0;
+		current.size = 0;
+	}
+
+	/**
+	 * @return number of neighbors in the last finished update
+	 */
+	public int size() {
+		return previous.size;
+	}
+}
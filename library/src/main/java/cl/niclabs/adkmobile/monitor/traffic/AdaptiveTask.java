@@ -0,0 +1,173 @@
+package cl.niclabs.adkmobile.monitor.traffic;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import cl.niclabs.android.utils.Scheduler;
+
+/**
+ * Periodic sampling task with an adaptive interval.
+ *
+ * If the maximum interval is larger than the base interval, the interval is doubled
+ * (up to the maximum) after each sample without activity or while the task is idle
+ * (see isIdle()), and goes back to the base interval after a sample with activity or
+ * a call to wakeUp(). Since traffic is measured as the difference with the previous
+ * sample, longer intervals only coalesce the traffic into fewer observations.
+ *
+ * If the maximum interval is not larger than the base interval, the task is
+ * scheduled at a fixed rate, as a regular Runnable.
+ */
+public abstract class AdaptiveTask implements Runnable {
+	private ScheduledFuture<?> future;
+	private boolean running = false;
+	private boolean adaptive;
+
+	private int baseInterval;
+	private int maxInterval;
+	private int interval;
+
+	/**
+	 * Identifier of the last scheduled execution. Executions with an older
+	 * identifier do not reschedule the task
+	 */
+	private int generation = 0;
+
+	/**
+	 * Last generation claimed by an execution. Each scheduled generation is
+	 * executed at most once, so an execution already started when its future
+	 * was cancelled cannot start a second chain of executions
+	 */
+	private int claimed = 0;
+
+	/**
+	 * Scheduled on each execution, reused to avoid an allocation per sample
+	 */
+	private final Runnable tick = new Runnable() {
+		@Override
+		public void run() {
+			execute();
+		}
+	};
+
+	/**
+	 * Prevents concurrent samples after a wakeUp()
+	 */
+	private final Object sampleLock = new Object();
+
+	/**
+	 * Read a new sample
+	 *
+	 * @return true if the sample shows activity
+	 */
+	protected abstract boolean sample();
+
+	/**
+	 * Override to back off regardless of the samples (e.g. when the screen is off)
+	 *
+	 * @return true if the interval should be increased
+	 */
+	protected boolean isIdle() {
+		return false;
+	}
+
+	@Override
+	public void run() {
+		synchronized (sampleLock) {
+			sample();
+		}
+	}
+
+	/**
+	 * @return the current interval (in seconds)
+	 */
+	public synchronized int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Start sampling immediately
+	 *
+	 * @param baseInterval interval between samples with activity (in seconds)
+	 * @param maxInterval maximum interval between samples (in seconds)
+	 */
+	public synchronized void start(int baseInterval, int maxInterval) {
+		if (running) {
+			return;
+		}
+		running = true;
+
+		this.baseInterval = baseInterval;
+		this.maxInterval = maxInterval;
+		interval = baseInterval;
+		adaptive = maxInterval > baseInterval;
+
+		if (adaptive) {
+			scheduleNext(0);
+		}
+		else {
+			future = Scheduler.getInstance().scheduleAtFixedRate(this, 0,
+					baseInterval, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Stop sampling. A sample in progress is not interrupted
+	 */
+	public synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		generation++;
+		future.cancel(false);
+		future = null;
+	}
+
+	/**
+	 * Go back to the base interval. If the task was backing off, a sample is
+	 * read immediately
+	 */
+	public synchronized void wakeUp() {
+		if (!running || !adaptive || interval == baseInterval) {
+			return;
+		}
+
+		future.cancel(false);
+		interval = baseInterval;
+		scheduleNext(0);
+	}
+
+	private void execute() {
+		int generation;
+		synchronized (this) {
+			if (!running || claimed == this.generation) {
+				return;
+			}
+			generation = claimed = this.generation;
+		}
+
+		boolean active;
+		synchronized (sampleLock) {
+			active = sample();
+		}
+
+		synchronized (this) {
+			if (!running || generation != this.generation) {
+				return;
+			}
+
+			if (active && !isIdle()) {
+				interval = baseInterval;
+			}
+			else {
+				interval = Math.min(interval * 2, maxInterval);
+			}
+			scheduleNext(interval);
+		}
+	}
+
+	private void scheduleNext(int delay) {
+		generation++;
+		future = Scheduler.getInstance().schedule(tick, delay, TimeUnit.SECONDS);
+	}
+}
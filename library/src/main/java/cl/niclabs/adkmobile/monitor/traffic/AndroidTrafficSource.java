@@ -0,0 +1,97 @@
+package cl.niclabs.adkmobile.monitor.traffic;
+
+import android.annotation.TargetApi;
+import android.net.TrafficStats;
+import android.os.Build;
+import android.os.Build.VERSION;
+
+/**
+ * Traffic counters provided by android.net.TrafficStats
+ */
+public class AndroidTrafficSource implements TrafficSource {
+	@Override
+	public long getTotalRxBytes() {
+		return TrafficStats.getTotalRxBytes();
+	}
+
+	@Override
+	public long getTotalTxBytes() {
+		return TrafficStats.getTotalTxBytes();
+	}
+
+	@Override
+	public long getTotalRxPackets() {
+		return TrafficStats.getTotalRxPackets();
+	}
+
+	@Override
+	public long getTotalTxPackets() {
+		return TrafficStats.getTotalTxPackets();
+	}
+
+	@Override
+	public long getMobileRxBytes() {
+		return TrafficStats.getMobileRxBytes();
+	}
+
+	@Override
+	public long getMobileTxBytes() {
+		return TrafficStats.getMobileTxBytes();
+	}
+
+	@Override
+	public long getMobileRxPackets() {
+		return TrafficStats.getMobileRxPackets();
+	}
+
+	@Override
+	public long getMobileTxPackets() {
+		return TrafficStats.getMobileTxPackets();
+	}
+
+	@Override
+	public long getUidRxBytes(int uid) {
+		return TrafficStats.getUidRxBytes(uid);
+	}
+
+	@Override
+	public long getUidTxBytes(int uid) {
+		return TrafficStats.getUidTxBytes(uid);
+	}
+
+	@Override
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+	public long getUidRxPackets(int uid) {
+		if (VERSION.SDK_INT >= 12) {
+			return TrafficStats.getUidRxPackets(uid);
+		}
+		return UNSUPPORTED;
+	}
+
+	@Override
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+	public long getUidTxPackets(int uid) {
+		if (VERSION.SDK_INT >= 12) {
+			return TrafficStats.getUidTxPackets(uid);
+		}
+		return UNSUPPORTED;
+	}
+
+	@Override
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+	public long getUidTcpRxSegments(int uid) {
+		if (VERSION.SDK_INT >= 12) {
+			return TrafficStats.getUidTcpRxSegments(uid);
+		}
+		return UNSUPPORTED;
+	}
+
+	@Override
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+	public long getUidTcpTxSegments(int uid) {
+		if (VERSION.SDK_INT >= 12) {
+			return TrafficStats.getUidTcpTxSegments(uid);
+		}
+		return UNSUPPORTED;
+	}
+}
@@ -0,0 +1,115 @@
+package cl.niclabs.adkmobile.monitor.traffic;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.annotation.TargetApi;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Build.VERSION;
+
+/**
+ * Stores the end timestamp of the last traffic statistics read for each key
+ * (e.g. UID and network type).
+ *
+ * The stored values are read once from the preferences and then kept in memory.
+ * Updated values are only written to the preferences on save(), with a single
+ * asynchronous apply() (or commit() on devices older than Gingerbread), so a sweep
+ * over all the UIDs performs one write to disk instead of one per UID.
+ *
+ * Keys have the form uid_network (e.g. "10023_wifi"), compatible with the values
+ * stored by previous versions of the library.
+ *
+ * This class is not thread-safe.
+ */
+public class TrafficCheckpoints {
+	private final SharedPreferences preferences;
+
+	/**
+	 * Values in memory, null until the first access
+	 */
+	private Map<String, Long> values;
+
+	/**
+	 * Values not yet written to the preferences
+	 */
+	private final Map<String, Long> pending = new HashMap<String, Long>();
+
+	public TrafficCheckpoints(SharedPreferences preferences) {
+		this.preferences = preferences;
+	}
+
+	/**
+	 * Build the key for a UID and network
+	 *
+	 * @param uid
+	 * @param network name of the network (e.g. wifi, mobile)
+	 * @return
+	 */
+	public static String key(int uid, String network) {
+		return Integer.toString(uid) + "_" + network;
+	}
+
+	/**
+	 * Get the checkpoint for the key. If the key does not exist, the default
+	 * value is stored as the checkpoint and returned
+	 *
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 */
+	public long get(String key, long defaultValue) {
+		Long value = load().get(key);
+		if (value == null) {
+			put(key, defaultValue);
+			return defaultValue;
+		}
+		return value;
+	}
+
+	/**
+	 * Update the checkpoint for the key
+	 *
+	 * @param key
+	 * @param value
+	 */
+	public void put(String key, long value) {
+		load().put(key, value);
+		pending.put(key, value);
+	}
+
+	/**
+	 * Write all updated checkpoints to the preferences
+	 */
+	@TargetApi(Build.VERSION_CODES.GINGERBREAD)
+	public void save() {
+		if (pending.isEmpty()) {
+			return;
+		}
+
+		SharedPreferences.Editor editor = preferences.edit();
+		for (Map.Entry<String, Long> entry : pending.entrySet()) {
+			editor.putLong(entry.getKey(), entry.getValue());
+		}
+
+		if (VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+			editor.apply();
+		}
+		else {
+			editor.commit();
+		}
+		pending.clear();
+	}
+
+	private Map<String, Long> load() {
+		if (values == null) {
+			values = new HashMap<String, Long>();
+			for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+				if (entry.getValue() instanceof Long) {
+					values.put(entry.getKey(), (Long) entry.getValue());
+				}
+			}
+		}
+		return values;
+	}
+}
@@ -0,0 +1,208 @@
+package cl.niclabs.adkmobile.monitor.traffic;
+
+/**
+ * Values of all the traffic counters at a given time.
+ *
+ * All the counters needed by the traffic monitor are read in a single pass by
+ * read(), including one sweep over the UIDs for the per-application and TCP counters,
+ * so mobile, wifi, TCP and application traffic can be derived from the same snapshot.
+ * The object (and its per-UID arrays) is meant to be reused on each read.
+ *
+ * Wifi counters are obtained as the difference between total and mobile counters.
+ * TCP counters are the sum of the counters of all UIDs, or UNSUPPORTED if no UID
+ * reported the counter.
+ *
+ * This class is not thread-safe.
+ */
+public class TrafficSnapshot {
+	/**
+	 * Value for unavailable counters
+	 */
+	public static final long UNSUPPORTED = TrafficSource.UNSUPPORTED;
+
+	private static final int[] EMPTY = new int[0];
+
+	private long totalRxBytes;
+	private long totalTxBytes;
+	private long totalRxPackets;
+	private long totalTxPackets;
+
+	private long mobileRxBytes;
+	private long mobileTxBytes;
+	private long mobileRxPackets;
+	private long mobileTxPackets;
+
+	private long tcpRxBytes;
+	private long tcpTxBytes;
+	private long tcpRxSegments;
+	private long tcpTxSegments;
+
+	private int[] uids = EMPTY;
+	private long[] uidRxBytes = new long[0];
+	private long[] uidTxBytes = new long[0];
+
+	/**
+	 * Read all the counters
+	 *
+	 * @param source
+	 * @param uids UIDs to read, the array is kept by the snapshot and must not be modified
+	 */
+	public void read(TrafficSource source, int[] uids) {
+		totalRxBytes = source.getTotalRxBytes();
+		totalTxBytes = source.getTotalTxBytes();
+		totalRxPackets = source.getTotalRxPackets();
+		totalTxPackets = source.getTotalTxPackets();
+
+		mobileRxBytes = source.getMobileRxBytes();
+		mobileTxBytes = source.getMobileTxBytes();
+		mobileRxPackets = source.getMobileRxPackets();
+		mobileTxPackets = source.getMobileTxPackets();
+
+		this.uids = uids;
+		if (uidRxBytes.length < uids.length) {
+			uidRxBytes = new long[uids.length];
+			uidTxBytes = new long[uids.length];
+		}
+
+		boolean isTcpBytesSupported = false;
+		boolean isTcpSegmentsSupported = false;
+		tcpRxBytes = 0;
+		tcpTxBytes = 0;
+		tcpRxSegments = 0;
+		tcpTxSegments = 0;
+
+		long value;
+		for (int i = 0; i < uids.length; i++) {
+			int uid = uids[i];
+
+			value = uidRxBytes[i] = source.getUidRxBytes(uid);
+			if (value >= 0) {
+				isTcpBytesSupported = true;
+				tcpRxBytes += value;
+			}
+
+			value = uidTxBytes[i] = source.getUidTxBytes(uid);
+			if (value >= 0) {
+				isTcpBytesSupported = true;
+				tcpTxBytes += value;
+			}
+
+			value = source.getUidTcpRxSegments(uid);
+			if (value >= 0) {
+				isTcpSegmentsSupported = true;
+				tcpRxSegments += value;
+			}
+
+			value = source.getUidTcpTxSegments(uid);
+			if (value >= 0) {
+				isTcpSegmentsSupported = true;
+				tcpTxSegments += value;
+			}
+		}
+
+		if (!isTcpBytesSupported) {
+			tcpRxBytes = UNSUPPORTED;
+			tcpTxBytes = UNSUPPORTED;
+		}
+
+		if (!isTcpSegmentsSupported) {
+			tcpRxSegments = UNSUPPORTED;
+			tcpTxSegments = UNSUPPORTED;
+		}
+	}
+
+	public long getTotalRxBytes() {
+		return totalRxBytes;
+	}
+
+	public long getTotalTxBytes() {
+		return totalTxBytes;
+	}
+
+	public long getTotalRxPackets() {
+		return totalRxPackets;
+	}
+
+	public long getTotalTxPackets() {
+		return totalTxPackets;
+	}
+
+	public long getMobileRxBytes() {
+		return mobileRxBytes;
+	}
+
+	public long getMobileTxBytes() {
+		return mobileTxBytes;
+	}
+
+	public long getMobileRxPackets() {
+		return mobileRxPackets;
+	}
+
+	public long getMobileTxPackets() {
+		return mobileTxPackets;
+	}
+
+	public long getWifiRxBytes() {
+		return totalRxBytes - mobileRxBytes;
+	}
+
+	public long getWifiTxBytes() {
+		return totalTxBytes - mobileTxBytes;
+	}
+
+	public long getWifiRxPackets() {
+		return totalRxPackets - mobileRxPackets;
+	}
+
+	public long getWifiTxPackets() {
+		return totalTxPackets - mobileTxPackets;
+	}
+
+	public long getTcpRxBytes() {
+		return tcpRxBytes;
+	}
+
+	public long getTcpTxBytes() {
+		return tcpTxBytes;
+	}
+
+	public long getTcpRxSegments() {
+		return tcpRxSegments;
+	}
+
+	public long getTcpTxSegments() {
+		return tcpTxSegments;
+	}
+
+	/**
+	 * @return number of UIDs read
+	 */
+	public int getUidCount() {
+		return uids.length;
+	}
+
+	/**
+	 * @param i
+	 * @return the i-th UID read
+	 */
+	public int getUid(int i) {
+		return uids[i];
+	}
+
+	/**
+	 * @param i
+	 * @return bytes received by the i-th UID
+	 */
+	public long getUidRxBytes(int i) {
+		return uidRxBytes[i];
+	}
+
+	/**
+	 * @param i
+	 * @return bytes transmitted by the i-th UID
+	 */
+	public long getUidTxBytes(int i) {
+		return uidTxBytes[i];
+	}
+}
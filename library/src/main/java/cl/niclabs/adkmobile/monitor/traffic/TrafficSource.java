@@ -0,0 +1,40 @@
+package cl.niclabs.adkmobile.monitor.traffic;
+
+/**
+ * Source of traffic counters. Methods follow the semantics of android.net.TrafficStats,
+ * returning UNSUPPORTED if the counter is not available
+ */
+public interface TrafficSource {
+	/**
+	 * Value returned for unavailable counters
+	 */
+	public static final long UNSUPPORTED = -1;
+
+	public long getTotalRxBytes();
+
+	public long getTotalTxBytes();
+
+	public long getTotalRxPackets();
+
+	public long getTotalTxPackets();
+
+	public long getMobileRxBytes();
+
+	public long getMobileTxBytes();
+
+	public long getMobileRxPackets();
+
+	public long getMobileTxPackets();
+
+	public long getUidRxBytes(int uid);
+
+	public long getUidTxBytes(int uid);
+
+	public long getUidRxPackets(int uid);
+
+	public long getUidTxPackets(int uid);
+
+	public long getUidTcpRxSegments(int uid);
+
+	public long getUidTcpTxSegments(int uid);
+}
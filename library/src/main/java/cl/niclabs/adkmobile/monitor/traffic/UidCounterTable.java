@@ -0,0 +1,272 @@
+package cl.niclabs.adkmobile.monitor.traffic;
+
+/**
+ * Table of the last traffic counters read for each UID.
+ *
+ * Counters are stored in parallel long[] columns (rx/tx bytes and packets) of an
+ * open addressing hash table keyed by UID, so no values are boxed and each update
+ * requires a single lookup.
+ *
+ * Updating the table computes the difference with the previous counters, UIDs with
+ * new traffic are added to the list of changes, which can be read with getChanges()
+ * at the end of a sweep over all the UIDs. As in the previous implementation, the
+ * first value read for a UID is only used as baseline (its delta is 0).
+ *
+ * This class is not thread-safe.
+ */
+public class UidCounterTable {
+	/**
+	 * Value for counters that are not available
+	 */
+	public static final long UNAVAILABLE = -1;
+
+	private static final int DEFAULT_CAPACITY = 256;
+
+	private int[] uids;
+	private boolean[] used;
+	private long[] rxBytes;
+	private long[] txBytes;
+	private long[] rxPackets;
+	private long[] txPackets;
+	private int size = 0;
+
+	private final Changes changes = new Changes();
+
+	/**
+	 * Traffic differences for the UIDs that changed since the last clear()
+	 */
+	public static class Changes {
+		private int size = 0;
+		private int[] uids = new int[16];
+		private long[] rxBytes = new long[16];
+		private long[] txBytes = new long[16];
+		private long[] rxPackets = new long[16];
+		private long[] txPackets = new long[16];
+
+		private int add(int uid, long rxBytes, long txBytes) {
+			if (size == uids.length) {
+				int length = uids.length * 2;
+				uids = copyOf(uids, length);
+				this.rxBytes = copyOf(this.rxBytes, length);
+				this.txBytes = copyOf(this.txBytes, length);
+				rxPackets = copyOf(rxPackets, length);
+				txPackets = copyOf(txPackets, length);
+			}
+
+			uids[size] = uid;
+			this.rxBytes[size] = rxBytes;
+			this.txBytes[size] = txBytes;
+			rxPackets[size] = UNAVAILABLE;
+			txPackets[size] = UNAVAILABLE;
+			return size++;
+		}
+
+		/**
+		 * Remove all changes
+		 */
+		public void clear() {
+			size = 0;
+		}
+
+		/**
+		 * @return number of UIDs that changed
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @param i
+		 * @return UID of the i-th change
+		 */
+		public int getUid(int i) {
+			return uids[i];
+		}
+
+		public long getRxBytes(int i) {
+			return rxBytes[i];
+		}
+
+		public long getTxBytes(int i) {
+			return txBytes[i];
+		}
+
+		/**
+		 * @param i
+		 * @return received packets or UNAVAILABLE
+		 */
+		public long getRxPackets(int i) {
+			return rxPackets[i];
+		}
+
+		/**
+		 * @param i
+		 * @return transmitted packets or UNAVAILABLE
+		 */
+		public long getTxPackets(int i) {
+			return txPackets[i];
+		}
+	}
+
+	public UidCounterTable() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity expected number of UIDs
+	 */
+	public UidCounterTable(int capacity) {
+		int tableSize = 16;
+		while (tableSize < capacity * 2) {
+			tableSize <<= 1;
+		}
+		allocate(tableSize);
+	}
+
+	/**
+	 * @return changes since the last call to getChanges().clear()
+	 */
+	public Changes getChanges() {
+		return changes;
+	}
+
+	/**
+	 * @param uid
+	 * @return true if the table has counters for the UID
+	 */
+	public boolean contains(int uid) {
+		return used[indexOf(uid)];
+	}
+
+	/**
+	 * @return number of UIDs in the table
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Update the byte counters for the UID. If any of the counters increased, the
+	 * UID is added to the list of changes
+	 *
+	 * @param uid
+	 * @param rxBytes total bytes received by the UID
+	 * @param txBytes total bytes transmitted by the UID
+	 * @return the position of the UID in the list of changes, or -1 if there is no new traffic
+	 */
+	public int updateBytes(int uid, long rxBytes, long txBytes) {
+		int index = indexOf(uid);
+		if (!used[index]) {
+			insert(index, uid, rxBytes, txBytes);
+			return -1;
+		}
+
+		long dRxBytes = rxBytes - this.rxBytes[index];
+		long dTxBytes = txBytes - this.txBytes[index];
+		this.rxBytes[index] = rxBytes;
+		this.txBytes[index] = txBytes;
+
+		if (dRxBytes <= 0 && dTxBytes <= 0) {
+			return -1;
+		}
+		return changes.add(uid, dRxBytes, dTxBytes);
+	}
+
+	/**
+	 * Update the packet counters of a UID with new traffic. A counter is only
+	 * updated if it did not decrease (otherwise its change is UNAVAILABLE)
+	 *
+	 * @param change position returned by updateBytes()
+	 * @param rxPackets total packets received by the UID
+	 * @param txPackets total packets transmitted by the UID
+	 */
+	public void updatePackets(int change, long rxPackets, long txPackets) {
+		int index = indexOf(changes.uids[change]);
+
+		/* If there is no previous value, the delta is 0 */
+		long dRxPackets = this.rxPackets[index] == UNAVAILABLE ? 0 : rxPackets - this.rxPackets[index];
+		long dTxPackets = this.txPackets[index] == UNAVAILABLE ? 0 : txPackets - this.txPackets[index];
+
+		if (dRxPackets >= 0) {
+			changes.rxPackets[change] = dRxPackets;
+			this.rxPackets[index] = rxPackets;
+		}
+
+		if (dTxPackets >= 0) {
+			changes.txPackets[change] = dTxPackets;
+			this.txPackets[index] = txPackets;
+		}
+	}
+
+	private void allocate(int tableSize) {
+		uids = new int[tableSize];
+		used = new boolean[tableSize];
+		rxBytes = new long[tableSize];
+		txBytes = new long[tableSize];
+		rxPackets = new long[tableSize];
+		txPackets = new long[tableSize];
+	}
+
+	private void insert(int index, int uid, long rxBytes, long txBytes) {
+		uids[index] = uid;
+		used[index] = true;
+		this.rxBytes[index] = rxBytes;
+		this.txBytes[index] = txBytes;
+		rxPackets[index] = UNAVAILABLE;
+		txPackets[index] = UNAVAILABLE;
+		size++;
+
+		/* Keep the load factor under 0.5 */
+		if (size * 2 > uids.length) {
+			rehash();
+		}
+	}
+
+	private int indexOf(int uid) {
+		int mask = uids.length - 1;
+		int index = hash(uid) & mask;
+		while (used[index] && uids[index] != uid) {
+			index = (index + 1) & mask;
+		}
+		return index;
+	}
+
+	private void rehash() {
+		int[] oldUids = uids;
+		boolean[] oldUsed = used;
+		long[] oldRxBytes = rxBytes;
+		long[] oldTxBytes = txBytes;
+		long[] oldRxPackets = rxPackets;
+		long[] oldTxPackets = txPackets;
+
+		allocate(oldUids.length * 2);
+		for (int i = 0; i < oldUids.length; i++) {
+			if (oldUsed[i]) {
+				int index = indexOf(oldUids[i]);
+				uids[index] = oldUids[i];
+				used[index] = true;
+				rxBytes[index] = oldRxBytes[i];
+				txBytes[index] = oldTxBytes[i];
+				rxPackets[index] = oldRxPackets[i];
+				txPackets[index] = oldTxPackets[i];
+			}
+		}
+	}
+
+	private static int hash(int uid) {
+		int h = uid * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static int[] copyOf(int[] array, int length) {
+		int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, array.length);
+		return copy;
+	}
+
+	private static long[] copyOf(long[] array, int length) {
+		long[] copy = new long[length];
+		System.arraycopy(array, 0, copy, 0, array.length);
+		return copy;
+	}
+}
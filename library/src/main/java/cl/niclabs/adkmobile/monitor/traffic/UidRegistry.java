@@ -0,0 +1,150 @@
+package cl.niclabs.adkmobile.monitor.traffic;
+
+import java.util.List;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import cl.niclabs.adkmobile.utils.IntSet;
+
+/**
+ * Keeps the set of UIDs of the applications installed on the device.
+ *
+ * The installed applications are only listed once, on start(). After that the
+ * set is updated from the package added/removed broadcasts, so reading the UIDs
+ * does not require scanning the installed packages. The array returned by getUids()
+ * is cached and only re-created after the set changes.
+ *
+ * This class is thread-safe
+ */
+public class UidRegistry {
+	private static final int[] EMPTY = new int[0];
+
+	private final Context context;
+	private final IntSet uids = new IntSet(256);
+
+	/**
+	 * Cached array of UIDs, null if the set has changed
+	 */
+	private volatile int[] snapshot = EMPTY;
+
+	private boolean started = false;
+
+	private final BroadcastReceiver packageReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			int uid = intent.getIntExtra(Intent.EXTRA_UID, -1);
+			if (uid < 0) {
+				return;
+			}
+
+			if (Intent.ACTION_PACKAGE_ADDED.equals(intent.getAction())) {
+				add(uid);
+			}
+			else if (Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction())
+					&& !intent.getBooleanExtra(Intent.EXTRA_REPLACING, false)) {
+				/* The UID may still be shared by other packages */
+				String[] packages = context.getPackageManager().getPackagesForUid(uid);
+				if (packages == null || packages.length == 0) {
+					remove(uid);
+				}
+			}
+		}
+	};
+
+	public UidRegistry(Context context) {
+		this.context = context;
+	}
+
+	/**
+	 * Add a UID to the registry (e.g. from a running process)
+	 *
+	 * @param uid
+	 */
+	public synchronized void add(int uid) {
+		if (uids.add(uid)) {
+			snapshot = null;
+		}
+	}
+
+	/**
+	 * @param uid
+	 * @return true if the UID is registered
+	 */
+	public synchronized boolean contains(int uid) {
+		return uids.contains(uid);
+	}
+
+	/**
+	 * Get the registered UIDs. The returned array is shared and must not be modified
+	 *
+	 * @return
+	 */
+	public int[] getUids() {
+		int[] current = snapshot;
+		if (current != null) {
+			return current;
+		}
+
+		synchronized (this) {
+			if (snapshot == null) {
+				snapshot = uids.toArray();
+			}
+			return snapshot;
+		}
+	}
+
+	/**
+	 * Remove a UID from the registry
+	 *
+	 * @param uid
+	 */
+	public synchronized void remove(int uid) {
+		if (uids.remove(uid)) {
+			snapshot = null;
+		}
+	}
+
+	/**
+	 * @return number of registered UIDs
+	 */
+	public synchronized int size() {
+		return uids.size();
+	}
+
+	/**
+	 * Load the UIDs of the installed applications and start listening for
+	 * package changes. Calling start() on a started registry has no effect
+	 */
+	public synchronized void start() {
+		if (started) {
+			return;
+		}
+		started = true;
+
+		IntentFilter filter = new IntentFilter();
+		filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+		filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+		filter.addDataScheme("package");
+		context.registerReceiver(packageReceiver, filter);
+
+		List<ApplicationInfo> appsInfo = context.getPackageManager()
+				.getInstalledApplications(PackageManager.GET_UNINSTALLED_PACKAGES);
+		for (ApplicationInfo info : appsInfo) {
+			add(info.uid);
+		}
+	}
+
+	/**
+	 * Stop listening for package changes
+	 */
+	public synchronized void stop() {
+		if (started) {
+			context.unregisterReceiver(packageReceiver);
+			started = false;
+		}
+	}
+}
@@ -0,0 +1,451 @@
+package cl.niclabs.adkmobile.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPOutputStream;
+
+import android.util.Log;
+import cl.niclabs.adkmobile.data.PrefetchIterator;
+import cl.niclabs.android.data.Serializable;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * Resumable upload of large lists.
+ *
+ * The list is split into numbered chunks of at most CHUNK_SIZE elements and about
+ * CHUNK_BYTES serialized bytes, each chunk is serialized with the list format selected
+ * in SerializerFactory, compressed and posted to the server along with its SHA-256 hash.
+ * Chunks that fail with an IO error or a server error (5xx) are retried with exponential
+ * backoff, chunks rejected by the server (4xx) are not. Before uploading, the server is
+ * asked for the last chunk acknowledged for the upload id, so an interrupted upload
+ * resumes from the following chunk instead of starting over.
+ *
+ * Connections are not explicitly closed, so the underlying HttpURLConnection
+ * pool can reuse (keep-alive) the connection for the next chunk.
+ *
+ * The server protocol is the following
+ *
+ * <ul>
+ * <li>GET url?upload_id=ID returns a JSON object {"last": n, "complete": bool, "hash": h},
+ * where n is the last acknowledged chunk (-1 if none) and h, for complete uploads, is
+ * the SHA-256 hash of the concatenated (hexadecimal) hashes of the chunks</li>
+ * <li>POST url (multipart) with the chunk as file and the fields upload_id, chunk,
+ * hash and last (1 for the last chunk) plus any extra parameters. The server must
+ * respond with 2xx only after storing the chunk, and with 409 (conflict) if it
+ * expects a different chunk</li>
+ * </ul>
+ *
+ * An upload reported as complete is only considered sent if the elements produce the
+ * same number of chunks with the same hashes, so data reusing the id of a previous
+ * upload is not reported as sent.
+ *
+ * Chunk boundaries depend on the serialized elements (acknowledged chunks are serialized
+ * again to be skipped), so the iterator must return the same sequence on each attempt to
+ * upload a given id, and the list format must not change between attempts.
+ */
+public class ChunkedUpload {
+	protected static final String TAG = "AdkintunMobile::ChunkedUpload";
+
+	/**
+	 * Maximum number of elements per chunk
+	 */
+	public static int CHUNK_SIZE = 5000;
+
+	/**
+	 * Maximum serialized size of a chunk (in bytes, before compression). The chunk
+	 * is closed once this size is reached, so it may be exceeded by the last element
+	 * and by the data buffered by the serializer
+	 */
+	public static int CHUNK_BYTES = 1 << 20;
+
+	/**
+	 * Maximum number of retries per chunk
+	 */
+	public static int MAX_RETRIES = 5;
+
+	/**
+	 * Wait time before the first retry (in milliseconds), doubled on each retry
+	 */
+	public static long BACKOFF = 1000;
+
+	/**
+	 * Maximum wait time between retries (in milliseconds)
+	 */
+	public static long MAX_BACKOFF = 60000;
+
+	protected static final String UPLOAD_ID_FIELD = "upload_id";
+	protected static final String CHUNK_FIELD = "chunk";
+	protected static final String HASH_FIELD = "hash";
+	protected static final String LAST_FIELD = "last";
+
+	private final String url;
+	private final String uploadId;
+	private final Map<String, String> postParameters;
+
+	/**
+	 * Status of the upload in the server
+	 */
+	protected static class Status {
+		int last = -1;
+		boolean complete = false;
+		String hash = null;
+	}
+
+	/**
+	 * @param url url for the chunks
+	 * @param uploadId identifier of the upload, it must be unique for the data being sent
+	 * @param postParameters extra parameters to add to each chunk (can be null)
+	 */
+	public ChunkedUpload(String url, String uploadId, Map<String, String> postParameters) {
+		this.url = url;
+		this.uploadId = uploadId;
+		this.postParameters = postParameters;
+	}
+
+	/**
+	 * Upload the elements of the iterator
+	 *
+	 * @param iterator
+	 * @return true if all the chunks were acknowledged by the server
+	 */
+	public boolean send(Iterator<? extends Serializable<?>> iterator) {
+		try {
+			String protocol = new URL(url).getProtocol();
+			if (!protocol.equals("http") && !protocol.equals("https")) {
+				Log.e(TAG, "Unsupported url " + url);
+				return false;
+			}
+
+			Status status = getStatus();
+
+			/* Load the relations of the elements by pages */
+			iterator = new PrefetchIterator(iterator);
+
+			if (status.complete) {
+				if (isUploaded(iterator, status)) {
+					Log.d(TAG, "Upload " + uploadId + " already complete");
+					return true;
+				}
+				Log.e(TAG, "Upload " + uploadId + " is complete with different data");
+				return false;
+			}
+
+			/* Skip acknowledged chunks */
+			int chunk = 0;
+			while (chunk <= status.last && iterator.hasNext()) {
+				serialize(iterator, new NullOutputStream());
+				chunk++;
+			}
+
+			if (chunk > 0) {
+				Log.d(TAG, "Resuming upload " + uploadId + " from chunk " + chunk);
+			}
+
+			boolean last;
+			do {
+				byte[] data = encode(iterator);
+				last = !iterator.hasNext();
+
+				if (!sendChunk(chunk, data, last)) {
+					Log.e(TAG, "Failed to send chunk " + chunk + " of upload " + uploadId);
+					return false;
+				}
+				chunk++;
+			} while (!last);
+
+			return true;
+		}
+		catch (MalformedURLException e) {
+			Log.e(TAG, "Malformed url " + url);
+		}
+		catch (IOException e) {
+			Log.e(TAG, "Error in upload " + uploadId + ": " + e.getMessage());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	/**
+	 * Check if the elements produce the chunks of a complete upload, comparing the
+	 * number of chunks and the hash of the upload
+	 */
+	private boolean isUploaded(Iterator<? extends Serializable<?>> iterator, Status status) throws IOException {
+		if (status.hash == null) {
+			return false;
+		}
+
+		MessageDigest digest = newDigest();
+		int chunks = 0;
+		do {
+			if (chunks > status.last) {
+				return false;
+			}
+			digest.update(sha256(encode(iterator)).getBytes("US-ASCII"));
+			chunks++;
+		} while (iterator.hasNext());
+
+		return chunks == status.last + 1 && hex(digest.digest()).equals(status.hash);
+	}
+
+	/**
+	 * Serialize and compress the next chunk of elements of the iterator
+	 */
+	protected byte[] encode(Iterator<? extends Serializable<?>> iterator) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream out = new GZIPOutputStream(bytes);
+		serialize(iterator, out);
+		out.close();
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Serialize the next chunk of elements of the iterator
+	 */
+	private static void serialize(Iterator<? extends Serializable<?>> iterator, OutputStream out) throws IOException {
+		CountingOutputStream counter = new CountingOutputStream(out);
+		HttpUtils.getListSerializer().serialize(counter, new ChunkIterator(iterator, counter));
+		counter.flush();
+	}
+
+	/**
+	 * Query the server for the status of the upload
+	 */
+	protected Status getStatus() throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url + "?" + UPLOAD_ID_FIELD + "="
+				+ URLEncoder.encode(uploadId, "UTF-8")).openConnection();
+		connection.setRequestMethod(HttpUtils.GET);
+		connection.setUseCaches(false);
+
+		if (connection.getResponseCode() != 200) {
+			consume(connection.getErrorStream());
+			throw new IOException("Server responded with code " + connection.getResponseCode());
+		}
+
+		InputStream in = connection.getInputStream();
+		try {
+			Status status = new Gson().fromJson(new InputStreamReader(in, "UTF-8"), Status.class);
+			return status != null ? status : new Status();
+		}
+		catch (JsonParseException e) {
+			throw new IOException("Invalid status response");
+		}
+		finally {
+			consume(in);
+		}
+	}
+
+	/**
+	 * Send a chunk, retrying with exponential backoff on IO errors and server errors
+	 * (5xx). If the server expects a different chunk (409), the status of the upload is
+	 * queried again, since the chunk may have been stored with its acknowledgement lost
+	 *
+	 * @return true if the chunk was acknowledged
+	 * @throws InterruptedException if interrupted while waiting for a retry
+	 */
+	protected boolean sendChunk(int chunk, byte[] data, boolean last) throws InterruptedException {
+		Map<String, String> parameters = new HashMap<String, String>();
+		if (postParameters != null) {
+			parameters.putAll(postParameters);
+		}
+		parameters.put(UPLOAD_ID_FIELD, uploadId);
+		parameters.put(CHUNK_FIELD, String.valueOf(chunk));
+		parameters.put(HASH_FIELD, sha256(data));
+		parameters.put(LAST_FIELD, last ? "1" : "0");
+
+		long backoff = BACKOFF;
+		for (int attempt = 0; attempt <= MAX_RETRIES; attempt++) {
+			if (attempt > 0) {
+				Log.d(TAG, "Retrying chunk " + chunk + " in " + backoff + "ms");
+				Thread.sleep(backoff);
+				backoff = Math.min(backoff * 2, MAX_BACKOFF);
+			}
+
+			try {
+				int code = post(data, parameters);
+				if (code >= 200 && code < 300) {
+					return true;
+				}
+
+				if (code == HttpURLConnection.HTTP_CONFLICT) {
+					Status status = getStatus();
+					if (status.complete || status.last >= chunk) {
+						return true;
+					}
+					Log.e(TAG, "Server expects chunk " + (status.last + 1) + " instead of chunk " + chunk);
+					return false;
+				}
+
+				if (code < 500) {
+					Log.e(TAG, "Server rejected chunk " + chunk + " with code " + code);
+					return false;
+				}
+				Log.d(TAG, "Server responded with code " + code + " for chunk " + chunk);
+			}
+			catch (MalformedURLException e) {
+				Log.e(TAG, "Malformed url " + url);
+				return false;
+			}
+			catch (IOException e) {
+				Log.d(TAG, "Error sending chunk " + chunk + ": " + e.getMessage());
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Post a chunk
+	 *
+	 * @param data compressed chunk
+	 * @param parameters post parameters of the chunk
+	 * @return the response code
+	 * @throws IOException if the connection fails or cannot be opened
+	 */
+	protected int post(byte[] data, Map<String, String> parameters) throws IOException {
+		HttpUtils http = new HttpUtils(url);
+		if (!http.open()) {
+			throw new IOException("Cannot open connection to " + url);
+		}
+
+		DataOutputStream out = http.prepareFilePost(HttpUtils.getListFileName(), HttpUtils.POST_FILE_TYPE, HttpUtils.POST_FILE_FIELD, parameters);
+		out.write(data);
+
+		HttpResponse response = http.finishFilePost();
+
+		/* Read the full response so the connection can be reused */
+		consume(response.getStream());
+
+		return response.getCode();
+	}
+
+	/**
+	 * Read and close the stream
+	 */
+	private static void consume(InputStream in) throws IOException {
+		if (in == null) {
+			return;
+		}
+
+		byte[] buffer = new byte[1024];
+		try {
+			while (in.read(buffer) >= 0);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return hexadecimal SHA-256 hash of the data
+	 */
+	protected static String sha256(byte[] data) {
+		return hex(newDigest().digest(data));
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available");
+		}
+	}
+
+	private static String hex(byte[] digest) {
+		StringBuilder hex = new StringBuilder(digest.length * 2);
+		for (byte b : digest) {
+			hex.append(String.format("%02x", b & 0xff));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Iterator over the elements of a chunk, it ends after CHUNK_SIZE elements or
+	 * once CHUNK_BYTES have been written to the counter
+	 */
+	private static class ChunkIterator implements Iterator<Serializable<?>> {
+		private final Iterator<? extends Serializable<?>> iterator;
+		private final CountingOutputStream counter;
+		private int count = 0;
+
+		ChunkIterator(Iterator<? extends Serializable<?>> iterator, CountingOutputStream counter) {
+			this.iterator = iterator;
+			this.counter = counter;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return count < CHUNK_SIZE && counter.count < CHUNK_BYTES && iterator.hasNext();
+		}
+
+		@Override
+		public Serializable<?> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			count++;
+			return iterator.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Counts the bytes written to the underlying stream
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+		long count = 0;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+
+	/**
+	 * Discards the bytes written, for skipping acknowledged chunks
+	 */
+	private static class NullOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+}
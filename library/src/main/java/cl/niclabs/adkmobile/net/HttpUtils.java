@@ -10,9 +10,9 @@ import java.util.Map;
 import java.util.zip.GZIPOutputStream;
 
 import android.util.Log;
+import cl.niclabs.adkmobile.data.PrefetchIterator;
 import cl.niclabs.android.data.Serializable;
 import cl.niclabs.android.data.Serializer;
-import cl.niclabs.android.data.SerializerFactory;
 
 /**
  * This class defines the methods to send serializable objects to a server.
@@ -26,6 +26,7 @@ public class HttpUtils {
 	protected static final String TAG = "AdkintunMobile::Http";
 	
 	protected static final String POST_FILE_NAME = "measurements.json.gz";
+	protected static final String POST_BINARY_FILE_NAME = "measurements.adkb.gz";
 	protected static final String POST_FILE_TYPE = "application/x-gzip";
 	protected static final String POST_FILE_FIELD = "measurements";
 	
@@ -123,7 +124,8 @@ public class HttpUtils {
 	}
 	
 	/**
-	 * Send a serializable as an attachment to the provided url
+	 * Send a serializable as an attachment to the provided url, in the JSON format
+	 * of cl.niclabs.adkmobile.data.SerializerFactory
 	 * 
 	 * @param serializable
 	 * @param url
@@ -136,7 +138,8 @@ public class HttpUtils {
 			if (http.open()) {
 				Log.d(TAG, "Opened URL "+url);
 				GZIPOutputStream out = new GZIPOutputStream(http.prepareFilePost(POST_FILE_NAME, POST_FILE_TYPE, POST_FILE_FIELD, postParameters));
-				Serializer serializer = SerializerFactory.getInstance().getSerializer();
+				Serializer serializer = cl.niclabs.adkmobile.data.SerializerFactory.getInstance().getSerializer(
+						cl.niclabs.adkmobile.data.SerializerFactory.FORMAT_JSON);
 				serializer.serialize(out, serializable);
 				out.finish();
 				
@@ -155,7 +158,30 @@ public class HttpUtils {
 	}
 	
 	/**
-	 * Send a serializable data object as an attachment to the provided url
+	 * Get the serializer for lists, according to the list format selected in
+	 * cl.niclabs.adkmobile.data.SerializerFactory
+	 * @return
+	 */
+	protected static Serializer getListSerializer() {
+		return cl.niclabs.adkmobile.data.SerializerFactory.getInstance().getListSerializer();
+	}
+	
+	/**
+	 * @return name of the posted file for the list format
+	 */
+	protected static String getListFileName() {
+		String format = cl.niclabs.adkmobile.data.SerializerFactory.getInstance().getListFormat();
+		return cl.niclabs.adkmobile.data.SerializerFactory.FORMAT_BINARY.equals(format) ? POST_BINARY_FILE_NAME : POST_FILE_NAME;
+	}
+	
+	/**
+	 * Send a serializable data object as an attachment to the provided url.
+	 * 
+	 * The list is streamed using the list format selected in 
+	 * cl.niclabs.adkmobile.data.SerializerFactory (JSON array by default), so only a 
+	 * bounded number of elements of the iterator is held in memory at a time. Elements 
+	 * are read by pages with PrefetchIterator
+	 * 
 	 * @param list
 	 * @param url
 	 * @param postParameters extra parameters to add to the POST (can be null) 
@@ -166,9 +192,8 @@ public class HttpUtils {
 			HttpUtils http = new HttpUtils(url);		
 			if (http.open()) {
 				Log.d(TAG, "Opened URL "+url);
-				GZIPOutputStream out = new GZIPOutputStream(http.prepareFilePost(POST_FILE_NAME, POST_FILE_TYPE, POST_FILE_FIELD, postParameters));
-				Serializer serializer = SerializerFactory.getInstance().getSerializer();
-				serializer.serialize(out, list);
+				GZIPOutputStream out = new GZIPOutputStream(http.prepareFilePost(getListFileName(), POST_FILE_TYPE, POST_FILE_FIELD, postParameters));
+				getListSerializer().serialize(out, new PrefetchIterator(list));
 				out.finish();
 				
 				HttpResponse response = http.finishFilePost();
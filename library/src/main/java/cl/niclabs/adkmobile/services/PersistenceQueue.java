@@ -0,0 +1,218 @@
+package cl.niclabs.adkmobile.services;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+import cl.niclabs.adkmobile.AdkintunMobileApp;
+import cl.niclabs.android.data.Persistent;
+import cl.niclabs.android.utils.Scheduler;
+
+import com.orm.SugarRecord;
+
+/**
+ * Write-behind queue for persistent objects.
+ *
+ * Objects added to the queue are stored in batches, grouped by class, using a
+ * single database transaction per class. The queue is flushed on the Scheduler
+ * pool when it reaches maxSize elements or when the oldest element in the queue
+ * is older than maxAge milliseconds. Calling flush() stores all pending objects
+ * on the calling thread. Batches are stored in the order they were queued, failures
+ * of background flushes are logged and the failed batch is discarded.
+ *
+ * Classes that override save() (e.g. to store related entities) are stored
+ * object by object in order to preserve that behavior.
+ */
+public class PersistenceQueue {
+	private static final String TAG = "AdkintunMobile::PersistenceQueue";
+
+	/**
+	 * Default number of queued objects that trigger a flush
+	 */
+	public static int MAX_SIZE = 500;
+
+	/**
+	 * Default maximum time (in milliseconds) that an object can remain in the queue
+	 */
+	public static long MAX_AGE = 5000;
+
+	/**
+	 * Cache of classes that override save()
+	 */
+	private static final Map<Class<?>, Boolean> overridesSave = new ConcurrentHashMap<Class<?>, Boolean>();
+
+	private final int maxSize;
+	private final long maxAge;
+
+	private List<Persistent<?>> queue = new ArrayList<Persistent<?>>();
+
+	/**
+	 * Task scheduled for the age threshold, null if the queue is empty
+	 */
+	private ScheduledFuture<?> timeout;
+
+	/**
+	 * True if a flush for the size threshold was submitted and has not started
+	 */
+	private boolean flushPending = false;
+
+	/**
+	 * Held while taking a batch from the queue and storing it, so batches are
+	 * stored in order
+	 */
+	private final Object writeLock = new Object();
+
+	private final Runnable flushTask = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				flush();
+			} catch (RuntimeException e) {
+				Log.e(TAG, "Cannot store queued objects: " + e.getMessage(), e);
+			}
+		}
+	};
+
+	public PersistenceQueue() {
+		this(MAX_SIZE, MAX_AGE);
+	}
+
+	/**
+	 * @param maxSize number of queued objects that trigger a flush
+	 * @param maxAge maximum time (in milliseconds) before a queued object is stored
+	 */
+	public PersistenceQueue(int maxSize, long maxAge) {
+		this.maxSize = maxSize;
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * Add an object to the queue
+	 *
+	 * @param persistent
+	 */
+	public void add(Persistent<?> persistent) {
+		synchronized (this) {
+			queue.add(persistent);
+
+			if (queue.size() < maxSize) {
+				if (timeout == null) {
+					timeout = Scheduler.getInstance().schedule(flushTask, maxAge, TimeUnit.MILLISECONDS);
+				}
+				return;
+			}
+
+			/* Size threshold reached, the pending flush will take this object */
+			if (flushPending) {
+				return;
+			}
+			flushPending = true;
+		}
+
+		try {
+			Scheduler.getInstance().execute(flushTask);
+		} catch (RejectedExecutionException e) {
+			synchronized (this) {
+				flushPending = false;
+			}
+		}
+	}
+
+	/**
+	 * Store all the objects in the queue
+	 */
+	public void flush() {
+		synchronized (writeLock) {
+			List<Persistent<?>> batch;
+			synchronized (this) {
+				flushPending = false;
+				if (timeout != null) {
+					timeout.cancel(false);
+					timeout = null;
+				}
+
+				if (queue.isEmpty()) {
+					return;
+				}
+
+				batch = queue;
+				queue = new ArrayList<Persistent<?>>();
+			}
+
+			save(batch);
+		}
+	}
+
+	/**
+	 * @return number of objects waiting to be stored
+	 */
+	public synchronized int size() {
+		return queue.size();
+	}
+
+	/**
+	 * Store the list of objects using one transaction per class
+	 *
+	 * @param objects
+	 */
+	public static void save(List<Persistent<?>> objects) {
+		if (!AdkintunMobileApp.isPersistenceAvailable())
+			return;
+
+		/* Group by class, keeping the order of first appearance */
+		Map<Class<?>, List<Persistent<?>>> groups = new LinkedHashMap<Class<?>, List<Persistent<?>>>();
+		for (Persistent<?> persistent : objects) {
+			List<Persistent<?>> group = groups.get(persistent.getClass());
+			if (group == null) {
+				group = new ArrayList<Persistent<?>>();
+				groups.put(persistent.getClass(), group);
+			}
+			group.add(persistent);
+		}
+
+		for (Map.Entry<Class<?>, List<Persistent<?>>> entry : groups.entrySet()) {
+			if (overridesSave(entry.getKey())) {
+				for (Persistent<?> persistent : entry.getValue()) {
+					persistent.save();
+				}
+			}
+			else {
+				SugarRecord.saveInTx(entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Check if the class (or any of its superclasses up to Persistent)
+	 * overrides save(). Transactional saves do not call the overriding method
+	 *
+	 * @param cls
+	 * @return
+	 */
+	private static boolean overridesSave(Class<?> cls) {
+		Boolean overrides = overridesSave.get(cls);
+		if (overrides != null) {
+			return overrides;
+		}
+
+		overrides = false;
+		for (Class<?> c = cls; c != null && c != Persistent.class && c != SugarRecord.class; c = c.getSuperclass()) {
+			try {
+				c.getDeclaredMethod("save");
+				overrides = true;
+				break;
+			} catch (NoSuchMethodException e) {
+				// Continue with the superclass
+			}
+		}
+
+		overridesSave.put(cls, overrides);
+		return overrides;
+	}
+}
@@ -5,6 +5,24 @@ import cl.niclabs.adkmobile.AdkintunMobileApp;
 import cl.niclabs.android.data.Persistent;
 
 public abstract class PersistenceService extends Service {
+	/**
+	 * Queue for deferred saves
+	 */
+	private final PersistenceQueue queue = new PersistenceQueue();
+	
+	/**
+	 * Store all objects queued with saveDeferred()
+	 */
+	protected void flush() {
+		queue.flush();
+	}
+	
+	@Override
+	public void onDestroy() {
+		flush();
+		super.onDestroy();
+	}
+	
 	/**
 	 * Save the persistent object if persistence is enabled
 	 * @param persistent
@@ -13,4 +31,16 @@ public abstract class PersistenceService extends Service {
 		if (AdkintunMobileApp.isPersistenceAvailable())
 			persistent.save();
 	}
+	
+	/**
+	 * Queue the persistent object to be saved in a batch with other objects, 
+	 * if persistence is enabled. Recommended for high rate observations.
+	 * 
+	 * @see PersistenceQueue
+	 * @param persistent
+	 */
+	protected void saveDeferred(Persistent<?> persistent) {
+		if (AdkintunMobileApp.isPersistenceAvailable())
+			queue.add(persistent);
+	}
 }
@@ -0,0 +1,160 @@
+package cl.niclabs.adkmobile.utils;
+
+import java.util.Arrays;
+
+/**
+ * Set of primitive int values.
+ *
+ * Implemented as an open addressing hash table with linear probing, so
+ * values are not boxed and lookups do not allocate. This class is not
+ * thread-safe.
+ */
+public class IntSet {
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] keys;
+	private boolean[] used;
+	private int size = 0;
+
+	public IntSet() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity expected number of elements
+	 */
+	public IntSet(int capacity) {
+		int tableSize = DEFAULT_CAPACITY;
+		while (tableSize < capacity * 2) {
+			tableSize <<= 1;
+		}
+
+		keys = new int[tableSize];
+		used = new boolean[tableSize];
+	}
+
+	/**
+	 * Add a value to the set
+	 *
+	 * @param value
+	 * @return true if the set did not contain the value
+	 */
+	public boolean add(int value) {
+		int index = indexOf(value);
+		if (used[index]) {
+			return false;
+		}
+
+		keys[index] = value;
+		used[index] = true;
+		size++;
+
+		/* Keep the load factor under 0.5 */
+		if (size * 2 > keys.length) {
+			rehash(keys.length * 2);
+		}
+		return true;
+	}
+
+	/**
+	 * Remove all values from the set
+	 */
+	public void clear() {
+		Arrays.fill(used, false);
+		size = 0;
+	}
+
+	/**
+	 * @param value
+	 * @return true if the set contains the value
+	 */
+	public boolean contains(int value) {
+		return used[indexOf(value)];
+	}
+
+	/**
+	 * Remove a value from the set
+	 *
+	 * @param value
+	 * @return true if the set contained the value
+	 */
+	public boolean remove(int value) {
+		int index = indexOf(value);
+		if (!used[index]) {
+			return false;
+		}
+
+		used[index] = false;
+		size--;
+
+		/* Move back the following entries of the cluster so lookups do not stop at the gap */
+		int mask = keys.length - 1;
+		int gap = index;
+		for (int i = (index + 1) & mask; used[i]; i = (i + 1) & mask) {
+			int home = hash(keys[i]) & mask;
+
+			/* The entry can be moved to the gap if its home is not in (gap, i] */
+			if ((i > gap && (home <= gap || home > i)) || (i < gap && home <= gap && home > i)) {
+				keys[gap] = keys[i];
+				used[gap] = true;
+				used[i] = false;
+				gap = i;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return number of values in the set
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the values of the set in no particular order
+	 */
+	public int[] toArray() {
+		int[] values = new int[size];
+		int j = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (used[i]) {
+				values[j++] = keys[i];
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Position of the value in the table or the empty position where it should be inserted
+	 */
+	private int indexOf(int value) {
+		int mask = keys.length - 1;
+		int index = hash(value) & mask;
+		while (used[index] && keys[index] != value) {
+			index = (index + 1) & mask;
+		}
+		return index;
+	}
+
+	private void rehash(int tableSize) {
+		int[] oldKeys = keys;
+		boolean[] oldUsed = used;
+
+		keys = new int[tableSize];
+		used = new boolean[tableSize];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldUsed[i]) {
+				int index = indexOf(oldKeys[i]);
+				keys[index] = oldKeys[i];
+				used[index] = true;
+			}
+		}
+	}
+
+	private static int hash(int value) {
+		/* Spread the bits, consecutive values (such as UIDs) are common */
+		int h = value * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
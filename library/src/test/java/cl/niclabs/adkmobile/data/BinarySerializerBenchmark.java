@@ -0,0 +1,140 @@
+package cl.niclabs.adkmobile.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import cl.niclabs.android.data.Serializable;
+import cl.niclabs.android.data.Serializer;
+
+/**
+ * Time to encode 10k observations (accelerometer samples with a traffic observation
+ * every 100 samples) and gzip them as uploaded by HttpUtils, with BinarySerializer
+ * or JsonStreamSerializer. The size of the output, raw and compressed, is printed
+ * at the end of each trial.
+ *
+ * Run with org.openjdk.jmh.Main on the test classpath, e.g.
+ * java -cp &lt;test classpath&gt; org.openjdk.jmh.Main BinarySerializerBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BinarySerializerBenchmark {
+	private static final int OBSERVATIONS = 10000;
+
+	@Param({ "binary", "json" })
+	public String format;
+
+	public static class AccelerometerObservation implements Serializable<AccelerometerObservation> {
+		int eventType = 1;
+		long timestamp;
+		double x;
+		double y;
+		double z;
+
+		@Override
+		public List<Field> getSerializableFields() {
+			return FieldDescriptor.getSerializableFields(getClass(), false);
+		}
+	}
+
+	public static class TrafficObservation implements Serializable<TrafficObservation> {
+		int eventType = 3;
+		long timestamp;
+		int networkType = 1;
+		long rxBytes;
+		long txBytes;
+		Integer uid;
+		String networkName;
+
+		@Override
+		public List<Field> getSerializableFields() {
+			return FieldDescriptor.getSerializableFields(getClass(), false);
+		}
+	}
+
+	/**
+	 * Counts the bytes written
+	 */
+	private static class CountingOutputStream extends OutputStream {
+		long count = 0;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+
+	private final List<Serializable<?>> observations = new ArrayList<Serializable<?>>(OBSERVATIONS);
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	private Serializer serializer;
+
+	@Setup
+	public void setUp() {
+		serializer = "binary".equals(format) ? new BinarySerializer() : new JsonStreamSerializer();
+
+		long timestamp = 1400000000000L;
+		for (int i = 0; i < OBSERVATIONS; i++) {
+			timestamp += 20;
+			if (i % 100 == 99) {
+				TrafficObservation traffic = new TrafficObservation();
+				traffic.timestamp = timestamp;
+				traffic.rxBytes = 1500 * (i % 7);
+				traffic.txBytes = 300 * (i % 5);
+				traffic.uid = i % 3 == 0 ? null : 10000 + i % 11;
+				traffic.networkName = "network" + (i % 2);
+				observations.add(traffic);
+			} else {
+				AccelerometerObservation sample = new AccelerometerObservation();
+				sample.timestamp = timestamp;
+				sample.x = Math.sin(i / 10.0) * 2;
+				sample.y = Math.cos(i / 10.0) * 2;
+				sample.z = 9.8 + Math.sin(i / 3.0) / 10;
+				observations.add(sample);
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void printSize() throws IOException {
+		CountingOutputStream raw = new CountingOutputStream();
+		serializer.serialize(raw, observations);
+
+		System.out.println();
+		System.out.println(format + ": " + raw.count + " bytes, " + encode() + " bytes compressed, for "
+				+ OBSERVATIONS + " observations");
+	}
+
+	/**
+	 * @return the compressed size
+	 */
+	@Benchmark
+	public int encode() throws IOException {
+		bytes.reset();
+		GZIPOutputStream out = new GZIPOutputStream(bytes);
+		serializer.serialize(out, observations);
+		out.close();
+		return bytes.size();
+	}
+}
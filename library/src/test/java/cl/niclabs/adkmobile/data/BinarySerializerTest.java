@@ -0,0 +1,150 @@
+package cl.niclabs.adkmobile.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import cl.niclabs.android.data.Serializable;
+
+public class BinarySerializerTest {
+	public enum State {
+		CONNECTED, DISCONNECTED
+	}
+
+	public static class Item implements Serializable<Item> {
+		long timestamp;
+		int level;
+		boolean active;
+		double value;
+		Float ratio;
+		String name;
+		State state;
+		List<Integer> values;
+
+		@Override
+		public List<Field> getSerializableFields() {
+			return FieldDescriptor.getSerializableFields(getClass(), true);
+		}
+	}
+
+	public static class Other implements Serializable<Other> {
+		String name = "other";
+
+		@Override
+		public List<Field> getSerializableFields() {
+			return FieldDescriptor.getSerializableFields(getClass(), true);
+		}
+	}
+
+	private static Item item(int i) {
+		Item item = new Item();
+		item.timestamp = 1400000000000L + i * 1000;
+		item.level = -i;
+		item.active = i % 2 == 0;
+		item.value = i / 3.0;
+		item.ratio = i % 3 == 0 ? null : i / 7f;
+		item.name = i % 5 == 0 ? null : "item" + (i % 4);
+		item.state = State.values()[i % 2];
+		item.values = i % 2 == 0 ? Arrays.asList(i, i + 1) : null;
+		return item;
+	}
+
+	private static byte[] write(List<Serializable<?>> list) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new BinarySerializer().serialize(out, list);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		List<Serializable<?>> list = new ArrayList<Serializable<?>>();
+		for (int i = 0; i < 3000; i++) {
+			list.add(item(i));
+			if (i % 1000 == 500) {
+				list.add(new Other());
+			}
+		}
+
+		List<Item> items = new BinarySerializer().readStream(Item.class, new ByteArrayInputStream(write(list)));
+		assertEquals(3000, items.size());
+		for (int i = 0; i < items.size(); i++) {
+			Item expected = item(i), actual = items.get(i);
+			assertEquals(expected.timestamp, actual.timestamp);
+			assertEquals(expected.level, actual.level);
+			assertEquals(expected.active, actual.active);
+			assertEquals(expected.value, actual.value, 0);
+			assertEquals(expected.ratio, actual.ratio);
+			assertEquals(expected.name, actual.name);
+			assertEquals(expected.state, actual.state);
+			assertEquals(expected.values, actual.values);
+		}
+
+		List<Other> others = new BinarySerializer().readStream(Other.class, new ByteArrayInputStream(write(list)));
+		assertEquals(3, others.size());
+		assertEquals("other", others.get(0).name);
+	}
+
+	@Test
+	public void testDeserialize() throws IOException {
+		List<Serializable<?>> list = new ArrayList<Serializable<?>>();
+		list.add(item(1));
+		list.add(item(2));
+		byte[] data = write(list);
+
+		BinarySerializer serializer = new BinarySerializer();
+		assertEquals(item(1).name, serializer.deserialize(Item.class, new ByteArrayInputStream(data)).name);
+		assertEquals(item(1).name, serializer.deserialize(Item.class, new String(data, "ISO-8859-1")).name);
+		assertNull(serializer.deserialize(Other.class, new ByteArrayInputStream(data)));
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncated() throws IOException {
+		List<Serializable<?>> list = new ArrayList<Serializable<?>>();
+		list.add(item(1));
+		byte[] data = write(list);
+		new BinarySerializer().readStream(Item.class, new ByteArrayInputStream(data, 0, data.length - 2));
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidMagic() throws IOException {
+		new BinarySerializer().readStream(Item.class, new ByteArrayInputStream(new byte[] { 'A', 'D', 'K', 'X', 1, 0 }));
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidColumnCount() throws IOException {
+		/* Schema 0 of class "x" with 2^32 - 1 columns */
+		new BinarySerializer().readStream(Item.class, new ByteArrayInputStream(new byte[] { 'A', 'D', 'K', 'B', 1,
+				BinarySerializer.TAG_SCHEMA, 0, 1, 'x', (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F }));
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidStringLength() throws IOException {
+		/* Schema 0 with a class name of 2^31 - 1 bytes */
+		new BinarySerializer().readStream(Item.class, new ByteArrayInputStream(new byte[] { 'A', 'D', 'K', 'B', 1,
+				BinarySerializer.TAG_SCHEMA, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07 }));
+	}
+
+	@Test
+	public void testFactory() {
+		SerializerFactory factory = SerializerFactory.getInstance();
+		assertEquals(SerializerFactory.FORMAT_JSON, factory.getListFormat());
+		assertEquals(JsonStreamSerializer.class, factory.getListSerializer().getClass());
+		assertEquals(BinarySerializer.class, factory.getSerializer(SerializerFactory.FORMAT_BINARY).getClass());
+
+		try {
+			factory.setListFormat("unknown");
+			throw new AssertionError("Unknown format accepted");
+		} catch (IllegalArgumentException e) {
+			assertEquals(SerializerFactory.FORMAT_JSON, factory.getListFormat());
+		}
+	}
+}
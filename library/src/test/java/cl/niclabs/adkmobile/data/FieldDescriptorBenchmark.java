@@ -0,0 +1,118 @@
+package cl.niclabs.adkmobile.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import cl.niclabs.android.data.Ignore;
+import cl.niclabs.android.data.Serializable;
+import cl.niclabs.android.utils.ReflectionUtils;
+
+/**
+ * Time to serialize 100k observations with JsonStreamSerializer, with the fields
+ * returned by FieldDescriptor (cached per class) or computed with reflection on
+ * every call, as Persistent.getSerializableFields() did before.
+ *
+ * Run with org.openjdk.jmh.Main on the test classpath, e.g.
+ * java -cp &lt;test classpath&gt; org.openjdk.jmh.Main FieldDescriptorBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FieldDescriptorBenchmark {
+	private static final int OBSERVATIONS = 100000;
+
+	@Param({ "true", "false" })
+	public boolean cached;
+
+	/**
+	 * Fields of an observation, in a hierarchy as AbstractObservation subclasses
+	 */
+	public static class Observation {
+		Long id;
+		int eventType = 3;
+		long timestamp = 1400000000000L;
+	}
+
+	public static class TrafficObservation extends Observation {
+		int networkType = 1;
+		long rxBytes = 1500;
+		long txBytes = 300;
+		long rxPackets = 3;
+		long txPackets = 2;
+		Integer uid = 10042;
+
+		@Ignore
+		int pool;
+	}
+
+	public static class CachedObservation extends TrafficObservation implements Serializable<CachedObservation> {
+		@Override
+		public List<Field> getSerializableFields() {
+			return FieldDescriptor.getSerializableFields(getClass(), false);
+		}
+	}
+
+	public static class UncachedObservation extends TrafficObservation implements Serializable<UncachedObservation> {
+		@Override
+		public List<Field> getSerializableFields() {
+			List<Field> typeFields = new ArrayList<Field>();
+			ReflectionUtils.getAllFields(typeFields, getClass());
+
+			List<Field> toStore = new ArrayList<Field>();
+			for (Field field : typeFields) {
+				if ((!field.getName().equals("id")
+						&& !field.isAnnotationPresent(com.orm.dsl.Ignore.class)
+						&& !field.isAnnotationPresent(Ignore.class)
+						&& !field.isAnnotationPresent(cl.niclabs.android.data.DoNotSerialize.class)
+						&& !field.isAnnotationPresent(DoNotSerialize.class)
+						&& !Modifier.isStatic(field.getModifiers())
+						&& !Modifier.isTransient(field.getModifiers()))) {
+					toStore.add(field);
+				}
+			}
+			return toStore;
+		}
+	}
+
+	/**
+	 * Discards the serialized output
+	 */
+	private static class NullOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+
+	private final JsonStreamSerializer serializer = new JsonStreamSerializer();
+	private final List<Serializable<?>> observations = new ArrayList<Serializable<?>>(OBSERVATIONS);
+
+	@Setup
+	public void setUp() {
+		for (int i = 0; i < OBSERVATIONS; i++) {
+			observations.add(cached ? new CachedObservation() : new UncachedObservation());
+		}
+	}
+
+	@Benchmark
+	public void serialize() throws IOException {
+		serializer.writeArray(new NullOutputStream(), observations.iterator());
+	}
+}
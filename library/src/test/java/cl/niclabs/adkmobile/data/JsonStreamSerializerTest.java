@@ -0,0 +1,135 @@
+package cl.niclabs.adkmobile.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import cl.niclabs.android.data.Serializable;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+
+public class JsonStreamSerializerTest {
+	public enum State {
+		CONNECTED, DISCONNECTED
+	}
+
+	public static class Child implements Serializable<Child> {
+		String name;
+		Double value;
+
+		Child(String name, Double value) {
+			this.name = name;
+			this.value = value;
+		}
+
+		@Override
+		public List<Field> getSerializableFields() {
+			return FieldDescriptor.getSerializableFields(getClass(), true);
+		}
+	}
+
+	public static class Item implements Serializable<Item> {
+		long timestamp = 1400000000000L;
+		int level = -3;
+		float ratio = 0.1f;
+		double value = 1e-7;
+		boolean active = true;
+		Integer missing = null;
+		char type = 'c';
+		String text = "<a href='x'>&amp; \"ñ\"\n</a>";
+		State state = State.DISCONNECTED;
+		int[] array = { 1, 2, 3 };
+		List<Integer> values = Arrays.asList(1, null, 3);
+		Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+		Child child = new Child("child", null);
+		List<Child> children = Arrays.asList(new Child("a", 1.5), null, new Child(null, 2.0));
+		transient int skipped = 1;
+		@DoNotSerialize
+		int ignored = 2;
+
+		Item() {
+			counts.put("a", 1);
+			counts.put("b", null);
+		}
+
+		@Override
+		public List<Field> getSerializableFields() {
+			return FieldDescriptor.getSerializableFields(getClass(), true);
+		}
+	}
+
+	/**
+	 * Serializes as cl.niclabs.android.data.JsonSerializer, a default Gson
+	 * with the serializable fields
+	 */
+	private static final Gson reference = new GsonBuilder().registerTypeHierarchyAdapter(Serializable.class,
+			new JsonSerializer<Serializable<?>>() {
+				@Override
+				public JsonElement serialize(Serializable<?> src, Type type, JsonSerializationContext context) {
+					JsonObject object = new JsonObject();
+					for (Field field : src.getSerializableFields()) {
+						try {
+							field.setAccessible(true);
+							Object value = field.get(src);
+							if (value != null) {
+								object.add(field.getName(), context.serialize(value));
+							}
+						} catch (IllegalAccessException e) {
+							throw new AssertionError(e);
+						}
+					}
+					return object;
+				}
+			}).create();
+
+	private static String write(Serializable<?> object) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new JsonStreamSerializer().serialize(out, object);
+		return out.toString("UTF-8");
+	}
+
+	private static String write(List<Serializable<?>> list) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new JsonStreamSerializer().serialize(out, list);
+		return out.toString("UTF-8");
+	}
+
+	@Test
+	public void testObject() throws IOException {
+		Item item = new Item();
+		assertEquals(reference.toJson(item), write(item));
+	}
+
+	@Test
+	public void testList() throws IOException {
+		List<Serializable<?>> list = new ArrayList<Serializable<?>>();
+		list.add(new Item());
+		list.add(null);
+		list.add(new Child("last", Double.valueOf(3)));
+
+		/* Lists are one array, the commons serializer writes the objects one after the other */
+		assertEquals(reference.toJson(list), write(list));
+		assertEquals("[]", write(new ArrayList<Serializable<?>>()));
+	}
+
+	@Test
+	public void testFactory() {
+		assertEquals(JsonStreamSerializer.class, SerializerFactory.getInstance()
+				.getSerializer(SerializerFactory.FORMAT_JSON).getClass());
+	}
+}
@@ -0,0 +1,126 @@
+package cl.niclabs.adkmobile.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cl.niclabs.android.data.Serializable;
+
+public class PrefetchIteratorTest {
+	/**
+	 * Records the pages it is prefetched with
+	 */
+	public static class Parent implements Serializable<Parent>, Prefetchable {
+		static final List<List<Serializable<?>>> pages = new ArrayList<List<Serializable<?>>>();
+		boolean loaded = false;
+
+		@Override
+		public void prefetch(List<? extends Serializable<?>> page) {
+			pages.add(new ArrayList<Serializable<?>>(page));
+			for (Serializable<?> object : page) {
+				((Parent) object).loaded = true;
+			}
+		}
+
+		@Override
+		public List<Field> getSerializableFields() {
+			return FieldDescriptor.getSerializableFields(getClass(), true);
+		}
+	}
+
+	public static class Plain implements Serializable<Plain> {
+		@Override
+		public List<Field> getSerializableFields() {
+			return FieldDescriptor.getSerializableFields(getClass(), true);
+		}
+	}
+
+	/**
+	 * Counts the objects read from the list
+	 */
+	private static class CountingIterator implements Iterator<Serializable<?>> {
+		final Iterator<Serializable<?>> iterator;
+		int read = 0;
+
+		CountingIterator(List<Serializable<?>> list) {
+			this.iterator = list.iterator();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return iterator.hasNext();
+		}
+
+		@Override
+		public Serializable<?> next() {
+			read++;
+			return iterator.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private int pageSize;
+
+	@Before
+	public void setUp() {
+		pageSize = PrefetchIterator.PAGE_SIZE;
+		PrefetchIterator.PAGE_SIZE = 4;
+		Parent.pages.clear();
+	}
+
+	@After
+	public void tearDown() {
+		PrefetchIterator.PAGE_SIZE = pageSize;
+	}
+
+	@Test
+	public void testPages() {
+		List<Serializable<?>> list = new ArrayList<Serializable<?>>();
+		for (int i = 0; i < 10; i++) {
+			list.add(i % 3 == 0 ? new Plain() : new Parent());
+		}
+
+		CountingIterator source = new CountingIterator(list);
+		PrefetchIterator iterator = new PrefetchIterator(source);
+		for (int i = 0; i < list.size(); i++) {
+			assertTrue(iterator.hasNext());
+			Serializable<?> object = iterator.next();
+			assertSame(list.get(i), object);
+			if (object instanceof Parent) {
+				assertTrue(((Parent) object).loaded);
+			}
+
+			/* Only one page is read in advance */
+			assertEquals(Math.min((i / 4 + 1) * 4, list.size()), source.read);
+		}
+		assertFalse(iterator.hasNext());
+
+		/* One call per page, with the Prefetchable objects of the page */
+		assertEquals(3, Parent.pages.size());
+		assertEquals(2, Parent.pages.get(0).size());
+		assertSame(list.get(1), Parent.pages.get(0).get(0));
+		assertEquals(3, Parent.pages.get(1).size());
+		assertEquals(1, Parent.pages.get(2).size());
+	}
+
+	@Test
+	public void testEmpty() {
+		PrefetchIterator iterator = new PrefetchIterator(new ArrayList<Serializable<?>>().iterator());
+		assertFalse(iterator.hasNext());
+		assertTrue(Parent.pages.isEmpty());
+	}
+}
@@ -0,0 +1,76 @@
+package cl.niclabs.adkmobile.monitor.accelerometer;
+
+/**
+ * Port of the platform code replaced by RotationEngine:
+ * SensorManager.getRotationMatrix() (with a 4x4 matrix), Matrix.transposeM() and
+ * Matrix.multiplyMV()
+ */
+public class PlatformRotation {
+	public static boolean getRotationMatrix(float[] R, float[] gravity, float[] geomagnetic) {
+		float Ax = gravity[0];
+		float Ay = gravity[1];
+		float Az = gravity[2];
+
+		final float normsqA = (Ax * Ax + Ay * Ay + Az * Az);
+		final float g = 9.81f;
+		final float freeFallGravitySquared = 0.01f * g * g;
+		if (normsqA < freeFallGravitySquared) {
+			// gravity less than 10% of normal value
+			return false;
+		}
+
+		final float Ex = geomagnetic[0];
+		final float Ey = geomagnetic[1];
+		final float Ez = geomagnetic[2];
+		float Hx = Ey * Az - Ez * Ay;
+		float Hy = Ez * Ax - Ex * Az;
+		float Hz = Ex * Ay - Ey * Ax;
+		final float normH = (float) Math.sqrt(Hx * Hx + Hy * Hy + Hz * Hz);
+
+		if (normH < 0.1f) {
+			// device is close to free fall (or in space?), or close to
+			// magnetic north pole. Typical values are  > 100.
+			return false;
+		}
+		final float invH = 1.0f / normH;
+		Hx *= invH;
+		Hy *= invH;
+		Hz *= invH;
+		final float invA = 1.0f / (float) Math.sqrt(Ax * Ax + Ay * Ay + Az * Az);
+		Ax *= invA;
+		Ay *= invA;
+		Az *= invA;
+		final float Mx = Ay * Hz - Az * Hy;
+		final float My = Az * Hx - Ax * Hz;
+		final float Mz = Ax * Hy - Ay * Hx;
+
+		R[0] = Hx; R[1] = Hy; R[2] = Hz; R[3] = 0;
+		R[4] = Mx; R[5] = My; R[6] = Mz; R[7] = 0;
+		R[8] = Ax; R[9] = Ay; R[10] = Az; R[11] = 0;
+		R[12] = 0; R[13] = 0; R[14] = 0; R[15] = 1;
+		return true;
+	}
+
+	public static void transposeM(float[] mTrans, float[] m) {
+		for (int i = 0; i < 4; i++) {
+			int mBase = i * 4;
+			mTrans[i] = m[mBase];
+			mTrans[i + 4] = m[mBase + 1];
+			mTrans[i + 8] = m[mBase + 2];
+			mTrans[i + 12] = m[mBase + 3];
+		}
+	}
+
+	/**
+	 * Column-major matrix by vector
+	 */
+	public static void multiplyMV(float[] result, float[] lhs, float[] rhs) {
+		for (int i = 0; i < 4; i++) {
+			float sum = 0;
+			for (int j = 0; j < 4; j++) {
+				sum += lhs[j * 4 + i] * rhs[j];
+			}
+			result[i] = sum;
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package cl.niclabs.adkmobile.monitor.accelerometer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of rotating an accelerometer sample to earth coordinates with
+ * RotationEngine and with the platform sequence it replaces (allocating the
+ * matrices on each sample, as GlobalAccelerometer did). The magnetometer is
+ * usually slower than the accelerometer, so the engine is measured both with the
+ * cached rotation and with a new geomagnetic vector on each sample.
+ *
+ * Run with org.openjdk.jmh.Main on the test classpath, e.g.
+ * java -cp &lt;test classpath&gt; org.openjdk.jmh.Main RotationEngineBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RotationEngineBenchmark {
+	private final float[] gravity = { 0.3f, 4.1f, 8.9f, 0 };
+	private final float[] geomagnetic = { 5.2f, 20.3f, -40.1f, 0 };
+	private final float[] acceleration = { 0.1f, -0.2f, 0.05f, 0 };
+	private final float[] result = new float[4];
+
+	private final RotationEngine engine = new RotationEngine();
+	private int sample = 0;
+
+	@Setup
+	public void setUp() {
+		engine.setGravity(gravity);
+		engine.setGeomagnetic(geomagnetic);
+	}
+
+	@Benchmark
+	public float[] platform() {
+		float[] R = new float[16];
+		if (PlatformRotation.getRotationMatrix(R, gravity, geomagnetic)) {
+			float[] earthAcceleration = new float[] { 0, 0, 0, 0 };
+			float[] Rt = new float[16];
+			PlatformRotation.transposeM(Rt, R);
+			PlatformRotation.multiplyMV(earthAcceleration, Rt, acceleration);
+			return earthAcceleration;
+		}
+		return null;
+	}
+
+	@Benchmark
+	public float[] engineCached() {
+		if (engine.update()) {
+			engine.rotate(acceleration, result);
+		}
+		return result;
+	}
+
+	@Benchmark
+	public float[] engineChanged() {
+		geomagnetic[0] = (sample++ & 7) + 1;
+		engine.setGeomagnetic(geomagnetic);
+		if (engine.update()) {
+			engine.rotate(acceleration, result);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,97 @@
+package cl.niclabs.adkmobile.monitor.accelerometer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RotationEngineTest {
+	private static float[] vector(Random random, float range) {
+		return new float[] { (random.nextFloat() * 2 - 1) * range, (random.nextFloat() * 2 - 1) * range,
+				(random.nextFloat() * 2 - 1) * range, 0 };
+	}
+
+	/**
+	 * Compare with the platform computation on random inputs, including
+	 * gravity close to free fall and a missing geomagnetic field
+	 */
+	@Test
+	public void testEquivalence() {
+		Random random = new Random(1);
+		RotationEngine engine = new RotationEngine();
+		float[] R = new float[16], Rt = new float[16];
+		float[] expected = new float[4], actual = new float[4];
+
+		int rotated = 0, rejected = 0;
+		for (int k = 0; k < 100000; k++) {
+			float[] gravity = vector(random, k % 5 == 0 ? 1.2f : 10);
+			float[] geomagnetic = k % 7 == 0 ? new float[4] : vector(random, 50);
+			float[] acceleration = vector(random, 2);
+
+			boolean valid = PlatformRotation.getRotationMatrix(R, gravity, geomagnetic);
+			engine.setGravity(gravity);
+			engine.setGeomagnetic(geomagnetic);
+			assertEquals("Validity of input " + k, valid, engine.update());
+			if (!valid) {
+				rejected++;
+				continue;
+			}
+
+			PlatformRotation.transposeM(Rt, R);
+			PlatformRotation.multiplyMV(expected, Rt, acceleration);
+			engine.rotate(acceleration, actual);
+			assertArrayEquals("Rotation of input " + k, expected, actual, 1e-5f);
+			rotated++;
+		}
+
+		assertTrue(rotated > 50000);
+		assertTrue(rejected > 10000);
+	}
+
+	@Test
+	public void testFreeFall() {
+		float[] rotation = new float[9];
+		float[] geomagnetic = { 0, 20, -40 };
+
+		assertFalse(RotationEngine.computeRotation(rotation, new float[] { 0, 0, 0.98f }, geomagnetic));
+		assertFalse(RotationEngine.computeRotation(rotation, new float[] { 0.5f, 0.5f, 0.5f }, geomagnetic));
+		assertTrue(RotationEngine.computeRotation(rotation, new float[] { 0, 0, 0.99f }, geomagnetic));
+	}
+
+	@Test
+	public void testFlat() {
+		RotationEngine engine = new RotationEngine();
+		engine.setGravity(new float[] { 0, 0, 9.81f });
+		engine.setGeomagnetic(new float[] { 0, 20, -40 });
+		assertTrue(engine.update());
+
+		/* Device lying flat pointing north: device and earth axes are the same */
+		float[] vector = { 1, 2, 3, 4 };
+		engine.rotate(vector, vector);
+		assertArrayEquals(new float[] { 1, 2, 3, 0 }, vector, 1e-6f);
+	}
+
+	@Test
+	public void testCache() {
+		RotationEngine engine = new RotationEngine();
+		engine.setGravity(new float[] { 0, 0, 0.5f });
+		engine.setGeomagnetic(new float[] { 0, 20, -40 });
+		assertFalse(engine.update());
+
+		/* Updated when an input changes */
+		engine.setGravity(new float[] { 0, 9.81f, 0 });
+		assertTrue(engine.update());
+
+		float[] result = new float[3];
+		engine.rotate(new float[] { 0, 1, 0 }, result);
+		assertArrayEquals(new float[] { 0, 0, 1 }, result, 1e-6f);
+
+		/* Same inputs keep the cached rotation */
+		engine.setGravity(new float[] { 0, 9.81f, 0 });
+		assertTrue(engine.update());
+	}
+}
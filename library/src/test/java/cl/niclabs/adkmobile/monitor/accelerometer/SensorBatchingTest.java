@@ -0,0 +1,30 @@
+package cl.niclabs.adkmobile.monitor.accelerometer;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SensorBatchingTest {
+	/**
+	 * SensorManager.SENSOR_DELAY_GAME, 20 ms
+	 */
+	private static final int SENSOR_DELAY_GAME = 1;
+
+	@Test
+	public void testMaxReportLatencyUs() {
+		assertEquals(0, SensorBatching.getMaxReportLatencyUs(0));
+		assertEquals(0, SensorBatching.getMaxReportLatencyUs(-1));
+		assertEquals(10000000, SensorBatching.getMaxReportLatencyUs(10000));
+
+		/* 40 minutes overflow an int in microseconds */
+		assertEquals(SensorBatching.MAX_REPORT_LATENCY_LIMIT * 1000, SensorBatching.getMaxReportLatencyUs(40 * 60 * 1000));
+		assertEquals(SensorBatching.MAX_REPORT_LATENCY_LIMIT * 1000, SensorBatching.getMaxReportLatencyUs(Integer.MAX_VALUE));
+	}
+
+	@Test
+	public void testBurstSize() {
+		assertEquals(51, SensorBatching.getBurstSize(null, SENSOR_DELAY_GAME, 1000, 1));
+		assertEquals(100, SensorBatching.getBurstSize(null, SENSOR_DELAY_GAME, 1000, 100));
+		assertEquals(4096, SensorBatching.getBurstSize(null, SENSOR_DELAY_GAME, 40 * 60 * 1000, 1));
+	}
+}
@@ -0,0 +1,165 @@
+package cl.niclabs.adkmobile.monitor.accelerometer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SensorBurstAssemblerTest {
+	private static final long PERIOD = 20000000L;
+	private static final long THRESHOLD = 10000000L;
+
+	/**
+	 * Offset between the arrival and sensor clocks in fifo_50hz.csv
+	 */
+	private static final long FIFO_OFFSET = 3217654321L;
+
+	/**
+	 * Samples per burst in fifo_50hz.csv
+	 */
+	private static final int BURST_SIZE = 50;
+
+	/**
+	 * Load a trace of (timestamp, arrival) pairs, lines starting with # are comments
+	 */
+	private static List<long[]> load(String name) throws IOException {
+		InputStream in = SensorBurstAssemblerTest.class.getResourceAsStream(name);
+		if (in == null) {
+			throw new IOException("Missing trace " + name);
+		}
+
+		List<long[]> samples = new ArrayList<long[]>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, "US-ASCII"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.length() == 0 || line.startsWith("#")) {
+					continue;
+				}
+				String[] fields = line.split(",");
+				samples.add(new long[] { Long.parseLong(fields[0]), Long.parseLong(fields[1]) });
+			}
+		} finally {
+			reader.close();
+		}
+		return samples;
+	}
+
+	@Test
+	public void testFirstBurst() throws IOException {
+		List<long[]> trace = load("fifo_50hz.csv");
+		SensorBurstAssembler assembler = new SensorBurstAssembler(PERIOD, THRESHOLD);
+
+		/* The offset is still being corrected, no sample ends a burst */
+		long last = Long.MIN_VALUE;
+		for (int i = 0; i < BURST_SIZE; i++) {
+			long[] sample = trace.get(i);
+			long time = assembler.add(sample[0], sample[1]);
+			assertFalse("Burst end at sample " + i, assembler.isBurstEnd());
+			assertTrue(time > last && time <= sample[1]);
+			last = time;
+		}
+	}
+
+	@Test
+	public void testOffsetSettling() throws IOException {
+		List<long[]> trace = load("fifo_50hz.csv");
+		SensorBurstAssembler assembler = new SensorBurstAssembler(PERIOD, THRESHOLD);
+
+		for (int i = 0; i < trace.size(); i++) {
+			long[] sample = trace.get(i);
+			long time = assembler.add(sample[0], sample[1]);
+
+			/* After the first burst, times follow the sensor timestamps with the
+			 * delay of the freshest sample (3ms before the burst is delivered and
+			 * 2.5ms delivering it) and at most 1ms of drift */
+			if (i >= BURST_SIZE) {
+				long error = time - (sample[0] + FIFO_OFFSET);
+				assertTrue("Error " + error + " at sample " + i, error >= 5000000 && error <= 7000000);
+			}
+		}
+		assertEquals(PERIOD, assembler.getSamplingPeriod(), PERIOD / 50);
+	}
+
+	@Test
+	public void testBurstEnd() throws IOException {
+		List<long[]> trace = load("fifo_50hz.csv");
+		SensorBurstAssembler assembler = new SensorBurstAssembler(PERIOD, THRESHOLD);
+
+		List<Integer> ends = new ArrayList<Integer>();
+		for (int i = 0; i < trace.size(); i++) {
+			assembler.add(trace.get(i)[0], trace.get(i)[1]);
+			if (assembler.isBurstEnd()) {
+				ends.add(i);
+			}
+		}
+
+		/* The last sample of each burst after the first one */
+		assertEquals(trace.size() / BURST_SIZE - 1, ends.size());
+		for (int i = 0; i < ends.size(); i++) {
+			assertEquals((i + 2) * BURST_SIZE - 1, (int) ends.get(i));
+		}
+	}
+
+	@Test
+	public void testRepeatedTimestamps() throws IOException {
+		List<long[]> trace = load("repeated_timestamps.csv");
+		SensorBurstAssembler assembler = new SensorBurstAssembler(PERIOD, THRESHOLD);
+
+		long last = Long.MIN_VALUE;
+		int ends = 0;
+		for (int i = 0; i < trace.size(); i++) {
+			long[] sample = trace.get(i);
+			long time = assembler.add(sample[0], sample[1]);
+
+			/* Times increase and are never after the arrival */
+			assertTrue("Time not increasing at sample " + i, time > last);
+			assertTrue("Time after arrival at sample " + i, time <= sample[1]);
+			if (i > 0) {
+				assertEquals("Interval at sample " + i, PERIOD, time - last, 4 * THRESHOLD);
+			}
+			last = time;
+
+			if (assembler.isBurstEnd()) {
+				ends++;
+			}
+		}
+
+		/* Without batching every fresh sample is the end of a burst */
+		assertTrue(ends > trace.size() / 2);
+	}
+
+	@Test
+	public void testReset() throws IOException {
+		List<long[]> trace = load("fifo_50hz.csv");
+		SensorBurstAssembler assembler = new SensorBurstAssembler(PERIOD, THRESHOLD);
+		for (long[] sample : trace) {
+			assembler.add(sample[0], sample[1]);
+		}
+
+		/* After a reset the first sample is used as it arrives */
+		assembler.reset();
+		assertEquals(42L, assembler.add(7, 42));
+		assertFalse(assembler.isBurstEnd());
+	}
+
+	@Test
+	public void testSamplingPeriod() {
+		assertEquals(20000, SensorBurstAssembler.getSamplingPeriodUs(1));
+		assertEquals(200000, SensorBurstAssembler.getSamplingPeriodUs(3));
+		assertEquals(10000, SensorBurstAssembler.getSamplingPeriodUs(10000));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPeriod() {
+		new SensorBurstAssembler(0, THRESHOLD);
+	}
+}
@@ -0,0 +1,55 @@
+package cl.niclabs.adkmobile.monitor.aggregation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of WindowAggregator with 3 channels (e.g. accelerometer axes)
+ * sampled at 50Hz, with 1s tumbling or sliding windows.
+ *
+ * Run with org.openjdk.jmh.Main on the test classpath, e.g.
+ * java -cp &lt;test classpath&gt; org.openjdk.jmh.Main WindowAggregatorBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WindowAggregatorBenchmark {
+	@Param({ "1000", "250" })
+	public long slide;
+
+	@Param({ "mean", "p95" })
+	public String reducer;
+
+	private WindowAggregator aggregator;
+	private final double[] values = new double[3];
+	private long timestamp = 0;
+
+	@Setup
+	public void setUp(final Blackhole blackhole) {
+		Reducer r = Reducer.valueOf(reducer);
+		aggregator = new WindowAggregator(1000, slide, new Reducer[] { r, r, r }, new WindowAggregator.Callback() {
+			@Override
+			public void onWindow(long start, long end, int count, double[] results) {
+				blackhole.consume(results);
+			}
+		});
+	}
+
+	@Benchmark
+	public void add() {
+		timestamp += 20;
+		values[0] = timestamp % 7;
+		values[1] = timestamp % 11;
+		values[2] = timestamp % 13;
+		aggregator.add(timestamp, values);
+	}
+}
@@ -0,0 +1,194 @@
+package cl.niclabs.adkmobile.monitor.aggregation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class WindowAggregatorTest {
+	/**
+	 * Keeps a copy of each window
+	 */
+	private static class Windows implements WindowAggregator.Callback {
+		final List<long[]> bounds = new ArrayList<long[]>();
+		final List<double[]> results = new ArrayList<double[]>();
+
+		@Override
+		public void onWindow(long start, long end, int count, double[] results) {
+			bounds.add(new long[] { start, end, count });
+			this.results.add(results.clone());
+		}
+
+		void assertWindow(int i, long start, long end, int count) {
+			assertEquals("start of window " + i, start, bounds.get(i)[0]);
+			assertEquals("end of window " + i, end, bounds.get(i)[1]);
+			assertEquals("count of window " + i, count, bounds.get(i)[2]);
+		}
+	}
+
+	private static WindowAggregator aggregator(long length, long slide, Windows windows) {
+		return new WindowAggregator(length, slide, new Reducer[] { Reducer.SUM, Reducer.MAX }, windows);
+	}
+
+	@Test
+	public void testTumbling() {
+		Windows windows = new Windows();
+		WindowAggregator aggregator = aggregator(100, 100, windows);
+
+		for (long t = 1000; t < 1300; t += 10) {
+			aggregator.add(t, new double[] { 1, t });
+		}
+		assertEquals(2, windows.bounds.size());
+		windows.assertWindow(0, 1000, 1100, 10);
+		windows.assertWindow(1, 1100, 1200, 10);
+		assertEquals(10, windows.results.get(0)[0], 0);
+		assertEquals(1090, windows.results.get(0)[1], 0);
+		assertEquals(1190, windows.results.get(1)[1], 0);
+
+		/* The last window is closed with the samples so far */
+		aggregator.flush();
+		windows.assertWindow(2, 1200, 1300, 10);
+		assertEquals(0, aggregator.size());
+	}
+
+	@Test
+	public void testSliding() {
+		Windows windows = new Windows();
+		WindowAggregator aggregator = aggregator(100, 50, windows);
+
+		for (long t = 0; t <= 200; t += 10) {
+			aggregator.add(t, new double[] { 1, t });
+		}
+		windows.assertWindow(0, 0, 100, 10);
+		windows.assertWindow(1, 50, 150, 10);
+		windows.assertWindow(2, 100, 200, 10);
+		assertEquals(3, windows.bounds.size());
+		assertEquals(140, windows.results.get(1)[1], 0);
+
+		/* Samples before the start of the current window are dropped */
+		assertEquals(6, aggregator.size());
+	}
+
+	@Test
+	public void testBoundaries() {
+		Windows windows = new Windows();
+		WindowAggregator aggregator = aggregator(100, 100, windows);
+
+		/* The end of a window is exclusive */
+		aggregator.add(0, new double[] { 1, 0 });
+		aggregator.add(99, new double[] { 1, 99 });
+		aggregator.add(100, new double[] { 1, 100 });
+		windows.assertWindow(0, 0, 100, 2);
+		assertEquals(1, aggregator.size());
+	}
+
+	@Test
+	public void testRealignment() {
+		Windows windows = new Windows();
+		WindowAggregator aggregator = aggregator(100, 100, windows);
+
+		aggregator.add(0, new double[] { 1, 0 });
+		aggregator.add(50, new double[] { 1, 50 });
+
+		/* Empty windows are not reported, windows start again with the first
+		 * sample after a gap */
+		aggregator.add(150, new double[] { 1, 150 });
+		aggregator.add(1005, new double[] { 1, 1005 });
+		aggregator.add(1104, new double[] { 1, 1104 });
+		aggregator.add(1105, new double[] { 1, 1105 });
+		windows.assertWindow(0, 0, 100, 2);
+		windows.assertWindow(1, 150, 250, 1);
+		windows.assertWindow(2, 1005, 1105, 2);
+		assertEquals(3, windows.bounds.size());
+	}
+
+	@Test
+	public void testSlidingRealignment() {
+		Windows windows = new Windows();
+		WindowAggregator aggregator = aggregator(100, 25, windows);
+
+		aggregator.add(0, new double[] { 1, 0 });
+		aggregator.add(60, new double[] { 1, 60 });
+		aggregator.add(500, new double[] { 1, 500 });
+		windows.assertWindow(0, 0, 100, 2);
+		windows.assertWindow(1, 25, 125, 1);
+		windows.assertWindow(2, 50, 150, 1);
+		assertEquals(3, windows.bounds.size());
+
+		aggregator.add(600, new double[] { 1, 600 });
+		windows.assertWindow(3, 500, 600, 1);
+	}
+
+	@Test
+	public void testGrowth() {
+		Windows windows = new Windows();
+		WindowAggregator aggregator = aggregator(1000, 500, windows);
+
+		/* More samples per window than the initial capacity */
+		for (long t = 0; t < 3000; t++) {
+			aggregator.add(t, new double[] { 1, t % 1000 });
+		}
+		assertEquals(4, windows.bounds.size());
+		for (int i = 0; i < windows.bounds.size(); i++) {
+			windows.assertWindow(i, i * 500, i * 500 + 1000, 1000);
+			assertEquals(1000, windows.results.get(i)[0], 0);
+		}
+		assertEquals(999, windows.results.get(3)[1], 0);
+	}
+
+	@Test
+	public void testClear() {
+		Windows windows = new Windows();
+		WindowAggregator aggregator = aggregator(100, 100, windows);
+
+		aggregator.add(0, new double[] { 1, 0 });
+		aggregator.clear();
+		aggregator.flush();
+		aggregator.add(500, new double[] { 1, 500 });
+		aggregator.flush();
+
+		assertEquals(1, windows.bounds.size());
+		windows.assertWindow(0, 500, 600, 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSlide() {
+		new WindowAggregator(100, 200, new Reducer[0], new Windows());
+	}
+
+	@Test
+	public void testReducers() {
+		double[] values = { 4, 1, 3, 2, 5 };
+
+		assertEquals(15, Reducer.SUM.reduce(values.clone(), 5), 0);
+		assertEquals(3, Reducer.MEAN.reduce(values.clone(), 5), 0);
+		assertEquals(2.5, Reducer.VARIANCE.reduce(values.clone(), 5), 1e-12);
+		assertEquals(0, Reducer.VARIANCE.reduce(values.clone(), 1), 0);
+		assertEquals(1, Reducer.MIN.reduce(values.clone(), 5), 0);
+		assertEquals(5, Reducer.MAX.reduce(values.clone(), 5), 0);
+
+		/* Only the first values are reduced */
+		assertEquals(4, Reducer.MAX.reduce(values.clone(), 3), 0);
+
+		assertEquals(3, Reducer.percentile(50).reduce(values.clone(), 5), 0);
+		assertEquals(1, Reducer.percentile(0).reduce(values.clone(), 5), 0);
+		assertEquals(5, Reducer.percentile(100).reduce(values.clone(), 5), 0);
+		assertEquals(4.6, Reducer.percentile(90).reduce(values.clone(), 5), 1e-12);
+	}
+
+	@Test
+	public void testReducerNames() {
+		assertEquals(Reducer.SUM, Reducer.valueOf("sum"));
+		assertEquals(Reducer.VARIANCE, Reducer.valueOf("variance"));
+		assertEquals(2, Reducer.valueOf("p95").reduce(new double[] { 2, 1 }, 2), 0.1);
+
+		try {
+			Reducer.valueOf("median");
+			throw new AssertionError("Unknown reducer accepted");
+		} catch (IllegalArgumentException e) {
+			/* Expected */
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package cl.niclabs.adkmobile.monitor.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import cl.niclabs.adkmobile.monitor.data.Observation;
+import cl.niclabs.adkmobile.monitor.listeners.MonitorListener;
+
+public class AbstractMonitorEventTest {
+	private static final int EVENTS = 16;
+	private static final int THREADS = 8;
+	private static final int OPERATIONS = 20000;
+
+	/**
+	 * Counts the activation and deactivation tasks and checks that they do not overlap
+	 */
+	private static class CountingEvent extends AbstractMonitorEvent<MonitorListener> {
+		final AtomicBoolean busy = new AtomicBoolean(false);
+		final AtomicBoolean overlap = new AtomicBoolean(false);
+		final AtomicInteger activations = new AtomicInteger(0);
+		final AtomicInteger deactivations = new AtomicInteger(0);
+
+		@Override
+		public boolean activate() {
+			if (startActivation()) {
+				task(activations);
+				super.activate();
+			}
+			return true;
+		}
+
+		@Override
+		public void deactivate() {
+			if (startDeactivation()) {
+				task(deactivations);
+				super.deactivate();
+			}
+		}
+
+		private void task(AtomicInteger counter) {
+			if (!busy.compareAndSet(false, true)) {
+				overlap.set(true);
+			}
+			counter.incrementAndGet();
+			Thread.yield();
+			busy.set(false);
+		}
+
+		@Override
+		public void onDataReceived(MonitorListener listener, Observation result) {
+		}
+	}
+
+	@Test
+	public void testSequential() {
+		CountingEvent event = new CountingEvent();
+		assertEquals(AbstractMonitorEvent.INACTIVE, event.getActivationStatus());
+
+		event.activate();
+		event.activate();
+		assertTrue(event.isActive());
+		assertEquals(1, event.activations.get());
+
+		event.deactivate();
+		event.deactivate();
+		assertFalse(event.isActive());
+		assertEquals(1, event.deactivations.get());
+	}
+
+	@Test
+	public void testAbortActivation() {
+		CountingEvent event = new CountingEvent() {
+			@Override
+			public boolean activate() {
+				if (startActivation()) {
+					abortActivation();
+				}
+				return true;
+			}
+		};
+
+		event.activate();
+		assertEquals(AbstractMonitorEvent.INACTIVE, event.getActivationStatus());
+	}
+
+	@Test
+	public void testContention() throws InterruptedException {
+		final CountingEvent[] events = new CountingEvent[EVENTS];
+		for (int i = 0; i < EVENTS; i++) {
+			events[i] = new CountingEvent();
+		}
+
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			final long seed = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random(seed);
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+
+					for (int i = 0; i < OPERATIONS; i++) {
+						CountingEvent event = events[random.nextInt(EVENTS)];
+						if (random.nextBoolean()) {
+							event.activate();
+						}
+						else {
+							event.deactivate();
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		for (CountingEvent event : events) {
+			assertFalse(event.overlap.get());
+
+			/* No transition is left in progress */
+			int status = event.getActivationStatus();
+			assertTrue(status == AbstractMonitorEvent.ACTIVE || status == AbstractMonitorEvent.INACTIVE);
+
+			/* Each activation task was followed by one deactivation task */
+			assertEquals(event.isActive() ? 1 : 0, event.activations.get() - event.deactivations.get());
+
+			/* The event still responds to requests */
+			event.activate();
+			assertTrue(event.isActive());
+			event.deactivate();
+			assertFalse(event.isActive());
+			assertEquals(event.activations.get(), event.deactivations.get());
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package cl.niclabs.adkmobile.monitor.events;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import cl.niclabs.adkmobile.monitor.data.Observation;
+import cl.niclabs.adkmobile.monitor.listeners.MonitorListener;
+import cl.niclabs.android.utils.Dispatcher;
+import cl.niclabs.android.utils.Notifier;
+
+/**
+ * Cost of notifying an observation to the listeners of an event with EventDispatcher,
+ * compared with the former path of AbstractMonitor.notifyListeners(), which created
+ * a Notifier per notification for cl.niclabs.android.utils.Dispatcher and stored the
+ * state in a ConcurrentHashMap.
+ *
+ * Run with the gc profiler to compare the allocations per operation, e.g.
+ * java -cp &lt;test classpath&gt; org.openjdk.jmh.Main EventDispatcherBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventDispatcherBenchmark {
+	@Param({ "1", "4" })
+	public int listeners;
+
+	private static class Result implements Observation {
+		@Override
+		public Integer getEventType() {
+			return 0;
+		}
+
+		@Override
+		public Long getTimestamp() {
+			return 0L;
+		}
+	}
+
+	private static class Event extends AbstractMonitorEvent<MonitorListener> {
+		Blackhole blackhole;
+
+		@Override
+		public void onDataReceived(MonitorListener listener, Observation result) {
+			blackhole.consume(result);
+		}
+	}
+
+	private final Event event = new Event();
+	private final Observation result = new Result();
+
+	private final EventDispatcher<MonitorListener> dispatcher = new EventDispatcher<MonitorListener>();
+
+	private final Dispatcher<MonitorListener> commonsDispatcher = new Dispatcher<MonitorListener>(
+			Dispatcher.Behavior.RUN_ON_SAME_THREAD);
+	private final Map<MonitorEvent<MonitorListener>, Observation> currentStates = new ConcurrentHashMap<MonitorEvent<MonitorListener>, Observation>(4);
+
+	@Setup
+	public void setUp(Blackhole blackhole) {
+		event.blackhole = blackhole;
+		for (int i = 0; i < listeners; i++) {
+			MonitorListener listener = new MonitorListener() {
+			};
+			dispatcher.listen(listener, true);
+			commonsDispatcher.listen(listener, true);
+		}
+	}
+
+	@Benchmark
+	public void eventDispatcher() {
+		event.setState(result);
+		dispatcher.notifyListeners(event, result);
+	}
+
+	@Benchmark
+	public void commonsDispatcher() {
+		currentStates.put(event, result);
+		commonsDispatcher.notifyListeners(new Notifier<MonitorListener>() {
+			@Override
+			public void notify(MonitorListener listener) {
+				event.onDataReceived(listener, result);
+			}
+		});
+	}
+}
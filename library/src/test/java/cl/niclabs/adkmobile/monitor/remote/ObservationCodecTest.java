@@ -0,0 +1,109 @@
+package cl.niclabs.adkmobile.monitor.remote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ObservationCodecTest {
+	public enum Kind {
+		FIRST, SECOND
+	}
+
+	public static class Inner {
+		float value;
+	}
+
+	public static class Base {
+		long timestamp;
+	}
+
+	public static class Sample extends Base {
+		boolean flag;
+		byte b;
+		short s;
+		int i;
+		double d;
+		Integer boxed;
+		String text;
+		Kind kind;
+		Inner inner;
+		List<Object> values = new ArrayList<Object>();
+		int[] array = { 1 };
+		transient int ignored = 1;
+	}
+
+	private final ObservationCodec codec = new ObservationCodec("cl.niclabs.adkmobile.monitor.remote");
+
+	private Object roundTrip(Object object) throws IOException {
+		byte[] data = codec.encode(object);
+		return codec.decode(data, data.length);
+	}
+
+	@Test
+	public void testObject() throws IOException {
+		Sample sample = new Sample();
+		sample.timestamp = 1L << 40;
+		sample.flag = true;
+		sample.b = -3;
+		sample.s = 1000;
+		sample.i = -7;
+		sample.d = 0.25;
+		sample.boxed = null;
+		sample.text = "héllo";
+		sample.kind = Kind.SECOND;
+		sample.inner = new Inner();
+		sample.inner.value = 2.5f;
+		sample.values.add(1);
+		sample.values.add("x");
+		sample.values.add(null);
+		sample.array = new int[] { 2 };
+		sample.ignored = 9;
+
+		Sample decoded = (Sample) roundTrip(sample);
+		assertEquals(sample.timestamp, decoded.timestamp);
+		assertEquals(sample.flag, decoded.flag);
+		assertEquals(sample.b, decoded.b);
+		assertEquals(sample.s, decoded.s);
+		assertEquals(sample.i, decoded.i);
+		assertEquals(sample.d, decoded.d, 0);
+		assertNull(decoded.boxed);
+		assertEquals(sample.text, decoded.text);
+		assertEquals(Kind.SECOND, decoded.kind);
+		assertEquals(2.5f, decoded.inner.value, 0);
+		assertEquals(sample.values, decoded.values);
+
+		/* Arrays and transient fields keep their defaults */
+		assertEquals(1, decoded.array[0]);
+		assertEquals(1, decoded.ignored);
+	}
+
+	@Test
+	public void testValues() throws IOException {
+		assertNull(roundTrip(null));
+		assertEquals(Long.MIN_VALUE, roundTrip(Long.MIN_VALUE));
+		assertEquals("", roundTrip(""));
+		assertEquals(Kind.FIRST, roundTrip(Kind.FIRST));
+
+		List<Object> list = new ArrayList<Object>();
+		list.add(new ArrayList<Object>());
+		list.add(1.5f);
+		assertEquals(list, roundTrip(list));
+	}
+
+	@Test(expected = IOException.class)
+	public void testClassNotAllowed() throws IOException {
+		byte[] data = codec.encode(new Sample());
+		new ObservationCodec("cl.niclabs.adkmobile.data").decode(data, data.length);
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncated() throws IOException {
+		byte[] data = codec.encode(new Sample());
+		codec.decode(data, data.length / 2);
+	}
+}
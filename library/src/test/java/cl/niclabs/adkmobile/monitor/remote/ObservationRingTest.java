@@ -0,0 +1,171 @@
+package cl.niclabs.adkmobile.monitor.remote;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class ObservationRingTest {
+	private static byte[] record(int seq, int length) {
+		byte[] data = new byte[length];
+		Arrays.fill(data, (byte) seq);
+		return data;
+	}
+
+	private static void assertRecord(ObservationRing.Reader reader, int length, int seq) {
+		byte[] data = reader.getRecord();
+		for (int i = 0; i < length; i++) {
+			assertEquals("Byte " + i + " of record " + seq, (byte) seq, data[i]);
+		}
+	}
+
+	@Test
+	public void testWrap() {
+		ByteBuffer buffer = ByteBuffer.allocate(ObservationRing.size(200));
+		ObservationRing ring = ObservationRing.create(buffer);
+		ObservationRing.Reader reader = ObservationRing.attach(buffer.duplicate()).newReader();
+
+		/* Odd lengths so records end at every offset of the region */
+		for (int i = 0; i < 100; i++) {
+			int length = i % 37;
+			long limit = ring.write(record(i, length), 0, length);
+
+			assertEquals(length, reader.next(limit));
+			assertRecord(reader, length, i);
+			assertEquals(-1, reader.next(limit));
+			assertEquals(limit, reader.getPosition());
+		}
+		assertEquals(0, reader.getLostCount());
+	}
+
+	@Test
+	public void testLapped() {
+		ByteBuffer buffer = ByteBuffer.allocate(ObservationRing.size(200));
+		ObservationRing ring = ObservationRing.create(buffer);
+		ObservationRing.Reader reader = ring.newReader();
+
+		long limit = 0;
+		for (int i = 0; i < 20; i++) {
+			limit = ring.write(record(i, 30), 0, 30);
+		}
+
+		assertEquals(-1, reader.next(limit));
+		assertEquals(1, reader.getLostCount());
+		assertEquals(limit, reader.getPosition());
+
+		/* The reader continues with the next records */
+		limit = ring.write(record(20, 30), 0, 30);
+		assertEquals(30, reader.next(limit));
+		assertRecord(reader, 30, 20);
+	}
+
+	@Test
+	public void testReservedRecord() {
+		ByteBuffer buffer = ByteBuffer.allocate(ObservationRing.size(200));
+		ObservationRing ring = ObservationRing.create(buffer);
+		ObservationRing.Reader reader = ring.newReader();
+
+		long limit = ring.write(record(1, 30), 0, 30);
+		for (int i = 2; i < 6; i++) {
+			ring.write(record(i, 30), 0, 30);
+		}
+
+		/* Still readable, the writer has not reached the first record */
+		assertEquals(30, reader.next(limit));
+		assertRecord(reader, 30, 1);
+
+		/* A writer in the middle of writing over the second record */
+		long position = reader.getPosition();
+		long write = ring.getWritePosition();
+		buffer.putLong(16, position + ring.getCapacity() + 4);
+		buffer.putInt(ObservationRing.HEADER_SIZE + (int) (position % ring.getCapacity()) + 8, -1);
+
+		assertEquals(-1, reader.next(write));
+		assertEquals(1, reader.getLostCount());
+		assertEquals(write, reader.getPosition());
+	}
+
+	@Test
+	public void testTooLong() {
+		ObservationRing ring = ObservationRing.create(ByteBuffer.allocate(ObservationRing.size(200)));
+		int length = ring.getMaxRecordLength();
+
+		ring.write(new byte[length], 0, length);
+		try {
+			ring.write(new byte[length + 1], 0, length + 1);
+			throw new AssertionError("Record longer than the maximum accepted");
+		} catch (IllegalArgumentException e) {
+			/* Expected */
+		}
+	}
+
+	@Test
+	public void testAttach() {
+		ByteBuffer buffer = ByteBuffer.allocate(ObservationRing.size(203));
+		assertEquals(200, ObservationRing.create(buffer).getCapacity());
+		assertEquals(200, ObservationRing.attach(buffer.duplicate()).getCapacity());
+
+		try {
+			ObservationRing.attach(ByteBuffer.allocate(64));
+			throw new AssertionError("Attached to an empty buffer");
+		} catch (IllegalArgumentException e) {
+			/* Expected */
+		}
+	}
+
+	/**
+	 * A reader following a fast writer must never return a torn record, each
+	 * record is filled with its sequence number
+	 */
+	@Test
+	public void testConcurrentReader() throws InterruptedException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(ObservationRing.size(1024));
+		final ObservationRing ring = ObservationRing.create(buffer);
+		final AtomicBoolean done = new AtomicBoolean(false);
+
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 500000; i++) {
+					int length = 8 + i % 200;
+					ring.write(record(i, length), 0, length);
+				}
+				done.set(true);
+			}
+		};
+
+		ObservationRing.Reader reader = ObservationRing.attach(buffer.duplicate()).newReader();
+		writer.start();
+
+		long read = 0;
+		while (!done.get()) {
+			int length;
+			while ((length = reader.next(ring.getWritePosition())) >= 0) {
+				byte[] data = reader.getRecord();
+				for (int i = 1; i < length; i++) {
+					if (data[i] != data[0]) {
+						throw new AssertionError("Torn record after " + read + " records");
+					}
+				}
+				read++;
+			}
+		}
+		writer.join();
+
+		/* The reader may have been lapped on every attempt, but it must recover */
+		while (reader.next(ring.getWritePosition()) >= 0) {
+			/* Skip the records left from the writer */
+		}
+		for (int i = 0; i < 3; i++) {
+			ring.write(record(i, 100), 0, 100);
+		}
+		for (int i = 0; i < 3; i++) {
+			assertEquals(100, reader.next(ring.getWritePosition()));
+			assertRecord(reader, 100, i);
+		}
+		assertEquals(-1, reader.next(ring.getWritePosition()));
+	}
+}
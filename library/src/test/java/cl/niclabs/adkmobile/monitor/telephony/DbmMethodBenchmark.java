@@ -0,0 +1,64 @@
+package cl.niclabs.adkmobile.monitor.telephony;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost per signal update of reading getDbm() with DbmMethod, compared with the
+ * former lookup of the method on every update, for a SignalStrength class with
+ * and without the method.
+ *
+ * Run with org.openjdk.jmh.Main on the test classpath, e.g.
+ * java -cp &lt;test classpath&gt; org.openjdk.jmh.Main DbmMethodBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DbmMethodBenchmark {
+	@Param({ "true", "false" })
+	public boolean supported;
+
+	public static class SignalStrength {
+		public int getGsmSignalStrength() {
+			return 12;
+		}
+	}
+
+	public static class SignalStrengthWithDbm extends SignalStrength {
+		public int getDbm() {
+			return -89;
+		}
+	}
+
+	private final DbmMethod dbmMethod = new DbmMethod();
+	private SignalStrength signalStrength;
+
+	@Setup
+	public void setUp() {
+		signalStrength = supported ? new SignalStrengthWithDbm() : new SignalStrength();
+	}
+
+	@Benchmark
+	public int cached() {
+		return dbmMethod.getDbm(signalStrength);
+	}
+
+	@Benchmark
+	public int lookupPerUpdate() {
+		try {
+			Method method = signalStrength.getClass().getDeclaredMethod("getDbm");
+			return (Integer) method.invoke(signalStrength);
+		} catch (Exception e) {
+			return DbmMethod.UNAVAILABLE;
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package cl.niclabs.adkmobile.monitor.traffic;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Traffic source with counters set by the test. Counters start at 0, UIDs
+ * without counters are UNSUPPORTED
+ */
+public class FakeTrafficSource implements TrafficSource {
+	long totalRxBytes, totalTxBytes, totalRxPackets, totalTxPackets;
+	long mobileRxBytes, mobileTxBytes, mobileRxPackets, mobileTxPackets;
+
+	/**
+	 * Counters by UID: rx bytes, tx bytes, rx packets, tx packets, tcp rx
+	 * segments and tcp tx segments
+	 */
+	private final Map<Integer, long[]> uids = new HashMap<Integer, long[]>();
+
+	/**
+	 * Add traffic on the mobile (or wifi) network for the UID
+	 */
+	public void transfer(int uid, boolean mobile, long rxBytes, long txBytes, long rxPackets, long txPackets) {
+		totalRxBytes += rxBytes;
+		totalTxBytes += txBytes;
+		totalRxPackets += rxPackets;
+		totalTxPackets += txPackets;
+		if (mobile) {
+			mobileRxBytes += rxBytes;
+			mobileTxBytes += txBytes;
+			mobileRxPackets += rxPackets;
+			mobileTxPackets += txPackets;
+		}
+
+		long[] counters = uids.get(uid);
+		if (counters == null) {
+			counters = new long[6];
+			uids.put(uid, counters);
+		}
+		counters[0] += rxBytes;
+		counters[1] += txBytes;
+		counters[2] += rxPackets;
+		counters[3] += txPackets;
+		counters[4] += rxPackets;
+		counters[5] += txPackets;
+	}
+
+	/**
+	 * Reset the counters of the UID (e.g. the application was reinstalled)
+	 */
+	public void reset(int uid) {
+		uids.put(uid, new long[6]);
+	}
+
+	private long get(int uid, int counter) {
+		long[] counters = uids.get(uid);
+		return counters != null ? counters[counter] : UNSUPPORTED;
+	}
+
+	@Override
+	public long getTotalRxBytes() {
+		return totalRxBytes;
+	}
+
+	@Override
+	public long getTotalTxBytes() {
+		return totalTxBytes;
+	}
+
+	@Override
+	public long getTotalRxPackets() {
+		return totalRxPackets;
+	}
+
+	@Override
+	public long getTotalTxPackets() {
+		return totalTxPackets;
+	}
+
+	@Override
+	public long getMobileRxBytes() {
+		return mobileRxBytes;
+	}
+
+	@Override
+	public long getMobileTxBytes() {
+		return mobileTxBytes;
+	}
+
+	@Override
+	public long getMobileRxPackets() {
+		return mobileRxPackets;
+	}
+
+	@Override
+	public long getMobileTxPackets() {
+		return mobileTxPackets;
+	}
+
+	@Override
+	public long getUidRxBytes(int uid) {
+		return get(uid, 0);
+	}
+
+	@Override
+	public long getUidTxBytes(int uid) {
+		return get(uid, 1);
+	}
+
+	@Override
+	public long getUidRxPackets(int uid) {
+		return get(uid, 2);
+	}
+
+	@Override
+	public long getUidTxPackets(int uid) {
+		return get(uid, 3);
+	}
+
+	@Override
+	public long getUidTcpRxSegments(int uid) {
+		return get(uid, 4);
+	}
+
+	@Override
+	public long getUidTcpTxSegments(int uid) {
+		return get(uid, 5);
+	}
+}
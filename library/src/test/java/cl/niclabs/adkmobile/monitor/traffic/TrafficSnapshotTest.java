@@ -0,0 +1,140 @@
+package cl.niclabs.adkmobile.monitor.traffic;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrafficSnapshotTest {
+	private FakeTrafficSource source;
+	private TrafficSnapshot snapshot;
+	private UidCounterTable counters;
+
+	@Before
+	public void setUp() {
+		source = new FakeTrafficSource();
+		snapshot = new TrafficSnapshot();
+		counters = new UidCounterTable(4);
+	}
+
+	/**
+	 * Read a snapshot and update the counter table as the traffic monitor does
+	 */
+	private UidCounterTable.Changes sweep(int... uids) {
+		counters.getChanges().clear();
+		snapshot.read(source, uids);
+		for (int i = 0; i < snapshot.getUidCount(); i++) {
+			int uid = snapshot.getUid(i);
+			int change = counters.updateBytes(uid, snapshot.getUidRxBytes(i), snapshot.getUidTxBytes(i));
+			if (change >= 0) {
+				counters.updatePackets(change, source.getUidRxPackets(uid), source.getUidTxPackets(uid));
+			}
+		}
+		return counters.getChanges();
+	}
+
+	@Test
+	public void testNetworkCounters() {
+		source.transfer(10001, true, 1000, 100, 10, 1);
+		source.transfer(10002, false, 5000, 500, 50, 5);
+		snapshot.read(source, new int[] { 10001, 10002, 10003 });
+
+		assertEquals(6000, snapshot.getTotalRxBytes());
+		assertEquals(1000, snapshot.getMobileRxBytes());
+		assertEquals(5000, snapshot.getWifiRxBytes());
+		assertEquals(500, snapshot.getWifiTxBytes());
+		assertEquals(50, snapshot.getWifiRxPackets());
+		assertEquals(5, snapshot.getWifiTxPackets());
+
+		/* TCP counters are the sum over the supported UIDs */
+		assertEquals(6000, snapshot.getTcpRxBytes());
+		assertEquals(600, snapshot.getTcpTxBytes());
+		assertEquals(60, snapshot.getTcpRxSegments());
+		assertEquals(6, snapshot.getTcpTxSegments());
+		assertEquals(TrafficSnapshot.UNSUPPORTED, snapshot.getUidRxBytes(2));
+	}
+
+	@Test
+	public void testUnsupportedTcp() {
+		source.transfer(10001, true, 1000, 100, 10, 1);
+		snapshot.read(source, new int[] { 20000 });
+
+		assertEquals(TrafficSnapshot.UNSUPPORTED, snapshot.getTcpRxBytes());
+		assertEquals(TrafficSnapshot.UNSUPPORTED, snapshot.getTcpTxSegments());
+
+		snapshot.read(source, new int[0]);
+		assertEquals(TrafficSnapshot.UNSUPPORTED, snapshot.getTcpRxBytes());
+		assertEquals(0, snapshot.getUidCount());
+	}
+
+	@Test
+	public void testDeltas() {
+		source.transfer(10001, true, 1000, 100, 10, 1);
+		source.transfer(10002, false, 5000, 500, 50, 5);
+
+		/* The first values are the baseline */
+		assertEquals(0, sweep(10001, 10002).size());
+
+		source.transfer(10001, true, 300, 30, 3, 0);
+		UidCounterTable.Changes changes = sweep(10001, 10002);
+		assertEquals(1, changes.size());
+		assertEquals(10001, changes.getUid(0));
+		assertEquals(300, changes.getRxBytes(0));
+		assertEquals(30, changes.getTxBytes(0));
+
+		/* No previous packet counters for the UID */
+		assertEquals(0, changes.getRxPackets(0));
+
+		source.transfer(10001, false, 200, 0, 2, 0);
+		source.transfer(10002, false, 0, 70, 0, 7);
+		changes = sweep(10001, 10002);
+		assertEquals(2, changes.size());
+		assertEquals(200, changes.getRxBytes(0));
+		assertEquals(2, changes.getRxPackets(0));
+		assertEquals(0, changes.getTxPackets(0));
+		assertEquals(10002, changes.getUid(1));
+		assertEquals(70, changes.getTxBytes(1));
+
+		assertEquals(0, sweep(10001, 10002).size());
+	}
+
+	@Test
+	public void testCounterReset() {
+		source.transfer(10001, true, 1000, 100, 10, 1);
+		sweep(10001);
+		source.transfer(10001, true, 1000, 100, 10, 1);
+		sweep(10001);
+
+		/* A decrease is not reported as traffic, and becomes the new baseline */
+		source.reset(10001);
+		assertEquals(0, sweep(10001).size());
+
+		source.transfer(10001, true, 40, 0, 4, 0);
+		UidCounterTable.Changes changes = sweep(10001);
+		assertEquals(40, changes.getRxBytes(0));
+
+		/* The packet counter decreased, so its change is not available */
+		assertEquals(UidCounterTable.UNAVAILABLE, changes.getRxPackets(0));
+	}
+
+	@Test
+	public void testManyUids() {
+		int[] uids = new int[1000];
+		for (int i = 0; i < uids.length; i++) {
+			uids[i] = 10000 + i;
+			source.transfer(uids[i], i % 2 == 0, i, i, 1, 1);
+		}
+		sweep(uids);
+		assertEquals(uids.length, counters.size());
+
+		for (int i = 0; i < uids.length; i += 3) {
+			source.transfer(uids[i], true, 1, 0, 1, 0);
+		}
+		UidCounterTable.Changes changes = sweep(uids);
+		assertEquals(334, changes.size());
+		for (int i = 0; i < changes.size(); i++) {
+			assertEquals(10000 + 3 * i, changes.getUid(i));
+			assertEquals(1, changes.getRxBytes(i));
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package cl.niclabs.adkmobile.monitor.traffic;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of one application traffic tick (updating the counters of every UID, 1 in 10
+ * UIDs with new traffic) with UidCounterTable, compared with one boxed map per
+ * counter as the former SparseArray&lt;Long&gt; maps (SparseArray is not available
+ * on the JVM, so HashMap stands for it).
+ *
+ * Run with org.openjdk.jmh.Main on the test classpath, e.g.
+ * java -cp &lt;test classpath&gt; org.openjdk.jmh.Main UidCounterTableBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UidCounterTableBenchmark {
+	@Param({ "2000", "5000", "10000" })
+	public int uids;
+
+	private int[] uid;
+	private long[] bytes;
+	private long[] packets;
+	private int tick = 0;
+
+	private UidCounterTable table;
+
+	private Map<Integer, Long> rxBytes;
+	private Map<Integer, Long> txBytes;
+	private Map<Integer, Long> rxPackets;
+	private Map<Integer, Long> txPackets;
+
+	@Setup
+	public void setUp() {
+		uid = new int[uids];
+		bytes = new long[uids];
+		packets = new long[uids];
+		for (int i = 0; i < uids; i++) {
+			/* Application UIDs start at 10000 */
+			uid[i] = 10000 + i * 3;
+		}
+
+		table = new UidCounterTable();
+		rxBytes = new HashMap<Integer, Long>();
+		txBytes = new HashMap<Integer, Long>();
+		rxPackets = new HashMap<Integer, Long>();
+		txPackets = new HashMap<Integer, Long>();
+		for (int i = 0; i < uids; i++) {
+			table.updateBytes(uid[i], 0, 0);
+			rxBytes.put(uid[i], 0L);
+			txBytes.put(uid[i], 0L);
+			rxPackets.put(uid[i], 0L);
+			txPackets.put(uid[i], 0L);
+		}
+		table.getChanges().clear();
+	}
+
+	/**
+	 * Add traffic to 1 in 10 UIDs
+	 */
+	private void addTraffic() {
+		tick++;
+		for (int i = tick % 10; i < uids; i += 10) {
+			bytes[i] += 1500;
+			packets[i]++;
+		}
+	}
+
+	@Benchmark
+	public void table(Blackhole blackhole) {
+		addTraffic();
+		for (int i = 0; i < uids; i++) {
+			int change = table.updateBytes(uid[i], bytes[i], bytes[i]);
+			if (change >= 0) {
+				table.updatePackets(change, packets[i], packets[i]);
+			}
+		}
+
+		UidCounterTable.Changes changes = table.getChanges();
+		for (int i = 0; i < changes.size(); i++) {
+			blackhole.consume(changes.getRxBytes(i));
+		}
+		changes.clear();
+	}
+
+	@Benchmark
+	public void boxedMaps(Blackhole blackhole) {
+		addTraffic();
+		for (int i = 0; i < uids; i++) {
+			int u = uid[i];
+			long dRxBytes = bytes[i] - rxBytes.get(u);
+			long dTxBytes = bytes[i] - txBytes.get(u);
+			rxBytes.put(u, bytes[i]);
+			txBytes.put(u, bytes[i]);
+			if (dRxBytes <= 0 && dTxBytes <= 0) {
+				continue;
+			}
+
+			long dRxPackets = packets[i] - rxPackets.get(u);
+			long dTxPackets = packets[i] - txPackets.get(u);
+			rxPackets.put(u, packets[i]);
+			txPackets.put(u, packets[i]);
+			blackhole.consume(dRxBytes + dTxBytes + dRxPackets + dTxPackets);
+		}
+	}
+}
@@ -0,0 +1,280 @@
+package cl.niclabs.adkmobile.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cl.niclabs.adkmobile.data.FieldDescriptor;
+import cl.niclabs.adkmobile.data.JsonStreamSerializer;
+import cl.niclabs.android.data.Serializable;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+
+/**
+ * Uploads against an in-memory server that follows the protocol of the example
+ * server, with injected failures
+ */
+public class ChunkedUploadTest {
+	public static class Item implements Serializable<Item> {
+		int id;
+		String payload;
+
+		Item(int id) {
+			this.id = id;
+			this.payload = "payload-" + id + "-0123456789abcdefghijklmnopqrstuvwxyz";
+		}
+
+		@Override
+		public List<Field> getSerializableFields() {
+			return FieldDescriptor.getSerializableFields(getClass(), true);
+		}
+	}
+
+	/**
+	 * Injected failures
+	 */
+	private static final Object IO_ERROR = "io error";
+	private static final Object LOST_ACK = "lost acknowledgement";
+	private static final Object STORED_CONFLICT = "stored, respond 409";
+
+	private static class FakeServerUpload extends ChunkedUpload {
+		final List<byte[]> chunks;
+		final LinkedList<Object> failures = new LinkedList<Object>();
+		boolean complete = false;
+		int posts = 0;
+
+		FakeServerUpload(List<byte[]> chunks, Object... failures) {
+			super("http://localhost/upload/chunked", "test", null);
+			this.chunks = chunks;
+			this.failures.addAll(Arrays.asList(failures));
+		}
+
+		@Override
+		protected Status getStatus() {
+			Status status = new Status();
+			status.last = chunks.size() - 1;
+			status.complete = complete;
+			if (complete) {
+				StringBuilder hashes = new StringBuilder();
+				for (byte[] chunk : chunks) {
+					hashes.append(sha256(chunk));
+				}
+				status.hash = sha256(hashes.toString().getBytes());
+			}
+			return status;
+		}
+
+		@Override
+		protected int post(byte[] data, Map<String, String> parameters) throws IOException {
+			posts++;
+			Object failure = failures.isEmpty() ? null : failures.removeFirst();
+			if (failure == IO_ERROR) {
+				throw new IOException("Injected failure");
+			}
+			if (failure instanceof Integer) {
+				return (Integer) failure;
+			}
+
+			if (!sha256(data).equals(parameters.get(HASH_FIELD))) {
+				return 400;
+			}
+
+			int chunk = Integer.parseInt(parameters.get(CHUNK_FIELD));
+			if (chunk > chunks.size()) {
+				return 409;
+			}
+			if (chunk == chunks.size()) {
+				chunks.add(data);
+			}
+			else {
+				chunks.set(chunk, data);
+			}
+			if ("1".equals(parameters.get(LAST_FIELD))) {
+				complete = true;
+			}
+
+			if (failure == LOST_ACK) {
+				return 500;
+			}
+			return failure == STORED_CONFLICT ? 409 : 200;
+		}
+	}
+
+	private static Iterator<Item> items(int count) {
+		List<Item> items = new ArrayList<Item>();
+		for (int i = 0; i < count; i++) {
+			items.add(new Item(i));
+		}
+		return items.iterator();
+	}
+
+	private static byte[] gunzip(byte[] data) throws IOException {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(data));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int read;
+		while ((read = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Check that the stored chunks contain each item once and in order
+	 */
+	private static void assertItems(List<byte[]> chunks, int count) throws IOException {
+		int next = 0;
+		for (byte[] chunk : chunks) {
+			JsonArray array = new JsonParser().parse(new String(gunzip(chunk), "UTF-8")).getAsJsonArray();
+			for (int i = 0; i < array.size(); i++) {
+				assertEquals(next++, array.get(i).getAsJsonObject().get("id").getAsInt());
+			}
+		}
+		assertEquals(count, next);
+	}
+
+	private int chunkSize, chunkBytes, maxRetries;
+	private long backoff;
+
+	@Before
+	public void setUp() {
+		chunkSize = ChunkedUpload.CHUNK_SIZE;
+		chunkBytes = ChunkedUpload.CHUNK_BYTES;
+		maxRetries = ChunkedUpload.MAX_RETRIES;
+		backoff = ChunkedUpload.BACKOFF;
+
+		ChunkedUpload.CHUNK_SIZE = 100;
+		ChunkedUpload.MAX_RETRIES = 3;
+		ChunkedUpload.BACKOFF = 1;
+	}
+
+	@After
+	public void tearDown() {
+		ChunkedUpload.CHUNK_SIZE = chunkSize;
+		ChunkedUpload.CHUNK_BYTES = chunkBytes;
+		ChunkedUpload.MAX_RETRIES = maxRetries;
+		ChunkedUpload.BACKOFF = backoff;
+	}
+
+	@Test
+	public void testRetryOnServerAndIoErrors() throws IOException {
+		List<byte[]> chunks = new ArrayList<byte[]>();
+		FakeServerUpload upload = new FakeServerUpload(chunks, null, IO_ERROR, 503, LOST_ACK, null, 500);
+
+		assertTrue(upload.send(items(450)));
+		assertTrue(upload.complete);
+		assertEquals(5, chunks.size());
+		assertEquals(9, upload.posts);
+		assertItems(chunks, 450);
+	}
+
+	@Test
+	public void testClientErrorIsNotRetried() {
+		FakeServerUpload upload = new FakeServerUpload(new ArrayList<byte[]>(), null, 400);
+
+		assertFalse(upload.send(items(450)));
+		assertEquals(2, upload.posts);
+	}
+
+	@Test
+	public void testTooManyRetries() {
+		FakeServerUpload upload = new FakeServerUpload(new ArrayList<byte[]>(), 500, IO_ERROR, 502, 503);
+
+		assertFalse(upload.send(items(450)));
+		assertEquals(ChunkedUpload.MAX_RETRIES + 1, upload.posts);
+	}
+
+	@Test
+	public void testConflictChecksStatus() throws IOException {
+		/* The chunk was stored, the conflict is not an error */
+		List<byte[]> chunks = new ArrayList<byte[]>();
+		FakeServerUpload upload = new FakeServerUpload(chunks, STORED_CONFLICT);
+		assertTrue(upload.send(items(250)));
+		assertEquals(3, upload.posts);
+		assertItems(chunks, 250);
+
+		/* The server expects another chunk */
+		upload = new FakeServerUpload(new ArrayList<byte[]>(), null, 409);
+		assertFalse(upload.send(items(250)));
+		assertEquals(2, upload.posts);
+	}
+
+	@Test
+	public void testResume() throws IOException {
+		List<byte[]> chunks = new ArrayList<byte[]>();
+		ChunkedUpload.MAX_RETRIES = 0;
+		FakeServerUpload upload = new FakeServerUpload(chunks, null, null, IO_ERROR);
+		assertFalse(upload.send(items(450)));
+		assertEquals(2, chunks.size());
+
+		/* Acknowledged chunks are not sent again */
+		upload = new FakeServerUpload(chunks);
+		assertTrue(upload.send(items(450)));
+		assertEquals(3, upload.posts);
+		assertItems(chunks, 450);
+
+		/* A complete upload is not sent again */
+		upload = new FakeServerUpload(chunks);
+		upload.complete = true;
+		assertTrue(upload.send(items(450)));
+		assertEquals(0, upload.posts);
+	}
+
+	@Test
+	public void testCompleteWithDifferentData() throws IOException {
+		List<byte[]> chunks = new ArrayList<byte[]>();
+		assertTrue(new FakeServerUpload(chunks).send(items(450)));
+
+		/* Other data under the id of a complete upload is not reported as sent */
+		FakeServerUpload upload = new FakeServerUpload(chunks);
+		upload.complete = true;
+		assertFalse(upload.send(items(449)));
+		assertFalse(upload.send(items(900)));
+		assertEquals(0, upload.posts);
+	}
+
+	@Test
+	public void testChunkBytes() throws IOException {
+		ChunkedUpload.CHUNK_SIZE = 100000;
+		ChunkedUpload.CHUNK_BYTES = 20000;
+
+		List<byte[]> chunks = new ArrayList<byte[]>();
+		FakeServerUpload upload = new FakeServerUpload(chunks);
+		assertTrue(upload.send(items(2000)));
+		assertTrue(chunks.size() > 1);
+		assertItems(chunks, 2000);
+
+		/* The serializer buffers the output (a BufferedWriter and an OutputStreamWriter) */
+		for (byte[] chunk : chunks) {
+			assertTrue(gunzip(chunk).length < ChunkedUpload.CHUNK_BYTES + 2 * JsonStreamSerializer.BUFFER_SIZE + 1000);
+		}
+
+		/* Resuming skips the acknowledged chunks by size */
+		int sent = chunks.size();
+		chunks.remove(sent - 1);
+		chunks.remove(sent - 2);
+		upload = new FakeServerUpload(chunks);
+		assertTrue(upload.send(items(2000)));
+		assertEquals(2, upload.posts);
+		assertEquals(sent, chunks.size());
+		assertItems(chunks, 2000);
+	}
+}
@@ -0,0 +1,96 @@
+package cl.niclabs.adkmobile.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Rows stored per second in SQLite by PersistenceQueue, which stores each batch of
+ * PersistenceQueue.MAX_SIZE objects of a class in one transaction (SugarRecord.saveInTx()),
+ * compared with a save() per row, where each insert is its own transaction.
+ *
+ * Sugar ORM requires the Android SQLite API, so the inserts are performed with the
+ * SQLite JDBC driver on a table with the columns of an AccelerometerObservation.
+ *
+ * Run with org.openjdk.jmh.Main on the test classpath, e.g.
+ * java -cp &lt;test classpath&gt; org.openjdk.jmh.Main PersistenceQueueBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PersistenceQueueBenchmark {
+	/**
+	 * Rows per operation, the default PersistenceQueue.MAX_SIZE
+	 */
+	private static final int ROWS = 500;
+
+	private File file;
+	private Connection connection;
+	private PreparedStatement insert;
+	private long timestamp = 0;
+
+	@Setup
+	public void setUp() throws IOException, SQLException {
+		file = File.createTempFile("persistence", ".db");
+		connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+
+		Statement statement = connection.createStatement();
+		statement.execute("CREATE TABLE ACCELEROMETER_OBSERVATION (ID INTEGER PRIMARY KEY AUTOINCREMENT, "
+				+ "EVENT_TYPE INTEGER, TIMESTAMP INTEGER, X FLOAT, Y FLOAT, Z FLOAT)");
+		statement.close();
+
+		insert = connection.prepareStatement("INSERT INTO ACCELEROMETER_OBSERVATION "
+				+ "(EVENT_TYPE, TIMESTAMP, X, Y, Z) VALUES (?, ?, ?, ?, ?)");
+	}
+
+	@TearDown
+	public void tearDown() throws SQLException {
+		insert.close();
+		connection.close();
+		file.delete();
+	}
+
+	private void insertRow() throws SQLException {
+		timestamp += 20;
+		insert.setInt(1, 1);
+		insert.setLong(2, timestamp);
+		insert.setDouble(3, timestamp % 7);
+		insert.setDouble(4, timestamp % 11);
+		insert.setDouble(5, timestamp % 13);
+		insert.executeUpdate();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void batched() throws SQLException {
+		connection.setAutoCommit(false);
+		for (int i = 0; i < ROWS; i++) {
+			insertRow();
+		}
+		connection.commit();
+		connection.setAutoCommit(true);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void perRowSave() throws SQLException {
+		for (int i = 0; i < ROWS; i++) {
+			insertRow();
+		}
+	}
+}